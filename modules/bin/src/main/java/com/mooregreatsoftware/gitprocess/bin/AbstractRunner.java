@@ -22,6 +22,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 
 import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.e;
 
@@ -65,6 +67,7 @@ public abstract class AbstractRunner<O extends Options, M extends CharSequence,
         abstract class AbstractBuilder<O extends Options, M extends CharSequence> implements TheBuilder, GitLibSetter, CliArgs {
             protected @MonotonicNonNull GitLib gitLib;
             protected @MonotonicNonNull Either<M, O> eOptions;
+            protected Path workingDirectory = Paths.get("");
 
 
             protected abstract Either<M, O> options(String[] args);
@@ -86,6 +89,13 @@ public abstract class AbstractRunner<O extends Options, M extends CharSequence,
             }
 
 
+            @Override
+            public TheBuilder workingDirectory(File workingDirectory) {
+                this.workingDirectory = workingDirectory.toPath();
+                return this;
+            }
+
+
             @Override
             @SuppressWarnings("RedundantCast")
             public Runner build() {
@@ -118,6 +128,11 @@ public abstract class AbstractRunner<O extends Options, M extends CharSequence,
         }
 
         interface TheBuilder {
+            /**
+             * The directory that relative paths in the arguments are relative to; defaults to the current directory
+             */
+            TheBuilder workingDirectory(File workingDirectory);
+
             Runner build();
         }
 
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.bin;
+
+import com.mooregreatsoftware.gitprocess.config.GeneralConfig;
+import javaslang.control.Either;
+import javaslang.control.Try;
+import joptsimple.OptionParser;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.PrintStream;
+import java.util.List;
+
+import static java.util.Arrays.asList;
+import static javaslang.control.Either.left;
+import static javaslang.control.Either.right;
+
+/**
+ * CLI options for {@link BatchSyncRunner}
+ */
+public class BatchSyncOptions extends SyncOptions {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchSyncOptions.class);
+
+
+    protected BatchSyncOptions(PrintStream printStream, GeneralConfig generalConfig) {
+        super(printStream, generalConfig);
+    }
+
+
+    /**
+     * Try to create an instance of {@link BatchSyncOptions} but return an error message to print if not successful.
+     * <p>
+     * (Not called "create" so that it does not hide {@link SyncOptions#create(String[], PrintStream, GeneralConfig)}.)
+     *
+     * @param args          the command line arguments
+     * @param printStream   where to send logging output
+     * @param generalConfig git configuration to use
+     * @return Left(message to print before exiting) or Right(the options)
+     */
+    public static Either<String, BatchSyncOptions> of(String[] args, PrintStream printStream, GeneralConfig generalConfig) {
+        final BatchSyncOptions batchSyncOptions = new BatchSyncOptions(printStream, generalConfig);
+        final String msgOption = batchSyncOptions.parse(args);
+        return msgOption != null ? left(msgOption) : right(batchSyncOptions);
+    }
+
+
+    /**
+     * Try to create an instance of {@link BatchSyncOptions} but return an error message to print if not successful.
+     *
+     * @param args          the command line arguments
+     * @param generalConfig git configuration to use
+     * @return Left(message to print before exiting) or Right(the options)
+     */
+    public static Either<String, BatchSyncOptions> of(String[] args, GeneralConfig generalConfig) {
+        return of(args, System.out, generalConfig);
+    }
+
+
+    @Override
+    public String description() {
+        return "Syncs many local branches with the server at once, without checking them out. " +
+            "If no branches are given, every local branch is synced.";
+    }
+
+
+    @Override
+    public String usageInfo() {
+        return "git sync-all [OPTIONS] [branch_name ...]";
+    }
+
+
+    @Override
+    protected OptionParser createOptionParser() {
+        final OptionParser optionParser = super.createOptionParser();
+        optionParser.acceptsAll(asList("j", "threads"), "How many branches to merge/rebase at the same time (default: number of processors)").
+            withRequiredArg();
+        return optionParser;
+    }
+
+
+    @Override
+    public boolean showHelp() {
+        if (helpOptionValue()) return true;
+
+        if (mergeOptionValue() && rebaseOptionValue()) {
+            LOG.warn("--rebase and --merge are mutually exclusive");
+            return true;
+        }
+
+        if (threads() < 1) {
+            LOG.warn("--threads must be a positive number");
+            return true;
+        }
+
+        return false;
+    }
+
+
+    /**
+     * The branches to sync; empty means all of them
+     */
+    public List<String> branchNames() {
+        return nonOptionArgs();
+    }
+
+
+    /**
+     * @return 0 if the value given is not a number
+     */
+    public int threads() {
+        return stringValue("threads").
+            map(s -> Try.of(() -> Integer.parseInt(s)).getOrElse(0)).
+            orElse(Runtime.getRuntime().availableProcessors());
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.bin;
+
+import com.mooregreatsoftware.gitprocess.bin.AbstractRunner.B.GitLibSetter;
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import com.mooregreatsoftware.gitprocess.process.BatchSync;
+import com.mooregreatsoftware.gitprocess.process.BatchSync.Result;
+import com.mooregreatsoftware.gitprocess.process.SyncPlan;
+import com.mooregreatsoftware.gitprocess.process.SyncPlanner;
+import javaslang.control.Either;
+import org.checkerframework.checker.nullness.qual.NonNull;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import static javaslang.control.Either.left;
+import static javaslang.control.Either.right;
+
+/**
+ * Runs {@link BatchSync} and prints a table of what happened to each branch.
+ * <p>
+ * With "--dry-run" it prints what {@link SyncPlanner} thinks would happen instead, and returns an empty
+ * {@link Result}.
+ */
+public class BatchSyncRunner extends AbstractRunner<BatchSyncOptions, String, Result> {
+
+    private BatchSyncRunner(GitLib gitLib, BatchSyncOptions options) {
+        super(gitLib, options);
+    }
+
+
+    /**
+     * Used to create a new instance of {@link BatchSyncRunner}
+     */
+    public static GitLibSetter builder() {
+        return new B.AbstractBuilder<BatchSyncOptions, String>() {
+            @Override
+            @SuppressWarnings("RedundantCast")
+            protected Either<String, BatchSyncOptions> options(String[] args) {
+                final GitLib gl = (@NonNull GitLib)this.gitLib;
+                return BatchSyncOptions.of(args, gl.generalConfig());
+            }
+
+
+            @Override
+            protected Runner doBuild(GitLib gitLib, BatchSyncOptions options) {
+                return new BatchSyncRunner(gitLib, options);
+            }
+        };
+    }
+
+
+    @Override
+    protected Either<String, Result> mainFunc(BatchSyncOptions options) {
+        if (options.dryRun()) {
+            return SyncPlanner.plan(gitLib(), options.branchNames(), options.merge(), options.localOnly(), options.threads()).
+                map(plans -> {
+                    System.out.println(SyncPlan.toTable(plans));
+                    return new Result(Collections.emptyList(), options.merge());
+                });
+        }
+
+        return BatchSync.sync(gitLib(), options.branchNames(), options.merge(), options.localOnly(), options.threads()).
+            flatMap(result -> {
+                if (!result.success()) return left(result.toString());
+                System.out.println(result);
+                return right(result);
+            });
+    }
+
+
+    public static void main(String[] args) throws IOException {
+        System.exit(builder().gitLib(createCurrentDirGitLib()).cliArgs(args).build().run());
+    }
+
+}
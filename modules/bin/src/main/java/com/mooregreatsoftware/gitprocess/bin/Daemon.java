@@ -0,0 +1,334 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.bin;
+
+import com.mooregreatsoftware.gitprocess.bin.AbstractRunner.B.GitLibSetter;
+import com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.FrameOutputStream;
+import com.mooregreatsoftware.gitprocess.lib.ExecUtils;
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import javaslang.control.Try;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PipedInputStream;
+import java.io.PipedOutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.ACCEPTED;
+import static com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.EXIT;
+import static com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.REFUSED;
+import static com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.STDERR;
+import static com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.STDOUT;
+
+/**
+ * Runs the commands in a long-lived JVM, so they do not pay for starting one (loading classes, JIT compiling,
+ * opening the repository, etc.) every time. {@link DaemonClient} starts one when it can not find one running.
+ * <p>
+ * Commands run one at a time, with their {@link System#in} coming from the client and their {@link System#out} and
+ * {@link System#err} sent back to it. A {@link GitLib} is kept open for each working directory, so its caches
+ * (references, ancestry, connections to the server) stay warm between commands. The daemon exits after being idle
+ * for {@link #DEFAULT_IDLE_MILLIS}.
+ * <p>
+ * Each environment has its own daemon (see {@link DaemonProtocol#defaultStateFile(Map)}). If a client's environment
+ * still differs from the one the daemon was started with, the state file is not really this daemon's, so it exits
+ * and leaves it to one started from the client's environment.
+ *
+ * @see DaemonProtocol
+ */
+public class Daemon implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(Daemon.class);
+
+    public static final long DEFAULT_IDLE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+    /**
+     * How long a client has to send its request before it is dropped, so one that connects and then says nothing
+     * does not hold up everyone else
+     */
+    public static final long DEFAULT_REQUEST_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+    private static final int STDIN_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The commands that can be run, by the name the client uses for them
+     */
+    static final Map<String, Supplier<GitLibSetter>> COMMANDS;
+
+    static {
+        final Map<String, Supplier<GitLibSetter>> commands = new LinkedHashMap<>();
+        commands.put("new-fb", NewFeatureBranchRunner::builder);
+        commands.put("sync", SyncRunner::builder);
+        commands.put("batch-sync", BatchSyncRunner::builder);
+        commands.put("pull-req", PullReqRunner::builder);
+        COMMANDS = Collections.unmodifiableMap(commands);
+    }
+
+    private final ServerSocket serverSocket;
+    private final Path stateFile;
+    private final String token;
+    private final long idleMillis;
+    private final long requestTimeoutMillis;
+    private final Map<String, String> environment;
+    private final Map<File, GitLib> gitLibs = new HashMap<>();
+
+
+    /**
+     * Listens on a free port on the loopback interface.
+     *
+     * @param stateFile  where to tell the clients the port and token
+     * @param idleMillis how long to wait for a command before exiting
+     */
+    public Daemon(Path stateFile, long idleMillis) throws IOException {
+        this(stateFile, idleMillis, DEFAULT_REQUEST_TIMEOUT_MILLIS, System.getenv());
+    }
+
+
+    /**
+     * Listens on a free port on the loopback interface.
+     *
+     * @param stateFile            where to tell the clients the port and token
+     * @param idleMillis           how long to wait for a command before exiting
+     * @param requestTimeoutMillis how long to wait for a client to send its request
+     * @param environment          the environment the commands run with
+     */
+    public Daemon(Path stateFile, long idleMillis, long requestTimeoutMillis, Map<String, String> environment) throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.stateFile = stateFile;
+        this.token = newToken();
+        this.idleMillis = idleMillis;
+        this.requestTimeoutMillis = requestTimeoutMillis;
+        this.environment = environment;
+    }
+
+
+    public int port() {
+        return serverSocket.getLocalPort();
+    }
+
+
+    /**
+     * Runs commands until it has been idle for too long or has been closed.
+     */
+    public void serve() throws IOException {
+        DaemonProtocol.writeState(stateFile, port(), token);
+        LOG.info("Listening on port {}", port());
+        try {
+            serverSocket.setSoTimeout((int)Math.min(idleMillis, Integer.MAX_VALUE));
+            while (!serverSocket.isClosed()) {
+                try (Socket socket = serverSocket.accept()) {
+                    handle(socket);
+                }
+                catch (SocketTimeoutException e) {
+                    LOG.info("Idle for {} minutes, so exiting", TimeUnit.MILLISECONDS.toMinutes(idleMillis));
+                    return;
+                }
+                catch (IOException e) {
+                    if (!serverSocket.isClosed()) LOG.warn("Problem talking to a client: {}", e.toString());
+                }
+            }
+        }
+        finally {
+            DaemonProtocol.deleteState(stateFile, token);
+        }
+    }
+
+
+    private void handle(Socket socket) throws IOException {
+        final DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        socket.setSoTimeout((int)Math.min(requestTimeoutMillis, Integer.MAX_VALUE));
+        final String command;
+        final File workingDir;
+        final String[] args;
+        final Map<String, String> clientEnvironment;
+        try {
+            final String clientToken = in.readUTF();
+            if (!MessageDigest.isEqual(token.getBytes(StandardCharsets.UTF_8), clientToken.getBytes(StandardCharsets.UTF_8))) {
+                LOG.warn("Ignoring a client with the wrong token");
+                return;
+            }
+            command = in.readUTF();
+            workingDir = new File(in.readUTF());
+            args = new String[in.readInt()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = in.readUTF();
+            }
+            clientEnvironment = DaemonProtocol.readEnvironment(in);
+        }
+        catch (SocketTimeoutException e) {
+            LOG.warn("Dropping a client that did not send its request within {}ms", requestTimeoutMillis);
+            return;
+        }
+        // the command may wait as long as it likes for the client's standard in (e.g., a password prompt)
+        socket.setSoTimeout(0);
+
+        final @Nullable String difference = DaemonProtocol.environmentDifference(clientEnvironment, environment);
+        if (difference != null) {
+            LOG.info("A client's environment is different ({}), so exiting for one started from it to take over", difference);
+            out.writeByte(REFUSED);
+            out.flush();
+            serverSocket.close();
+            return;
+        }
+        out.writeByte(ACCEPTED);
+        out.flush();
+
+        final PipedInputStream clientIn = new PipedInputStream(STDIN_BUFFER_SIZE);
+        final PipedOutputStream stdinSink = new PipedOutputStream(clientIn);
+        final Thread stdinReceiver = new Thread(() -> DaemonProtocol.receiveStdin(in, stdinSink), "git-process-daemon-stdin");
+        stdinReceiver.setDaemon(true);
+        stdinReceiver.start();
+
+        final PrintStream clientOut = new PrintStream(new FrameOutputStream(out, STDOUT), true, "UTF-8");
+        final PrintStream clientErr = new PrintStream(new FrameOutputStream(out, STDERR), true, "UTF-8");
+        try {
+            final int exitCode = run(command, workingDir, args, clientIn, clientOut, clientErr);
+            clientOut.flush();
+            clientErr.flush();
+            synchronized (out) {
+                out.writeByte(EXIT);
+                out.writeInt(exitCode);
+                out.flush();
+            }
+        }
+        finally {
+            // stops the receiver if the command did not read everything
+            clientIn.close();
+        }
+    }
+
+
+    /**
+     * Runs the command with {@link System#in}, {@link System#out} and {@link System#err} pointed at the client.
+     */
+    private int run(String command, File workingDir, String[] args, InputStream in, PrintStream out, PrintStream err) {
+        final InputStream originalIn = System.in;
+        final PrintStream originalOut = System.out;
+        final PrintStream originalErr = System.err;
+        System.setIn(in);
+        System.setOut(out);
+        System.setErr(err);
+        try {
+            if (!COMMANDS.containsKey(command)) {
+                err.println("Unknown command: " + command);
+                return Runner.STOP_ON_OPTIONS_CODE;
+            }
+            return runCommand(command, gitLib(workingDir), workingDir, args);
+        }
+        catch (Exception e) {
+            // start over with that repository next time
+            Try.run(() -> removeGitLib(workingDir));
+            err.println(ExecUtils.toString(e));
+            return Runner.STOP_ON_FUNCTION_CODE;
+        }
+        finally {
+            System.setIn(originalIn);
+            System.setOut(originalOut);
+            System.setErr(originalErr);
+        }
+    }
+
+
+    /**
+     * Builds and runs the named command.
+     *
+     * @param workingDir the client's working directory, which relative paths in the arguments are relative to
+     * @see #COMMANDS
+     */
+    static int runCommand(String command, GitLib gitLib, File workingDir, String[] args) {
+        final Supplier<GitLibSetter> builder = COMMANDS.get(command);
+        if (builder == null) throw new IllegalArgumentException("Unknown command: " + command);
+        return builder.get().gitLib(gitLib).cliArgs(args).workingDirectory(workingDir).build().run();
+    }
+
+
+    private GitLib gitLib(File workingDir) throws IOException {
+        final File key = workingDir.getCanonicalFile();
+        GitLib gitLib = gitLibs.get(key);
+        if (gitLib == null) {
+            LOG.debug("Opening {}", key);
+            gitLib = GitLib.of(key);
+            gitLibs.put(key, gitLib);
+        }
+        else {
+            // the refs may have been changed by something else (e.g., "git commit") since the last command
+            gitLib.refSnapshot().invalidate();
+        }
+        return gitLib;
+    }
+
+
+    private void removeGitLib(File workingDir) throws Exception {
+        final GitLib gitLib = gitLibs.remove(workingDir.getCanonicalFile());
+        if (gitLib != null) gitLib.close();
+    }
+
+
+    private static String newToken() {
+        final byte[] bytes = new byte[32];
+        new SecureRandom().nextBytes(bytes);
+        final StringBuilder sb = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+
+    /**
+     * Stops listening and closes the {@link GitLib}s.
+     */
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        gitLibs.values().forEach(gitLib -> Try.run(gitLib::close));
+        gitLibs.clear();
+    }
+
+
+    /**
+     * @param args optionally, the state file to use instead of the default
+     */
+    public static void main(String[] args) throws IOException {
+        final Path stateFile = args.length > 0 ? new File(args[0]).toPath() : DaemonProtocol.defaultStateFile(System.getenv());
+        try (Daemon daemon = new Daemon(stateFile, DEFAULT_IDLE_MILLIS)) {
+            daemon.serve();
+        }
+    }
+
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.bin;
+
+import com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.State;
+import com.mooregreatsoftware.gitprocess.lib.ExecUtils;
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.lang.ProcessBuilder.Redirect;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+
+import static com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.ACCEPTED;
+import static com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.EXIT;
+import static com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.REFUSED;
+import static com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.STDERR;
+import static com.mooregreatsoftware.gitprocess.bin.DaemonProtocol.STDOUT;
+
+/**
+ * A thin client for the {@link Daemon}: asks it to run a command in the current directory, sends it standard in,
+ * then copies back its output and exit code. This is what the launchers (e.g., "git-sync") run.
+ * <p>
+ * Each environment gets its own daemon (see {@link DaemonProtocol#defaultStateFile(Map)}). If there is not one
+ * running for this environment, one is started in the background (for next time) and the command is run here. Setting the "{@value #DAEMON_PROPERTY}" system
+ * property to "false" (e.g., in JAVA_OPTS) always runs the command here.
+ * <p>
+ * USAGE: {@code DaemonClient <command> [OPTIONS]}, where the command is one of the keys of {@link Daemon#COMMANDS}
+ * (e.g., "sync"). The command can instead be given with the "{@value #COMMAND_PROPERTY}" system property.
+ */
+public class DaemonClient {
+
+    /**
+     * The system property the launchers use to say which command to run
+     */
+    static final String COMMAND_PROPERTY = "gitprocess.command";
+
+    /**
+     * The system property to set to "false" to not use the daemon
+     */
+    static final String DAEMON_PROPERTY = "gitprocess.daemon";
+
+    private DaemonClient() {
+    }
+
+
+    /**
+     * @param environment the environment to tell the daemon about, so it can check that it matches its own
+     * @param in          what to send to the daemon's command as standard in
+     * @return the command's exit code
+     */
+    static int run(String[] args, File workingDir, Path stateFile, boolean startDaemon, Map<String, String> environment,
+                   InputStream in, PrintStream out, PrintStream err) {
+        if (args.length == 0 || !Daemon.COMMANDS.containsKey(args[0])) {
+            err.println("USAGE: DaemonClient <" + String.join("|", Daemon.COMMANDS.keySet()) + "> [OPTIONS]");
+            return Runner.STOP_ON_OPTIONS_CODE;
+        }
+        final String command = args[0];
+        final String[] commandArgs = Arrays.copyOfRange(args, 1, args.length);
+
+        final boolean useDaemon = !"false".equals(System.getProperty(DAEMON_PROPERTY));
+        final @Nullable State state = useDaemon ? DaemonProtocol.readState(stateFile) : null;
+        final @Nullable Socket socket = state != null ? connect(state) : null;
+        if (state != null && socket != null) {
+            // once the daemon has accepted, do not fall back to running it here: it may have already done part of it
+            try (Socket s = socket) {
+                final @Nullable Integer exitCode = send(s, state, command, workingDir, commandArgs, environment, in, out, err);
+                if (exitCode != null) return exitCode;
+            }
+            catch (IOException e) {
+                err.println("Lost the connection to the git-process daemon: " + e);
+                return Runner.STOP_ON_FUNCTION_CODE;
+            }
+        }
+
+        if (useDaemon && startDaemon) startDaemon(stateFile, err);
+        try (GitLib gitLib = GitLib.of(workingDir)) {
+            return Daemon.runCommand(command, gitLib, workingDir, commandArgs);
+        }
+        catch (Exception e) {
+            err.println(ExecUtils.toString(e));
+            return Runner.STOP_ON_FUNCTION_CODE;
+        }
+    }
+
+
+    private static @Nullable Socket connect(State state) {
+        try {
+            return new Socket(InetAddress.getLoopbackAddress(), state.port);
+        }
+        catch (IOException e) {
+            return null; // the daemon has gone away
+        }
+    }
+
+
+    /**
+     * @return the command's exit code, or null if the daemon would not run it
+     */
+    private static @Nullable Integer send(Socket socket, State state, String command, File workingDir, String[] args,
+                                          Map<String, String> environment, InputStream in, PrintStream out,
+                                          PrintStream err) throws IOException {
+        final DataOutputStream dataOut = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        dataOut.writeUTF(state.token);
+        dataOut.writeUTF(command);
+        dataOut.writeUTF(workingDir.getCanonicalPath());
+        dataOut.writeInt(args.length);
+        for (String arg : args) {
+            dataOut.writeUTF(arg);
+        }
+        DaemonProtocol.writeEnvironment(dataOut, DaemonProtocol.relevantEnvironment(environment));
+        dataOut.flush();
+
+        final DataInputStream dataIn = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final byte answer = dataIn.readByte();
+        if (answer == REFUSED) return null;
+        if (answer != ACCEPTED) throw new IOException("Unknown answer " + answer);
+
+        // only read standard in once the daemon will use it, so nothing is lost if it runs here instead
+        final Thread stdinSender = new Thread(() -> DaemonProtocol.sendStdin(in, dataOut), "git-process-stdin");
+        stdinSender.setDaemon(true);
+        stdinSender.start();
+
+        while (true) {
+            final byte type = dataIn.readByte();
+            if (type == EXIT) return dataIn.readInt();
+            if (type != STDOUT && type != STDERR) throw new IOException("Unknown frame type " + type);
+
+            final byte[] bytes = new byte[dataIn.readInt()];
+            dataIn.readFully(bytes);
+            final PrintStream stream = type == STDOUT ? out : err;
+            stream.write(bytes);
+            stream.flush();
+        }
+    }
+
+
+    /**
+     * Starts a daemon in a separate JVM with the same classpath, logging to "daemon.log" next to the state file.
+     */
+    private static void startDaemon(Path stateFile, PrintStream err) {
+        try {
+            Files.createDirectories(stateFile.getParent());
+            final String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+            new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"), Daemon.class.getName(), stateFile.toString()).
+                redirectErrorStream(true).
+                redirectOutput(Redirect.appendTo(stateFile.resolveSibling("daemon.log").toFile())).
+                start();
+        }
+        catch (IOException e) {
+            err.println("Could not start the git-process daemon: " + e);
+        }
+    }
+
+
+    public static void main(String[] args) {
+        final @Nullable String command = System.getProperty(COMMAND_PROPERTY);
+        final String[] clientArgs;
+        if (command != null) {
+            clientArgs = new String[args.length + 1];
+            clientArgs[0] = command;
+            System.arraycopy(args, 0, clientArgs, 1, args.length);
+        }
+        else {
+            clientArgs = args;
+        }
+
+        System.exit(run(clientArgs, new File("."), DaemonProtocol.defaultStateFile(System.getenv()), true, System.getenv(),
+            System.in, System.out, System.err));
+    }
+
+}
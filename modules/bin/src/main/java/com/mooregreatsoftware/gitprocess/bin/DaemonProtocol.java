@@ -0,0 +1,315 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.bin;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * What the {@link Daemon} and {@link DaemonClient} say to each other.
+ * <p>
+ * The client sends the token, the command name, the working directory, the arguments and its environment (each
+ * with {@link DataOutputStream#writeUTF(String)}, the arguments and the environment's name/value pairs preceded by
+ * their count). The daemon answers with {@link #ACCEPTED}, or with {@link #REFUSED} if it can not run commands for
+ * that environment (see {@link #environmentDifference(Map, Map)}).
+ * <p>
+ * After that both sides send frames: a type byte, then for {@link #STDOUT}/{@link #STDERR}/{@link #STDIN} the
+ * length and bytes, or for {@link #EXIT} the exit code. The client sends {@link #STDIN} frames with what it reads
+ * from its standard in, then {@link #STDIN_EOF}; the daemon sends the rest.
+ * <p>
+ * The daemon's port and token are kept in a "state file" that only the user can read, so only the user's own
+ * clients can connect. By default there is one for each environment (see {@link #defaultStateFile(Map)}).
+ */
+final class DaemonProtocol {
+    static final byte STDOUT = 1;
+    static final byte STDERR = 2;
+    static final byte EXIT = 3;
+    static final byte STDIN = 4;
+    static final byte STDIN_EOF = 5;
+    static final byte ACCEPTED = 6;
+    static final byte REFUSED = 7;
+
+    /**
+     * The environment variables that change how commands behave in ways the daemon can not change after it has
+     * started (e.g., which ssh-agent to use), so a client's must match the daemon's
+     */
+    private static final List<String> ENVIRONMENT_KEYS =
+        Arrays.asList("HOME", "PATH", "SSH_AUTH_SOCK", "SSH_ASKPASS", "DISPLAY", "XDG_CONFIG_HOME");
+
+    /**
+     * Environment variables starting with this (e.g., "GIT_SSH", "GIT_ASKPASS") also have to match
+     */
+    private static final String GIT_ENVIRONMENT_PREFIX = "GIT_";
+
+    private static final String PORT_KEY = "port";
+    private static final String TOKEN_KEY = "token";
+
+
+    private DaemonProtocol() {
+    }
+
+
+    /**
+     * "~/.git-process/daemon-&lt;hash&gt;", where the hash is of the {@link #relevantEnvironment(Map)}, so that
+     * clients with different environments (e.g., terminals with different ssh-agents) each get their own daemon
+     * instead of replacing each other's
+     */
+    static Path defaultStateFile(Map<String, String> environment) {
+        return new File(System.getProperty("user.home"), ".git-process/daemon-" + environmentHash(environment)).toPath();
+    }
+
+
+    static String environmentHash(Map<String, String> environment) {
+        final MessageDigest digest = Constants.newMessageDigest();
+        new TreeMap<>(relevantEnvironment(environment)).forEach((k, v) -> {
+            digest.update(k.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+            digest.update(v.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte)0);
+        });
+        return ObjectId.fromRaw(digest.digest()).abbreviate(12).name();
+    }
+
+
+    static void writeState(Path file, int port, String token) throws IOException {
+        Files.createDirectories(file.getParent());
+        final Properties properties = new Properties();
+        properties.setProperty(PORT_KEY, Integer.toString(port));
+        properties.setProperty(TOKEN_KEY, token);
+
+        final Path tmp = Files.createTempFile(file.getParent(), "daemon", ".tmp");
+        try {
+            if (tmp.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+                Files.setPosixFilePermissions(tmp, PosixFilePermissions.fromString("rw-------"));
+            }
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "git-process daemon");
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+
+    /**
+     * @return the port and token of the running daemon, or null if there is not one
+     */
+    static @Nullable State readState(Path file) {
+        if (!Files.isRegularFile(file)) return null;
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            return new State(Integer.parseInt(properties.getProperty(PORT_KEY, "0")), properties.getProperty(TOKEN_KEY, ""));
+        }
+        catch (IOException | NumberFormatException e) {
+            return null;
+        }
+    }
+
+
+    static void deleteState(Path file, String token) {
+        final State state = readState(file);
+        // another daemon may have taken over
+        if (state != null && state.token.equals(token)) {
+            try {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException e) {
+                // nothing more can be done
+            }
+        }
+    }
+
+
+    static void writeEnvironment(DataOutputStream out, Map<String, String> environment) throws IOException {
+        out.writeInt(environment.size());
+        for (Map.Entry<String, String> entry : environment.entrySet()) {
+            out.writeUTF(entry.getKey());
+            out.writeUTF(entry.getValue());
+        }
+    }
+
+
+    static Map<String, String> readEnvironment(DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final Map<String, String> environment = new HashMap<>(count);
+        for (int i = 0; i < count; i++) {
+            environment.put(in.readUTF(), in.readUTF());
+        }
+        return Collections.unmodifiableMap(environment);
+    }
+
+
+    /**
+     * The part of the environment that has to match between the client and the daemon
+     */
+    static Map<String, String> relevantEnvironment(Map<String, String> environment) {
+        final Map<String, String> relevant = new HashMap<>();
+        environment.forEach((k, v) -> {
+            if (ENVIRONMENT_KEYS.contains(k) || k.startsWith(GIT_ENVIRONMENT_PREFIX)) relevant.put(k, v);
+        });
+        return relevant;
+    }
+
+
+    /**
+     * Does the client's environment differ from the daemon's in a way that matters?
+     *
+     * @return the names of the variables that differ, or null if none do
+     */
+    static @Nullable String environmentDifference(Map<String, String> client, Map<String, String> daemon) {
+        final Map<String, String> relevantClient = relevantEnvironment(client);
+        final Map<String, String> relevantDaemon = relevantEnvironment(daemon);
+        final Set<String> keys = new TreeSet<>(relevantClient.keySet());
+        keys.addAll(relevantDaemon.keySet());
+        keys.removeIf(k -> Objects.equals(relevantClient.get(k), relevantDaemon.get(k)));
+        return keys.isEmpty() ? null : String.join(", ", keys);
+    }
+
+
+    /**
+     * Sends everything read from "in" as {@link #STDIN} frames, then {@link #STDIN_EOF}. Stops quietly if the
+     * connection is closed.
+     */
+    static void sendStdin(InputStream in, DataOutputStream out) {
+        final byte[] buffer = new byte[8192];
+        try {
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                if (read == 0) continue;
+                out.writeByte(STDIN);
+                out.writeInt(read);
+                out.write(buffer, 0, read);
+                out.flush();
+            }
+            out.writeByte(STDIN_EOF);
+            out.flush();
+        }
+        catch (IOException e) {
+            // the command is over
+        }
+    }
+
+
+    /**
+     * Writes what comes in {@link #STDIN} frames to "out", closing it at {@link #STDIN_EOF} or when the
+     * connection is closed.
+     */
+    static void receiveStdin(DataInputStream in, OutputStream out) {
+        try {
+            while (true) {
+                final byte type = in.readByte();
+                if (type == STDIN_EOF) return;
+                if (type != STDIN) throw new IOException("Unknown frame type " + type);
+
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                out.write(bytes);
+                out.flush();
+            }
+        }
+        catch (IOException e) {
+            // the command is over, or the client has gone away
+        }
+        finally {
+            try {
+                out.close();
+            }
+            catch (IOException e) {
+                // nothing more can be done
+            }
+        }
+    }
+
+
+    /**
+     * An {@link OutputStream} that sends everything written to it as frames of the given type
+     */
+    static final class FrameOutputStream extends OutputStream {
+        private final DataOutputStream out;
+        private final byte type;
+
+
+        FrameOutputStream(DataOutputStream out, byte type) {
+            this.out = out;
+            this.type = type;
+        }
+
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte)b}, 0, 1);
+        }
+
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (len == 0) return;
+            synchronized (out) {
+                out.writeByte(type);
+                out.writeInt(len);
+                out.write(b, off, len);
+            }
+        }
+
+
+        @Override
+        public void flush() throws IOException {
+            synchronized (out) {
+                out.flush();
+            }
+        }
+    }
+
+
+    static final class State {
+        final int port;
+        final String token;
+
+
+        State(int port, String token) {
+            this.port = port;
+            this.token = token;
+        }
+    }
+
+}
@@ -15,7 +15,9 @@
  */
 package com.mooregreatsoftware.gitprocess.bin;
 
+import com.mooregreatsoftware.gitprocess.github.PullReqBatch;
 import javaslang.control.Either;
+import javaslang.control.Try;
 import joptsimple.OptionParser;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -68,12 +70,14 @@ public class PullReqOptions extends Options {
 
 
     public String description() {
-        return "Creates a new pull request for the current branch.";
+        return "Creates a new pull request for the current branch, or checks out an existing one.";
     }
 
 
     public String usageInfo() {
-        return "git pull-req [OPTIONS] \"Pull request title\"";
+        return "git pull-req [OPTIONS] \"Pull request title\"\n" +
+            "   or: git pull-req [OPTIONS] --batch <file>\n" +
+            "   or: git pull-req [OPTIONS] --checkout <pull request number>";
     }
 
 
@@ -103,6 +107,12 @@ public class PullReqOptions extends Options {
         optionParser.acceptsAll(asList("d", "description"), "The description of the Pull Request").withRequiredArg();
         optionParser.accepts("username", "Your GitHub username; only needed the first time you connect, and you will be prompted for it if needed").withRequiredArg();
         optionParser.accepts("password", "Your GitHub password; only needed the first time you connect, and you will be prompted for it if needed").withRequiredArg();
+        optionParser.accepts("batch", "Create a pull request for each line of the file (\"-\" for standard input), given as " +
+            "\"head-branch<TAB>base-branch<TAB>title<TAB>description\"; everything but the head branch can be left empty").withRequiredArg();
+        optionParser.acceptsAll(asList("j", "jobs"), "With --batch, how many pull requests to create at the same time (default: " +
+            PullReqBatch.DEFAULT_MAX_IN_FLIGHT + ")").withRequiredArg();
+        optionParser.accepts("checkout", "Fetch the pull request with the given number and check it out as \"pr/<number>\"");
+        optionParser.accepts("with-merge", "With --checkout, also fetch the server's merge of the pull request into its base branch");
 
         return optionParser;
     }
@@ -117,6 +127,31 @@ public class PullReqOptions extends Options {
             return true;
         }
 
+        if (batchFile() != null && !nonOptionArgs().isEmpty()) {
+            LOG.warn("A title can not be given with --batch");
+            return true;
+        }
+
+        if (checkout() && issueOrPrID() == null) {
+            LOG.warn("--checkout needs the number of the pull request");
+            return true;
+        }
+
+        if (checkout() && batchFile() != null) {
+            LOG.warn("--checkout can not be used with --batch");
+            return true;
+        }
+
+        if (withMerge() && !checkout()) {
+            LOG.warn("--with-merge can only be used with --checkout");
+            return true;
+        }
+
+        if (jobs() < 1) {
+            LOG.warn("--jobs must be a positive number");
+            return true;
+        }
+
         final String headBranchName = headBranchName();
         if (headBranchName != null && headBranchName.equals(baseBranchName())) {
             LOG.warn("Head branch name and base branch name can not be the same");
@@ -219,4 +254,44 @@ public class PullReqOptions extends Options {
         return stringValue("password").orElse(null);
     }
 
+
+    /**
+     * The file to read the pull requests to create from, or "-" for standard input.
+     *
+     * @return null if no argument is given
+     */
+    @Nullable
+    public String batchFile() {
+        return stringValue("batch").orElse(null);
+    }
+
+
+    /**
+     * How many pull requests to create at the same time with {@link #batchFile()}.
+     *
+     * @return 0 if the value given is not a number
+     */
+    public int jobs() {
+        return stringValue("jobs").
+            map(s -> Try.of(() -> Integer.parseInt(s)).getOrElse(0)).
+            orElse(PullReqBatch.DEFAULT_MAX_IN_FLIGHT);
+    }
+
+
+
+    /**
+     * Check out the pull request given by {@link #issueOrPrID()} instead of creating one.
+     */
+    public boolean checkout() {
+        return booleanValue("checkout");
+    }
+
+
+    /**
+     * With {@link #checkout()}, also fetch the server's merge of the pull request.
+     */
+    public boolean withMerge() {
+        return booleanValue("with-merge");
+    }
+
 }
@@ -15,17 +15,34 @@
  */
 package com.mooregreatsoftware.gitprocess.bin;
 
+import com.mooregreatsoftware.gitprocess.github.PullReqBatch;
+import com.mooregreatsoftware.gitprocess.github.PullReqBatch.Spec;
 import com.mooregreatsoftware.gitprocess.github.PullReqCreator;
 import com.mooregreatsoftware.gitprocess.github.PullRequest;
 import com.mooregreatsoftware.gitprocess.lib.Branch;
 import com.mooregreatsoftware.gitprocess.lib.Branches;
 import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import com.mooregreatsoftware.gitprocess.process.CheckoutPullRequest;
 import javaslang.control.Either;
+import javaslang.control.Try;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static java.lang.System.lineSeparator;
+import static javaslang.control.Either.left;
+import static javaslang.control.Either.right;
 
 /**
  * Makes it easier to work with pull requests from the command-line.
@@ -33,13 +50,18 @@ import java.io.IOException;
  * @see PullReqOptions
  * @see #builder()
  * @see PullReqCreator#createPR()
+ * @see PullReqBatch#createPRs(List)
+ * @see CheckoutPullRequest#checkoutPullRequest(GitLib, int, boolean)
  */
-public class PullReqRunner extends AbstractRunner<PullReqOptions, String, PullRequest> {
+public class PullReqRunner extends AbstractRunner<PullReqOptions, String, List<PullRequest>> {
     private static final Logger LOG = LoggerFactory.getLogger(PullReqRunner.class);
 
+    private final Path workingDirectory;
 
-    private PullReqRunner(GitLib gitLib, PullReqOptions options) {
+
+    private PullReqRunner(GitLib gitLib, Path workingDirectory, PullReqOptions options) {
         super(gitLib, options);
+        this.workingDirectory = workingDirectory;
     }
 
 
@@ -56,17 +78,28 @@ public class PullReqRunner extends AbstractRunner<PullReqOptions, String, PullRe
 
             @Override
             protected Runner doBuild(GitLib gitLib, PullReqOptions options) {
-                return new PullReqRunner(gitLib, options);
+                return new PullReqRunner(gitLib, workingDirectory, options);
             }
         };
     }
 
 
     @Override
-    protected Either<String, PullRequest> mainFunc(PullReqOptions options) {
-        // TODO:  Retrieve and check out a pull-request
+    protected Either<String, List<PullRequest>> mainFunc(PullReqOptions options) {
         // TODO: Create a new pull-request based on a GH-issue
 
+        final @Nullable Integer prNumber = options.issueOrPrID();
+        if (options.checkout() && prNumber != null) {
+            return CheckoutPullRequest.checkoutPullRequest(gitLib(), prNumber, options.withMerge()).
+                map(branch -> {
+                    LOG.info("Checked out pull request #{} as \"{}\"", prNumber, branch.shortName());
+                    return Collections.<PullRequest>emptyList();
+                });
+        }
+
+        final @Nullable String batchFile = options.batchFile();
+        if (batchFile != null) return createBatch(gitLib(), options, workingDirectory.resolve(batchFile), batchFile);
+
         final PullReqCreator pullReqCreator = pullReqCreator(gitLib(), options);
 
         final Either<String, PullRequest> pr = pullReqCreator.createPR();
@@ -74,7 +107,82 @@ public class PullReqRunner extends AbstractRunner<PullReqOptions, String, PullRe
             final PullRequest pullRequest = pr.get();
             LOG.info("Created \"{}\" at {}", pullRequest.title(), pullRequest.htmlUrl());
         }
-        return pr;
+        return pr.map(Collections::singletonList);
+    }
+
+
+    private static Either<String, List<PullRequest>> createBatch(GitLib gitLib, PullReqOptions opts, Path batchPath,
+                                                                 String batchFile) {
+        final Either<String, List<String>> eLines = batchFile.equals("-") ? readStdin() : readLines(batchPath);
+        if (eLines.isLeft()) return left(eLines.getLeft());
+
+        final @Nullable Branch integrationBranch = gitLib.branches().integrationBranch();
+        final List<Spec> specs = new ArrayList<>();
+        for (String line : eLines.get()) {
+            if (line.trim().isEmpty() || line.startsWith("#")) continue;
+            final Either<String, Spec> spec = spec(line, integrationBranch);
+            if (spec.isLeft()) return left(spec.getLeft());
+            specs.add(spec.get());
+        }
+
+        final PullReqBatch batch = PullReqBatch.of(gitLib, opts.username(), opts.password(), opts.jobs());
+        final List<Either<String, PullRequest>> results = batch.createPRs(specs);
+
+        final List<PullRequest> created = new ArrayList<>(results.size());
+        final List<String> errors = new ArrayList<>();
+        for (Either<String, PullRequest> result : results) {
+            if (result.isRight()) {
+                final PullRequest pullRequest = result.get();
+                LOG.info("Created \"{}\" at {}", pullRequest.title(), pullRequest.htmlUrl());
+                created.add(pullRequest);
+            }
+            else {
+                errors.add(result.getLeft());
+            }
+        }
+
+        if (errors.isEmpty()) return right(created);
+        return left("Could not create " + errors.size() + " of " + results.size() + " pull requests:" + lineSeparator() +
+            errors.stream().map(e -> "  " + e).collect(Collectors.joining(lineSeparator())));
+    }
+
+
+    /**
+     * Parses "head-branch[TAB base-branch[TAB title[TAB description]]]", defaulting the base branch to the
+     * integration branch and the title to the head branch
+     */
+    static Either<String, Spec> spec(String line, @Nullable Branch integrationBranch) {
+        final String[] fields = line.split("\t", -1);
+        final String head = fields[0].trim();
+        if (head.isEmpty()) return left("No head branch in \"" + line + "\"");
+
+        final String base;
+        if (fields.length > 1 && !fields[1].trim().isEmpty()) {
+            base = fields[1].trim();
+        }
+        else {
+            if (integrationBranch == null)
+                return left("No integration branch has been set or can be derived, and no base branch was given in \"" + line + "\"");
+            base = integrationBranch.simpleName();
+        }
+
+        final String title = fields.length > 2 && !fields[2].trim().isEmpty() ? fields[2].trim() : head;
+        final @Nullable String description = fields.length > 3 && !fields[3].trim().isEmpty() ? fields[3].trim() : null;
+        return right(new Spec(head, base, title, description));
+    }
+
+
+    private static Either<String, List<String>> readLines(Path file) {
+        return Try.of(() -> Files.readAllLines(file, StandardCharsets.UTF_8)).
+            toEither().bimap(Throwable::toString, lines -> lines);
+    }
+
+
+    private static Either<String, List<String>> readStdin() {
+        return Try.of(() -> {
+            final BufferedReader reader = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+            return reader.lines().collect(Collectors.<String>toList());
+        }).toEither().bimap(Throwable::toString, lines -> lines);
     }
 
 
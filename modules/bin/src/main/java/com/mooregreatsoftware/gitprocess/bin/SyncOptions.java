@@ -89,6 +89,7 @@ public class SyncOptions extends Options {
         optionParser.accepts("local", "Don't fetch or push with remote");
         optionParser.acceptsAll(asList("r", "rebase"), "Rebase instead of merge against the integration branch (default: true)");
         optionParser.accepts("merge", "Merge instead of rebase against the integration branch");
+        optionParser.accepts("dry-run", "Show what would be done, without changing anything or talking to the server");
 
         return optionParser;
     }
@@ -117,6 +118,14 @@ public class SyncOptions extends Options {
     }
 
 
+    /**
+     * Only work out what the sync would do
+     */
+    public boolean dryRun() {
+        return booleanValue("dry-run");
+    }
+
+
     public boolean rebase() {
         return (rebaseOptionValue() || generalConfig.defaultRebaseSync()) && !booleanValue("merge");
     }
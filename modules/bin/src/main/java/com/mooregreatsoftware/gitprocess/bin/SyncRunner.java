@@ -19,16 +19,20 @@ import com.mooregreatsoftware.gitprocess.bin.AbstractRunner.B.GitLibSetter;
 import com.mooregreatsoftware.gitprocess.lib.Branch;
 import com.mooregreatsoftware.gitprocess.lib.GitLib;
 import com.mooregreatsoftware.gitprocess.process.Sync;
+import com.mooregreatsoftware.gitprocess.process.SyncPlan;
+import com.mooregreatsoftware.gitprocess.process.SyncPlanner;
 import javaslang.control.Either;
 import org.checkerframework.checker.nullness.qual.NonNull;
 
 import java.io.IOException;
+import java.util.Collections;
 
 /**
  * Syncs local changes with the server.
  *
  * @see #builder()
  * @see Sync#sync(GitLib, boolean, boolean)
+ * @see SyncPlanner#plan(GitLib, boolean, boolean)
  */
 public class SyncRunner extends AbstractRunner<SyncOptions, String, Branch> {
 
@@ -59,7 +63,16 @@ public class SyncRunner extends AbstractRunner<SyncOptions, String, Branch> {
 
 
     @Override
+    @SuppressWarnings("RedundantCast")
     protected Either<String, Branch> mainFunc(SyncOptions options) {
+        if (options.dryRun()) {
+            return SyncPlanner.plan(gitLib(), options.merge(), options.localOnly()).
+                map(plan -> {
+                    System.out.println(SyncPlan.toTable(Collections.singletonList(plan)));
+                    return (@NonNull Branch)gitLib().branches().currentBranch();
+                });
+        }
+
         return Sync.sync(gitLib(), options.merge(), options.localOnly());
     }
 
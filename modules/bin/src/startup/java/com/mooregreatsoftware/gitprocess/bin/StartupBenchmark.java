@@ -0,0 +1,95 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.bin;
+
+import org.eclipse.jgit.util.FileUtils;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the time from starting a launcher to its first output (or exit, if it prints nothing), with and without
+ * the class-data-sharing archive.
+ * JMH can not do this, since the whole point is a fresh JVM each time.
+ * <p>
+ * USAGE: {@code StartupBenchmark <installed distribution directory> [iterations]}
+ * <p>
+ * Run with {@code ./gradlew :bin:startupBenchmark}. Only the Unix launchers are measured.
+ */
+public class StartupBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        final File installDir = new File(args[0]);
+        final int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        System.out.println(String.format("%-22s %12s %12s", "median ms to output", "-Xshare:off", "with CDS"));
+        for (String[] scenario : Arrays.asList(
+            new String[]{"git-new-fb", "--help"},
+            new String[]{"git-sync", "--version"},
+            new String[]{"git-sync", "--local"})) {
+
+            final long off = median(installDir, scenario, "-Xshare:off", iterations);
+            final long cds = median(installDir, scenario, "", iterations);
+            System.out.println(String.format("%-22s %12d %12d", String.join(" ", scenario), off, cds));
+        }
+    }
+
+
+    private static long median(File installDir, String[] scenario, String javaOpts, int iterations) throws Exception {
+        final List<Long> times = new ArrayList<>(iterations);
+        for (int i = 0; i < iterations; i++) {
+            times.add(timeToFirstOutput(installDir, scenario, javaOpts));
+        }
+        Collections.sort(times);
+        return times.get(times.size() / 2);
+    }
+
+
+    private static long timeToFirstOutput(File installDir, String[] scenario, String javaOpts) throws Exception {
+        // a fresh repository each time, since a sync that has nothing to do stops early
+        final File workDir = StartupTraining.createRepository();
+        try {
+            final ProcessBuilder processBuilder = new ProcessBuilder(
+                new File(installDir, "bin/" + scenario[0]).getPath(), scenario[1]).
+                directory(workDir).
+                redirectErrorStream(true);
+            // a fresh JVM every time, not a daemon left over from the last run
+            processBuilder.environment().put("JAVA_OPTS", javaOpts + " -D" + DaemonClient.DAEMON_PROPERTY + "=false");
+
+            final long start = System.nanoTime();
+            final Process process = processBuilder.start();
+            try (InputStream in = process.getInputStream()) {
+                // if nothing is printed this is the time until it exits
+                in.read();
+                final long elapsed = System.nanoTime() - start;
+                while (in.read() >= 0) {
+                    // drain the rest
+                }
+                process.waitFor();
+                return TimeUnit.NANOSECONDS.toMillis(elapsed);
+            }
+        }
+        finally {
+            FileUtils.delete(workDir, FileUtils.RECURSIVE);
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.bin;
+
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.util.FileUtils;
+
+import java.io.File;
+import java.nio.file.Files;
+
+/**
+ * Does what the launchers do at startup, so the JVM can record which classes they load (see the "cdsClassList"
+ * and "cdsLocalSyncClassList" tasks in build.gradle).
+ * <p>
+ * USAGE: {@code StartupTraining [all|local-sync]}: "all" runs "--help" and "--version" for the commands, then a
+ * local-only sync; "local-sync" only does the sync.
+ */
+public class StartupTraining {
+
+    public static void main(String[] args) throws Exception {
+        final boolean all = args.length == 0 || args[0].equals("all");
+
+        final File workDir = createRepository();
+        try (GitLib gitLib = GitLib.of(workDir)) {
+            if (all) {
+                NewFeatureBranchRunner.builder().gitLib(gitLib).cliArgs(new String[]{"--help"}).build().run();
+                SyncRunner.builder().gitLib(gitLib).cliArgs(new String[]{"--help"}).build().run();
+                SyncRunner.builder().gitLib(gitLib).cliArgs(new String[]{"--version"}).build().run();
+                PullReqRunner.builder().gitLib(gitLib).cliArgs(new String[]{"--help"}).build().run();
+            }
+            SyncRunner.builder().gitLib(gitLib).cliArgs(new String[]{"--local"}).build().run();
+        }
+        finally {
+            FileUtils.delete(workDir, FileUtils.RECURSIVE);
+        }
+    }
+
+
+    /**
+     * A repository with a feature branch ("fb", checked out) that is behind "master", so that a local-only sync has
+     * something to do.
+     */
+    static File createRepository() throws Exception {
+        final File workDir = Files.createTempDirectory("startup").toFile();
+        try (Git git = Git.init().setDirectory(workDir).call()) {
+            write(workDir, "a.txt", "a");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("initial").call();
+
+            git.checkout().setCreateBranch(true).setName("fb").call();
+            write(workDir, "b.txt", "b");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("feature").call();
+
+            git.checkout().setName("master").call();
+            write(workDir, "c.txt", "c");
+            git.add().addFilepattern(".").call();
+            git.commit().setMessage("integration moved on").call();
+
+            git.checkout().setName("fb").call();
+        }
+        return workDir;
+    }
+
+
+    private static void write(File workDir, String path, String content) throws Exception {
+        Files.write(new File(workDir, path).toPath(), content.getBytes("UTF-8"));
+    }
+
+}
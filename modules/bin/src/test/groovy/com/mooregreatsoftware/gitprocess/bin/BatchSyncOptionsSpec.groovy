@@ -0,0 +1,50 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.bin
+
+import com.mooregreatsoftware.gitprocess.config.GeneralConfig
+
+class BatchSyncOptionsSpec extends OptionsSpec {
+
+    def "branch names and threads"() {
+        when:
+        def options = BatchSyncOptions.of(["-j", "4", "--merge", "fb1", "fb2"] as String[], { true } as GeneralConfig).get()
+
+        then:
+        options.branchNames() == ["fb1", "fb2"]
+        options.threads() == 4
+        options.merge()
+    }
+
+
+    def "defaults to every branch on every processor"() {
+        when:
+        def options = BatchSyncOptions.of([] as String[], { true } as GeneralConfig).get()
+
+        then:
+        options.branchNames().isEmpty()
+        options.threads() == Runtime.runtime.availableProcessors()
+        options.rebase()
+    }
+
+
+    def "threads must be a positive number"() {
+        expect:
+        BatchSyncOptions.of(["--threads", "none"] as String[], { true } as GeneralConfig).getLeft().
+            toString().contains "USAGE: git sync-all [OPTIONS]"
+    }
+
+}
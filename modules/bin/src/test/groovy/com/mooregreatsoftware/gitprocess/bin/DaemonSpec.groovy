@@ -0,0 +1,205 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.bin
+
+import com.mooregreatsoftware.gitprocess.lib.GitSpecification
+import spock.lang.Subject
+import spock.util.concurrent.PollingConditions
+
+import java.nio.file.Files
+import java.nio.file.Path
+
+import static com.mooregreatsoftware.gitprocess.bin.Runner.STOP_ON_OPTIONS_CODE
+
+@Subject([Daemon, DaemonClient])
+class DaemonSpec extends GitSpecification {
+
+    Path stateFile
+    Daemon daemon
+    Thread daemonThread
+    ByteArrayOutputStream out = new ByteArrayOutputStream()
+    ByteArrayOutputStream err = new ByteArrayOutputStream()
+
+
+    def setup() {
+        System.setProperty("gitprocess.logging.testing", "true")
+        createFiles(origin, ".gitignore").commit("initial")
+        stateFile = Files.createTempDirectory("daemon").resolve("daemon")
+    }
+
+
+    def cleanup() {
+        daemon?.close()
+        daemonThread?.join(5000)
+        System.clearProperty("gitprocess.logging.testing")
+    }
+
+
+    void startDaemon(long requestTimeoutMillis = Daemon.DEFAULT_REQUEST_TIMEOUT_MILLIS) {
+        daemon = new Daemon(stateFile, 60_000, requestTimeoutMillis, System.getenv())
+        daemonThread = Thread.start { daemon.serve() }
+        new PollingConditions(timeout: 5).eventually {
+            assert Files.exists(stateFile)
+        }
+    }
+
+
+    int client(String... args) {
+        clientWithEnvironment(System.getenv(), args)
+    }
+
+
+    int clientWithEnvironment(Map<String, String> environment, String... args) {
+        DaemonClient.run(args, local.workingDirectory(), stateFile, false, environment,
+            new ByteArrayInputStream(new byte[0]), new PrintStream(out, true), new PrintStream(err, true))
+    }
+
+
+    def "output and exit code come back from the daemon"() {
+        startDaemon()
+
+        when:
+        def exitCode = client("sync", "--help")
+
+        then:
+        exitCode == STOP_ON_OPTIONS_CODE
+        out.toString().contains("USAGE: git sync [OPTIONS]")
+    }
+
+
+    def "commands run in the daemon"() {
+        startDaemon()
+
+        when:
+        def exitCode = client("new-fb", "--local", "fb1")
+
+        then:
+        exitCode == 0
+        local.branches().branch("fb1") != null
+    }
+
+
+    def "relative paths are relative to the client's working directory"() {
+        startDaemon()
+        // a line without a head branch, so it fails once the file has been read, before GitHub is needed
+        new File(local.workingDirectory(), "specs.txt").text = "\tmaster\n"
+
+        when:
+        def exitCode = client("pull-req", "--batch", "specs.txt")
+
+        then:
+        exitCode == Runner.STOP_ON_FUNCTION_CODE
+        err.toString().contains("No head branch in")
+    }
+
+
+    def "runs the command itself when there is no daemon"() {
+        when:
+        def exitCode = client("new-fb", "--local", "fb2")
+
+        then:
+        exitCode == 0
+        local.branches().branch("fb2") != null
+    }
+
+
+    def "the state file is removed when the daemon stops"() {
+        startDaemon()
+
+        when:
+        daemon.close()
+        daemonThread.join(5000)
+
+        then:
+        !Files.exists(stateFile)
+    }
+
+
+    def "standard in is sent to the daemon"() {
+        def frames = new ByteArrayOutputStream()
+        def received = new ByteArrayOutputStream()
+        def text = "one\ntwo\n" * 5000
+
+        when:
+        DaemonProtocol.sendStdin(new ByteArrayInputStream(text.bytes), new DataOutputStream(frames))
+        DaemonProtocol.receiveStdin(new DataInputStream(new ByteArrayInputStream(frames.toByteArray())), received)
+
+        then:
+        received.toString() == text
+    }
+
+
+    def "a client that connects and says nothing does not hold up the others"() {
+        startDaemon(200)
+        def state = DaemonProtocol.readState(stateFile)
+        def idle = new Socket(InetAddress.getLoopbackAddress(), state.port)
+
+        when:
+        def exitCode = client("new-fb", "--local", "fb3")
+
+        then:
+        exitCode == 0
+        local.branches().branch("fb3") != null
+
+        cleanup:
+        idle.close()
+    }
+
+
+    def "a daemon started from a different environment hands over to one started from the client's"() {
+        startDaemon()
+        def environment = new HashMap<String, String>(System.getenv())
+        environment.put("SSH_AUTH_SOCK", "/tmp/a-different-agent")
+
+        when:
+        def exitCode = clientWithEnvironment(environment, "new-fb", "--local", "fb4")
+        daemonThread.join(5000)
+
+        then: "it ran here instead"
+        exitCode == 0
+        local.branches().branch("fb4") != null
+
+        and: "the old daemon is gone"
+        !daemonThread.alive
+        !Files.exists(stateFile)
+    }
+
+
+    def "only the environment that matters has to match"() {
+        expect:
+        DaemonProtocol.environmentDifference([HOME: "/home/a", TERM: "xterm"], [HOME: "/home/a", TERM: "vt100"]) == null
+        DaemonProtocol.environmentDifference([HOME: "/home/a", GIT_SSH: "ssh"], [HOME: "/home/a"]) == "GIT_SSH"
+        DaemonProtocol.environmentDifference([SSH_AUTH_SOCK: "/a"], [SSH_AUTH_SOCK: "/b"]) == "SSH_AUTH_SOCK"
+    }
+
+
+    def "each environment gets its own state file"() {
+        expect:
+        DaemonProtocol.defaultStateFile([HOME: "/home/a", SSH_AUTH_SOCK: "/a"]) ==
+            DaemonProtocol.defaultStateFile([SSH_AUTH_SOCK: "/a", HOME: "/home/a", TERM: "xterm"])
+        DaemonProtocol.defaultStateFile([HOME: "/home/a", SSH_AUTH_SOCK: "/a"]) !=
+            DaemonProtocol.defaultStateFile([HOME: "/home/a", SSH_AUTH_SOCK: "/b"])
+        DaemonProtocol.defaultStateFile([HOME: "/home/a"]) != DaemonProtocol.defaultStateFile([HOME: "/home/a", GIT_SSH: "ssh"])
+    }
+
+
+    def "unknown commands"() {
+        expect:
+        client("frobnicate") == STOP_ON_OPTIONS_CODE
+        err.toString().contains("USAGE: DaemonClient <new-fb|sync|batch-sync|pull-req>")
+    }
+
+}
@@ -59,4 +59,29 @@ class PullReqOptionsSpec extends OptionsSpec {
         PullReqOptions.create(["--base-branch", "the_base", "--head-branch", "the_base"] as String[]).isLeft()
     }
 
+
+
+    def "checking out a pull request"() {
+        when:
+        def options = PullReqOptions.create(["--checkout", "34"] as String[]).get()
+
+        then:
+        options.checkout() == true
+        options.withMerge() == false
+        options.issueOrPrID() == 34
+
+        when:
+        options = PullReqOptions.create(["--checkout", "--with-merge", "34"] as String[]).get()
+
+        then:
+        options.withMerge() == true
+
+        expect:
+        // needs a number
+        PullReqOptions.create(["--checkout"] as String[]).isLeft()
+        PullReqOptions.create(["--checkout", "frooble"] as String[]).isLeft()
+        // only with --checkout
+        PullReqOptions.create(["--with-merge", "34"] as String[]).isLeft()
+    }
+
 }
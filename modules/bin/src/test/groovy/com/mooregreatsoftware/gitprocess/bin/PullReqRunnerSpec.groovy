@@ -102,4 +102,30 @@ class PullReqRunnerSpec extends GitSpecification {
         stdout.contains("Created \"A fancy PR name\" at ${prUrl.call()}")
     }
 
+
+    def "CreatePRs from a batch on standard input"() {
+        origin.generalConfig().oauthToken("93abcd234234")
+        def originalIn = System.in
+        System.setIn(new ByteArrayInputStream("fb1\tmaster\tFirst\n# a comment\n\nfb2\t\tSecond\tthe body\n".getBytes("UTF-8")))
+
+        when:
+        def exitCode = PullReqRunner.builder().gitLib(origin).cliArgs(["--batch", "-", "--jobs", "2"] as String[]).build().run()
+
+        then:
+        exitCode == 0
+        stdout.contains("Created \"First\" at ${prUrl.call()}")
+        stdout.contains("Created \"Second\" at ${prUrl.call()}")
+
+        cleanup:
+        System.setIn(originalIn)
+    }
+
+
+    def "parses batch lines"() {
+        expect:
+        PullReqRunner.spec("\tmaster\tTitle", null).isLeft()
+        PullReqRunner.spec("fb1", null).isLeft()
+        PullReqRunner.spec("fb1\tdevelop", null).get().title == "fb1"
+    }
+
 }
@@ -51,4 +51,11 @@ class SyncOptionsSpec extends OptionsSpec {
             toString().contains "USAGE: git sync [OPTIONS]"
     }
 
+
+    def "--dry-run"() {
+        expect:
+        SyncOptions.create(["--dry-run"] as String[], { false } as GeneralConfig).get().dryRun()
+        !SyncOptions.create([] as String[], { false } as GeneralConfig).get().dryRun()
+    }
+
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import org.eclipse.jgit.internal.storage.dfs.DfsGarbageCollector;
+import org.eclipse.jgit.internal.storage.dfs.DfsRepositoryDescription;
+import org.eclipse.jgit.internal.storage.dfs.InMemoryRepository;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.lib.TreeFormatter;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.StreamSupport;
+
+/**
+ * Compares {@link AncestryIndex} with the linear history scan that {@link Branch#contains(ObjectId)} used to do.
+ * <p>
+ * The synthetic history is a single line of "commits" commits, with a short feature branch forked off of it
+ * near the tip -- the shape that {@code Sync} asks about when checking whether the remote branch has moved.
+ * <p>
+ * Run with {@code ./gradlew :lib:jmh}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class AncestryIndexBenchmark {
+    private static final int FEATURE_BRANCH_LENGTH = 20;
+    private static final int FORK_DISTANCE_FROM_TIP = 50;
+
+    @Param({"10000", "100000", "1000000"})
+    public int commits;
+
+    @Param({"false", "true"})
+    public boolean bitmaps;
+
+    private Repository repository;
+    private ObjectId mainlineTip;
+    private ObjectId forkPoint;
+    private ObjectId featureTip;
+
+
+    @Setup(Level.Trial)
+    public void createHistory() throws Exception {
+        repository = new InMemoryRepository(new DfsRepositoryDescription("ancestry-" + commits));
+
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            final ObjectId emptyTree = inserter.insert(new TreeFormatter());
+
+            ObjectId parent = null;
+            for (int i = 0; i < commits; i++) {
+                parent = commit(inserter, emptyTree, parent, i);
+                if (i == commits - FORK_DISTANCE_FROM_TIP) forkPoint = parent;
+            }
+            mainlineTip = parent;
+
+            ObjectId featureParent = forkPoint;
+            for (int i = 0; i < FEATURE_BRANCH_LENGTH; i++) {
+                featureParent = commit(inserter, emptyTree, featureParent, commits + i);
+            }
+            featureTip = featureParent;
+
+            inserter.flush();
+        }
+
+        updateRef("refs/heads/master", mainlineTip);
+        updateRef("refs/heads/feature", featureTip);
+
+        if (bitmaps) {
+            new DfsGarbageCollector((InMemoryRepository)repository).pack(null);
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void close() {
+        repository.close();
+    }
+
+
+    @Benchmark
+    public boolean linearScanNotContained() throws Exception {
+        return linearScanContains(mainlineTip, featureTip);
+    }
+
+
+    @Benchmark
+    public boolean ancestryIndexNotContained() {
+        return new AncestryIndex(repository).isAncestor(featureTip, mainlineTip);
+    }
+
+
+    @Benchmark
+    public boolean linearScanContained() throws Exception {
+        return linearScanContains(featureTip, forkPoint);
+    }
+
+
+    @Benchmark
+    public boolean ancestryIndexContained() {
+        return new AncestryIndex(repository).isAncestor(forkPoint, featureTip);
+    }
+
+
+    /**
+     * What {@link Branch#contains(ObjectId)} did before {@link AncestryIndex}
+     */
+    private boolean linearScanContains(ObjectId tip, ObjectId oid) throws Exception {
+        final RevWalk walk = new RevWalk(repository);
+        try {
+            walk.setRetainBody(false);
+            walk.markStart(walk.parseCommit(tip));
+            return StreamSupport.stream(walk.spliterator(), false).
+                anyMatch(commit -> oid.equals(commit.getId()));
+        }
+        finally {
+            walk.dispose();
+        }
+    }
+
+
+    private static ObjectId commit(ObjectInserter inserter, ObjectId tree, ObjectId parent, int seq) throws Exception {
+        final PersonIdent ident = new PersonIdent("bench", "bench@example.com", 1_000_000_000_000L + seq * 1000L, 0);
+        final CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(tree);
+        if (parent != null) commit.setParentId(parent);
+        commit.setAuthor(ident);
+        commit.setCommitter(ident);
+        commit.setMessage("commit " + seq);
+        return inserter.insert(commit);
+    }
+
+
+    private void updateRef(String name, ObjectId oid) throws Exception {
+        final RefUpdate refUpdate = repository.updateRef(name);
+        refUpdate.setNewObjectId(oid);
+        refUpdate.forceUpdate();
+    }
+
+}
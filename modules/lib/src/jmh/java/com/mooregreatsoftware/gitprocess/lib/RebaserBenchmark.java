@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rebasing a feature branch onto an integration branch that has moved on, in a large working directory.
+ * <p>
+ * "workingTree" is JGit's {@code RebaseCommand}, which checks out every commit as it is replayed and writes its
+ * progress to ".git/rebase-merge". "inCore" replays the commits in memory and checks out only the result
+ * (see {@link GeneralConfig#inCoreRebase()}).
+ * <p>
+ * Creating the repository takes a while for the larger sizes.
+ * <p>
+ * Run with {@code ./gradlew :lib:jmh}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RebaserBenchmark {
+    private static final int FILES_PER_DIRECTORY = 1000;
+
+    @Param({"100000"})
+    public int files;
+
+    @Param({"50"})
+    public int featureCommits;
+
+    @Param({"workingTree", "inCore"})
+    public String engine;
+
+    private File workDir;
+    private GitLib gitLib;
+    private ObjectId featureTip;
+
+
+    @Setup(Level.Trial)
+    public void createRepository() throws Exception {
+        workDir = Files.createTempDirectory("rebaser").toFile();
+        final Git git = Git.init().setDirectory(workDir).call();
+        gitLib = GitLib.of(git);
+        gitLib.generalConfig().inCoreRebase(engine.equals("inCore"));
+
+        for (int i = 0; i < files; i++) {
+            write(path(i), "line " + i);
+        }
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("initial").call();
+
+        git.checkout().setCreateBranch(true).setName("fb").setStartPoint("master").call();
+        for (int i = 0; i < featureCommits; i++) {
+            write(path(i * 7 + 1), "feature change " + i);
+            git.add().addFilepattern(path(i * 7 + 1)).call();
+            featureTip = git.commit().setMessage("feature " + i).call().getId();
+        }
+
+        git.checkout().setName("master").call();
+        write(path(0), "changed on master");
+        git.add().addFilepattern(path(0)).call();
+        git.commit().setMessage("integration moved on").call();
+    }
+
+
+    @Setup(Level.Invocation)
+    public void resetFeatureBranch() throws Exception {
+        final RefUpdate refUpdate = gitLib.jgit().getRepository().updateRef("refs/heads/fb");
+        refUpdate.setNewObjectId(featureTip);
+        refUpdate.forceUpdate();
+        gitLib.jgit().checkout().setName("fb").call();
+        gitLib.jgit().reset().setMode(ResetType.HARD).call();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        gitLib.close();
+        FileUtils.delete(workDir, FileUtils.RECURSIVE);
+    }
+
+
+    @Benchmark
+    public boolean rebase() {
+        return Rebaser.rebase(gitLib, gitLib.branches().branch("master")).isRight();
+    }
+
+
+    private static String path(int i) {
+        return "dir" + (i / FILES_PER_DIRECTORY) + "/file" + i + ".txt";
+    }
+
+
+    private void write(String path, String content) throws Exception {
+        final File file = new File(workDir, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+    }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adding every file of a large working directory to an empty index.
+ * <p>
+ * "jgit" is JGit's {@code AddCommand}, which hashes every file on one thread. "scanner" is {@link WorktreeScanner}
+ * with a thread per processor. A "cold" run starts without a {@link StatCache}, so every file is hashed; a "warm"
+ * run keeps the cache from the run before, so nothing is (JGit has no such cache, so it is the same either way).
+ * <p>
+ * Creating the repository takes a while for the larger sizes.
+ * <p>
+ * Run with {@code ./gradlew :lib:jmh}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class WorktreeScannerBenchmark {
+    private static final int FILES_PER_DIRECTORY = 1000;
+
+    @Param({"200000"})
+    public int files;
+
+    @Param({"jgit", "scanner"})
+    public String engine;
+
+    @Param({"cold", "warm"})
+    public String cache;
+
+    private File workDir;
+    private GitLib gitLib;
+
+
+    @Setup(Level.Trial)
+    public void createRepository() throws Exception {
+        workDir = Files.createTempDirectory("scanner").toFile();
+        final Git git = Git.init().setDirectory(workDir).call();
+        gitLib = GitLib.of(git);
+
+        for (int i = 0; i < files; i++) {
+            write(path(i), "line " + i);
+        }
+    }
+
+
+    @Setup(Level.Invocation)
+    public void emptyIndex() throws Exception {
+        Files.deleteIfExists(gitLib.repository().getIndexFile().toPath());
+        if (cache.equals("cold")) {
+            Files.deleteIfExists(new File(gitLib.repository().getDirectory(), "gitprocess/stat-cache").toPath());
+        }
+    }
+
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        gitLib.close();
+        FileUtils.delete(workDir, FileUtils.RECURSIVE);
+    }
+
+
+    @Benchmark
+    public DirCache add() throws Exception {
+        if (engine.equals("jgit")) return gitLib.jgit().add().addFilepattern(".").call();
+
+        try (WorktreeScanner scanner = new WorktreeScanner(gitLib.repository(), Runtime.getRuntime().availableProcessors())) {
+            return scanner.add(".");
+        }
+    }
+
+
+    private static String path(int i) {
+        return "dir" + (i / FILES_PER_DIRECTORY) + "/file" + i + ".txt";
+    }
+
+
+    private void write(String path, String content) throws Exception {
+        final File file = new File(workDir, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+    }
+
+}
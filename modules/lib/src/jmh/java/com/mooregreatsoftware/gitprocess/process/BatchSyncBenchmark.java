@@ -0,0 +1,145 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.process;
+
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.ResetCommand.ResetType;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.RefUpdate;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.util.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How long it takes to rebase many feature branches onto an integration branch that has moved on.
+ * <p>
+ * "syncEachBranch" is what a script around {@link Sync#sync(GitLib, boolean, boolean)} has to do: check out each
+ * branch and rebase it through the working directory. "batchSync" is {@link BatchSync}, which rebases in memory
+ * on a pool of threads and never checks anything out.
+ * <p>
+ * The repository has no remotes so that the numbers are not dominated by fetching and pushing (which
+ * {@link BatchSync} does once for all the branches, instead of once per branch).
+ * <p>
+ * Run with {@code ./gradlew :lib:jmh}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class BatchSyncBenchmark {
+    private static final int FILES = 500;
+
+    @Param({"1", "10", "100"})
+    public int branches;
+
+    private File workDir;
+    private GitLib gitLib;
+    private final Map<String, ObjectId> originalTips = new LinkedHashMap<>();
+
+
+    @Setup(Level.Trial)
+    public void createRepository() throws Exception {
+        workDir = Files.createTempDirectory("batch-sync").toFile();
+        final Git git = Git.init().setDirectory(workDir).call();
+        gitLib = GitLib.of(git);
+
+        for (int i = 0; i < FILES; i++) {
+            write("src/file" + i + ".txt", "line " + i);
+        }
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("initial").call();
+
+        for (int b = 0; b < branches; b++) {
+            final String branchName = "fb" + b;
+            git.checkout().setCreateBranch(true).setName(branchName).setStartPoint("master").call();
+            write("feature" + b + ".txt", "feature " + b);
+            git.add().addFilepattern(".").call();
+            originalTips.put(branchName, git.commit().setMessage("feature " + b).call().getId());
+        }
+
+        git.checkout().setName("master").call();
+        write("src/file0.txt", "changed on master");
+        git.add().addFilepattern(".").call();
+        git.commit().setMessage("integration moved on").call();
+    }
+
+
+    @Setup(Level.Invocation)
+    public void resetBranches() throws Exception {
+        final Repository repository = gitLib.jgit().getRepository();
+        gitLib.jgit().checkout().setName("master").call();
+        for (Map.Entry<String, ObjectId> entry : originalTips.entrySet()) {
+            final RefUpdate refUpdate = repository.updateRef("refs/heads/" + entry.getKey());
+            refUpdate.setNewObjectId(entry.getValue());
+            refUpdate.forceUpdate();
+        }
+        gitLib.jgit().reset().setMode(ResetType.HARD).call();
+    }
+
+
+    @TearDown(Level.Trial)
+    public void close() throws Exception {
+        gitLib.close();
+        FileUtils.delete(workDir, FileUtils.RECURSIVE);
+    }
+
+
+    @Benchmark
+    public int syncEachBranch() {
+        int synced = 0;
+        for (String branchName : originalTips.keySet()) {
+            gitLib.checkout(branchName);
+            if (Sync.sync(gitLib, false, true).isRight()) synced++;
+        }
+        return synced;
+    }
+
+
+    @Benchmark
+    public int batchSync() {
+        return BatchSync.sync(gitLib, Collections.emptyList(), false, true).get().branchResults().size();
+    }
+
+
+    private void write(String path, String content) throws Exception {
+        final File file = new File(workDir, path);
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes("UTF-8"));
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.transport;
+
+import com.jcraft.jsch.IdentityRepository;
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.agentproxy.RemoteIdentityRepository;
+import com.jcraft.jsch.agentproxy.connector.SSHAgentConnector;
+import com.jcraft.jsch.agentproxy.usocket.JNAUSocketFactory;
+import org.eclipse.jgit.util.FS;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of getting a transport ready to open an SSH session, before any network traffic.
+ * <p>
+ * "perTransport" is what {@link GitTransportConfigCallback} used to do for every fetch and push: a new
+ * {@link SshAgentJschConfigSessionFactory}, so a new {@link JSch} (known hosts, identity files) and a fresh probe
+ * of ssh-agent. "shared" uses {@link SshAgentJschConfigSessionFactory#instance()}.
+ * <p>
+ * The ssh-agent numbers depend on whether SSH_AUTH_SOCK points to a running agent.
+ * <p>
+ * Run with {@code ./gradlew :lib:jmh}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SshSessionFactoryBenchmark {
+    private static final String HOST = "github.com";
+
+
+    @Benchmark
+    public JSch perTransportFactory() throws Exception {
+        return new SshAgentJschConfigSessionFactory().jsch(HOST, FS.DETECTED);
+    }
+
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Vector perTransportAgentProbe() throws Exception {
+        if (!SSHAgentConnector.isConnectorAvailable()) return new Vector();
+        final IdentityRepository identityRepository = new RemoteIdentityRepository(new SSHAgentConnector(new JNAUSocketFactory()));
+        return identityRepository.getIdentities();
+    }
+
+
+    @Benchmark
+    public JSch sharedFactory() throws Exception {
+        return SshAgentJschConfigSessionFactory.instance().jsch(HOST, FS.DETECTED);
+    }
+
+
+    @Benchmark
+    public Vector sharedAgentIdentities() {
+        return SshAgentJschConfigSessionFactory.agentIdentityRepository().
+            map(IdentityRepository::getIdentities).
+            orElseGet(Vector::new);
+    }
+
+}
@@ -26,6 +26,17 @@ public interface GeneralConfig extends Config {
     String DEFAULT_REBASE_SYNC_KEY = "defaultRebaseSync";
     String OAUTH_TOKEN_KEY = "oauthToken";
     String USERNAME_KEY = "username";
+    String IN_CORE_REBASE_KEY = "inCoreRebase";
+    String IN_CORE_MERGE_KEY = "inCoreMerge";
+    String COUNT_UNTRACKED_FILES_KEY = "countUntrackedFiles";
+    String PARALLEL_SCAN_KEY = "parallelScan";
+    String HTTP_CACHE_TTL_KEY = "httpCacheTtl";
+    String HTTP_CACHE_MAX_SIZE_KEY = "httpCacheMaxSize";
+    String HTTP_POOL_SIZE_KEY = "httpPoolSize";
+    String HTTP_POOL_IDLE_TIMEOUT_KEY = "httpPoolIdleTimeout";
+
+    int DEFAULT_HTTP_POOL_SIZE = 4;
+    long DEFAULT_HTTP_POOL_IDLE_TIMEOUT = 60;
 
     /**
      * Should it default to using rebase instead of merge?
@@ -43,6 +54,152 @@ public interface GeneralConfig extends Config {
     @SuppressWarnings("unused")
     GeneralConfig defaultRebaseSync(boolean defaultRebaseSync);
 
+    /**
+     * Should rebases be done in memory, only updating the working directory once at the end, instead of checking
+     * out every commit as it is replayed?
+     * <p>
+     * If the in-memory rebase runs into a conflict, the normal rebase is done so the conflict can be resolved.
+     *
+     * @return defaults to true
+     * @see #inCoreRebase(boolean)
+     */
+    boolean inCoreRebase();
+
+    /**
+     * Set if rebases should be done in memory.
+     *
+     * @see #inCoreRebase()
+     */
+    @SuppressWarnings("unused")
+    GeneralConfig inCoreRebase(boolean inCoreRebase);
+
+    /**
+     * Should merges be done in memory, only updating the working directory once at the end?
+     * <p>
+     * If the in-memory merge runs into a conflict, the normal merge is done so the conflict can be resolved.
+     *
+     * @return defaults to true
+     * @see #inCoreMerge(boolean)
+     */
+    boolean inCoreMerge();
+
+    /**
+     * Set if merges should be done in memory.
+     *
+     * @see #inCoreMerge()
+     */
+    @SuppressWarnings("unused")
+    GeneralConfig inCoreMerge(boolean inCoreMerge);
+
+    /**
+     * Should untracked files (that are not ignored) count as uncommitted changes?
+     * <p>
+     * Looking for them means reading every directory that git does not know about, so this is off by default.
+     *
+     * @return defaults to false
+     * @see #countUntrackedFiles(boolean)
+     */
+    boolean countUntrackedFiles();
+
+    /**
+     * Set if untracked files count as uncommitted changes.
+     *
+     * @see #countUntrackedFiles()
+     */
+    @SuppressWarnings("unused")
+    GeneralConfig countUntrackedFiles(boolean countUntrackedFiles);
+
+    /**
+     * Should the working directory be scanned on several threads (with a persistent cache of file hashes) when
+     * looking for uncommitted changes and adding files?
+     * <p>
+     * Ignored (the scan is single-threaded) when "core.autocrlf" is set.
+     * <p>
+     * A parallel scan walks (and, where the index is out of date, hashes) the whole working directory before it
+     * can answer, while the single-threaded check for uncommitted changes stops at the first change it finds. So
+     * this only pays off for very large working directories that are usually clean.
+     *
+     * @return defaults to false
+     * @see #parallelScan(boolean)
+     */
+    boolean parallelScan();
+
+    /**
+     * Set if the working directory should be scanned on several threads.
+     *
+     * @see #parallelScan()
+     */
+    @SuppressWarnings("unused")
+    GeneralConfig parallelScan(boolean parallelScan);
+
+    /**
+     * How many seconds a cached response from the server's API is used without asking the server if it has changed.
+     * <p>
+     * After that the server is asked with a conditional request, which does not count against the rate limit when
+     * nothing has changed.
+     *
+     * @return defaults to 0 (always ask)
+     * @see #httpCacheTtl(long)
+     */
+    long httpCacheTtl();
+
+    /**
+     * Set how many seconds a cached response from the server's API is used without asking the server.
+     *
+     * @see #httpCacheTtl()
+     */
+    @SuppressWarnings("unused")
+    GeneralConfig httpCacheTtl(long seconds);
+
+    /**
+     * The most bytes of responses from the server's API to keep in ".git/gitprocess/http-cache"; the least
+     * recently used are removed first.
+     *
+     * @return defaults to 10 MiB; 0 turns off the cache
+     * @see #httpCacheMaxSize(long)
+     */
+    long httpCacheMaxSize();
+
+    /**
+     * Set the most bytes of responses from the server's API to keep.
+     *
+     * @see #httpCacheMaxSize()
+     */
+    @SuppressWarnings("unused")
+    GeneralConfig httpCacheMaxSize(long bytes);
+
+    /**
+     * The most connections to keep open to the server's API.
+     *
+     * @return defaults to {@link #DEFAULT_HTTP_POOL_SIZE}
+     * @see #httpPoolSize(long)
+     */
+    long httpPoolSize();
+
+    /**
+     * Set the most connections to keep open to the server's API.
+     *
+     * @see #httpPoolSize()
+     */
+    @SuppressWarnings("unused")
+    GeneralConfig httpPoolSize(long connections);
+
+    /**
+     * How many seconds a connection to the server's API can go unused before it is closed.
+     *
+     * @return defaults to {@link #DEFAULT_HTTP_POOL_IDLE_TIMEOUT}
+     * @see #httpPoolIdleTimeout(long)
+     */
+    long httpPoolIdleTimeout();
+
+    /**
+     * Set how many seconds a connection to the server's API can go unused before it is closed.
+     *
+     * @see #httpPoolIdleTimeout()
+     */
+    @SuppressWarnings("unused")
+    GeneralConfig httpPoolIdleTimeout(long seconds);
+
     /**
      * The OAuth token to use for API access to the server
      */
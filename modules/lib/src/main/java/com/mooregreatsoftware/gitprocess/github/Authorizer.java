@@ -149,6 +149,7 @@ public class Authorizer {
                     throw new IllegalStateException("Could not find a remote");
                 final URI serverApiUri = GitHubRepo.getServerApiUri(remoteName, gitLib);
                 Request request = new RtGithub(username, password).entry().
+                    through(PooledWire.class, HttpConnectionPool.shared(gitLib.generalConfig())).
                     uri().set(serverApiUri).path("/authorizations").back().
                     method(Request.POST).
                     body().set(jsonObject).back();
@@ -137,11 +137,13 @@ public final class GitHubRepoBuilder implements GitHubRepo.B.TheAuthorizerOrBuil
     @SuppressWarnings("RedundantCast")
     protected Github createGithub() {
         final URI serverApiUri;
+        final @Nullable GitLib gitLib;
         if (this.serverApiUri != null) {
             serverApiUri = this.serverApiUri;
+            gitLib = this.gitLib;
         }
         else {
-            final GitLib gitLib = getGitLib();
+            gitLib = getGitLib();
             final String remoteName = getRemoteName(this.remoteName, gitLib);
             serverApiUri = GitHubRepo.getServerApiUri(remoteName, gitLib);
         }
@@ -150,7 +152,12 @@ public final class GitHubRepoBuilder implements GitHubRepo.B.TheAuthorizerOrBuil
             new RtGithub((@NonNull String)username, (@NonNull String)password).entry() :
             new RtGithub(oauth2Token).entry();
 
-        return new RtGithub(baseRequest.uri().set(serverApiUri).back().through(RetryWire.class));
+        final HttpConnectionPool pool = HttpConnectionPool.shared(gitLib != null ? gitLib.generalConfig() : null);
+        final Request request = baseRequest.uri().set(serverApiUri).back().
+            through(PooledWire.class, pool).
+            through(RetryWire.class);
+        final @Nullable HttpCache httpCache = gitLib != null ? HttpCache.of(gitLib) : null;
+        return new RtGithub(httpCache != null ? request.through(HttpCacheWire.class, httpCache) : request);
     }
 
 
@@ -0,0 +1,334 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.github;
+
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Responses from the server's API, kept on disk (by default in ".git/gitprocess/http-cache") so they can be
+ * revalidated with a conditional request, or used as-is while they are younger than the TTL.
+ * <p>
+ * There is one file per request, named for the (escaped) URI and a hash of everything else that goes into the key, so
+ * the responses for a resource can be found without reading the files. When the files add up to more than the
+ * maximum size, the least recently used are removed.
+ * <p>
+ * Thread-safe.
+ *
+ * @see HttpCacheWire
+ */
+public class HttpCache {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpCache.class);
+
+    private static final int VERSION = 1;
+    private static final String SUFFIX = ".response";
+
+    // never produced by URLEncoder, so it can not be confused with part of the URI
+    private static final char KEY_SEPARATOR = '~';
+
+    // URIs are cut down to this so the file names stay well under the usual 255 character limit
+    private static final int MAX_URI_CHARS = 180;
+
+    private final Path directory;
+    private final long ttlMillis;
+    private final long maxBytes;
+
+
+    public HttpCache(Path directory, long ttlMillis, long maxBytes) {
+        this.directory = directory;
+        this.ttlMillis = ttlMillis;
+        this.maxBytes = maxBytes;
+    }
+
+
+    /**
+     * The cache for the repository, using its {@link com.mooregreatsoftware.gitprocess.config.GeneralConfig#httpCacheTtl()}
+     * and {@link com.mooregreatsoftware.gitprocess.config.GeneralConfig#httpCacheMaxSize()}
+     *
+     * @return null if the cache has been turned off
+     */
+    public static @Nullable HttpCache of(GitLib gitLib) {
+        final long maxBytes = gitLib.generalConfig().httpCacheMaxSize();
+        if (maxBytes <= 0) return null;
+        final long ttlMillis = TimeUnit.SECONDS.toMillis(gitLib.generalConfig().httpCacheTtl());
+        return new HttpCache(new File(gitLib.gitDirectory(), "gitprocess/http-cache").toPath(), ttlMillis, maxBytes);
+    }
+
+
+    /**
+     * The key for a request. Different credentials or media types get different entries, so one user is never given
+     * what the server said to another.
+     * <p>
+     * The key starts with the escaped URI, which is what lets {@link #invalidate(String)} go by the file names.
+     */
+    public static String key(String uri, @Nullable String authorization, @Nullable String accept) {
+        final MessageDigest digest = Constants.newMessageDigest();
+        digest.update(uri.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        if (authorization != null) digest.update(authorization.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte)0);
+        if (accept != null) digest.update(accept.getBytes(StandardCharsets.UTF_8));
+        final String escapedUri = escape(uri);
+        final String uriPart = escapedUri.length() > MAX_URI_CHARS ? escapedUri.substring(0, MAX_URI_CHARS) : escapedUri;
+        return uriPart + KEY_SEPARATOR + ObjectId.fromRaw(digest.digest()).name();
+    }
+
+
+    /**
+     * Makes the URI safe to use in a file name. Each character is escaped on its own, so the escaped form of a prefix
+     * is a prefix of the escaped form.
+     */
+    private static String escape(String uri) {
+        try {
+            // "*" is not allowed in file names on Windows
+            return URLEncoder.encode(uri, "UTF-8").replace("*", "%2A");
+        }
+        catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+
+    public boolean isFresh(Entry entry) {
+        return System.currentTimeMillis() - entry.storedAt < ttlMillis;
+    }
+
+
+    /**
+     * @return the stored response, or null if there is not one (or it could not be read)
+     */
+    public synchronized @Nullable Entry get(String key) {
+        final Path file = file(key);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != VERSION) return null;
+            final String uri = in.readUTF();
+            final long storedAt = in.readLong();
+            final int status = in.readInt();
+            final String reason = in.readUTF();
+            final int headerCount = in.readInt();
+            final List<Map.Entry<String, String>> headers = new ArrayList<>(headerCount);
+            for (int i = 0; i < headerCount; i++) {
+                headers.add(new SimpleImmutableEntry<>(in.readUTF(), in.readUTF()));
+            }
+            final byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+
+            // for finding the least recently used
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new Entry(uri, storedAt, status, reason, headers, body);
+        }
+        catch (NoSuchFileException e) {
+            return null;
+        }
+        catch (IOException e) {
+            LOG.warn("Ignoring the cached response in {}: {}", file, e.toString());
+            return null;
+        }
+    }
+
+
+    /**
+     * Stores the response, then removes the least recently used responses if there are too many.
+     */
+    public synchronized void put(String key, Entry entry) {
+        try {
+            Files.createDirectories(directory);
+            final Path tmp = Files.createTempFile(directory, "response", ".tmp");
+            try {
+                try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                    out.writeInt(VERSION);
+                    out.writeUTF(entry.uri);
+                    out.writeLong(entry.storedAt);
+                    out.writeInt(entry.status);
+                    out.writeUTF(entry.reason);
+                    out.writeInt(entry.headers.size());
+                    for (Map.Entry<String, String> header : entry.headers) {
+                        out.writeUTF(header.getKey());
+                        out.writeUTF(header.getValue());
+                    }
+                    out.writeInt(entry.body.length);
+                    out.write(entry.body);
+                }
+                Files.move(tmp, file(key), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            finally {
+                Files.deleteIfExists(tmp);
+            }
+            evict();
+        }
+        catch (IOException e) {
+            LOG.warn("Could not cache the response for {}: {}", entry.uri, e.toString());
+        }
+    }
+
+
+    /**
+     * Removes the responses for URIs that start with the prefix, since the server's answers for them may have
+     * changed.
+     * <p>
+     * Only looks at the file names. A URI that was cut short in its file name is removed if what is left of it could
+     * still start with the prefix, which may remove a few responses that did not need to be.
+     */
+    public synchronized void invalidate(String uriPrefix) {
+        final String escapedPrefix = escape(uriPrefix);
+        for (Path file : files()) {
+            final String name = file.getFileName().toString();
+            final int separator = name.lastIndexOf(KEY_SEPARATOR);
+
+            // without a separator it was written by an older version, so it can not be matched and is removed too
+            if (separator >= 0) {
+                final String uriPart = name.substring(0, separator);
+                final boolean matches = uriPart.startsWith(escapedPrefix) ||
+                    (uriPart.length() >= MAX_URI_CHARS && escapedPrefix.startsWith(uriPart));
+                if (!matches) continue;
+            }
+            LOG.debug("Removing the cached response in {}", file);
+            delete(file);
+        }
+    }
+
+
+    private void evict() {
+        final List<Path> files = files();
+        long total = files.stream().mapToLong(HttpCache::size).sum();
+        if (total <= maxBytes) return;
+
+        files.sort(Comparator.comparingLong(HttpCache::lastModified));
+        for (Path file : files) {
+            if (total <= maxBytes) break;
+            total -= size(file);
+            delete(file);
+        }
+    }
+
+
+    private Path file(String key) {
+        return directory.resolve(key + SUFFIX);
+    }
+
+
+    private List<Path> files() {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).collect(Collectors.toList());
+        }
+        catch (IOException e) {
+            return Collections.emptyList();
+        }
+    }
+
+
+    private static long size(Path file) {
+        try {
+            return Files.size(file);
+        }
+        catch (IOException e) {
+            return 0;
+        }
+    }
+
+
+    private static long lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file).toMillis();
+        }
+        catch (IOException e) {
+            return 0;
+        }
+    }
+
+
+    private static void delete(Path file) {
+        try {
+            Files.deleteIfExists(file);
+        }
+        catch (IOException e) {
+            LOG.warn("Could not remove {}: {}", file, e.toString());
+        }
+    }
+
+
+    /**
+     * A stored response
+     */
+    public static final class Entry {
+        final String uri;
+        final long storedAt;
+        final int status;
+        final String reason;
+        final List<Map.Entry<String, String>> headers;
+        final byte[] body;
+
+
+        public Entry(String uri, long storedAt, int status, String reason, List<Map.Entry<String, String>> headers,
+                     byte[] body) {
+            this.uri = uri;
+            this.storedAt = storedAt;
+            this.status = status;
+            this.reason = reason;
+            this.headers = Collections.unmodifiableList(new ArrayList<>(headers));
+            this.body = body;
+        }
+
+
+        /**
+         * The same response, as if it had just been stored (e.g., because the server said it has not changed)
+         */
+        public Entry refreshed() {
+            return new Entry(uri, System.currentTimeMillis(), status, reason, headers, body);
+        }
+
+
+        /**
+         * @return the first value of the header (ignoring case), or null if there is not one
+         */
+        public @Nullable String header(String name) {
+            for (Map.Entry<String, String> header : headers) {
+                if (header.getKey().equalsIgnoreCase(name)) return header.getValue();
+            }
+            return null;
+        }
+    }
+
+}
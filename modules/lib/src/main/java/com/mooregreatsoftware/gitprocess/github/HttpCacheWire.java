@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.github;
+
+import com.jcabi.http.Request;
+import com.jcabi.http.Response;
+import com.jcabi.http.Wire;
+import com.jcabi.http.request.DefaultResponse;
+import com.jcabi.immutable.Array;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A {@link Wire} that answers GET requests from an {@link HttpCache} when it can.
+ * <p>
+ * A response younger than the cache's TTL is used without asking the server. Otherwise the server is asked with
+ * "If-None-Match"/"If-Modified-Since", and a "304 Not Modified" is answered with the stored response. (GitHub does
+ * not count those against the rate limit.) Any other request removes the stored responses for the resource it
+ * changed and its parent, so a later GET sees the change.
+ * <p>
+ * Add it with {@code request.through(HttpCacheWire.class, cache)}.
+ */
+public final class HttpCacheWire implements Wire {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpCacheWire.class);
+
+    private final Wire origin;
+    private final HttpCache cache;
+
+
+    public HttpCacheWire(Wire origin, HttpCache cache) {
+        this.origin = origin;
+        this.cache = cache;
+    }
+
+
+    @Override
+    public Response send(Request req, String home, String method, Collection<Map.Entry<String, String>> headers,
+                         InputStream content, int connect, int read) throws IOException {
+        if (!"GET".equals(method)) {
+            final Response response = origin.send(req, home, method, headers, content, connect, read);
+            if (response.status() < HttpURLConnection.HTTP_BAD_REQUEST) cache.invalidate(parent(home));
+            return response;
+        }
+
+        final String key = HttpCache.key(home, header(headers, "Authorization"), header(headers, "Accept"));
+        final HttpCache.@Nullable Entry cached = cache.get(key);
+        if (cached != null && cache.isFresh(cached)) {
+            LOG.debug("Using the cached response for {}", home);
+            return toResponse(req, cached);
+        }
+
+        final Collection<Map.Entry<String, String>> sent = new ArrayList<>(headers);
+        if (cached != null) {
+            final String etag = cached.header("ETag");
+            if (etag != null) sent.add(new SimpleImmutableEntry<>("If-None-Match", etag));
+            final String lastModified = cached.header("Last-Modified");
+            if (lastModified != null) sent.add(new SimpleImmutableEntry<>("If-Modified-Since", lastModified));
+        }
+
+        final Response response = origin.send(req, home, method, sent, content, connect, read);
+        if (response.status() == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+            LOG.debug("{} has not changed", home);
+            final HttpCache.Entry refreshed = cached.refreshed();
+            cache.put(key, refreshed);
+            return toResponse(req, refreshed);
+        }
+        if (response.status() == HttpURLConnection.HTTP_OK) {
+            final HttpCache.Entry entry = toEntry(home, response);
+            if (entry.header("ETag") != null || entry.header("Last-Modified") != null) cache.put(key, entry);
+        }
+        return response;
+    }
+
+
+    private static HttpCache.Entry toEntry(String uri, Response response) {
+        final List<Map.Entry<String, String>> headers = new ArrayList<>();
+        for (Map.Entry<String, List<String>> header : response.headers().entrySet()) {
+            for (String value : header.getValue()) {
+                headers.add(new SimpleImmutableEntry<>(header.getKey(), value));
+            }
+        }
+        return new HttpCache.Entry(uri, System.currentTimeMillis(), response.status(), response.reason(), headers,
+            response.binary());
+    }
+
+
+    private static Response toResponse(Request req, HttpCache.Entry entry) {
+        return new DefaultResponse(req, entry.status, entry.reason, new Array<>(entry.headers), entry.body);
+    }
+
+
+    private static @Nullable String header(Collection<Map.Entry<String, String>> headers, String name) {
+        for (Map.Entry<String, String> header : headers) {
+            if (header.getKey().equalsIgnoreCase(name)) return header.getValue();
+        }
+        return null;
+    }
+
+
+    /**
+     * The URI without its query or last path segment, e.g. ".../pulls" for ".../pulls/12?foo=bar"
+     */
+    static String parent(String home) {
+        final URI uri = URI.create(home);
+        final String path = uri.getRawPath() == null ? "" : uri.getRawPath().replaceAll("/+$", "");
+        final String parentPath = path.substring(0, Math.max(path.lastIndexOf('/'), 0));
+        return uri.getScheme() + "://" + uri.getRawAuthority() + parentPath;
+    }
+
+}
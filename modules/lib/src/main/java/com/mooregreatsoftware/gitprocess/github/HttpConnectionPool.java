@@ -0,0 +1,202 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.github;
+
+import com.mooregreatsoftware.gitprocess.config.GeneralConfig;
+import org.apache.http.HttpHost;
+import org.apache.http.config.Registry;
+import org.apache.http.config.RegistryBuilder;
+import org.apache.http.conn.socket.ConnectionSocketFactory;
+import org.apache.http.conn.socket.LayeredConnectionSocketFactory;
+import org.apache.http.conn.socket.PlainConnectionSocketFactory;
+import org.apache.http.conn.ssl.SSLConnectionSocketFactory;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.protocol.HttpContext;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keep-alive HTTP/1.1 connections to the server's API, so that a command making several calls (e.g., getting an
+ * OAuth token, looking up the repository, then creating a pull request) only connects (and does the TLS handshake)
+ * once.
+ * <p>
+ * Idle connections are closed after a while. Counts of requests and new connections, and the time spent on them,
+ * are kept in {@link #metrics()}.
+ * <p>
+ * Thread-safe.
+ *
+ * @see PooledWire
+ */
+public class HttpConnectionPool implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(HttpConnectionPool.class);
+
+    private static @MonotonicNonNull HttpConnectionPool shared;
+
+    private final CloseableHttpClient httpClient;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder requestNanos = new LongAdder();
+    private final LongAdder connections = new LongAdder();
+    private final LongAdder connectNanos = new LongAdder();
+
+
+    /**
+     * @param maxConnections the most connections to keep open to each server
+     * @param idleMillis     how long a connection can go unused before it is closed
+     */
+    public HttpConnectionPool(int maxConnections, long idleMillis) {
+        final Registry<ConnectionSocketFactory> socketFactories = RegistryBuilder.<ConnectionSocketFactory>create().
+            register("http", new CountingSocketFactory(PlainConnectionSocketFactory.getSocketFactory())).
+            register("https", new CountingSocketFactory(SSLConnectionSocketFactory.getSystemSocketFactory())).
+            build();
+        final PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager(socketFactories);
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnections);
+
+        this.httpClient = HttpClients.custom().
+            setConnectionManager(connectionManager).
+            useSystemProperties().
+            evictExpiredConnections().
+            evictIdleConnections(idleMillis, TimeUnit.MILLISECONDS).
+            build();
+    }
+
+
+    /**
+     * The pool shared by everything in this process. It is created with the configuration it is first asked for.
+     *
+     * @see GeneralConfig#httpPoolSize()
+     * @see GeneralConfig#httpPoolIdleTimeout()
+     */
+    public static synchronized HttpConnectionPool shared(@Nullable GeneralConfig config) {
+        if (shared == null) {
+            final int maxConnections = config != null ? (int)config.httpPoolSize() : GeneralConfig.DEFAULT_HTTP_POOL_SIZE;
+            final long idleSeconds = config != null ? config.httpPoolIdleTimeout() : GeneralConfig.DEFAULT_HTTP_POOL_IDLE_TIMEOUT;
+            LOG.debug("Creating a pool of {} HTTP connections that are closed after being idle for {} seconds", maxConnections, idleSeconds);
+            shared = new HttpConnectionPool(maxConnections, TimeUnit.SECONDS.toMillis(idleSeconds));
+        }
+        return shared;
+    }
+
+
+    CloseableHttpClient httpClient() {
+        return httpClient;
+    }
+
+
+    void recordRequest(long nanos) {
+        requests.increment();
+        requestNanos.add(nanos);
+    }
+
+
+    public Metrics metrics() {
+        return new Metrics(requests.sum(), requestNanos.sum(), connections.sum(), connectNanos.sum());
+    }
+
+
+    @Override
+    public void close() throws IOException {
+        LOG.debug("Closing the HTTP connection pool: {}", metrics());
+        httpClient.close();
+    }
+
+
+    /**
+     * Counts and times the new connections
+     */
+    private final class CountingSocketFactory implements LayeredConnectionSocketFactory {
+        private final ConnectionSocketFactory delegate;
+
+
+        CountingSocketFactory(ConnectionSocketFactory delegate) {
+            this.delegate = delegate;
+        }
+
+
+        @Override
+        public Socket createSocket(HttpContext context) throws IOException {
+            return delegate.createSocket(context);
+        }
+
+
+        @Override
+        public Socket connectSocket(int connectTimeout, Socket sock, HttpHost host, InetSocketAddress remoteAddress,
+                                    InetSocketAddress localAddress, HttpContext context) throws IOException {
+            final long start = System.nanoTime();
+            try {
+                return delegate.connectSocket(connectTimeout, sock, host, remoteAddress, localAddress, context);
+            }
+            finally {
+                connections.increment();
+                connectNanos.add(System.nanoTime() - start);
+            }
+        }
+
+
+        @Override
+        public Socket createLayeredSocket(Socket socket, String target, int port, HttpContext context) throws IOException {
+            if (!(delegate instanceof LayeredConnectionSocketFactory))
+                throw new IOException("Can not layer a connection on top of a " + delegate.getClass().getSimpleName());
+            return ((LayeredConnectionSocketFactory)delegate).createLayeredSocket(socket, target, port, context);
+        }
+    }
+
+
+    /**
+     * How much the pool has been used
+     */
+    public static final class Metrics {
+        public final long requests;
+        public final long requestNanos;
+        public final long connections;
+        public final long connectNanos;
+
+
+        Metrics(long requests, long requestNanos, long connections, long connectNanos) {
+            this.requests = requests;
+            this.requestNanos = requestNanos;
+            this.connections = connections;
+            this.connectNanos = connectNanos;
+        }
+
+
+        /**
+         * How many requests were sent on a connection that was already open
+         */
+        public long reusedConnections() {
+            return Math.max(requests - connections, 0);
+        }
+
+
+        @Override
+        public String toString() {
+            return requests + " requests in " + TimeUnit.NANOSECONDS.toMillis(requestNanos) + "ms, " +
+                connections + " connections opened in " + TimeUnit.NANOSECONDS.toMillis(connectNanos) + "ms";
+        }
+    }
+
+}
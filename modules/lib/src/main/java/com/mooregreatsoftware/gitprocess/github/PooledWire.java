@@ -0,0 +1,99 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.github;
+
+import com.jcabi.http.Request;
+import com.jcabi.http.Response;
+import com.jcabi.http.Wire;
+import com.jcabi.http.request.DefaultResponse;
+import com.jcabi.immutable.Array;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.client.methods.RequestBuilder;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link Wire} that sends the request on a connection from an {@link HttpConnectionPool} instead of opening a new
+ * one. It takes the place of the request's own transport, so it does not pass the request on.
+ * <p>
+ * Add it with {@code request.through(PooledWire.class, pool)}, before any wires (like retries) that should wrap it.
+ */
+public final class PooledWire implements Wire {
+    private static final Logger LOG = LoggerFactory.getLogger(PooledWire.class);
+
+    private final HttpConnectionPool pool;
+
+
+    @SuppressWarnings("UnusedParameters")
+    public PooledWire(Wire origin, HttpConnectionPool pool) {
+        this.pool = pool;
+    }
+
+
+    @Override
+    public Response send(Request req, String home, String method, Collection<Map.Entry<String, String>> headers,
+                         InputStream content, int connect, int read) throws IOException {
+        final RequestBuilder builder = RequestBuilder.create(method).
+            setUri(home).
+            setConfig(RequestConfig.custom().setConnectTimeout(connect).setSocketTimeout(read).build());
+        for (Map.Entry<String, String> header : headers) {
+            // the client works these out from the body itself
+            if (header.getKey().equalsIgnoreCase(HttpHeaders.CONTENT_LENGTH) ||
+                header.getKey().equalsIgnoreCase(HttpHeaders.TRANSFER_ENCODING)) continue;
+            builder.addHeader(header.getKey(), header.getValue());
+        }
+        final byte[] body = IOUtils.toByteArray(content);
+        if (body.length > 0) builder.setEntity(new ByteArrayEntity(body));
+        final HttpUriRequest request = builder.build();
+
+        final long start = System.nanoTime();
+        try (CloseableHttpResponse response = pool.httpClient().execute(request)) {
+            final HttpEntity entity = response.getEntity();
+            // reading all of it gives the connection back to the pool
+            final byte[] responseBody = entity != null ? EntityUtils.toByteArray(entity) : new byte[0];
+
+            final List<Map.Entry<String, String>> responseHeaders = new ArrayList<>();
+            for (Header header : response.getAllHeaders()) {
+                responseHeaders.add(new SimpleImmutableEntry<>(header.getName(), header.getValue()));
+            }
+            final int status = response.getStatusLine().getStatusCode();
+            LOG.debug("{} {}: {} in {}ms", method, home, status, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return new DefaultResponse(req, status, response.getStatusLine().getReasonPhrase(),
+                new Array<>(responseHeaders), responseBody);
+        }
+        finally {
+            pool.recordRequest(System.nanoTime() - start);
+        }
+    }
+
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.github;
+
+import com.jcabi.http.Request;
+import com.jcabi.http.Response;
+import com.jcabi.http.response.JsonResponse;
+import com.mooregreatsoftware.gitprocess.lib.ExecUtils;
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import javaslang.control.Either;
+import javaslang.control.Try;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.json.Json;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+import static java.net.HttpURLConnection.HTTP_CREATED;
+import static java.net.HttpURLConnection.HTTP_FORBIDDEN;
+import static javaslang.control.Either.left;
+
+/**
+ * Creates many pull requests at once, sharing one authorized {@link GitHubRepo} (and its connections).
+ * <p>
+ * At most "maxInFlight" creations are sent at the same time. When the server says to slow down (a 403 or 429 with
+ * "Retry-After", or "X-RateLimit-Remaining: 0"), every creation waits until it says to try again, and the one that
+ * was turned away is retried (up to {@link #MAX_ATTEMPTS} times).
+ * <p>
+ * A pull request that can not be created does not stop the others.
+ *
+ * @see PullReqCreator
+ */
+public class PullReqBatch {
+    private static final Logger LOG = LoggerFactory.getLogger(PullReqBatch.class);
+
+    public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+    public static final int MAX_ATTEMPTS = 3;
+
+    private static final int HTTP_TOO_MANY_REQUESTS = 429;
+    // GitHub asks for at least a minute when it does not say how long
+    private static final long DEFAULT_BACKOFF_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private final GitHubRepo gitHubRepo;
+    private final int maxInFlight;
+
+    /**
+     * When (in epoch milliseconds) it is alright to send another request
+     */
+    private final AtomicLong pausedUntil = new AtomicLong();
+
+
+    public PullReqBatch(GitHubRepo gitHubRepo, int maxInFlight) {
+        if (maxInFlight < 1) throw new IllegalArgumentException("maxInFlight < 1");
+        this.gitHubRepo = gitHubRepo;
+        this.maxInFlight = maxInFlight;
+    }
+
+
+    /**
+     * Connects to the repository for the default remote, getting (and saving) an OAuth token with the username and
+     * password if they are given.
+     */
+    public static PullReqBatch of(GitLib gitLib, @Nullable String username, @Nullable String password, int maxInFlight) {
+        return new PullReqBatch(PullReqCreator.gitHubRepo(gitLib, username, password, null), maxInFlight);
+    }
+
+
+    /**
+     * @return Left(why it could not be created) or Right(the new pull request), in the same order as "specs"
+     */
+    public List<Either<String, PullRequest>> createPRs(List<Spec> specs) {
+        if (specs.isEmpty()) return Collections.emptyList();
+
+        final long start = System.nanoTime();
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(maxInFlight, specs.size()));
+        try {
+            final List<CompletableFuture<Either<String, PullRequest>>> futures = specs.stream().
+                map(spec -> CompletableFuture.supplyAsync(() -> create(spec), executor)).
+                collect(Collectors.toList());
+            final List<Either<String, PullRequest>> results = futures.stream().
+                map(CompletableFuture::join).
+                collect(Collectors.toList());
+            LOG.info("Created {} of {} pull requests in {}ms", results.stream().filter(Either::isRight).count(),
+                specs.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return results;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+
+    private Either<String, PullRequest> create(Spec spec) {
+        final JsonObject json = spec.toJson();
+        for (int attempt = 1; ; attempt++) {
+            final Try<Response> tResponse = Try.of(() -> {
+                waitForServer();
+                return PullReqCreator.pullsRequest(gitHubRepo).
+                    method(Request.POST).
+                    body().set(json).back().
+                    fetch();
+            });
+            if (tResponse.isFailure()) return left(spec.headBranch + ": " + ExecUtils.toString(tResponse.getCause()));
+
+            final Response response = tResponse.get();
+            final boolean slowDown = noteRateLimit(response);
+
+            if (response.status() == HTTP_CREATED) {
+                return Try.of(() -> new PullRequest(response.as(JsonResponse.class).json().readObject())).
+                    toEither().
+                    bimap(e -> spec.headBranch + ": " + ExecUtils.toString(e), pr -> pr);
+            }
+            if (slowDown && attempt < MAX_ATTEMPTS) {
+                LOG.info("Rate limited by the server while creating the pull request for \"{}\"; will try again", spec.headBranch);
+                continue;
+            }
+            return left(spec.headBranch + ": " + response.status() + " " + response.reason() + " " + response.body().trim());
+        }
+    }
+
+
+    /**
+     * Pauses everything if the server says to.
+     *
+     * @return true if the server turned the request away because of a rate limit
+     */
+    private boolean noteRateLimit(Response response) {
+        final long now = System.currentTimeMillis();
+        final @Nullable String retryAfter = header(response, "Retry-After");
+        final @Nullable String remaining = header(response, "X-RateLimit-Remaining");
+        final @Nullable String reset = header(response, "X-RateLimit-Reset");
+
+        long until = 0;
+        if (retryAfter != null) {
+            until = now + TimeUnit.SECONDS.toMillis(parseLong(retryAfter, 0));
+        }
+        else if ("0".equals(remaining) && reset != null) {
+            until = TimeUnit.SECONDS.toMillis(parseLong(reset, 0));
+        }
+
+        final boolean turnedAway = (response.status() == HTTP_FORBIDDEN || response.status() == HTTP_TOO_MANY_REQUESTS) &&
+            (until > 0 || response.body().toLowerCase().contains("rate limit"));
+        if (turnedAway && until <= now) until = now + DEFAULT_BACKOFF_MILLIS;
+
+        if (until > now) {
+            LOG.debug("Pausing requests for {}ms", until - now);
+            pausedUntil.accumulateAndGet(until, Math::max);
+        }
+        return turnedAway;
+    }
+
+
+    private void waitForServer() throws InterruptedException {
+        long wait;
+        while ((wait = pausedUntil.get() - System.currentTimeMillis()) > 0) {
+            Thread.sleep(wait);
+        }
+    }
+
+
+    private static @Nullable String header(Response response, String name) {
+        for (Map.Entry<String, List<String>> header : response.headers().entrySet()) {
+            if (header.getKey().equalsIgnoreCase(name) && !header.getValue().isEmpty()) return header.getValue().get(0);
+        }
+        return null;
+    }
+
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return Long.parseLong(value.trim());
+        }
+        catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+
+    /**
+     * What pull request to create
+     */
+    public static final class Spec {
+        public final String headBranch;
+        public final String baseBranch;
+        public final String title;
+        public final @Nullable String body;
+
+
+        /**
+         * @param headBranch the name of the branch on the server to be reviewed
+         * @param baseBranch the name of the branch on the server to pull it into
+         */
+        public Spec(String headBranch, String baseBranch, String title, @Nullable String body) {
+            this.headBranch = headBranch;
+            this.baseBranch = baseBranch;
+            this.title = title;
+            this.body = body;
+        }
+
+
+        JsonObject toJson() {
+            final JsonObjectBuilder builder = Json.createObjectBuilder().
+                add("head", headBranch).
+                add("base", baseBranch).
+                add("title", title);
+            if (body != null) builder.add("body", body);
+            return builder.build();
+        }
+
+
+        @Override
+        public String toString() {
+            return headBranch + " -> " + baseBranch + ": " + title;
+        }
+    }
+
+}
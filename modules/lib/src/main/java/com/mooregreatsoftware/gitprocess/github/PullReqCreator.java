@@ -83,6 +83,25 @@ public abstract class PullReqCreator {
     }
 
 
+    /**
+     * Asks GitHub for the repository, which makes sure it can be reached with the credentials and opens the
+     * connection that {@link #createPR()} will use.
+     * <p>
+     * Only talks to GitHub (nothing goes through {@link GitLib}), so it is safe to run while other work is being
+     * done with the repository.
+     *
+     * @return Left(error message) or Right(null)
+     */
+    public Either<String, Void> lookUpRepo() {
+        final Try<JsonObject> tRepo = Try.of(() -> gitHubRepo.repo().json());
+
+        if (tRepo.isFailure()) //noinspection ThrowableResultOfMethodCallIgnored
+            return left(tRepo.getCause().toString());
+
+        return right(null);
+    }
+
+
     protected Response postCreatePR(JsonStructure json, Request request) throws IOException {
         return request.method(Request.POST)
             .body().set(json).back()
@@ -92,7 +111,15 @@ public abstract class PullReqCreator {
 
     @Pure
     protected Request createPrRequest() {
-        final Repo repo = this.gitHubRepo.repo();
+        return pullsRequest(this.gitHubRepo);
+    }
+
+
+    /**
+     * A request for the repository's "/pulls" resource
+     */
+    static Request pullsRequest(GitHubRepo gitHubRepo) {
+        final Repo repo = gitHubRepo.repo();
         final Coordinates coords = repo.coordinates();
         return repo.
             github().entry().
@@ -104,6 +131,33 @@ public abstract class PullReqCreator {
     }
 
 
+    /**
+     * Connects to the repository for the remote, getting (and saving) an OAuth token with the username and
+     * password if they are given.
+     *
+     * @param remoteName null for the default remote
+     */
+    static GitHubRepo gitHubRepo(GitLib gitLib, @Nullable String username, @Nullable String password,
+                                 @Nullable String remoteName) {
+        final GitHubRepo.B.TheAuthorizerOrBuild theAuthorizerOrBuild = GitHubRepo.builder().gitLib(gitLib);
+        if (username != null) {
+            Authorizer authorizer = new Authorizer(gitLib).username(username);
+            if (password != null) {
+                authorizer = authorizer.password(password);
+            }
+
+            return (remoteName != null) ?
+                theAuthorizerOrBuild.authorizer(authorizer).remoteName(remoteName).build() :
+                theAuthorizerOrBuild.authorizer(authorizer).build();
+        }
+        else {
+            return (remoteName != null) ?
+                theAuthorizerOrBuild.remoteName(remoteName).build() :
+                theAuthorizerOrBuild.build();
+        }
+    }
+
+
     @Pure
     protected abstract JsonStructure createPrJson();
 
@@ -287,22 +341,7 @@ public abstract class PullReqCreator {
 
             @RequiresNonNull("this.gitLib")
             protected GitHubRepo createGitHubRepo() {
-                final GitHubRepo.B.TheAuthorizerOrBuild theAuthorizerOrBuild = GitHubRepo.builder().gitLib(gitLib);
-                if (username != null) {
-                    Authorizer authorizer = new Authorizer(gitLib).username(username);
-                    if (password != null) {
-                        authorizer = authorizer.password(password);
-                    }
-
-                    return (remoteName != null) ?
-                        theAuthorizerOrBuild.authorizer(authorizer).remoteName(remoteName).build() :
-                        theAuthorizerOrBuild.authorizer(authorizer).build();
-                }
-                else {
-                    return (remoteName != null) ?
-                        theAuthorizerOrBuild.remoteName(remoteName).build() :
-                        theAuthorizerOrBuild.build();
-                }
+                return gitHubRepo(gitLib, username, password, remoteName);
             }
         }
 
@@ -48,8 +48,41 @@ public class PullRequest {
     }
 
 
+    /**
+     * The head branch qualified by who owns it (e.g., "jdigger:my_feature"), which tells apart branches with the
+     * same name in different forks
+     */
+    public String headLabel() {
+        return jsonObject.getJsonObject("head").getString("label", headBranchName());
+    }
+
+
     public String baseBranchName() {
         return jsonObject.getJsonObject("base").getString("ref");
     }
 
+
+    /**
+     * The commit at the tip of the head branch
+     */
+    public String headSha() {
+        return jsonObject.getJsonObject("head").getString("sha");
+    }
+
+
+    /**
+     * "open" or "closed"
+     */
+    public String state() {
+        return jsonObject.getString("state");
+    }
+
+
+    /**
+     * When it was last changed, as an ISO-8601 timestamp (e.g., "2016-03-01T12:00:00Z")
+     */
+    public String updatedAt() {
+        return jsonObject.getString("updated_at");
+    }
+
 }
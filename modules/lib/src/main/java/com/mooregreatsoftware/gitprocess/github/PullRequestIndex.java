@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.github;
+
+import com.jcabi.github.Coordinates;
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import javaslang.control.Either;
+import javaslang.control.Try;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * What is known about a repository's pull requests (number, head branch and its owner, base branch, head commit,
+ * and if it is open), kept in ".git/gitprocess/pull-requests" so that questions like "is there already an open pull
+ * request for this branch?" do not need to list all of them.
+ * <p>
+ * {@link #refresh()} only reads the pull requests that changed since the last refresh (see
+ * {@link PullRequests#recentlyUpdated()}), so after the first time it is usually a single page.
+ * <p>
+ * Thread-safe.
+ */
+public class PullRequestIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(PullRequestIndex.class);
+
+    private static final int VERSION = 2;
+
+    private final PullRequests pullRequests;
+    private final Path file;
+    private final Map<Integer, Entry> entries;
+    private @Nullable String updatedThrough;
+
+
+    private PullRequestIndex(PullRequests pullRequests, Path file, Map<Integer, Entry> entries, @Nullable String updatedThrough) {
+        this.pullRequests = pullRequests;
+        this.file = file;
+        this.entries = entries;
+        this.updatedThrough = updatedThrough;
+    }
+
+
+    /**
+     * Reads the index for the repository's server-side project. A missing or unreadable index is treated as empty.
+     */
+    public static PullRequestIndex load(GitLib gitLib, PullRequests pullRequests) {
+        final Coordinates coords = pullRequests.coordinates();
+        final Path file = new File(gitLib.gitDirectory(), "gitprocess/pull-requests/" + coords.user() + "/" + coords.repo()).toPath();
+
+        final Map<Integer, Entry> entries = new TreeMap<>();
+        @Nullable String updatedThrough = null;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() == VERSION) {
+                updatedThrough = in.readUTF();
+                final int count = in.readInt();
+                for (int i = 0; i < count; i++) {
+                    final Entry entry = new Entry(in.readInt(), in.readUTF(), in.readUTF(), in.readUTF(), in.readUTF(), in.readBoolean());
+                    entries.put(entry.number, entry);
+                }
+            }
+        }
+        catch (NoSuchFileException e) {
+            LOG.debug("No pull request index at {}", file);
+        }
+        catch (IOException e) {
+            LOG.warn("Ignoring the pull request index at {}: {}", file, e.toString());
+            entries.clear();
+            updatedThrough = null;
+        }
+        return new PullRequestIndex(pullRequests, file, entries, updatedThrough);
+    }
+
+
+    /**
+     * Reads the pull requests that changed since the last refresh, then saves the index.
+     *
+     * @return Left(error message) or Right(how many pull requests were read)
+     */
+    public synchronized Either<String, Integer> refresh() {
+        return Try.of(() -> {
+            final @Nullable String previous = updatedThrough;
+            @Nullable String newest = previous;
+            int read = 0;
+
+            final Iterator<PullRequest> changed = pullRequests.recentlyUpdated().iterator();
+            while (changed.hasNext()) {
+                final PullRequest pr = changed.next();
+                final String updatedAt = pr.updatedAt();
+                // the timestamps are only to the second, so re-read the ones from the same second as last time
+                if (previous != null && updatedAt.compareTo(previous) < 0) break;
+                if (newest == null || updatedAt.compareTo(newest) > 0) newest = updatedAt;
+
+                entries.put(pr.id(), new Entry(pr.id(), pr.headLabel(), pr.headBranchName(), pr.baseBranchName(), pr.headSha(), "open".equals(pr.state())));
+                read++;
+            }
+
+            updatedThrough = newest;
+            save();
+            LOG.debug("Read {} changed pull requests; {} are indexed", read, entries.size());
+            return read;
+        }).toEither().bimap(Throwable::toString, read -> read);
+    }
+
+
+    public synchronized Optional<Entry> get(int number) {
+        return Optional.ofNullable(entries.get(number));
+    }
+
+
+    /**
+     * The open pull request for the branch (if there is more than one, the newest). Pull requests from a branch
+     * with the same name in someone else's fork do not count.
+     *
+     * @param headBranch the name of the branch on the server, as "branch" (e.g., "my_feature") for one in the
+     *                   repository itself or "user:branch" for one in a fork
+     */
+    public synchronized Optional<Entry> openFor(String headBranch) {
+        final String headLabel = headBranch.contains(":") ? headBranch : pullRequests.coordinates().user() + ":" + headBranch;
+        return entries.values().stream().
+            filter(e -> e.open && e.headLabel.equals(headLabel)).
+            reduce((older, newer) -> newer);
+    }
+
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+
+    private void save() throws IOException {
+        final @Nullable String through = updatedThrough;
+        if (through == null) return; // nothing has been read
+
+        Files.createDirectories(file.getParent());
+        final Path tmp = Files.createTempFile(file.getParent(), "pull-requests", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(VERSION);
+                out.writeUTF(through);
+                out.writeInt(entries.size());
+                for (Entry entry : entries.values()) {
+                    out.writeInt(entry.number);
+                    out.writeUTF(entry.headLabel);
+                    out.writeUTF(entry.headBranch);
+                    out.writeUTF(entry.baseBranch);
+                    out.writeUTF(entry.headSha);
+                    out.writeBoolean(entry.open);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+
+    /**
+     * What is known about a pull request
+     */
+    public static final class Entry {
+        public final int number;
+        /**
+         * The head branch qualified by its owner (e.g., "jdigger:my_feature")
+         */
+        public final String headLabel;
+        public final String headBranch;
+        public final String baseBranch;
+        public final String headSha;
+        public final boolean open;
+
+
+        Entry(int number, String headLabel, String headBranch, String baseBranch, String headSha, boolean open) {
+            this.number = number;
+            this.headLabel = headLabel;
+            this.headBranch = headBranch;
+            this.baseBranch = baseBranch;
+            this.headSha = headSha;
+            this.open = open;
+        }
+
+
+        @Override
+        public String toString() {
+            return "#" + number + " " + headLabel + " -> " + baseBranch + " (" + (open ? "open" : "closed") + ")";
+        }
+    }
+
+}
@@ -15,9 +15,51 @@
  */
 package com.mooregreatsoftware.gitprocess.github;
 
+import com.jcabi.github.Coordinates;
 import com.jcabi.github.Pulls;
+import com.jcabi.http.Request;
+import com.jcabi.http.Response;
+import com.jcabi.http.response.JsonResponse;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
+import javax.json.JsonArray;
+import javax.json.JsonObject;
+import javax.json.JsonValue;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.e;
+import static java.net.HttpURLConnection.HTTP_OK;
+
+/**
+ * The pull requests of a repository.
+ * <p>
+ * Lists are read a page at a time, following the "Link" header, and each page is only asked for once everything
+ * before it has been used. (jcabi's {@link Pulls#iterate(Map)} would fetch every pull request again to read it.)
+ *
+ * @see PullRequestIndex
+ */
 public class PullRequests {
+    private static final Logger LOG = LoggerFactory.getLogger(PullRequests.class);
+
+    static final int PAGE_SIZE = 100;
+
+    private static final Pattern NEXT_LINK = Pattern.compile("<([^>]+)>\\s*;\\s*rel=\"next\"");
+
     private final Pulls pulls;
 
 
@@ -26,4 +68,120 @@ public class PullRequests {
     }
 
 
+    public enum State {
+        OPEN, CLOSED, ALL;
+
+
+        String param() {
+            return name().toLowerCase(Locale.ENGLISH);
+        }
+    }
+
+
+    /**
+     * The pull requests, newest first. Errors talking to the server are thrown from the stream's terminal operation.
+     *
+     * @param base only those to be pulled into this branch, or null for any
+     * @param head only those for this branch (as "branch" or "user:branch"), or null for any
+     */
+    public Stream<PullRequest> stream(State state, @Nullable String base, @Nullable String head) {
+        Request request = pullsRequest().
+            uri().
+            queryParam("state", state.param()).
+            queryParam("per_page", PAGE_SIZE).back();
+        if (base != null) request = request.uri().queryParam("base", base).back();
+        if (head != null) {
+            final String qualifiedHead = head.contains(":") ? head : coordinates().user() + ":" + head;
+            request = request.uri().queryParam("head", qualifiedHead).back();
+        }
+        return stream(request);
+    }
+
+
+    /**
+     * Every pull request, open or closed, the most recently changed first.
+     *
+     * @see PullRequest#updatedAt()
+     */
+    public Stream<PullRequest> recentlyUpdated() {
+        return stream(pullsRequest().
+            uri().
+            queryParam("state", State.ALL.param()).
+            queryParam("sort", "updated").
+            queryParam("direction", "desc").
+            queryParam("per_page", PAGE_SIZE).back());
+    }
+
+
+    Coordinates coordinates() {
+        return pulls.repo().coordinates();
+    }
+
+
+    private Request pullsRequest() {
+        final Coordinates coords = coordinates();
+        return pulls.repo().github().entry().
+            uri().
+            path("/repos").
+            path(coords.user()).
+            path(coords.repo()).
+            path("/pulls").back();
+    }
+
+
+    private Stream<PullRequest> stream(Request firstPage) {
+        return StreamSupport.stream(new PageSpliterator(firstPage), false);
+    }
+
+
+    static @Nullable String nextLink(Response response) {
+        for (Map.Entry<String, List<String>> header : response.headers().entrySet()) {
+            if (!header.getKey().equalsIgnoreCase("Link")) continue;
+            for (String value : header.getValue()) {
+                final Matcher matcher = NEXT_LINK.matcher(value);
+                if (matcher.find()) return matcher.group(1);
+            }
+        }
+        return null;
+    }
+
+
+    /**
+     * Reads a page whenever the previous one has been used up
+     */
+    private final class PageSpliterator extends Spliterators.AbstractSpliterator<PullRequest> {
+        private @Nullable Request nextPage;
+        private Iterator<JsonValue> page = Collections.emptyIterator();
+
+
+        PageSpliterator(Request firstPage) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.nextPage = firstPage;
+        }
+
+
+        @Override
+        public boolean tryAdvance(Consumer<? super PullRequest> action) {
+            while (!page.hasNext()) {
+                if (nextPage == null) return false;
+                readPage(nextPage);
+            }
+            action.accept(new PullRequest((JsonObject)page.next()));
+            return true;
+        }
+
+
+        @SuppressWarnings("RedundantCast")
+        private void readPage(Request request) {
+            final Response response = (@NonNull Response)e(() -> request.method(Request.GET).fetch());
+            if (response.status() != HTTP_OK)
+                throw new IllegalStateException("Could not list the pull requests: " + response.status() + " " + response.reason());
+
+            page = ((@NonNull JsonArray)e(() -> response.as(JsonResponse.class).json().readArray())).iterator();
+            final @Nullable String next = nextLink(response);
+            LOG.debug("Read a page of pull requests; {}", next != null ? "the next is " + next : "it is the last");
+            nextPage = next != null ? pullsRequest().uri().set(URI.create(next)).back() : null;
+        }
+    }
+
 }
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.errors.MissingObjectException;
+import org.eclipse.jgit.lib.BitmapIndex;
+import org.eclipse.jgit.lib.BitmapIndex.Bitmap;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.e;
+
+/**
+ * Answers "is this commit in the history of that commit?" without streaming the entire history.
+ * <p>
+ * The checks are done cheapest-first:
+ * <ol>
+ * <li>if the pack has a reachability bitmap for the descendant, the answer is a single bit lookup</li>
+ * <li>otherwise a merge-base bounded walk (the same as {@link RevWalk#isMergedInto(RevCommit, RevCommit)}) is done,
+ * which stops as soon as the two lines of history meet instead of going all the way to the root commit</li>
+ * </ol>
+ * Because commits are immutable, answers are remembered for the life of this instance.
+ *
+ * @see Branch#contains(ObjectId)
+ */
+public class AncestryIndex {
+    private static final Logger LOG = LoggerFactory.getLogger(AncestryIndex.class);
+
+    private static final int MAX_REMEMBERED_ANSWERS = 1024;
+
+    private final Repository repository;
+
+    private final Map<AncestryKey, Boolean> answers = new LinkedHashMap<AncestryKey, Boolean>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<AncestryKey, Boolean> eldest) {
+            return size() > MAX_REMEMBERED_ANSWERS;
+        }
+    };
+
+
+    public AncestryIndex(Repository repository) {
+        this.repository = repository;
+    }
+
+
+    /**
+     * Is "ancestor" reachable by following the parents of "descendant"?
+     * <p>
+     * A commit is considered to be its own ancestor.
+     *
+     * @param ancestor   the commit to look for
+     * @param descendant the commit to start looking from
+     * @return false if either commit does not exist in the repository
+     */
+    public boolean isAncestor(@NonNull ObjectId ancestor, @NonNull ObjectId descendant) {
+        if (ancestor.equals(descendant)) return true;
+
+        final AncestryKey key = new AncestryKey(ancestor.copy(), descendant.copy());
+        synchronized (answers) {
+            final Boolean answer = answers.get(key);
+            if (answer != null) return answer;
+        }
+
+        final boolean answer = computeIsAncestor(ancestor, descendant);
+        synchronized (answers) {
+            answers.put(key, answer);
+        }
+        return answer;
+    }
+
+
+    @SuppressWarnings("RedundantCast")
+    private boolean computeIsAncestor(@NonNull ObjectId ancestor, @NonNull ObjectId descendant) {
+        return (@NonNull Boolean)e(() -> {
+            try (ObjectReader reader = repository.newObjectReader()) {
+                final Boolean bitmapAnswer = bitmapIsAncestor(reader, ancestor, descendant);
+                if (bitmapAnswer != null) return bitmapAnswer;
+
+                return mergeBaseIsAncestor(reader, ancestor, descendant);
+            }
+        });
+    }
+
+
+    /**
+     * Use the pack's reachability bitmaps, if there are any.
+     *
+     * @return null if there is no bitmap for "descendant"
+     */
+    private static @Nullable Boolean bitmapIsAncestor(ObjectReader reader, ObjectId ancestor, ObjectId descendant) throws Exception {
+        final BitmapIndex bitmapIndex = reader.getBitmapIndex();
+        if (bitmapIndex == null) return null;
+
+        final Bitmap bitmap = bitmapIndex.getBitmap(descendant);
+        if (bitmap == null) return null;
+
+        final boolean contains = bitmapIndex.newBitmapBuilder().or(bitmap).contains(ancestor);
+        LOG.debug("Bitmap for {} {} {}", descendant.abbreviate(7).name(), contains ? "contains" : "does not contain", ancestor.abbreviate(7).name());
+        return contains;
+    }
+
+
+    /**
+     * Walk both lines of history back until they meet; if "ancestor" is one of the merge bases then it was reachable.
+     */
+    private static boolean mergeBaseIsAncestor(ObjectReader reader, ObjectId ancestor, ObjectId descendant) throws Exception {
+        final RevWalk walk = new RevWalk(reader);
+        try {
+            walk.setRetainBody(false);
+            final RevCommit ancestorCommit;
+            final RevCommit descendantCommit;
+            try {
+                ancestorCommit = walk.parseCommit(ancestor);
+                descendantCommit = walk.parseCommit(descendant);
+            }
+            catch (MissingObjectException e) {
+                LOG.debug("{} is not in the repository", e.getObjectId().abbreviate(7).name());
+                return false;
+            }
+
+            return walk.isMergedInto(ancestorCommit, descendantCommit);
+        }
+        finally {
+            walk.dispose();
+        }
+    }
+
+
+    /**
+     * Forget everything that has been learned. Only needed if objects can disappear (e.g., after a gc with pruning).
+     */
+    public void clear() {
+        synchronized (answers) {
+            answers.clear();
+        }
+    }
+
+
+    private static final class AncestryKey {
+        private final ObjectId ancestor;
+        private final ObjectId descendant;
+
+
+        private AncestryKey(ObjectId ancestor, ObjectId descendant) {
+            this.ancestor = ancestor;
+            this.descendant = descendant;
+        }
+
+
+        @Override
+        public boolean equals(@Nullable Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            AncestryKey that = (AncestryKey)o;
+
+            return ancestor.equals(that.ancestor) && descendant.equals(that.descendant);
+        }
+
+
+        @Override
+        public int hashCode() {
+            return 31 * ancestor.hashCode() + descendant.hashCode();
+        }
+    }
+
+}
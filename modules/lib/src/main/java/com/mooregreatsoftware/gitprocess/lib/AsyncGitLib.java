@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import com.mooregreatsoftware.gitprocess.lib.Pusher.ThePushResult;
+import javaslang.control.Either;
+import javaslang.control.Try;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs the slow parts of {@link GitLib} (talking to the server, scanning the working directory) on an
+ * {@link Executor}, so that independent work can be overlapped.
+ * <p>
+ * {@link GitLib} itself is not thread-safe (its configuration, reference snapshot and transport sessions are
+ * shared and created lazily), so never have two pieces of work that use it running at the same time. What can be
+ * overlapped is work that does not use it at all, such as calls to the GitHub API.
+ */
+public class AsyncGitLib implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncGitLib.class);
+
+    private final GitLib gitLib;
+    private final Executor executor;
+    private final boolean ownsExecutor;
+
+
+    /**
+     * @param executor where to run the work; it is up to the caller to shut it down
+     */
+    public AsyncGitLib(GitLib gitLib, Executor executor) {
+        this(gitLib, executor, false);
+    }
+
+
+    private AsyncGitLib(GitLib gitLib, Executor executor, boolean ownsExecutor) {
+        if (gitLib == null) throw new IllegalArgumentException("gitLib == null");
+        if (executor == null) throw new IllegalArgumentException("executor == null");
+        this.gitLib = gitLib;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+    }
+
+
+    /**
+     * Uses its own {@link #defaultExecutor()}, which is shut down by {@link #close()}.
+     */
+    public static AsyncGitLib of(GitLib gitLib) {
+        return new AsyncGitLib(gitLib, defaultExecutor(), true);
+    }
+
+
+    /**
+     * Virtual threads if the JVM has them (Java 21+), otherwise a pool of daemon threads that grows as needed.
+     * <p>
+     * Nearly all of the work is waiting on the network or the disk, so there is no point in limiting the threads
+     * to the number of processors.
+     */
+    public static ExecutorService defaultExecutor() {
+        // looked up reflectively since this is built for Java 8
+        return Try.of(() -> (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null)).
+            onSuccess(e -> LOG.debug("Using virtual threads")).
+            getOrElseGet(t -> {
+                final AtomicInteger threadCount = new AtomicInteger();
+                return Executors.newCachedThreadPool(r -> {
+                    final Thread thread = new Thread(r, "git-process-async-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            });
+    }
+
+
+    public GitLib gitLib() {
+        return gitLib;
+    }
+
+
+    public Executor executor() {
+        return executor;
+    }
+
+
+    /**
+     * Run "work" on the executor. An exception thrown by "work" becomes a Left.
+     */
+    public <T> CompletableFuture<Either<String, T>> supply(Supplier<Either<String, T>> work) {
+        return CompletableFuture.supplyAsync(() ->
+            Try.of(work::get).
+                toEither().
+                mapLeft(ExecUtils::toString).
+                flatMap(e -> e), executor);
+    }
+
+
+    /**
+     * @see GitLib#fetch(Collection, boolean)
+     */
+    public CompletableFuture<Either<String, @Nullable SimpleFetchResult>> fetch(Collection<String> branchNames, boolean includeTags) {
+        return supply(() -> gitLib.fetch(branchNames, includeTags));
+    }
+
+
+    /**
+     * @return Right(are there uncommitted changes?)
+     * @see GitLib#hasUncommittedChanges()
+     */
+    public CompletableFuture<Either<String, Boolean>> hasUncommittedChanges() {
+        return supply(() -> Either.right(gitLib.hasUncommittedChanges()));
+    }
+
+
+    /**
+     * @see Pusher#push()
+     */
+    public CompletableFuture<Either<String, ThePushResult>> push(Pusher pusher) {
+        return supply(pusher::push);
+    }
+
+
+    /**
+     * Shuts down the executor if it was created by {@link #of(GitLib)}. Does not close the {@link GitLib}.
+     */
+    @Override
+    public void close() {
+        if (ownsExecutor && executor instanceof ExecutorService) ((ExecutorService)executor).shutdown();
+    }
+
+}
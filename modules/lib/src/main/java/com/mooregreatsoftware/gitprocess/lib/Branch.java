@@ -21,6 +21,9 @@ import javaslang.control.Try;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.checkerframework.dataflow.qual.Pure;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheCheckout;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.RefUpdate;
@@ -30,13 +33,17 @@ import org.eclipse.jgit.revwalk.RevWalk;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
+import java.util.Collections;
 import java.util.Objects;
 import java.util.Optional;
-import java.util.function.Function;
 import java.util.function.Supplier;
-import java.util.stream.StreamSupport;
 
 import static org.eclipse.jgit.api.ResetCommand.ResetType.HARD;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_BRANCH_SECTION;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_MERGE;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_REMOTE;
+import static org.eclipse.jgit.lib.Constants.HEAD;
 import static org.eclipse.jgit.lib.Constants.R_HEADS;
 import static org.eclipse.jgit.lib.Constants.R_REFS;
 import static org.eclipse.jgit.lib.Constants.R_REMOTES;
@@ -51,6 +58,21 @@ import static org.eclipse.jgit.lib.Constants.R_REMOTES;
 public class Branch {
     private static final Logger LOG = LoggerFactory.getLogger(Branch.class);
 
+    /**
+     * Where {@link #recordLastSyncedAgainst()} records the branch's OID
+     */
+    private static final String SYNCED_PREFIX = R_REFS + "gitProcess/synced/";
+
+    /**
+     * Where {@link #recordLastSyncedAgainst()} records the integration branch's OID
+     */
+    private static final String SYNCED_INTEGRATION_PREFIX = R_REFS + "gitProcess/syncedIntegration/";
+
+    /**
+     * Where the branch's OID used to be recorded, outside of "refs/"
+     */
+    private static final String LEGACY_SYNCED_PREFIX = "gitProcess/";
+
     private final GitLib gitLib;
     private final String refName;
     private final boolean isRemote;
@@ -79,7 +101,7 @@ public class Branch {
             throw new IllegalArgumentException("\"" + name + "\" is not a valid branch name");
         }
 
-        final Ref ref = ExecUtils.<@Nullable Ref>e(() -> gitLib.repository().findRef(refName));
+        final Ref ref = gitLib.refSnapshot().findRef(refName);
 
         if (ref == null)
             throw new IllegalArgumentException(name + " is not a known reference name in " + gitLib.repository().getAllRefs());
@@ -88,6 +110,17 @@ public class Branch {
     }
 
 
+    /**
+     * Creates a representation of a branch from a reference that has already been looked up.
+     *
+     * @param gitLib the GitLib to use for commands
+     * @param ref    the existing reference
+     */
+    static Branch of(GitLib gitLib, Ref ref) {
+        return new Branch(gitLib, ref);
+    }
+
+
     @NonNull
     private static String computeRefName(@NonNull GitLib gitLib, @NonNull String name) {
         final String refName;
@@ -213,6 +246,8 @@ public class Branch {
 
 
     public @NonNull ObjectId objectId() {
+        final ObjectId objectId = gitLib.refSnapshot().objectId(refName);
+        if (objectId != null) return objectId;
         return Try.of(() -> ((@NonNull ObjectId)gitLib.jgit().getRepository().resolve(refName))).get();
     }
 
@@ -246,21 +281,15 @@ public class Branch {
     }
 
 
+    /**
+     * Does the given commit appear somewhere in the history of this branch?
+     *
+     * @param oid the commit to look for
+     * @see AncestryIndex#isAncestor(ObjectId, ObjectId)
+     */
     public boolean contains(@NonNull ObjectId oid) {
         LOG.debug("{}.contains({})", this, oid.abbreviate(7).name());
-        return Try.of(() -> {
-            final RevWalk walk = new RevWalk(gitLib.repository());
-            try {
-                walk.setRetainBody(false);
-                final RevCommit topOfThisBranch = walk.parseCommit(objectId());
-                walk.markStart(topOfThisBranch);
-                return StreamSupport.stream(walk.spliterator(), false).
-                    anyMatch(commit -> oid.equals(commit.getId()));
-            }
-            finally {
-                walk.dispose();
-            }
-        }).getOrElseThrow((Function<Throwable, IllegalStateException>)IllegalStateException::new);
+        return gitLib.ancestryIndex().isAncestor(oid, objectId());
     }
 
 
@@ -284,7 +313,10 @@ public class Branch {
 
 
     /**
-     * Write a "control" reference to remember the current OID of the branch.
+     * Write "control" references to remember the current OID of the branch and of the integration branch.
+     * <p>
+     * Together with the remote branch (which is expected to match the branch after a push) that is what
+     * {@link #unchangedSinceLastSync()} compares against.
      *
      * @return the error message, or null if it went well
      */
@@ -292,33 +324,77 @@ public class Branch {
     @SuppressWarnings("ThrowableResultOfMethodCallIgnored")
     public @Nullable String recordLastSyncedAgainst() {
         LOG.debug("Writing sync control file");
+        final Branch integrationBranch = gitLib.branches().integrationBranch();
         final Try<RefUpdate.Result> refUpdateRes = Try.of(() -> {
-            final RefUpdate refUpdate = gitLib.jgit().getRepository().updateRef("gitProcess/" + shortName());
-            refUpdate.setNewObjectId(objectId());
-            return refUpdate.forceUpdate();
+            if (integrationBranch != null) {
+                writeControlRef(SYNCED_INTEGRATION_PREFIX + shortName(), integrationBranch.objectId());
+            }
+            deleteLegacyControlRef();
+            return writeControlRef(SYNCED_PREFIX + shortName(), objectId());
         });
         return refUpdateRes.isFailure() ? refUpdateRes.getCause().toString() : null;
     }
 
 
+    private RefUpdate.Result writeControlRef(String controlRefName, ObjectId oid) throws IOException {
+        final RefUpdate refUpdate = gitLib.jgit().getRepository().updateRef(controlRefName);
+        refUpdate.setNewObjectId(oid);
+        return refUpdate.forceUpdate();
+    }
+
+
+    private void deleteLegacyControlRef() throws IOException {
+        final RefUpdate refUpdate = gitLib.jgit().getRepository().updateRef(LEGACY_SYNCED_PREFIX + shortName());
+        if (refUpdate.getOldObjectId() == null) return;
+        refUpdate.setForceUpdate(true);
+        refUpdate.delete();
+    }
+
+
     /**
-     * Read a "control" reference of what this branch was last synced against.
+     * Read a "control" reference of what this branch was last synced against. Falls back to the legacy
+     * "gitProcess/" reference if it has not been recorded under "refs/" yet.
      *
      * @return Left(error message) Right(the object ID, if it exists)
      */
     @NonNull
     public Either<String, @Nullable ObjectId> lastSyncedAgainst() {
-        // TODO: Support reading the legacy control file
-        final Either<String, @Nullable ObjectId> idEither =
-            Try.of(() -> gitLib.jgit().getRepository().updateRef("gitProcess/" + shortName()).getOldObjectId()).
-                toEither().
-                mapLeft(Throwable::toString).
-                flatMap(oid -> oid == null ? Either.right(null) : Either.right(oid));
+        final Either<String, @Nullable ObjectId> recorded = readControlRef(SYNCED_PREFIX + shortName());
+        // fall back to where it was recorded before it was moved under "refs/"
+        final Either<String, @Nullable ObjectId> idEither = recorded.isRight() && recorded.get() == null ?
+            readControlRef(LEGACY_SYNCED_PREFIX + shortName()) : recorded;
         LOG.debug("Read sync control file for \"{}\": {}", shortName(), idEither.map(oid -> oid != null ? oid.abbreviate(7).name() : "no record").getOrElseGet(l -> l));
         return idEither;
     }
 
 
+    private Either<String, @Nullable ObjectId> readControlRef(String controlRefName) {
+        return Try.of(() -> gitLib.jgit().getRepository().updateRef(controlRefName).getOldObjectId()).
+            toEither().
+            mapLeft(Throwable::toString).
+            flatMap(oid -> oid == null ? Either.right(null) : Either.right(oid));
+    }
+
+
+    /**
+     * Is everything a sync looks at exactly as it was the last time this branch was synced? That is, the branch,
+     * its remote branch and the integration branch are all where {@link #recordLastSyncedAgainst()} recorded them.
+     * <p>
+     * If so, a sync has nothing to do.
+     */
+    public boolean unchangedSinceLastSync() {
+        final Either<String, @Nullable ObjectId> eLastSynced = lastSyncedAgainst();
+        final @Nullable ObjectId lastSynced = eLastSynced.isRight() ? eLastSynced.get() : null;
+        if (lastSynced == null || !lastSynced.equals(objectId()) || !lastSynced.equals(remoteOID())) return false;
+
+        final Branch integrationBranch = gitLib.branches().integrationBranch();
+        if (integrationBranch == null) return false;
+
+        final Either<String, @Nullable ObjectId> eIntegration = readControlRef(SYNCED_INTEGRATION_PREFIX + shortName());
+        return eIntegration.isRight() && integrationBranch.objectId().equals(eIntegration.get());
+    }
+
+
     /**
      * Returns the previous remote sha ONLY IF it is not the same as the new remote sha; otherwise null
      */
@@ -330,7 +406,7 @@ public class Branch {
         final Either<String, @Nullable ObjectId> recordedIdEither = lastSyncedAgainst();
         final @Nullable ObjectId oldSha = recordedIdEither.<@Nullable ObjectId>map(id -> id != null ? id : remoteOID()).getOrElse(this::remoteOID);
 
-        final Either<String, @Nullable SimpleFetchResult> fetch = gitLib.fetch();
+        final Either<String, @Nullable SimpleFetchResult> fetch = gitLib.fetch(Collections.singletonList(simpleName()), false);
         if (fetch.isLeft()) {
             LOG.warn(fetch.getLeft());
             return null;
@@ -381,6 +457,25 @@ public class Branch {
     }
 
 
+    /**
+     * The name of the branch on the server that this is pushed to (e.g., "master").
+     * <p>
+     * That is the branch's configured upstream if it tracks a branch on the remote, otherwise the same name as
+     * this branch.
+     */
+    public String serverBranchName() {
+        if (gitLib.remoteConfig().hasRemotes()) {
+            final String remoteName = (@NonNull String)gitLib.remoteConfig().remoteName();
+            final Config config = gitLib.configStore().config();
+            if (remoteName.equals(config.getString(CONFIG_BRANCH_SECTION, shortName(), CONFIG_KEY_REMOTE))) {
+                final String merge = config.getString(CONFIG_BRANCH_SECTION, shortName(), CONFIG_KEY_MERGE);
+                if (merge != null && merge.startsWith(R_HEADS)) return merge.substring(R_HEADS.length());
+            }
+        }
+        return simpleName();
+    }
+
+
     @NonNull
     @SuppressWarnings("PointlessBooleanExpression")
     private Supplier<@Nullable ObjectId> remoteOIDSupplier() {
@@ -410,6 +505,110 @@ public class Branch {
     }
 
 
+    /**
+     * Point this branch at a different commit without touching the index or working directory.
+     * <p>
+     * Should not be used on the branch that is checked out; use {@link #checkoutMovedTo(ObjectId, ObjectId, String)}
+     * or {@link #resetHard(String)} for that.
+     *
+     * @param expectedOid   the OID the branch must still be at, so that concurrent changes are not lost
+     * @param newOid        the OID to point the branch at
+     * @param reflogMessage the message for the reflog
+     * @return an error message, or empty() if it worked
+     */
+    @NonNull
+    public Optional<String> moveTo(ObjectId expectedOid, ObjectId newOid, String reflogMessage) {
+        return moveRef(name(), expectedOid, newOid, reflogMessage);
+    }
+
+
+    /**
+     * Point this branch, which must be the one checked out, at a different commit and update the index and working
+     * directory to match, in one pass.
+     * <p>
+     * Unlike {@link #resetHard(String)} this will not throw away local changes. If this is not the branch that is
+     * checked out, if it is no longer at expectedOid, or if any local changes are in the way, nothing is changed and
+     * an error is returned. If the branch is moved by something else between updating the working directory and
+     * moving it, the working directory is put back to expectedOid.
+     *
+     * @param expectedOid   the OID the branch must still be at (i.e., what the index and working directory match)
+     * @param newOid        the OID to point the branch at
+     * @param reflogMessage the message for the reflog (of both the branch and HEAD)
+     * @return an error message, or empty() if it worked
+     */
+    @NonNull
+    public Optional<String> checkoutMovedTo(ObjectId expectedOid, ObjectId newOid, String reflogMessage) {
+        final Repository repository = gitLib.jgit().getRepository();
+
+        final Optional<String> headError = Try.of(() -> {
+            final Ref head = repository.getRefDatabase().exactRef(HEAD);
+            if (head == null || !head.isSymbolic() || !head.getTarget().getName().equals(name()))
+                return Optional.of("\"" + shortName() + "\" is not checked out");
+            if (!expectedOid.equals(head.getObjectId()))
+                return Optional.of("\"" + shortName() + "\" is no longer at " + expectedOid.abbreviate(7).name());
+            return Optional.<String>empty();
+        }).getOrElseGet(t -> Optional.of(t.toString()));
+        if (headError.isPresent()) return headError;
+
+        final Optional<String> checkoutError = checkoutTree(repository, expectedOid, newOid);
+        if (checkoutError.isPresent()) return checkoutError;
+
+        // through HEAD so that its reflog is written as well as the branch's
+        final Optional<String> moveError = moveRef(HEAD, expectedOid, newOid, reflogMessage);
+        if (!moveError.isPresent()) return moveError;
+
+        LOG.warn("Could not move \"{}\" after updating the working directory, so putting it back: {}", shortName(), moveError.get());
+        final Optional<String> restoreError = checkoutTree(repository, newOid, expectedOid);
+        return restoreError.isPresent() ?
+            Optional.of(moveError.get() + "; the working directory could not be put back: " + restoreError.get()) :
+            moveError;
+    }
+
+
+    private Optional<String> moveRef(String refName, ObjectId expectedOid, ObjectId newOid, String reflogMessage) {
+        return Try.of(() -> {
+            final RefUpdate refUpdate = gitLib.jgit().getRepository().updateRef(refName);
+            refUpdate.setExpectedOldObjectId(expectedOid);
+            refUpdate.setNewObjectId(newOid);
+            refUpdate.setRefLogMessage(reflogMessage, false);
+            return refUpdate.forceUpdate();
+        }).map(result -> {
+            switch (result) {
+                case NEW:
+                case FORCED:
+                case FAST_FORWARD:
+                case NO_CHANGE:
+                    return Optional.<String>empty();
+                default:
+                    return Optional.of("Could not move \"" + shortName() + "\" to " + newOid.abbreviate(7).name() + ": " + result);
+            }
+        }).getOrElseGet(t -> Optional.of(t.toString()));
+    }
+
+
+    /**
+     * Update the index and working directory from fromOid's tree to toOid's, failing if local changes are in the way
+     */
+    private static Optional<String> checkoutTree(Repository repository, ObjectId fromOid, ObjectId toOid) {
+        return Try.run(() -> {
+            try (RevWalk walk = new RevWalk(repository)) {
+                final RevCommit fromCommit = walk.parseCommit(fromOid);
+                final RevCommit toCommit = walk.parseCommit(toOid);
+
+                final DirCache dirCache = repository.lockDirCache();
+                try {
+                    final DirCacheCheckout checkout = new DirCacheCheckout(repository, fromCommit.getTree(), dirCache, toCommit.getTree());
+                    checkout.setFailOnConflict(true);
+                    checkout.checkout();
+                }
+                finally {
+                    dirCache.unlock();
+                }
+            }
+        }).map(r -> Optional.<String>empty()).getOrElseGet(t -> Optional.of(t.toString()));
+    }
+
+
     @Override
     public String toString() {
         return "Branch{" + Repository.shortenRefName(name()) + "(" + objectId().abbreviate(7).name() + ")}";
@@ -16,15 +16,16 @@
 package com.mooregreatsoftware.gitprocess.lib;
 
 import com.mooregreatsoftware.gitprocess.config.BranchConfig;
-import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 import javax.annotation.Nonnull;
 import java.util.Iterator;
 import java.util.Objects;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.mooregreatsoftware.gitprocess.config.BranchConfig.PARKING_BRANCH_NAME;
+import static org.eclipse.jgit.lib.Constants.R_HEADS;
+import static org.eclipse.jgit.lib.Constants.R_REMOTES;
 
 /**
  * The "container" for branches, this gives easy access to the most important branches (current, integration,
@@ -131,19 +132,48 @@ public interface Branches {
     @Nullable Branch branch(@Nonnull String branchName);
 
 
+    /**
+     * The branches whose fully-qualified names start with "refPrefix" (e.g., "refs/remotes/origin/"), in name order.
+     * <p>
+     * The stream is lazy: each {@link Branch} is created from the reference that has already been loaded, and
+     * only when it is reached, so scoping the prefix and short-circuiting (e.g., {@link Stream#findFirst()}) keep
+     * large repositories cheap.
+     *
+     * @param refPrefix the start of the fully-qualified reference name
+     */
     @Nonnull
-    Iterator<Branch> allBranches();
+    Stream<Branch> branches(@Nonnull String refPrefix);
+
+
+    /**
+     * All the local and remote-tracking branches
+     */
+    @Nonnull
+    default Iterator<Branch> allBranches() {
+        return Stream.concat(branches(R_HEADS), branches(R_REMOTES)).iterator();
+    }
 
 
     @Nonnull
     default Iterator<Branch> remoteBranches() {
-        return StreamUtils.stream(allBranches()).filter(Branch::isRemote).collect(Collectors.<@NonNull Branch>toList()).listIterator();
+        return branches(R_REMOTES).iterator();
+    }
+
+
+    /**
+     * The remote-tracking branches for the given remote
+     *
+     * @param remoteName the name of the remote (e.g., "origin")
+     */
+    @Nonnull
+    default Stream<Branch> remoteBranches(@Nonnull String remoteName) {
+        return branches(R_REMOTES + remoteName + "/");
     }
 
 
     @Nonnull
     default Iterator<Branch> localBranches() {
-        return StreamUtils.stream(allBranches()).filter(branch -> !branch.isRemote()).collect(Collectors.<@NonNull Branch>toList()).listIterator();
+        return branches(R_HEADS).iterator();
     }
 
     Branches removeBranch(@Nonnull Branch baseBranch);
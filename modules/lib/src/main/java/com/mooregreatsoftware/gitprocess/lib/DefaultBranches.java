@@ -19,17 +19,13 @@ import com.mooregreatsoftware.gitprocess.config.BranchConfig;
 import javaslang.control.Try;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import org.eclipse.jgit.api.ListBranchCommand.ListMode;
 import org.eclipse.jgit.lib.Ref;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
-import java.util.Iterator;
-import java.util.List;
-import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
-import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.e;
 import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.v;
 import static org.eclipse.jgit.lib.Constants.HEAD;
 import static org.eclipse.jgit.lib.Constants.R_REFS;
@@ -57,7 +53,7 @@ public class DefaultBranches implements Branches {
 
 
     private @Nullable Ref ref(String name) {
-        return Try.<@Nullable Ref>of(() -> gitLib.repository().findRef(name)).
+        return Try.<@Nullable Ref>of(() -> gitLib.refSnapshot().findRef(name)).
             getOrElse((Ref)null);
     }
 
@@ -101,13 +97,8 @@ public class DefaultBranches implements Branches {
 
     @Nonnull
     @Override
-    public Iterator<@NonNull Branch> allBranches() {
-        // this may get expensive if there are a LOT of branches; fortunately it can be implemented to not do so
-        // without breaking the API
-        return ((@NonNull List<Ref>)e(() -> gitLib.jgit().branchList().setListMode(ListMode.ALL).call())).
-            stream().
-            map(ref -> (@NonNull Branch)branch(ref.getName())).
-            collect(Collectors.<@NonNull Branch>toList()).<@NonNull Branch>listIterator();
+    public Stream<@NonNull Branch> branches(@Nonnull String refPrefix) {
+        return gitLib.refSnapshot().refs(refPrefix).map(ref -> Branch.of(gitLib, ref));
     }
 
 }
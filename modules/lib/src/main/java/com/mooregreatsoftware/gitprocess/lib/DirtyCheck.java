@@ -0,0 +1,216 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import com.mooregreatsoftware.gitprocess.lib.WorktreeScanner.ScannedFile;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.api.Status;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.dircache.DirCacheIterator;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.EmptyTreeIterator;
+import org.eclipse.jgit.treewalk.FileTreeIterator;
+import org.eclipse.jgit.treewalk.TreeWalk;
+import org.eclipse.jgit.treewalk.WorkingTreeIterator;
+import org.eclipse.jgit.treewalk.filter.AndTreeFilter;
+import org.eclipse.jgit.treewalk.filter.IndexDiffFilter;
+import org.eclipse.jgit.treewalk.filter.TreeFilter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Finds out if there are uncommitted changes without computing a full {@link Status}.
+ * <p>
+ * "Uncommitted changes" means the same thing as {@link Status#hasUncommittedChanges()}: something added, changed,
+ * removed, missing, modified or conflicting. Unlike a full status, this
+ * <ul>
+ * <li>stops at the first change it finds</li>
+ * <li>trusts the index's stat data (size, modification time, etc.) when it matches, only reading a file's content
+ * when the stat data can not settle it (e.g., "racily clean" entries)</li>
+ * <li>does not read directories that git does not know about, unless untracked files should count</li>
+ * <li>can scan the working directory on several threads with a {@link WorktreeScanner}, which also remembers file
+ * hashes between runs in its {@link StatCache}</li>
+ * </ul>
+ */
+public class DirtyCheck {
+    private static final Logger LOG = LoggerFactory.getLogger(DirtyCheck.class);
+
+    private static final int HEAD = 0;
+    private static final int INDEX = 1;
+    private static final int WORKING_TREE = 2;
+
+    /**
+     * Skips anything (including whole directories, without reading them) that is only in the working directory
+     */
+    private static final TreeFilter TRACKED_ONLY = new TreeFilter() {
+        @Override
+        public boolean include(TreeWalk walker) {
+            return walker.getRawMode(HEAD) != 0 || walker.getRawMode(INDEX) != 0;
+        }
+
+
+        @Override
+        public boolean shouldBeRecursive() {
+            return false;
+        }
+
+
+        @Override
+        public TreeFilter clone() {
+            return this;
+        }
+
+
+        @Override
+        public String toString() {
+            return "TRACKED_ONLY";
+        }
+    };
+
+    private final Repository repository;
+
+
+    public DirtyCheck(Repository repository) {
+        this.repository = repository;
+    }
+
+
+    public static DirtyCheck of(GitLib gitLib) {
+        return new DirtyCheck(gitLib.repository());
+    }
+
+
+    /**
+     * @param countUntracked do untracked files that are not ignored count as changes?
+     * @param threads        how many threads to scan the working directory with; 1 to do it all on the calling thread
+     * @see #firstChange(boolean, int)
+     */
+    public boolean hasUncommittedChanges(boolean countUntracked, int threads) throws IOException {
+        return firstChange(countUntracked, threads) != null;
+    }
+
+
+    /**
+     * The first uncommitted change found.
+     * <p>
+     * With more than one thread the whole working directory is scanned by a {@link WorktreeScanner} (if
+     * {@link WorktreeScanner#canScan(Repository) it can be}), so "first" is the first in path order rather than
+     * the first one seen.
+     *
+     * @param countUntracked do untracked files that are not ignored count as changes?
+     * @param threads        how many threads to scan the working directory with; 1 to do it all on the calling thread
+     * @return the path of the first change found, or null if there are none
+     */
+    public @Nullable String firstChange(boolean countUntracked, int threads) throws IOException {
+        if (threads < 1) throw new IllegalArgumentException("threads < 1");
+
+        if (threads > 1 && WorktreeScanner.canScan(repository)) {
+            try (WorktreeScanner scanner = new WorktreeScanner(repository, threads)) {
+                return firstChange(scanner, countUntracked);
+            }
+        }
+
+        final DirCache dirCache = repository.readDirCache();
+        final @Nullable ObjectId headTree = repository.resolve("HEAD^{tree}");
+        try (TreeWalk walk = new TreeWalk(repository)) {
+            walk.setRecursive(true);
+            if (headTree != null) walk.addTree(headTree);
+            else walk.addTree(new EmptyTreeIterator());
+            walk.addTree(new DirCacheIterator(dirCache));
+            final FileTreeIterator workingTree = new FileTreeIterator(repository);
+            walk.addTree(workingTree);
+            workingTree.setDirCacheIterator(walk, INDEX);
+
+            final TreeFilter filter = new IndexDiffFilter(INDEX, WORKING_TREE, true);
+            walk.setFilter(countUntracked ? filter : AndTreeFilter.create(TRACKED_ONLY, filter));
+
+            while (walk.next()) {
+                if (isChanged(walk, countUntracked)) {
+                    LOG.debug("\"{}\" has uncommitted changes", walk.getPathString());
+                    return walk.getPathString();
+                }
+            }
+            return null;
+        }
+    }
+
+
+    private @Nullable String firstChange(WorktreeScanner scanner, boolean countUntracked) throws IOException {
+        final DirCache dirCache = repository.readDirCache();
+        final @Nullable String staged = firstStagedChange(dirCache);
+        if (staged != null) return staged;
+
+        final Map<String, ScannedFile> scanned = scanner.scan(dirCache, "", countUntracked);
+        for (int i = 0; i < dirCache.getEntryCount(); i++) {
+            final DirCacheEntry entry = dirCache.getEntry(i);
+            final ScannedFile file = scanned.remove(entry.getPathString());
+            if (entry.getFileMode() == FileMode.GITLINK || entry.isAssumeValid()) continue;
+            if (file == null || !file.matches(entry)) {
+                LOG.debug("\"{}\" has uncommitted changes", entry.getPathString());
+                return entry.getPathString();
+            }
+        }
+        // anything left is untracked
+        return scanned.isEmpty() ? null : new TreeSet<>(scanned.keySet()).first();
+    }
+
+
+    /**
+     * A conflict, or a difference between HEAD and the index
+     */
+    private @Nullable String firstStagedChange(DirCache dirCache) throws IOException {
+        for (int i = 0; i < dirCache.getEntryCount(); i++) {
+            final DirCacheEntry entry = dirCache.getEntry(i);
+            if (entry.getStage() != DirCacheEntry.STAGE_0) return entry.getPathString();
+        }
+
+        final @Nullable ObjectId headTree = repository.resolve("HEAD^{tree}");
+        try (TreeWalk walk = new TreeWalk(repository)) {
+            walk.setRecursive(true);
+            if (headTree != null) walk.addTree(headTree);
+            else walk.addTree(new EmptyTreeIterator());
+            walk.addTree(new DirCacheIterator(dirCache));
+            walk.setFilter(TreeFilter.ANY_DIFF);
+            return walk.next() ? walk.getPathString() : null;
+        }
+    }
+
+
+    private static boolean isChanged(TreeWalk walk, boolean countUntracked) throws IOException {
+        final DirCacheIterator index = walk.getTree(INDEX, DirCacheIterator.class);
+        final WorkingTreeIterator work = walk.getTree(WORKING_TREE, WorkingTreeIterator.class);
+
+        if (index == null) {
+            // only in HEAD is "removed"; only in the working directory is untracked (ignored files are already gone)
+            return walk.getRawMode(HEAD) != 0 || (countUntracked && work != null);
+        }
+
+        final DirCacheEntry entry = index.getDirCacheEntry();
+        if (entry.getStage() != DirCacheEntry.STAGE_0) return true; // conflicting
+        if (walk.getRawMode(HEAD) != walk.getRawMode(INDEX) || !walk.idEqual(HEAD, INDEX)) return true; // added or changed
+        if (entry.isAssumeValid()) return false;
+        if (work == null) return true; // missing
+        return work.isModified(entry, true, walk.getObjectReader());
+    }
+
+}
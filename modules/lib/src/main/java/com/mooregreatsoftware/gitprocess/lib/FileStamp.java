@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.lib.Constants;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The modification time and size of a file when it was read, so that it only needs to be read again when it has
+ * been changed.
+ * <p>
+ * If the file had been modified so recently when it was stamped that another write could land in the same
+ * filesystem timestamp tick, the stamp can not be trusted and the file is always treated as modified (the same
+ * "racily clean" rule as JGit's FileSnapshot). Stamping it again once the clock has moved past the window gives a
+ * stamp that can be trusted. The window is larger when the filesystem only records whole seconds.
+ * <p>
+ * For a file that was just written from memory (see {@link #written(Path, byte[])}) the contents are compared with
+ * what was written instead, so it does not have to be parsed again just because it was saved. Once they have been
+ * found to match after the window has passed, no write can be hiding behind the same timestamp, so the stamp is
+ * trusted from then on.
+ */
+public final class FileStamp {
+    private static final long FINE_RACY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long COARSE_RACY_NANOS = TimeUnit.MILLISECONDS.toNanos(2500);
+
+    private final Path path;
+    private final long lastModified;
+    private final long length;
+    private final boolean racy;
+    private final byte @Nullable [] writtenDigest;
+    private volatile boolean verified;
+
+
+    public FileStamp(Path path) {
+        this(path, null);
+    }
+
+
+    private FileStamp(Path path, byte @Nullable [] writtenDigest) {
+        this.path = path;
+        this.lastModified = lastModified(path);
+        this.length = length(path);
+        this.racy = isRacy(lastModified, now());
+        this.writtenDigest = writtenDigest;
+    }
+
+
+    /**
+     * Stamps a file that was just written from what is in memory.
+     *
+     * @param content what was written to the file
+     */
+    public static FileStamp written(Path path, byte[] content) {
+        return new FileStamp(path, digest(content));
+    }
+
+
+    /**
+     * Has the file been changed (including being created or deleted) since it was stamped?
+     */
+    public boolean isModified() {
+        if (lastModified(path) != lastModified || length(path) != length) return true;
+        if (!racy || verified) return false;
+
+        // something else may have written the same length in the same tick, so only the contents can tell
+        final byte @Nullable [] expected = writtenDigest;
+        if (expected == null) return true;
+
+        final long checkedAt = now();
+        final boolean matches;
+        try {
+            matches = MessageDigest.isEqual(expected, digest(Files.readAllBytes(path)));
+        }
+        catch (IOException e) {
+            return true;
+        }
+        if (matches && !isRacy(lastModified, checkedAt)) verified = true;
+        return !matches;
+    }
+
+
+    private static boolean isRacy(long lastModified, long at) {
+        if (lastModified == 0) return false;
+        final long window = lastModified % TimeUnit.SECONDS.toNanos(1) == 0 ? COARSE_RACY_NANOS : FINE_RACY_NANOS;
+        return at - lastModified < window;
+    }
+
+
+    private static long now() {
+        return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+    }
+
+
+    private static byte[] digest(byte[] content) {
+        return Constants.newMessageDigest().digest(content);
+    }
+
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).to(TimeUnit.NANOSECONDS);
+        }
+        catch (IOException e) {
+            return 0L; // does not exist
+        }
+    }
+
+
+    private static long length(Path path) {
+        try {
+            return Files.size(path);
+        }
+        catch (IOException e) {
+            return -1L; // does not exist
+        }
+    }
+
+
+    @Override
+    public String toString() {
+        return "FileStamp{" + path + ", lastModified=" + lastModified + ", length=" + length +
+            (racy ? ", racy" : "") + (writtenDigest != null ? ", written" : "") + "}";
+    }
+
+}
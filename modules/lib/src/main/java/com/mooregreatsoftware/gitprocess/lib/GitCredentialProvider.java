@@ -0,0 +1,208 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import org.apache.commons.exec.CommandLine;
+import org.apache.commons.exec.DefaultExecutor;
+import org.apache.commons.exec.ExecuteException;
+import org.apache.commons.exec.PumpStreamHandler;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.errors.UnsupportedCredentialItem;
+import org.eclipse.jgit.transport.CredentialItem;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.URIish;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A JGit {@link CredentialsProvider} that asks the user's configured git credential helpers (osxkeychain,
+ * libsecret, store, etc.) for a username and password by way of "git credential fill".
+ * <p>
+ * The helper is never allowed to prompt on the terminal, and the answer for a URI is remembered for the life of
+ * this instance so that a fetch followed by a push only asks once.
+ * <p>
+ * Like git itself, the helpers are told how the answer worked out: {@link #approve(URIish)} ("git credential
+ * approve") once the server has accepted it, and "git credential reject" when JGit {@link #reset(URIish) resets}
+ * it because the server did not, so that a bad stored password is not handed out again.
+ *
+ * @see <a href="https://git-scm.com/docs/git-credential">git-credential</a>
+ */
+public class GitCredentialProvider extends CredentialsProvider {
+    private static final Logger LOG = LoggerFactory.getLogger(GitCredentialProvider.class);
+
+    private final File workingDirectory;
+
+    private final Map<String, Map<String, String>> answers = new ConcurrentHashMap<>();
+    private final Set<String> approved = ConcurrentHashMap.newKeySet();
+
+
+    /**
+     * @param workingDirectory where to run "git credential" so repository-specific helpers are used
+     */
+    public GitCredentialProvider(File workingDirectory) {
+        this.workingDirectory = workingDirectory;
+    }
+
+
+    @Override
+    public boolean isInteractive() {
+        return false;
+    }
+
+
+    @Override
+    public boolean supports(CredentialItem... items) {
+        return Arrays.stream(items).allMatch(item ->
+            item instanceof CredentialItem.Username || item instanceof CredentialItem.Password);
+    }
+
+
+    @Override
+    public boolean get(URIish uri, CredentialItem... items) throws UnsupportedCredentialItem {
+        final String scheme = uri.getScheme();
+        if (scheme == null || !scheme.startsWith("http")) return false;
+
+        final Map<String, String> answer = answers.computeIfAbsent(key(uri), k -> fill(uri));
+        if (!answer.containsKey("password")) return false;
+
+        for (CredentialItem item : items) {
+            if (item instanceof CredentialItem.Username) {
+                ((CredentialItem.Username)item).setValue(answer.get("username"));
+            }
+            else if (item instanceof CredentialItem.Password) {
+                ((CredentialItem.Password)item).setValue(answer.get("password").toCharArray());
+            }
+            else {
+                throw new UnsupportedCredentialItem(uri, item.getClass().getName() + ":" + item.getPromptText());
+            }
+        }
+        return true;
+    }
+
+
+    /**
+     * The server has accepted the answer for the URI, so let the helpers store it.
+     */
+    public void approve(URIish uri) {
+        final String key = key(uri);
+        final Map<String, String> answer = answers.get(key);
+        if (answer == null || !answer.containsKey("password") || !approved.add(key)) return;
+
+        LOG.debug("Approving the credentials for {}", uri.getHost());
+        run("approve", attributes(answer), uri);
+    }
+
+
+    /**
+     * The server did not accept the answer for the URI, so forget it and have the helpers do the same.
+     */
+    @Override
+    public void reset(URIish uri) {
+        final String key = key(uri);
+        approved.remove(key);
+        final Map<String, String> answer = answers.remove(key);
+        if (answer == null || !answer.containsKey("password")) return;
+
+        LOG.debug("Rejecting the credentials for {}", uri.getHost());
+        run("reject", attributes(answer), uri);
+    }
+
+
+    private static String key(URIish uri) {
+        return uri.getScheme() + "://" + uri.getHost() + ":" + uri.getPort();
+    }
+
+
+    /**
+     * Run "git credential fill" for the URI
+     *
+     * @return the attributes from the helper; empty if it does not have anything
+     */
+    private Map<String, String> fill(URIish uri) {
+        final StringBuilder request = new StringBuilder();
+        request.append("protocol=").append(uri.getScheme()).append('\n');
+        request.append("host=").append(uri.getHost()).append(uri.getPort() > 0 ? ":" + uri.getPort() : "").append('\n');
+        if (uri.getUser() != null) request.append("username=").append(uri.getUser()).append('\n');
+        request.append('\n');
+
+        final @Nullable String output = run("fill", request.toString(), uri);
+        if (output == null) return new HashMap<>();
+
+        final Map<String, String> answer = new HashMap<>();
+        for (String line : output.split("\n")) {
+            final int idx = line.indexOf('=');
+            if (idx > 0) answer.put(line.substring(0, idx), line.substring(idx + 1));
+        }
+        LOG.debug("Got credentials for {} from \"git credential fill\"", uri.getHost());
+        return answer;
+    }
+
+
+    private static String attributes(Map<String, String> answer) {
+        final StringBuilder sb = new StringBuilder();
+        answer.forEach((name, value) -> sb.append(name).append('=').append(value).append('\n'));
+        return sb.append('\n').toString();
+    }
+
+
+    /**
+     * Run "git credential &lt;action&gt;"
+     *
+     * @return what it wrote to standard out; null if it could not be run or failed
+     */
+    private @Nullable String run(String action, String input, URIish uri) {
+        final ByteArrayOutputStream stdOut = new ByteArrayOutputStream();
+        final ByteArrayOutputStream stdErr = new ByteArrayOutputStream();
+        final DefaultExecutor executor = new DefaultExecutor();
+        executor.setWorkingDirectory(workingDirectory);
+        executor.setStreamHandler(new PumpStreamHandler(stdOut, stdErr,
+            new ByteArrayInputStream(input.getBytes(StandardCharsets.UTF_8))));
+
+        final Map<String, String> env = new HashMap<>(System.getenv());
+        env.put("GIT_TERMINAL_PROMPT", "0");
+
+        try {
+            executor.execute(new CommandLine("git").addArgument("credential").addArgument(action), env);
+        }
+        catch (ExecuteException e) {
+            LOG.debug("\"git credential {}\" failed for {}: {}", action, uri.getHost(), new String(stdErr.toByteArray(), StandardCharsets.UTF_8).trim());
+            return null;
+        }
+        catch (IOException e) {
+            LOG.warn("Could not run \"git credential {}\": {}", action, e.toString());
+            return null;
+        }
+        return new String(stdOut.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+
+    @Override
+    public String toString() {
+        return "GitCredentialProvider{" + workingDirectory + "}";
+    }
+
+}
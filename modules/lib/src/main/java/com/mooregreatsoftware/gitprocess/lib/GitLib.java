@@ -19,10 +19,12 @@ import com.mooregreatsoftware.gitprocess.config.BranchConfig;
 import com.mooregreatsoftware.gitprocess.config.GeneralConfig;
 import com.mooregreatsoftware.gitprocess.config.RemoteConfig;
 import com.mooregreatsoftware.gitprocess.lib.Pusher.ThePushResult;
+import com.mooregreatsoftware.gitprocess.lib.config.ConfigStore;
 import com.mooregreatsoftware.gitprocess.lib.config.StoredBranchConfig;
 import com.mooregreatsoftware.gitprocess.lib.config.StoredGeneralConfig;
 import com.mooregreatsoftware.gitprocess.lib.config.StoredRemoteConfig;
 import com.mooregreatsoftware.gitprocess.transport.GitTransportConfigCallback;
+import com.mooregreatsoftware.gitprocess.transport.TransportSessions;
 import javaslang.control.Either;
 import javaslang.control.Try;
 import javaslang.control.Try.CheckedRunnable;
@@ -32,22 +34,43 @@ import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.jgit.api.Git;
 import org.eclipse.jgit.api.RemoteAddCommand;
-import org.eclipse.jgit.api.Status;
 import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.Config;
 import org.eclipse.jgit.lib.ObjectId;
 import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.transport.ChainingCredentialsProvider;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.NetRCCredentialsProvider;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.TagOpt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
 import java.io.File;
 import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Collectors;
 
 import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.e;
-import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.v;
 import static javaslang.control.Either.left;
+import static javaslang.control.Either.right;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_BRANCH_SECTION;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_MERGE;
+import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_REMOTE;
+import static org.eclipse.jgit.lib.Constants.R_HEADS;
+import static org.eclipse.jgit.lib.Constants.R_REMOTES;
 
 /**
  * The central launch-point for interacting with Git.
@@ -63,23 +86,37 @@ public class GitLib implements AutoCloseable {
     @MonotonicNonNull
     private BranchConfig branchConfig;
 
+    @MonotonicNonNull
+    private AncestryIndex ancestryIndex;
+
+    @MonotonicNonNull
+    private RefSnapshot refSnapshot;
+
+    @MonotonicNonNull
+    private CredentialsProvider credentialsProvider;
+
+    @MonotonicNonNull
+    private GitCredentialProvider gitCredentialProvider;
+
+    @MonotonicNonNull
+    private TransportSessions transportSessions;
+
     private final RemoteConfig remoteConfig;
     private final GeneralConfig generalConfig;
-    private final StoredConfig storedConfig;
+    private final ConfigStore configStore;
 
 
     private GitLib(Git jgit) {
         this.jgit = jgit;
 
-        storedConfig = jgit.getRepository().getConfig();
-        v(storedConfig::load);
-        this.remoteConfig = new StoredRemoteConfig(storedConfig, (remoteName, uri) -> {
+        this.configStore = new ConfigStore(jgit.getRepository().getConfig());
+        this.remoteConfig = new StoredRemoteConfig(configStore, (remoteName, uri) -> {
             final RemoteAddCommand remoteAdd = jgit.remoteAdd();
             remoteAdd.setName(remoteName);
             remoteAdd.setUri(uri);
             return remoteAdd.call();
         });
-        this.generalConfig = new StoredGeneralConfig(storedConfig);
+        this.generalConfig = new StoredGeneralConfig(configStore);
     }
 
 
@@ -113,7 +150,7 @@ public class GitLib implements AutoCloseable {
     @EnsuresNonNull("branchConfig")
     public BranchConfig branchConfig() {
         if (this.branchConfig == null) {
-            this.branchConfig = new StoredBranchConfig(storedConfig, remoteConfig, branches());
+            this.branchConfig = new StoredBranchConfig(configStore, remoteConfig, branches(), refSnapshot());
         }
         return branchConfig;
     }
@@ -124,6 +161,76 @@ public class GitLib implements AutoCloseable {
     }
 
 
+    /**
+     * The git configuration shared by {@link #remoteConfig()}, {@link #generalConfig()} and {@link #branchConfig()}.
+     * Use its {@link ConfigStore#batch()} to write several changes at once.
+     */
+    public ConfigStore configStore() {
+        return configStore;
+    }
+
+
+    /**
+     * The cached view of the repository's references.
+     */
+    @EnsuresNonNull("refSnapshot")
+    public RefSnapshot refSnapshot() {
+        if (this.refSnapshot == null) {
+            this.refSnapshot = new RefSnapshot(repository());
+        }
+        return refSnapshot;
+    }
+
+
+    /**
+     * The credentials to use when talking to a server over HTTP(S): first "~/.netrc", then the configured git
+     * credential helpers.
+     */
+    @EnsuresNonNull("credentialsProvider")
+    public CredentialsProvider credentialsProvider() {
+        if (this.credentialsProvider == null) {
+            this.credentialsProvider = new ChainingCredentialsProvider(
+                new NetRCCredentialsProvider(),
+                gitCredentialProvider());
+        }
+        return credentialsProvider;
+    }
+
+
+    @EnsuresNonNull("gitCredentialProvider")
+    private GitCredentialProvider gitCredentialProvider() {
+        if (this.gitCredentialProvider == null) {
+            this.gitCredentialProvider = new GitCredentialProvider(workingDirectory());
+        }
+        return gitCredentialProvider;
+    }
+
+
+    /**
+     * The connections to the remotes, kept open so fetches and pushes can share them.
+     */
+    @EnsuresNonNull("transportSessions")
+    public TransportSessions transportSessions() {
+        if (this.transportSessions == null) {
+            this.transportSessions = new TransportSessions(repository(), credentialsProvider(),
+                new GitTransportConfigCallback(), gitCredentialProvider()::approve);
+        }
+        return transportSessions;
+    }
+
+
+    /**
+     * Answers questions about which commits are in the history of other commits.
+     */
+    @EnsuresNonNull("ancestryIndex")
+    public AncestryIndex ancestryIndex() {
+        if (this.ancestryIndex == null) {
+            this.ancestryIndex = new AncestryIndex(repository());
+        }
+        return ancestryIndex;
+    }
+
+
     public static GitLib of(Git jgit) {
         return new GitLib(jgit);
     }
@@ -172,18 +279,175 @@ public class GitLib implements AutoCloseable {
     }
 
 
+    /**
+     * Fetch the latest changes for just the given branches from the server, instead of every branch it has.
+     * <p>
+     * Only the branches the server has are asked for, so a branch that has never been pushed does not make the
+     * fetch fail. A branch with a remote-tracking branch, or that a local branch has as its upstream, is taken to
+     * be on the server (see {@link #isKnownOnServer(String)}); for any others the server is asked which it has.
+     * If it has none of them, nothing is fetched.
+     * <p>
+     * Falls back to a full {@link #fetch()} if the remote's configured refspecs do not say where a branch goes, or
+     * if the server no longer has one of the branches (which also cleans up remote-tracking branches that the
+     * server has deleted). Any other problem, such as not being able to connect, is returned as is.
+     *
+     * @param branchNames the names of the branches on the server (e.g., "master")
+     * @param includeTags also fetch all of the server's tags; otherwise no tags are fetched
+     * @return Left(error message) or Right(fetch results; if no fetch was done, this is null)
+     */
+    @SuppressWarnings("RedundantCast")
+    public Either<String, @Nullable SimpleFetchResult> fetch(Collection<String> branchNames, boolean includeTags) {
+        if (!remoteConfig().hasRemotes()) {
+            LOG.debug("fetch(): no remotes");
+            return Either.right(null);
+        }
+
+        final String remoteName = (@NonNull String)remoteConfig().remoteName();
+        final List<String> knownBranchNames = branchNames.stream().
+            distinct().
+            filter(branchName -> isKnownOnServer(remoteName, branchName)).
+            collect(Collectors.toCollection(ArrayList::new));
+
+        final List<String> unknownBranchNames = branchNames.stream().
+            distinct().
+            filter(branchName -> !knownBranchNames.contains(branchName)).
+            collect(Collectors.toList());
+        if (!unknownBranchNames.isEmpty()) {
+            final Try<Map<String, Ref>> advertised = Try.of(() -> transportSessions().advertisedRefs(remoteName));
+            if (advertised.isFailure()) return left(advertised.getCause().toString());
+            unknownBranchNames.stream().
+                filter(branchName -> advertised.get().containsKey(R_HEADS + branchName)).
+                forEach(knownBranchNames::add);
+        }
+
+        if (knownBranchNames.isEmpty()) {
+            LOG.debug("None of {} are known to be on \"{}\", so not fetching", branchNames, remoteName);
+            return Either.right(null);
+        }
+
+        final List<RefSpec> refSpecs = narrowedRefSpecs(remoteName, knownBranchNames);
+        if (refSpecs.isEmpty()) return simpleFetchResult();
+
+        LOG.info("Fetching {} from \"{}\"", knownBranchNames, remoteName);
+        final Try<FetchResult> result =
+            Try.of(() -> transportSessions().fetch(remoteName, true, refSpecs, includeTags ? TagOpt.FETCH_TAGS : TagOpt.NO_TAGS));
+
+        if (result.isFailure()) {
+            if (isMissingOnServer(result.getCause(), knownBranchNames)) {
+                LOG.debug("A branch is no longer on the server ({}) so fetching everything", result.getCause().getMessage());
+                return simpleFetchResult();
+            }
+            return left(result.getCause().toString());
+        }
+        final SimpleFetchResult sfr = new SimpleFetchResult(result.get());
+        LOG.debug(sfr.toString());
+        return right(sfr);
+    }
+
+
+    /**
+     * Is the branch known to be on the server, without asking it? That is, is there a remote-tracking branch for
+     * it or does a local branch have it as its upstream?
+     *
+     * @param branchName the name of the branch on the server (e.g., "master")
+     */
+    @SuppressWarnings("RedundantCast")
+    public boolean isKnownOnServer(String branchName) {
+        return remoteConfig().hasRemotes() && isKnownOnServer((@NonNull String)remoteConfig().remoteName(), branchName);
+    }
+
+
+    private boolean isKnownOnServer(String remoteName, String branchName) {
+        if (refSnapshot().exactRef(R_REMOTES + remoteName + "/" + branchName) != null) return true;
+
+        final Config config = configStore().config();
+        final String mergeRef = R_HEADS + branchName;
+        return config.getSubsections(CONFIG_BRANCH_SECTION).stream().anyMatch(localBranch ->
+            remoteName.equals(config.getString(CONFIG_BRANCH_SECTION, localBranch, CONFIG_KEY_REMOTE)) &&
+                mergeRef.equals(config.getString(CONFIG_BRANCH_SECTION, localBranch, CONFIG_KEY_MERGE)));
+    }
+
+
+    /**
+     * Did the fetch fail only because the server does not have one of the branches?
+     */
+    private static boolean isMissingOnServer(Throwable throwable, Collection<String> branchNames) {
+        if (!(throwable instanceof TransportException)) return false;
+        final @Nullable String message = throwable.getMessage();
+        return message != null && branchNames.stream().anyMatch(branchName ->
+            message.contains(MessageFormat.format(JGitText.get().remoteDoesNotHaveSpec, R_HEADS + branchName)));
+    }
+
+
+    /**
+     * Fetch just a pull request from the server, instead of everything it has (which, with all of its
+     * "refs/pull/*", can be a very large number of refs).
+     * <p>
+     * The pull request's head goes into "refs/remotes/&lt;remote&gt;/pull/&lt;number&gt;/head" and, if asked
+     * for, the server's merge of it into its base branch into ".../merge". Either way it is a single refspec.
+     *
+     * @param number       the pull request's number
+     * @param includeMerge also fetch the server's merge of the pull request, if it has one
+     * @return Left(error message) or Right(the remote-tracking branch for the pull request's head)
+     */
+    @SuppressWarnings("RedundantCast")
+    public Either<String, Branch> fetchPullRequest(int number, boolean includeMerge) {
+        if (!remoteConfig().hasRemotes()) return left("There is no remote to fetch the pull request from");
+
+        final String remoteName = (@NonNull String)remoteConfig().remoteName();
+        final String source = "refs/pull/" + number + "/";
+        final String destination = R_REMOTES + remoteName + "/pull/" + number + "/";
+        final RefSpec refSpec = includeMerge ?
+            new RefSpec("+" + source + "*:" + destination + "*") :
+            new RefSpec("+" + source + "head:" + destination + "head");
+
+        LOG.info("Fetching pull request #{} from \"{}\"", number, remoteName);
+        final Either<String, SimpleFetchResult> result =
+            Try.of(() -> transportSessions().fetch(remoteName, false, Collections.singletonList(refSpec), TagOpt.NO_TAGS)).
+                toEither().
+                bimap(Throwable::toString, SimpleFetchResult::new);
+        if (result.isLeft()) return left(result.getLeft());
+        LOG.debug(result.get().toString());
+
+        final Branch head = branches().branch(destination + "head");
+        if (head == null) return left("\"" + remoteName + "\" does not have pull request #" + number);
+        return right(head);
+    }
+
+
+    /**
+     * The remote's "fetch" refspecs, narrowed down to only the given branches
+     *
+     * @return empty if any of the branches is not covered by the remote's refspecs
+     */
+    private List<RefSpec> narrowedRefSpecs(String remoteName, Collection<String> branchNames) {
+        // "RemoteConfig" here is JGit's, not the one from this library
+        final List<RefSpec> configuredRefSpecs = e(() ->
+            new org.eclipse.jgit.transport.RemoteConfig(repository().getConfig(), remoteName).getFetchRefSpecs());
+
+        final List<RefSpec> refSpecs = new ArrayList<>();
+        for (String branchName : new LinkedHashSet<>(branchNames)) {
+            final String source = R_HEADS + branchName;
+            final Optional<RefSpec> refSpec = configuredRefSpecs.stream().
+                filter(spec -> spec.matchSource(source)).
+                findFirst().
+                map(spec -> spec.expandFromSource(source));
+            if (!refSpec.isPresent()) {
+                LOG.debug("The refspecs for \"{}\" do not cover \"{}\"", remoteName, source);
+                return Collections.emptyList();
+            }
+            refSpecs.add(refSpec.get());
+        }
+        return refSpecs;
+    }
+
+
     @Nonnull
     @SuppressWarnings("RedundantCast")
     private Either<String, @Nullable SimpleFetchResult> simpleFetchResult() {
         final String remoteName = (@NonNull String)remoteConfig().remoteName();
         LOG.info("Fetching latest from \"{}\"", remoteName);
-        return Try.of(() ->
-                jgit.fetch().
-                    setRemote(remoteName).
-                    setRemoveDeletedRefs(true).
-                    setTransportConfigCallback(new GitTransportConfigCallback()).
-                    call()
-        ).
+        return Try.of(() -> transportSessions().fetch(remoteName, true, Collections.emptyList(), null)).
             toEither().
             bimap(Throwable::toString, SimpleFetchResult::new).
             peek(sfr -> LOG.debug(sfr.toString()));
@@ -196,6 +460,15 @@ public class GitLib implements AutoCloseable {
     }
 
 
+    /**
+     * The repository's metadata directory (e.g., ".git")
+     */
+    @Nonnull
+    public File gitDirectory() {
+        return jgit.getRepository().getDirectory();
+    }
+
+
 //    @Deprecated // temporary convenience
     protected Repository repository() {
         return jgit.getRepository();
@@ -204,6 +477,8 @@ public class GitLib implements AutoCloseable {
 
     @Override
     public void close() throws Exception {
+        if (transportSessions != null) transportSessions.close();
+        if (refSnapshot != null) refSnapshot.close();
         jgit.close();
     }
 
@@ -229,6 +504,13 @@ public class GitLib implements AutoCloseable {
         final Branch currentBranch = branches().currentBranch();
         final String currentBranchName = currentBranch != null ? currentBranch.shortName() : "NONE";
         LOG.info("Adding \"{}\" into the index for \"{}\"", filepattern, currentBranchName);
+        if (generalConfig().parallelScan() && WorktreeScanner.canScan(repository())) {
+            return (@NonNull DirCache)e(() -> {
+                try (WorktreeScanner scanner = WorktreeScanner.of(this)) {
+                    return scanner.add(filepattern);
+                }
+            });
+        }
         return (@NonNull DirCache)e(() -> jgit.add().addFilepattern(filepattern).call());
     }
 
@@ -279,10 +561,19 @@ public class GitLib implements AutoCloseable {
     }
 
 
+    /**
+     * Is anything added, changed, removed, missing, modified or conflicting? Untracked files only count if
+     * {@link GeneralConfig#countUntrackedFiles()} is set.
+     * <p>
+     * Does not compute the full status. Scans on several threads if {@link GeneralConfig#parallelScan()} is set,
+     * otherwise stops at the first change.
+     *
+     * @see DirtyCheck
+     */
     @SuppressWarnings("RedundantCast")
     public boolean hasUncommittedChanges() {
-        final Status status = (@NonNull Status)e(() -> jgit.status().call());
-        return status.hasUncommittedChanges();
+        final int threads = generalConfig().parallelScan() ? Runtime.getRuntime().availableProcessors() : 1;
+        return (@NonNull Boolean)e(() -> DirtyCheck.of(this).hasUncommittedChanges(generalConfig().countUntrackedFiles(), threads));
     }
 
 }
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import javaslang.control.Either;
+import javaslang.control.Try;
+import org.eclipse.jgit.lib.CommitBuilder;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.merge.MergeStrategy;
+import org.eclipse.jgit.merge.ResolveMerger;
+import org.eclipse.jgit.merge.ThreeWayMerger;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevSort;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static javaslang.control.Either.left;
+import static javaslang.control.Either.right;
+
+/**
+ * Merges and rebases commits entirely in the object database: nothing is checked out, the index is not touched,
+ * and no refs are moved. The caller decides what to do with the resulting commit.
+ * <p>
+ * Every call uses its own reader and inserter, so one instance can be used from several threads at once.
+ */
+public class InCoreCombiner {
+    private static final Logger LOG = LoggerFactory.getLogger(InCoreCombiner.class);
+
+    private final Repository repository;
+
+
+    public InCoreCombiner(Repository repository) {
+        this.repository = repository;
+    }
+
+
+    public static InCoreCombiner of(GitLib gitLib) {
+        return new InCoreCombiner(gitLib.repository());
+    }
+
+
+    /**
+     * Merge "theirs" into "ours".
+     *
+     * @param ours    the commit being merged into (the first parent of the merge commit)
+     * @param theirs  the commit being merged in
+     * @param message the message for the merge commit
+     * @return Left(error message, including any conflicts), Right(the result of the merge)
+     */
+    public Either<String, Combined> merge(ObjectId ours, ObjectId theirs, String message) {
+        return Try.of(() -> doMerge(ours, theirs, message)).
+            toEither().
+            mapLeft(ExecUtils::toString).
+            flatMap(e -> e);
+    }
+
+
+    private Either<String, Combined> doMerge(ObjectId ours, ObjectId theirs, String message) throws Exception {
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            final RevWalk walk = new RevWalk(inserter.newReader());
+            try {
+                final RevCommit oursCommit = walk.parseCommit(ours);
+                final RevCommit theirsCommit = walk.parseCommit(theirs);
+
+                if (walk.isMergedInto(theirsCommit, oursCommit)) {
+                    return right(new Combined(oursCommit, Combined.Status.UP_TO_DATE, 0));
+                }
+                walk.reset();
+                if (walk.isMergedInto(oursCommit, theirsCommit)) {
+                    return right(new Combined(theirsCommit, Combined.Status.FAST_FORWARD, 0));
+                }
+
+                final ThreeWayMerger merger = MergeStrategy.RECURSIVE.newMerger(repository, true);
+                if (!merger.merge(oursCommit, theirsCommit)) {
+                    return left(conflictMessage(merger, theirsCommit));
+                }
+
+                final PersonIdent committer = new PersonIdent(repository);
+                final ObjectId mergeCommit = insertCommit(inserter, merger.getResultTreeId(), message, committer, committer, oursCommit, theirsCommit);
+                inserter.flush();
+                LOG.debug("Merged {} into {} as {}", theirs.abbreviate(7).name(), ours.abbreviate(7).name(), mergeCommit.abbreviate(7).name());
+                return right(new Combined(mergeCommit, Combined.Status.COMBINED, 1));
+            }
+            finally {
+                walk.dispose();
+            }
+        }
+    }
+
+
+    /**
+     * Replay the commits of "branchTip" that are not in "upstream" on top of "upstream", one at a time.
+     * <p>
+     * Like "git rebase", merge commits are not replayed and commits whose changes are already in upstream are
+     * dropped.
+     *
+     * @param branchTip the tip of the branch being rebased
+     * @param upstream  the commit to rebase onto
+     * @return Left(error message, including any conflicts), Right(the result of the rebase)
+     */
+    public Either<String, Combined> rebase(ObjectId branchTip, ObjectId upstream) {
+        return Try.of(() -> doRebase(branchTip, upstream)).
+            toEither().
+            mapLeft(ExecUtils::toString).
+            flatMap(e -> e);
+    }
+
+
+    private Either<String, Combined> doRebase(ObjectId branchTip, ObjectId upstream) throws Exception {
+        try (ObjectInserter inserter = repository.newObjectInserter()) {
+            final RevWalk walk = new RevWalk(inserter.newReader());
+            try {
+                final RevCommit tipCommit = walk.parseCommit(branchTip);
+                final RevCommit upstreamCommit = walk.parseCommit(upstream);
+
+                if (walk.isMergedInto(upstreamCommit, tipCommit)) {
+                    return right(new Combined(tipCommit, Combined.Status.UP_TO_DATE, 0));
+                }
+                walk.reset();
+                if (walk.isMergedInto(tipCommit, upstreamCommit)) {
+                    return right(new Combined(upstreamCommit, Combined.Status.FAST_FORWARD, 0));
+                }
+
+                final List<RevCommit> toReplay = commitsToReplay(walk, tipCommit, upstreamCommit);
+                final PersonIdent committer = new PersonIdent(repository);
+
+                RevCommit newHead = upstreamCommit;
+                int replayed = 0;
+                for (RevCommit commit : toReplay) {
+                    final ThreeWayMerger merger = MergeStrategy.RECURSIVE.newMerger(repository, true);
+                    merger.setBase(commit.getParent(0));
+                    if (!merger.merge(newHead, commit)) {
+                        return left(conflictMessage(merger, commit));
+                    }
+
+                    if (merger.getResultTreeId().equals(newHead.getTree())) {
+                        LOG.debug("Dropping {} because its changes are already in {}", commit.abbreviate(7).name(), upstream.abbreviate(7).name());
+                        continue;
+                    }
+
+                    final ObjectId newCommitId = insertCommit(inserter, merger.getResultTreeId(), commit.getFullMessage(), commit.getAuthorIdent(), committer, newHead);
+                    inserter.flush();
+                    newHead = walk.parseCommit(newCommitId);
+                    replayed++;
+                }
+
+                LOG.debug("Rebased {} onto {} as {} ({} commits)", branchTip.abbreviate(7).name(), upstream.abbreviate(7).name(), newHead.abbreviate(7).name(), replayed);
+                return right(new Combined(newHead, Combined.Status.COMBINED, replayed));
+            }
+            finally {
+                walk.dispose();
+            }
+        }
+    }
+
+
+    /**
+     * How many commits {@link #rebase(ObjectId, ObjectId)} would replay, without replaying them.
+     * <p>
+     * Commits whose changes turn out to already be in upstream are counted, since that is only known by trying.
+     *
+     * @param branchTip the tip of the branch being rebased
+     * @param upstream  the commit to rebase onto
+     * @return Left(error message), Right(the number of non-merge commits in "branchTip" that are not in "upstream")
+     */
+    public Either<String, Integer> countCommitsToReplay(ObjectId branchTip, ObjectId upstream) {
+        return Try.of(() -> {
+            final RevWalk walk = new RevWalk(repository);
+            try {
+                return commitsToReplay(walk, walk.parseCommit(branchTip), walk.parseCommit(upstream)).size();
+            }
+            finally {
+                walk.dispose();
+            }
+        }).
+            toEither().
+            mapLeft(ExecUtils::toString);
+    }
+
+
+    /**
+     * The non-merge commits in "tip" that are not in "upstream", oldest first
+     */
+    private static List<RevCommit> commitsToReplay(RevWalk walk, RevCommit tip, RevCommit upstream) throws Exception {
+        walk.reset();
+        walk.sort(RevSort.TOPO);
+        walk.sort(RevSort.REVERSE, true);
+        walk.markStart(tip);
+        walk.markUninteresting(upstream);
+
+        final List<RevCommit> commits = new ArrayList<>();
+        for (RevCommit commit : walk) {
+            if (commit.getParentCount() == 1) commits.add(commit);
+        }
+        walk.reset();
+        walk.sort(RevSort.NONE);
+        return commits;
+    }
+
+
+    private static ObjectId insertCommit(ObjectInserter inserter, ObjectId tree, String message,
+                                         PersonIdent author, PersonIdent committer, ObjectId... parents) throws Exception {
+        final CommitBuilder commit = new CommitBuilder();
+        commit.setTreeId(tree);
+        commit.setParentIds(parents);
+        commit.setAuthor(author);
+        commit.setCommitter(committer);
+        commit.setMessage(message);
+        return inserter.insert(commit);
+    }
+
+
+    private static String conflictMessage(ThreeWayMerger merger, RevCommit commit) {
+        final String paths = merger instanceof ResolveMerger ?
+            String.join(", ", ((ResolveMerger)merger).getUnmergedPaths()) :
+            "";
+        return "Conflicts applying " + commit.abbreviate(7).name() + " \"" + commit.getShortMessage() + "\"" +
+            (paths.isEmpty() ? "" : ": " + paths);
+    }
+
+
+    /**
+     * The outcome of combining two lines of history
+     */
+    public static class Combined {
+        public enum Status {
+            /**
+             * Nothing needed to be done
+             */
+            UP_TO_DATE,
+            /**
+             * The result is the other commit
+             */
+            FAST_FORWARD,
+            /**
+             * New commits were created
+             */
+            COMBINED
+        }
+
+        private final ObjectId newHead;
+        private final Status status;
+        private final int commitsCreated;
+
+
+        public Combined(ObjectId newHead, Status status, int commitsCreated) {
+            this.newHead = newHead.copy();
+            this.status = status;
+            this.commitsCreated = commitsCreated;
+        }
+
+
+        public ObjectId newHead() {
+            return newHead;
+        }
+
+
+        public Status status() {
+            return status;
+        }
+
+
+        /**
+         * The number of new commits written
+         */
+        public int commitsCreated() {
+            return commitsCreated;
+        }
+
+
+        @Override
+        public String toString() {
+            return "Combined{" + status + " - " + newHead.abbreviate(7).name() + "}";
+        }
+    }
+
+}
@@ -15,27 +15,110 @@
  */
 package com.mooregreatsoftware.gitprocess.lib;
 
+import com.mooregreatsoftware.gitprocess.config.GeneralConfig;
+import com.mooregreatsoftware.gitprocess.lib.InCoreCombiner.Combined;
 import javaslang.control.Either;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.eclipse.jgit.api.MergeCommand;
 import org.eclipse.jgit.api.MergeResult;
+import org.eclipse.jgit.api.MergeResult.MergeStatus;
 import org.eclipse.jgit.lib.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
 import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.e;
+import static java.util.stream.Collectors.joining;
 import static javaslang.control.Either.left;
 import static javaslang.control.Either.right;
 
+/**
+ * Merges other branches into the current branch.
+ * <p>
+ * By default (see {@link GeneralConfig#inCoreMerge()}) the merges are done in memory with {@link InCoreCombiner},
+ * and the index and working directory are only updated once, to the final result. If that can not be done (e.g.,
+ * there is a conflict, or local changes are in the way) then JGit's {@link MergeCommand} is used, which leaves
+ * a conflict in the working directory so it can be resolved.
+ */
 @SuppressWarnings("RedundantCast")
 public class Merger {
     private static final Logger LOG = LoggerFactory.getLogger(Merger.class);
 
 
     public static Either<String, SuccessfulMerge> merge(GitLib gitLib, Branch mergeBranch) {
+        return merge(gitLib, mergeBranch, new Branch[0]);
+    }
+
+
+    /**
+     * Merge each of the branches, in turn, into the current branch.
+     * <p>
+     * When done in memory, the intermediate merges are never checked out.
+     *
+     * @param mergeBranch the first branch to merge
+     * @param thenMerge   the branches to merge after that
+     * @return Left(error message), Right(the result of the last merge)
+     */
+    public static Either<String, SuccessfulMerge> merge(GitLib gitLib, Branch mergeBranch, Branch... thenMerge) {
         final Branch currentBranch = gitLib.branches().currentBranch();
 
         if (currentBranch == null) return left("There is no branch checked out");
 
+        final List<Branch> mergeBranches = new ArrayList<>(thenMerge.length + 1);
+        mergeBranches.add(mergeBranch);
+        mergeBranches.addAll(Arrays.asList(thenMerge));
+
+        if (gitLib.generalConfig().inCoreMerge()) {
+            final Either<String, SuccessfulMerge> inCoreResult = inCoreMerge(gitLib, currentBranch, mergeBranches);
+            if (inCoreResult.isRight()) return inCoreResult;
+            LOG.info("Could not merge in memory ({}) so doing a normal merge", inCoreResult.getLeft());
+        }
+
+        Either<String, SuccessfulMerge> result = left("Nothing to merge");
+        for (Branch branch : mergeBranches) {
+            result = workingTreeMerge(gitLib, currentBranch, branch);
+            if (result.isLeft()) return result;
+        }
+        return result;
+    }
+
+
+    /**
+     * Merge without touching the working directory until the very end.
+     *
+     * @return Left(why it could not be done; nothing will have been changed), Right(the result of the last merge)
+     */
+    static Either<String, SuccessfulMerge> inCoreMerge(GitLib gitLib, Branch currentBranch, List<Branch> mergeBranches) {
+        final InCoreCombiner combiner = InCoreCombiner.of(gitLib);
+        final ObjectId startCurrentOid = currentBranch.objectId();
+
+        ObjectId head = startCurrentOid;
+        Combined.Status overallStatus = Combined.Status.UP_TO_DATE;
+        for (Branch mergeBranch : mergeBranches) {
+            LOG.debug("Merging \"{}\"({}) with \"{}\"({}) in memory", currentBranch.shortName(), head.abbreviate(7).name(), mergeBranch.shortName(), mergeBranch.sha());
+            final Either<String, Combined> eCombined = combiner.merge(head, mergeBranch.objectId(), message(mergeBranch, currentBranch));
+            if (eCombined.isLeft()) return left(eCombined.getLeft());
+            head = eCombined.get().newHead();
+            // a real merge followed by a fast-forward is still a merge
+            if (eCombined.get().status().compareTo(overallStatus) > 0) overallStatus = eCombined.get().status();
+        }
+
+        final MergeStatus mergeStatus = toMergeStatus(overallStatus);
+        if (!head.equals(startCurrentOid)) {
+            final String reflogMessage = "merge " + mergeBranches.stream().map(Branch::shortName).collect(joining(", ")) + ": " + mergeStatus;
+            final Optional<String> checkoutError = currentBranch.checkoutMovedTo(startCurrentOid, head, reflogMessage);
+            if (checkoutError.isPresent()) return left(checkoutError.get());
+        }
+
+        return right(new SuccessfulMerge(mergeStatus, head));
+    }
+
+
+    private static Either<String, SuccessfulMerge> workingTreeMerge(GitLib gitLib, Branch currentBranch, Branch mergeBranch) {
         final ObjectId startCurrentOid = currentBranch.objectId();
         final ObjectId startIntegrationOid = mergeBranch.objectId();
 
@@ -44,7 +127,7 @@ public class Merger {
             gitLib.jgit().merge().
                 include(mergeBranch.objectId()).
                 setCommit(true).
-                setMessage("Sync merge from " + mergeBranch.shortName() + " into " + (currentBranch != null ? currentBranch.shortName() : null)).
+                setMessage(message(mergeBranch, currentBranch)).
                 call());
 
         return mergeResult.getMergeStatus().isSuccessful() ?
@@ -53,22 +136,46 @@ public class Merger {
     }
 
 
+    private static String message(Branch mergeBranch, Branch currentBranch) {
+        return "Sync merge from " + mergeBranch.shortName() + " into " + currentBranch.shortName();
+    }
+
+
+    private static MergeStatus toMergeStatus(Combined.Status status) {
+        switch (status) {
+            case UP_TO_DATE:
+                return MergeStatus.ALREADY_UP_TO_DATE;
+            case FAST_FORWARD:
+                return MergeStatus.FAST_FORWARD;
+            default:
+                return MergeStatus.MERGED;
+        }
+    }
+
+
     public static class SuccessfulMerge {
-        private final MergeResult mergeResult;
+        private final MergeStatus mergeStatus;
+        private final ObjectId newHead;
 
 
         public SuccessfulMerge(MergeResult mergeResult) {
-            this.mergeResult = mergeResult;
+            this(mergeResult.getMergeStatus(), mergeResult.getNewHead());
+        }
+
+
+        public SuccessfulMerge(MergeStatus mergeStatus, ObjectId newHead) {
+            this.mergeStatus = mergeStatus;
+            this.newHead = newHead;
         }
 
 
         public String statusMsg() {
-            return mergeResult.getMergeStatus().toString();
+            return mergeStatus.toString();
         }
 
 
         public ObjectId newHead() {
-            return mergeResult.getNewHead();
+            return newHead;
         }
 
 
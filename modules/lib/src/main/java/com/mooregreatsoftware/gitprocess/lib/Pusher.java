@@ -17,35 +17,30 @@ package com.mooregreatsoftware.gitprocess.lib;
 
 import com.mooregreatsoftware.gitprocess.config.BranchConfig;
 import com.mooregreatsoftware.gitprocess.config.RemoteConfig;
-import com.mooregreatsoftware.gitprocess.transport.GitTransportConfigCallback;
 import javaslang.control.Either;
 import javaslang.control.Try;
 import javaslang.control.Try.CheckedRunnable;
-import org.apache.commons.exec.CommandLine;
-import org.apache.commons.exec.DefaultExecutor;
-import org.apache.commons.exec.ExecuteException;
-import org.apache.commons.exec.PumpStreamHandler;
-import org.apache.commons.io.output.WriterOutputStream;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
-import org.eclipse.jgit.transport.ChainingCredentialsProvider;
-import org.eclipse.jgit.transport.NetRCCredentialsProvider;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.transport.PushResult;
 import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.RemoteRefUpdate.Status;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.IOException;
-import java.io.StringWriter;
-import java.util.Collection;
-import java.util.function.Supplier;
+import java.util.Collections;
 
 import static java.lang.System.lineSeparator;
 import static java.util.stream.Collectors.joining;
 import static javaslang.control.Either.left;
 import static javaslang.control.Either.right;
+import static org.eclipse.jgit.lib.Constants.R_HEADS;
 
 public class Pusher {
     private static final Logger LOG = LoggerFactory.getLogger(Pusher.class);
@@ -231,8 +226,7 @@ public class Pusher {
             final Branch remoteBranch = gitLib.branches().branch(remoteName + "/" + remoteBranchName);
             LOG.debug("Expected OID of remote branch is {}", remoteBranch != null ? remoteBranch.objectId().abbreviate(7).name() : "UNKNOWN");
 
-            final ThePushResult thePushResult = doGitProgPush(gitLib, localBranch, remoteBranchName, forcePush, remoteName);
-//            final SimplePushResult simplePushResult = doJGitPush(gitLib, localBranch, remoteBranchName, forcePush, remoteName);
+            final ThePushResult thePushResult = doJGitPush(gitLib, localBranch, remoteBranchName, forcePush, remoteName);
 
             // TODO: Implement --force-with-lease
 
@@ -268,46 +262,19 @@ public class Pusher {
     }
 
 
-    private static ThePushResult doGitProgPush(GitLib gitLib, Branch localBranch, String remoteBranchName, boolean forcePush, String remoteName) {
-        String cmd = String.format("git push --porcelain %s %s %s:%s", remoteName, forcePush ? "--force" : "", localBranch.shortName(), remoteBranchName);
-        CommandLine commandLine = CommandLine.parse(cmd);
-        DefaultExecutor executor = new DefaultExecutor();
-        executor.setWorkingDirectory(gitLib.workingDirectory());
-        final StringWriter stdOutWriter = new StringWriter();
-        final StringWriter stdErrWriter = new StringWriter();
-        executor.setStreamHandler(new PumpStreamHandler(new WriterOutputStream(stdOutWriter), new WriterOutputStream(stdErrWriter)));
-        final int exitCode = Try.of(() -> {
-            try {
-                return executor.execute(commandLine);
-            }
-            catch (ExecuteException e) {
-                return e.getExitValue();
-            }
-            catch (IOException e) {
-                final String message = e.getMessage();
-                if (message != null && message.contains("No such file or directory")) {
-                    return 1;
-                }
-                e.printStackTrace();
-                return -1;
-            }
-        }).get();
-
-        return new ProcPushResult(stdOutWriter, stdErrWriter, exitCode);
-    }
-
-
+    /**
+     * Push in-process, over the same connection as {@link GitLib#fetch()}
+     */
     private static ThePushResult doJGitPush(GitLib gitLib, Branch localBranch, String remoteBranchName, boolean forcePush, String remoteName) {
-        final Iterable<PushResult> pushResults = Try.of(() ->
-                gitLib.jgit().push().
-                    setRemote(remoteName).
-                    setRefSpecs(new RefSpec(localBranch.shortName() + ":" + remoteBranchName)).
-                    setForce(forcePush).
-                    setCredentialsProvider(new ChainingCredentialsProvider(new NetRCCredentialsProvider())).
-                    setTransportConfigCallback(new GitTransportConfigCallback()).
-                    call()
-        ).get();
-        return new JGitPushResult(pushResults);
+        final RefSpec refSpec = new RefSpec(localBranch.name() + ":" + R_HEADS + remoteBranchName).setForceUpdate(forcePush);
+        return Try.of(() -> gitLib.transportSessions().push(remoteName, Collections.singletonList(refSpec))).
+            map(pushResult -> (ThePushResult)new JGitPushResult(Collections.singletonList(pushResult))).
+            recover(e -> {
+                LOG.debug("Push failed", e);
+                final @Nullable String message = e.getMessage();
+                return new FailedPushResult(message != null ? message : e.toString());
+            }).
+            get();
     }
 
 
@@ -325,50 +292,102 @@ public class Pusher {
     }
 
 
-    public static class ProcPushResult extends ThePushResult {
+    /**
+     * The result of an in-process push, described the same way as "git push --porcelain" would
+     */
+    public static class JGitPushResult extends ThePushResult {
+        private final Iterable<PushResult> pushResults;
 
-        final StringWriter stdOutWriter;
 
-        final StringWriter stdErrWriter;
+        public JGitPushResult(Iterable<PushResult> pushResults) {
+            this.pushResults = pushResults;
+            success = StreamUtils.stream(pushResults).
+                flatMap(pushResult -> pushResult.getRemoteUpdates().stream()).
+                allMatch(update -> update.getStatus() == Status.OK || update.getStatus() == Status.UP_TO_DATE);
+        }
 
 
-        public ProcPushResult(StringWriter stdOutWriter, StringWriter stdErrWriter, int exitCode) {
-            this.stdOutWriter = stdOutWriter;
-            this.stdErrWriter = stdErrWriter;
-            success = (exitCode == 0);
+        public String toString() {
+            return StreamUtils.stream(pushResults).
+                map(JGitPushResult::toPorcelain).
+                collect(joining(lineSeparator()));
         }
 
 
-        public String toString() {
-            final String stderr = stdErrWriter.toString().trim();
-            return stderr.isEmpty() ? stdOutWriter.toString() : stdOutWriter.toString() + "\n" + stderr;
+        private static String toPorcelain(PushResult pushResult) {
+            final StringBuilder sb = new StringBuilder();
+            sb.append("To ").append(pushResult.getURI()).append(lineSeparator());
+            for (RemoteRefUpdate update : pushResult.getRemoteUpdates()) {
+                final Ref advertised = pushResult.getAdvertisedRef(update.getRemoteName());
+                sb.append(flag(update, advertised)).append('\t').
+                    append(update.getSrcRef()).append(':').append(update.getRemoteName()).append('\t').
+                    append(summary(update, advertised)).append(lineSeparator());
+            }
+            final String messages = pushResult.getMessages().trim();
+            if (!messages.isEmpty()) sb.append(messages).append(lineSeparator());
+            return sb.append("Done").toString();
         }
-    }
 
 
-    public static class JGitPushResult extends ThePushResult {
-        private final Iterable<PushResult> pushResults;
+        private static char flag(RemoteRefUpdate update, @Nullable Ref advertised) {
+            switch (update.getStatus()) {
+                case OK:
+                    if (update.isDelete()) return '-';
+                    if (advertised == null) return '*';
+                    return update.isFastForward() ? ' ' : '+';
+                case UP_TO_DATE:
+                    return '=';
+                default:
+                    return '!';
+            }
+        }
 
 
-        public JGitPushResult(Iterable<PushResult> pushResults) {
-            this.pushResults = pushResults;
+        private static String summary(RemoteRefUpdate update, @Nullable Ref advertised) {
+            switch (update.getStatus()) {
+                case OK:
+                    if (update.isDelete()) return "[deleted]";
+                    if (advertised == null) return "[new branch]";
+                    return abbrev(advertised.getObjectId()) +
+                        (update.isFastForward() ? ".." : "...") + abbrev(update.getNewObjectId()) +
+                        (update.isFastForward() ? "" : " (forced update)");
+                case UP_TO_DATE:
+                    return "[up to date]";
+                case REJECTED_NONFASTFORWARD:
+                    return "[rejected] (non-fast-forward)";
+                case REJECTED_REMOTE_CHANGED:
+                    return "[rejected] (stale info)";
+                case REJECTED_NODELETE:
+                    return "[rejected] (remote does not support deleting refs)";
+                case REJECTED_OTHER_REASON:
+                    return "[remote rejected] (" + update.getMessage() + ")";
+                default:
+                    return "[" + update.getStatus() + "]" + (update.getMessage() != null ? " (" + update.getMessage() + ")" : "");
+            }
         }
 
 
-        public String toString() {
-            return StreamUtils.stream(pushResults).
-                map(pushResult -> "remoteUpdates: [" +
-                    toString(pushResult::getRemoteUpdates) + "], " +
-                    "messages: " + pushResult.getMessages() + ", " +
-                    "advertisedRefs: [" + toString(pushResult::getAdvertisedRefs) + "], " +
-                    "trackingRefs: [" + toString(pushResult::getTrackingRefUpdates) + "]").
-                collect(joining(lineSeparator()));
+        private static String abbrev(@Nullable ObjectId objectId) {
+            return objectId != null ? objectId.abbreviate(7).name() : "0000000";
+        }
+    }
+
+
+    /**
+     * The push could not be done at all (e.g., the connection failed)
+     */
+    public static class FailedPushResult extends ThePushResult {
+        private final String message;
+
+
+        public FailedPushResult(String message) {
+            this.message = message;
+            success = false;
         }
 
 
-        @SuppressWarnings("TypeParameterExplicitlyExtendsObject")
-        private static String toString(Supplier<Collection<? extends @NonNull Object>> supplier) {
-            return supplier.get().stream().map(Object::toString).collect(joining(", "));
+        public String toString() {
+            return message;
         }
     }
 
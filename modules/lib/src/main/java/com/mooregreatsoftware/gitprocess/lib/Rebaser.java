@@ -15,17 +15,30 @@
  */
 package com.mooregreatsoftware.gitprocess.lib;
 
+import com.mooregreatsoftware.gitprocess.config.GeneralConfig;
+import com.mooregreatsoftware.gitprocess.lib.InCoreCombiner.Combined;
 import javaslang.control.Either;
 import javaslang.control.Try;
+import org.eclipse.jgit.api.RebaseCommand;
 import org.eclipse.jgit.api.RebaseResult;
+import org.eclipse.jgit.lib.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import java.util.Optional;
 
 import static javaslang.control.Either.left;
 import static javaslang.control.Either.right;
 
+/**
+ * Rebases the current branch.
+ * <p>
+ * By default (see {@link GeneralConfig#inCoreRebase()}) the commits are replayed in memory with
+ * {@link InCoreCombiner}, and the index and working directory are only updated once, to the final result. If that
+ * can not be done (e.g., there is a conflict, or local changes are in the way) then JGit's {@link RebaseCommand}
+ * is used, which checks out each commit as it goes and stops on a conflict so it can be resolved.
+ */
 public class Rebaser {
     private static final Logger LOG = LoggerFactory.getLogger(Rebaser.class);
 
@@ -37,6 +50,44 @@ public class Rebaser {
 
         LOG.debug("Rebasing {} with {}", currentBranch, baseBranch.shortName());
 
+        if (gitLib.generalConfig().inCoreRebase()) {
+            final Either<String, SuccessfulRebase> inCoreResult = inCoreRebase(gitLib, currentBranch, baseBranch);
+            if (inCoreResult.isRight()) return inCoreResult;
+            LOG.info("Could not rebase in memory ({}) so doing a normal rebase", inCoreResult.getLeft());
+        }
+
+        return workingTreeRebase(gitLib, baseBranch);
+    }
+
+
+    /**
+     * Rebase without touching the working directory until the very end.
+     *
+     * @return Left(why it could not be done; nothing will have been changed), Right(the result)
+     */
+    static Either<String, SuccessfulRebase> inCoreRebase(GitLib gitLib, Branch currentBranch, Branch baseBranch) {
+        final ObjectId oldHead = currentBranch.objectId();
+        final ObjectId upstream = baseBranch.objectId();
+
+        final Either<String, Combined> eCombined = InCoreCombiner.of(gitLib).rebase(oldHead, upstream);
+        if (eCombined.isLeft()) return left(eCombined.getLeft());
+
+        final Combined combined = eCombined.get();
+        if (combined.status() == Combined.Status.UP_TO_DATE) {
+            return right(new SuccessfulRebase(RebaseResult.Status.UP_TO_DATE));
+        }
+
+        final String reflogMessage = "rebase finished: " + currentBranch.name() + " onto " + upstream.name();
+        final Optional<String> checkoutError = currentBranch.checkoutMovedTo(oldHead, combined.newHead(), reflogMessage);
+        if (checkoutError.isPresent()) return left(checkoutError.get());
+
+        LOG.debug("Rebased in memory: {} new commits", combined.commitsCreated());
+        return right(new SuccessfulRebase(
+            combined.status() == Combined.Status.FAST_FORWARD ? RebaseResult.Status.FAST_FORWARD : RebaseResult.Status.OK));
+    }
+
+
+    private static Either<String, SuccessfulRebase> workingTreeRebase(GitLib gitLib, Branch baseBranch) {
         final Either<Throwable, RebaseResult> rebaseResults =
             Try.of(() -> gitLib.jgit().rebase().setUpstream(baseBranch.objectId()).call()).toEither();
 
@@ -52,7 +103,11 @@ public class Rebaser {
      * All this is from the comments. It's accessible in MergeResults.Status, but not here :-(
      */
     protected static String statusToErrorMessage(RebaseResult rebaseResult) {
-        final RebaseResult.Status status = rebaseResult.getStatus();
+        return statusToErrorMessage(rebaseResult.getStatus());
+    }
+
+
+    protected static String statusToErrorMessage(RebaseResult.Status status) {
         switch (status) {
             case OK:
                 return "OK; Rebase was successful, HEAD points to the new commit";
@@ -80,16 +135,21 @@ public class Rebaser {
 
     public static class SuccessfulRebase {
         @Nonnull
-        private final RebaseResult rebaseResult;
+        private final RebaseResult.Status status;
 
 
         public SuccessfulRebase(@Nonnull RebaseResult rebaseResult) {
-            this.rebaseResult = rebaseResult;
+            this.status = rebaseResult.getStatus();
+        }
+
+
+        public SuccessfulRebase(@Nonnull RebaseResult.Status status) {
+            this.status = status;
         }
 
 
         public String statusMsg() {
-            return statusToErrorMessage(rebaseResult);
+            return statusToErrorMessage(status);
         }
 
 
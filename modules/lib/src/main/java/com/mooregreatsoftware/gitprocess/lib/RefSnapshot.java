@@ -0,0 +1,234 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.events.ListenerHandle;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.RefDatabase;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.e;
+import static org.eclipse.jgit.lib.Constants.HEAD;
+import static org.eclipse.jgit.lib.Constants.PACKED_REFS;
+
+/**
+ * A point-in-time copy of all the references in the repository, shared by {@link DefaultBranches} and
+ * {@link Branch} so that looking up the same handful of refs over and over does not go back to the ref database.
+ * <p>
+ * The packed-refs and loose refs are loaded in one pass. The copy is thrown away when
+ * <ul>
+ * <li>JGit reports that the refs changed, for this repository or any other JGit repository in this process that
+ * has the same directory (e.g., the receiving side of a push over a "file://" URL)</li>
+ * <li>"HEAD" or "packed-refs" have been modified behind JGit's back</li>
+ * <li>{@link #invalidate()} is called, which should be done after running something like the "git" program
+ * that changes refs outside of this process</li>
+ * </ul>
+ * Checking if the copy is still good costs the same however many refs there are: a counter and two file stamps.
+ * (Loose refs written by another process are not noticed on their own, since that would mean looking at every
+ * directory under "refs" on every lookup.)
+ */
+public class RefSnapshot implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(RefSnapshot.class);
+
+    private final Repository repository;
+    private final ListenerHandle listenerHandle;
+
+    private final AtomicLong generation = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile @Nullable Snapshot snapshot;
+
+
+    public RefSnapshot(Repository repository) {
+        this.repository = repository;
+        // the global list also gets the events of other Repository instances, such as one opened to receive a push
+        this.listenerHandle = Repository.getGlobalListenerList().addRefsChangedListener(event -> {
+            if (isSameRepository(event.getRepository())) invalidate();
+        });
+    }
+
+
+    private boolean isSameRepository(Repository other) {
+        if (other == repository) return true;
+        final @Nullable File directory = repository.getDirectory();
+        return directory != null && directory.equals(other.getDirectory());
+    }
+
+
+    /**
+     * Find the reference with exactly the given name (e.g., "refs/heads/master" or "HEAD")
+     *
+     * @return null if it does not exist
+     */
+    public @Nullable Ref exactRef(String name) {
+        return refs().get(name);
+    }
+
+
+    /**
+     * Find the reference, using the same search rules as git (e.g., "master" finds "refs/heads/master")
+     *
+     * @return null if it does not exist
+     * @see Repository#findRef(String)
+     */
+    public @Nullable Ref findRef(String name) {
+        return RefDatabase.findRef(refs(), name);
+    }
+
+
+    /**
+     * The OID the reference (ultimately) points to.
+     *
+     * @param name the full name of the reference
+     * @return null if the reference does not exist or does not point to anything (e.g., an unborn HEAD)
+     */
+    public @Nullable ObjectId objectId(String name) {
+        final Ref ref = exactRef(name);
+        return ref != null ? ref.getObjectId() : null;
+    }
+
+
+    /**
+     * All the references, keyed by their full name
+     */
+    @NonNull
+    public NavigableMap<String, Ref> refs() {
+        final Snapshot current = this.snapshot;
+        if (current != null && current.isCurrent(generation.get())) {
+            hits.incrementAndGet();
+            return current.refs;
+        }
+
+        misses.incrementAndGet();
+        return load().refs;
+    }
+
+
+    /**
+     * The references whose full names start with the prefix (e.g., "refs/remotes/origin/"), in name order.
+     * <p>
+     * This is a view over the range of the loaded references with that prefix, so it costs the same however many
+     * other references there are.
+     */
+    @NonNull
+    public Stream<Ref> refs(String prefix) {
+        // every name with the prefix sorts before the prefix followed by the highest character
+        return refs().subMap(prefix, true, prefix + Character.MAX_VALUE, false).values().stream();
+    }
+
+
+    private synchronized Snapshot load() {
+        final long gen = generation.get();
+        final Snapshot current = this.snapshot;
+        if (current != null && current.isCurrent(gen)) return current;
+
+        // stamp the files before reading so a change made while reading is seen as a modification
+        final List<FileStamp> stamps = stamps(repository.getDirectory());
+
+        @SuppressWarnings("RedundantCast")
+        final Map<String, Ref> refs = (@NonNull Map<String, Ref>)e(() -> repository.getRefDatabase().getRefs(RefDatabase.ALL));
+        LOG.debug("Loaded {} references", refs.size());
+
+        final Snapshot newSnapshot = new Snapshot(Collections.unmodifiableNavigableMap(new TreeMap<>(refs)), gen, stamps);
+        this.snapshot = newSnapshot;
+        return newSnapshot;
+    }
+
+
+    /**
+     * The files whose modification means that the refs have been changed by another process: "HEAD" (e.g., a
+     * checkout) and "packed-refs" (e.g., a gc)
+     */
+    private static List<FileStamp> stamps(@Nullable File gitDir) {
+        if (gitDir == null) return Collections.emptyList(); // in-memory repository
+
+        return Arrays.asList(
+            new FileStamp(new File(gitDir, HEAD).toPath()),
+            new FileStamp(new File(gitDir, PACKED_REFS).toPath()));
+    }
+
+
+    /**
+     * Throw away the loaded references so they are read again on next use.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+    }
+
+
+    /**
+     * The number of lookups that were answered from the loaded references
+     */
+    public long hits() {
+        return hits.get();
+    }
+
+
+    /**
+     * The number of lookups that had to (re)load the references
+     */
+    public long misses() {
+        return misses.get();
+    }
+
+
+    @Override
+    public void close() {
+        listenerHandle.remove();
+    }
+
+
+    @Override
+    public String toString() {
+        return "RefSnapshot{hits=" + hits + ", misses=" + misses + "}";
+    }
+
+
+    private static final class Snapshot {
+        private final NavigableMap<String, Ref> refs;
+        private final long generation;
+        private final List<FileStamp> stamps;
+
+
+        private Snapshot(NavigableMap<String, Ref> refs, long generation, List<FileStamp> stamps) {
+            this.refs = refs;
+            this.generation = generation;
+            this.stamps = stamps;
+        }
+
+
+        private boolean isCurrent(long currentGeneration) {
+            return generation == currentGeneration && stamps.stream().noneMatch(FileStamp::isModified);
+        }
+    }
+
+}
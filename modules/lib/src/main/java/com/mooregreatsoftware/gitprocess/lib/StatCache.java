@@ -0,0 +1,187 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The blob ids of working directory files, keyed by path, modification time, size and inode, so that a file that
+ * has not changed never needs to be hashed again. Kept in ".git/gitprocess/stat-cache" between runs.
+ * <p>
+ * Like {@link FileStamp}, an id is not trusted if the file was modified so close to when it was hashed that
+ * another write could have landed in the same filesystem timestamp tick.
+ * <p>
+ * Thread-safe.
+ */
+public class StatCache {
+    private static final Logger LOG = LoggerFactory.getLogger(StatCache.class);
+
+    private static final int VERSION = 1;
+    private static final long FINE_RACY_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long COARSE_RACY_NANOS = TimeUnit.MILLISECONDS.toNanos(2500);
+
+    private final Path file;
+    private final Map<String, Stat> stats;
+    private volatile boolean dirty;
+
+
+    private StatCache(Path file, Map<String, Stat> stats) {
+        this.file = file;
+        this.stats = stats;
+    }
+
+
+    /**
+     * Reads the cache for the repository. A missing, unreadable or out-of-date cache file is treated as empty.
+     */
+    public static StatCache load(Repository repository) {
+        final Path file = new File(repository.getDirectory(), "gitprocess/stat-cache").toPath();
+        final Map<String, Stat> stats = new ConcurrentHashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() == VERSION) {
+                final int count = in.readInt();
+                final byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+                for (int i = 0; i < count; i++) {
+                    final String path = in.readUTF();
+                    final long lastModified = in.readLong();
+                    final long length = in.readLong();
+                    final String fileKey = in.readUTF();
+                    in.readFully(rawId);
+                    final long hashedAt = in.readLong();
+                    stats.put(path, new Stat(lastModified, length, fileKey, ObjectId.fromRaw(rawId), hashedAt));
+                }
+            }
+        }
+        catch (NoSuchFileException e) {
+            LOG.debug("No stat cache at {}", file);
+        }
+        catch (IOException e) {
+            LOG.warn("Ignoring the stat cache at {}: {}", file, e.toString());
+            stats.clear();
+        }
+        return new StatCache(file, stats);
+    }
+
+
+    /**
+     * @return the id recorded for the file, or null if the file is not known or may have changed
+     */
+    public @Nullable ObjectId get(String path, long lastModified, long length, String fileKey) {
+        final Stat stat = stats.get(path);
+        if (stat == null || stat.lastModified != lastModified || stat.length != length || !stat.fileKey.equals(fileKey))
+            return null;
+
+        final long window = lastModified % TimeUnit.SECONDS.toNanos(1) == 0 ? COARSE_RACY_NANOS : FINE_RACY_NANOS;
+        return stat.hashedAt - lastModified < window ? null : stat.id;
+    }
+
+
+    /**
+     * Records the id of a file that was just hashed.
+     */
+    public void put(String path, long lastModified, long length, String fileKey, ObjectId id) {
+        final long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        stats.put(path, new Stat(lastModified, length, fileKey, id.copy(), now));
+        dirty = true;
+    }
+
+
+    /**
+     * Forgets the files that are not in "paths" (e.g., because they were deleted).
+     */
+    public void retainAll(Set<String> paths) {
+        if (stats.keySet().retainAll(paths)) dirty = true;
+    }
+
+
+    public int size() {
+        return stats.size();
+    }
+
+
+    /**
+     * Writes the cache back to disk if anything has changed since it was loaded.
+     */
+    public void save() throws IOException {
+        if (!dirty) return;
+        Files.createDirectories(file.getParent());
+        final Path tmp = Files.createTempFile(file.getParent(), "stat-cache", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                final byte[] rawId = new byte[Constants.OBJECT_ID_LENGTH];
+                out.writeInt(VERSION);
+                final Map<String, Stat> snapshot = new HashMap<>(stats);
+                out.writeInt(snapshot.size());
+                for (Map.Entry<String, Stat> entry : snapshot.entrySet()) {
+                    final Stat stat = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeLong(stat.lastModified);
+                    out.writeLong(stat.length);
+                    out.writeUTF(stat.fileKey);
+                    stat.id.copyRawTo(rawId, 0);
+                    out.write(rawId);
+                    out.writeLong(stat.hashedAt);
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            dirty = false;
+            LOG.debug("Wrote {} entries to {}", stats.size(), file);
+        }
+        finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+
+    private static final class Stat {
+        final long lastModified;
+        final long length;
+        final String fileKey;
+        final ObjectId id;
+        final long hashedAt;
+
+
+        Stat(long lastModified, long length, String fileKey, ObjectId id, long hashedAt) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.fileKey = fileKey;
+            this.id = id;
+            this.hashedAt = hashedAt;
+        }
+    }
+
+}
@@ -0,0 +1,642 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.dircache.DirCache;
+import org.eclipse.jgit.dircache.DirCacheBuilder;
+import org.eclipse.jgit.dircache.DirCacheEntry;
+import org.eclipse.jgit.ignore.IgnoreNode;
+import org.eclipse.jgit.ignore.IgnoreNode.MatchResult;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.CoreConfig;
+import org.eclipse.jgit.lib.FileMode;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.ObjectInserter;
+import org.eclipse.jgit.lib.ObjectReader;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.treewalk.WorkingTreeOptions;
+import org.eclipse.jgit.util.FS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Scans the working directory in parallel, the way JGit's (single-threaded) {@code FileTreeIterator} does for
+ * status and add.
+ * <p>
+ * Each directory is a fork/join task. A file's blob id is worked out as cheaply as possible:
+ * <ol>
+ * <li>the index entry's id, if the index's stat data matches and is not "racily clean"</li>
+ * <li>the {@link StatCache}'s id, if its path, modification time, size and inode match</li>
+ * <li>hashing the file (memory-mapped if it is large), then recording it in the {@link StatCache}</li>
+ * </ol>
+ * The scanner does not apply any conversions (e.g., "core.autocrlf") on the way into the index, so check
+ * {@link #canScan(Repository)} first. Submodules and nested repositories are skipped.
+ */
+public class WorktreeScanner implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(WorktreeScanner.class);
+
+    /**
+     * Files at least this big are memory-mapped for hashing rather than read into an array
+     */
+    static final long MMAP_THRESHOLD = 1024 * 1024;
+
+    private static final long MAX_MAP_SIZE = 1L << 30;
+
+    private final Repository repository;
+    private final Path workTree;
+    private final StatCache statCache;
+    private final ForkJoinPool pool;
+    private final boolean fileMode;
+    private final boolean posix;
+
+
+    public WorktreeScanner(Repository repository, int threads) {
+        this(repository, StatCache.load(repository), threads);
+    }
+
+
+    public WorktreeScanner(Repository repository, StatCache statCache, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads < 1");
+        this.repository = repository;
+        this.workTree = repository.getWorkTree().toPath();
+        this.statCache = statCache;
+        this.pool = new ForkJoinPool(threads);
+        this.fileMode = repository.getFS().supportsExecute() &&
+            repository.getConfig().getBoolean(ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_KEY_FILEMODE, true);
+        this.posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+    }
+
+
+    /**
+     * A scanner using all the available processors.
+     */
+    public static WorktreeScanner of(GitLib gitLib) {
+        return new WorktreeScanner(gitLib.repository(), Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Would the scanner come up with the same blob ids as JGit? Not if there is no working directory, or if line
+     * endings are converted on the way into the index.
+     */
+    public static boolean canScan(Repository repository) {
+        if (repository.isBare()) return false;
+        final WorkingTreeOptions options = repository.getConfig().get(WorkingTreeOptions.KEY);
+        return options.getAutoCRLF() == CoreConfig.AutoCRLF.FALSE;
+    }
+
+
+    public StatCache statCache() {
+        return statCache;
+    }
+
+
+    /**
+     * The files in the working directory.
+     *
+     * @param index            the index to compare stat data against
+     * @param filepattern      a file or directory (relative to the top of the working directory) to limit the scan
+     *                         to; "" or "." for everything
+     * @param includeUntracked include files that are not in the index (other than ignored ones)? If not, directories
+     *                         that only exist in the working directory are not read at all
+     * @return the scanned files by path
+     */
+    public Map<String, ScannedFile> scan(DirCache index, String filepattern, boolean includeUntracked) throws IOException {
+        return scan(new IndexLookup(index, repository.getIndexFile()), filepattern, includeUntracked);
+    }
+
+
+    private Map<String, ScannedFile> scan(IndexLookup lookup, String filepattern, boolean includeUntracked) throws IOException {
+        final String prefix = filepattern.equals(".") ? "" : filepattern.replaceAll("/+$", "");
+        final Map<String, ScannedFile> found = new ConcurrentHashMap<>();
+
+        @Nullable Ignores ignores = includeUntracked ? Ignores.root(repository) : null;
+        if (ignores != null && !prefix.isEmpty()) {
+            // pick up the .gitignore files of the directories above what is being scanned
+            ignores = ignores.enter(workTree, "");
+            final String[] parts = prefix.split("/");
+            String dirPath = "";
+            for (int i = 0; i < parts.length - 1; i++) {
+                dirPath = dirPath.isEmpty() ? parts[i] : dirPath + "/" + parts[i];
+                ignores = ignores.enter(workTree.resolve(dirPath), dirPath);
+            }
+        }
+
+        final Path start = prefix.isEmpty() ? workTree : workTree.resolve(prefix);
+        if (!Files.exists(start, LinkOption.NOFOLLOW_LINKS)) return found;
+
+        final BasicFileAttributes attrs = readAttributes(start);
+        if (!attrs.isDirectory()) {
+            final DirCacheEntry entry = lookup.entry(prefix);
+            if (entry != null || (ignores != null && !ignores.isIgnored(prefix, false))) {
+                found.put(prefix, scanFile(start, prefix, attrs, entry, lookup));
+            }
+            return found;
+        }
+
+        try {
+            pool.invoke(new DirectoryTask(start, prefix, ignores, lookup, found));
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        LOG.debug("Scanned {} files under \"{}\"", found.size(), prefix);
+
+        if (prefix.isEmpty() && includeUntracked) statCache.retainAll(found.keySet());
+        return found;
+    }
+
+
+    /**
+     * Adds the files matching "filepattern" to the index, like {@code git add <filepattern>}. Files that are in the
+     * index but no longer in the working directory are left alone.
+     *
+     * @param filepattern a file or directory (relative to the top of the working directory); "." for everything
+     * @return the updated index
+     */
+    public DirCache add(String filepattern) throws IOException {
+        final DirCache dirCache = repository.lockDirCache();
+        try {
+            final IndexLookup lookup = new IndexLookup(dirCache, repository.getIndexFile());
+            final Map<String, ScannedFile> scanned = scan(lookup, filepattern, true);
+
+            insertBlobs(scanned.values().stream().
+                filter(file -> !lookup.records(file)).
+                collect(Collectors.toList()));
+
+            final DirCacheBuilder builder = dirCache.builder();
+            for (int i = 0; i < dirCache.getEntryCount(); i++) {
+                final DirCacheEntry entry = dirCache.getEntry(i);
+                final ScannedFile file = scanned.get(entry.getPathString());
+                if (file == null) builder.add(entry);
+                else if (entry.getStage() == DirCacheEntry.STAGE_0 && lookup.statMatches(entry, file)) {
+                    builder.add(entry);
+                    scanned.remove(file.path());
+                }
+            }
+            scanned.values().forEach(file -> builder.add(file.toEntry()));
+
+            if (!builder.commit()) throw new IOException("Could not write " + repository.getIndexFile());
+            return dirCache;
+        }
+        finally {
+            dirCache.unlock(); // does nothing if the commit worked
+        }
+    }
+
+
+    /**
+     * Writes the blobs that are not already in the object database, splitting them between the threads.
+     */
+    private void insertBlobs(List<ScannedFile> files) throws IOException {
+        if (files.isEmpty()) return;
+        final int chunks = Math.min(pool.getParallelism(), files.size());
+        final List<RecursiveAction> tasks = new ArrayList<>(chunks);
+        for (int c = 0; c < chunks; c++) {
+            final List<ScannedFile> chunk = files.subList(files.size() * c / chunks, files.size() * (c + 1) / chunks);
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    try {
+                        insertChunk(chunk);
+                    }
+                    catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                }
+            });
+        }
+        try {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+        catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+
+    private void insertChunk(List<ScannedFile> files) throws IOException {
+        try (ObjectReader reader = repository.newObjectReader(); ObjectInserter inserter = repository.newObjectInserter()) {
+            for (ScannedFile file : files) {
+                if (reader.has(file.id())) continue;
+                final ObjectId id;
+                try (InputStream in = open(file)) {
+                    id = inserter.insert(Constants.OBJ_BLOB, file.length(), in);
+                }
+                if (!id.equals(file.id())) throw new IOException("\"" + file.path() + "\" changed while it was being added");
+            }
+            inserter.flush();
+        }
+    }
+
+
+    private InputStream open(ScannedFile file) throws IOException {
+        final Path path = workTree.resolve(file.path());
+        return file.mode() == FileMode.SYMLINK ?
+            new ByteArrayInputStream(linkTarget(path)) :
+            Files.newInputStream(path);
+    }
+
+
+    private ScannedFile scanFile(Path file, String path, BasicFileAttributes attrs,
+                                 @Nullable DirCacheEntry entry, IndexLookup lookup) throws IOException {
+        final FileMode mode = mode(attrs, entry);
+        final byte @Nullable [] linkTarget = mode == FileMode.SYMLINK ? linkTarget(file) : null;
+        final long length = linkTarget != null ? linkTarget.length : attrs.size();
+        final long lastModified = attrs.lastModifiedTime().to(TimeUnit.NANOSECONDS);
+        final String fileKey = attrs.fileKey() != null ? attrs.fileKey().toString() : "";
+
+        @Nullable ObjectId id = null;
+        if (entry != null && entry.getStage() == DirCacheEntry.STAGE_0 &&
+            lookup.statMatches(entry, mode, length, attrs.lastModifiedTime().toMillis())) {
+            id = entry.getObjectId();
+        }
+        if (id == null) id = statCache.get(path, lastModified, length, fileKey);
+        if (id == null) {
+            id = linkTarget != null ? hash(linkTarget) : hash(file);
+            statCache.put(path, lastModified, length, fileKey, id);
+        }
+        return new ScannedFile(path, mode, length, attrs.lastModifiedTime().toMillis(), id);
+    }
+
+
+    private FileMode mode(BasicFileAttributes attrs, @Nullable DirCacheEntry entry) {
+        if (attrs.isSymbolicLink()) return FileMode.SYMLINK;
+        if (!fileMode) {
+            // keep whatever the index says
+            return entry != null && entry.getFileMode() == FileMode.EXECUTABLE_FILE ? FileMode.EXECUTABLE_FILE : FileMode.REGULAR_FILE;
+        }
+        return attrs instanceof PosixFileAttributes &&
+            ((PosixFileAttributes)attrs).permissions().contains(PosixFilePermission.OWNER_EXECUTE) ?
+            FileMode.EXECUTABLE_FILE : FileMode.REGULAR_FILE;
+    }
+
+
+    private BasicFileAttributes readAttributes(Path path) throws IOException {
+        return posix ?
+            Files.readAttributes(path, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS) :
+            Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+    }
+
+
+    private static byte[] linkTarget(Path path) throws IOException {
+        return Constants.encode(Files.readSymbolicLink(path).toString().replace(File.separatorChar, '/'));
+    }
+
+
+    private static ObjectId hash(byte[] content) {
+        final MessageDigest md = Constants.newMessageDigest();
+        blobHeader(md, content.length);
+        md.update(content);
+        return ObjectId.fromRaw(md.digest());
+    }
+
+
+    private static ObjectId hash(Path file) throws IOException {
+        final MessageDigest md = Constants.newMessageDigest();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            final long size = channel.size();
+            blobHeader(md, size);
+            if (size >= MMAP_THRESHOLD) {
+                for (long pos = 0; pos < size; pos += MAX_MAP_SIZE) {
+                    md.update(channel.map(FileChannel.MapMode.READ_ONLY, pos, Math.min(MAX_MAP_SIZE, size - pos)));
+                }
+            }
+            else {
+                final ByteBuffer buffer = ByteBuffer.allocate((int)size);
+                while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                    // keep reading
+                }
+                buffer.flip();
+                md.update(buffer);
+            }
+        }
+        return ObjectId.fromRaw(md.digest());
+    }
+
+
+    private static void blobHeader(MessageDigest md, long length) {
+        md.update(Constants.encodedTypeString(Constants.OBJ_BLOB));
+        md.update((byte)' ');
+        md.update(Constants.encodeASCII(length));
+        md.update((byte)0);
+    }
+
+
+    /**
+     * Saves the {@link StatCache} and shuts down the threads.
+     */
+    @Override
+    public void close() throws IOException {
+        pool.shutdown();
+        statCache.save();
+    }
+
+
+    private final class DirectoryTask extends RecursiveAction {
+        private final Path dir;
+        private final String dirPath;
+        private final @Nullable Ignores parentIgnores;
+        private final IndexLookup lookup;
+        private final Map<String, ScannedFile> found;
+
+
+        DirectoryTask(Path dir, String dirPath, @Nullable Ignores parentIgnores,
+                      IndexLookup lookup, Map<String, ScannedFile> found) {
+            this.dir = dir;
+            this.dirPath = dirPath;
+            this.parentIgnores = parentIgnores;
+            this.lookup = lookup;
+            this.found = found;
+        }
+
+
+        @Override
+        protected void compute() {
+            try {
+                invokeAll(scanDirectory());
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+
+        private List<DirectoryTask> scanDirectory() throws IOException {
+            // null means untracked files are not wanted
+            final @Nullable Ignores ignores = parentIgnores != null ? parentIgnores.enter(dir, dirPath) : null;
+            final List<DirectoryTask> subtasks = new ArrayList<>();
+            try (DirectoryStream<Path> children = Files.newDirectoryStream(dir)) {
+                for (Path child : children) {
+                    final String name = child.getFileName().toString();
+                    if (name.equals(Constants.DOT_GIT)) continue;
+                    final String path = dirPath.isEmpty() ? name : dirPath + "/" + name;
+
+                    final boolean trackedDir = lookup.isTrackedDirectory(path);
+                    final @Nullable DirCacheEntry entry = lookup.entry(path);
+                    if (ignores == null && !trackedDir && entry == null) continue; // untracked; skip without a stat
+
+                    final BasicFileAttributes attrs = readAttributes(child);
+                    if (attrs.isDirectory()) {
+                        if (Files.exists(child.resolve(Constants.DOT_GIT), LinkOption.NOFOLLOW_LINKS)) continue; // nested repository
+                        if (!trackedDir && (ignores == null || ignores.isIgnored(path, true))) continue;
+                        subtasks.add(new DirectoryTask(child, path, ignores, lookup, found));
+                    }
+                    else if (attrs.isRegularFile() || attrs.isSymbolicLink()) {
+                        if (entry == null && (ignores == null || ignores.isIgnored(path, false))) continue;
+                        found.put(path, scanFile(child, path, attrs, entry, lookup));
+                    }
+                }
+            }
+            return subtasks;
+        }
+    }
+
+
+    /**
+     * Answers questions about the index without walking it.
+     */
+    private static final class IndexLookup {
+        private final Map<String, DirCacheEntry> entries;
+        private final Set<String> trackedDirectories;
+        private final long indexLastModified;
+
+
+        IndexLookup(DirCache index, File indexFile) {
+            this.entries = new HashMap<>(index.getEntryCount() * 2);
+            this.trackedDirectories = new HashSet<>();
+            for (int i = 0; i < index.getEntryCount(); i++) {
+                final DirCacheEntry entry = index.getEntry(i);
+                final String path = entry.getPathString();
+                entries.putIfAbsent(path, entry);
+                for (int slash = path.lastIndexOf('/'); slash > 0; slash = path.lastIndexOf('/', slash - 1)) {
+                    if (!trackedDirectories.add(path.substring(0, slash))) break;
+                }
+            }
+            this.indexLastModified = indexFile.lastModified();
+        }
+
+
+        @Nullable DirCacheEntry entry(String path) {
+            return entries.get(path);
+        }
+
+
+        boolean isTrackedDirectory(String path) {
+            return trackedDirectories.contains(path);
+        }
+
+
+        /**
+         * Is the file's content already recorded (as a stage 0 entry) in the index?
+         */
+        boolean records(ScannedFile file) {
+            final DirCacheEntry entry = entries.get(file.path());
+            return entry != null && entry.getStage() == DirCacheEntry.STAGE_0 && file.matches(entry);
+        }
+
+
+        boolean statMatches(DirCacheEntry entry, ScannedFile file) {
+            return statMatches(entry, file.mode(), file.length(), file.lastModified());
+        }
+
+
+        /**
+         * Does the index's stat data for the file match? Entries that are "racily clean" (modified in the same
+         * timestamp tick as the index was written, or smudged by JGit for the same reason) never match.
+         */
+        boolean statMatches(DirCacheEntry entry, FileMode mode, long length, long lastModifiedMillis) {
+            return !entry.isSmudged() &&
+                entry.getFileMode().getBits() == mode.getBits() &&
+                entry.getLength() == (int)length &&
+                entry.getLastModified() == lastModifiedMillis &&
+                lastModifiedMillis < indexLastModified;
+        }
+    }
+
+
+    /**
+     * A chain of ignore rules, from the deepest directory's .gitignore up to "core.excludesFile"
+     */
+    private static final class Ignores {
+        private final IgnoreNode node;
+        private final String base;
+        private final @Nullable Ignores parent;
+
+
+        private Ignores(IgnoreNode node, String base, @Nullable Ignores parent) {
+            this.node = node;
+            this.base = base;
+            this.parent = parent;
+        }
+
+
+        /**
+         * "core.excludesFile" and ".git/info/exclude"
+         */
+        static Ignores root(Repository repository) throws IOException {
+            Ignores ignores = new Ignores(new IgnoreNode(), "", null);
+
+            final String excludesFile = repository.getConfig().get(CoreConfig.KEY).getExcludesFile();
+            if (excludesFile != null) {
+                final FS fs = repository.getFS();
+                final File file = excludesFile.startsWith("~/") ?
+                    fs.resolve(fs.userHome(), excludesFile.substring(2)) :
+                    fs.resolve(null, excludesFile);
+                ignores = ignores.withFile(file.toPath(), "");
+            }
+            return ignores.withFile(new File(repository.getDirectory(), Constants.INFO_EXCLUDE).toPath(), "");
+        }
+
+
+        /**
+         * Adds the directory's .gitignore, if it has one
+         */
+        Ignores enter(Path dir, String dirPath) throws IOException {
+            return withFile(dir.resolve(Constants.DOT_GIT_IGNORE), dirPath.isEmpty() ? "" : dirPath + "/");
+        }
+
+
+        private Ignores withFile(Path file, String base) throws IOException {
+            if (!Files.isRegularFile(file)) return this;
+            final IgnoreNode ignoreNode = new IgnoreNode();
+            try (InputStream in = Files.newInputStream(file)) {
+                ignoreNode.parse(in);
+            }
+            return new Ignores(ignoreNode, base, this);
+        }
+
+
+        boolean isIgnored(String path, boolean isDirectory) {
+            for (Ignores ignores = this; ignores != null; ignores = ignores.parent) {
+                final MatchResult result = ignores.node.isIgnored(path.substring(ignores.base.length()), isDirectory);
+                if (result == MatchResult.IGNORED) return true;
+                if (result == MatchResult.NOT_IGNORED) return false;
+            }
+            return false;
+        }
+    }
+
+
+    /**
+     * A file in the working directory and its blob id
+     */
+    public static final class ScannedFile {
+        private final String path;
+        private final FileMode mode;
+        private final long length;
+        private final long lastModified;
+        private final ObjectId id;
+
+
+        ScannedFile(String path, FileMode mode, long length, long lastModified, ObjectId id) {
+            this.path = path;
+            this.mode = mode;
+            this.length = length;
+            this.lastModified = lastModified;
+            this.id = id;
+        }
+
+
+        public String path() {
+            return path;
+        }
+
+
+        public FileMode mode() {
+            return mode;
+        }
+
+
+        public long length() {
+            return length;
+        }
+
+
+        /**
+         * @return milliseconds since the epoch
+         */
+        public long lastModified() {
+            return lastModified;
+        }
+
+
+        public ObjectId id() {
+            return id;
+        }
+
+
+        /**
+         * Does the entry have the same mode and content?
+         */
+        public boolean matches(DirCacheEntry entry) {
+            return entry.getFileMode().getBits() == mode.getBits() && id.equals(entry.getObjectId());
+        }
+
+
+        DirCacheEntry toEntry() {
+            final DirCacheEntry entry = new DirCacheEntry(path);
+            entry.setFileMode(mode);
+            entry.setObjectId(id);
+            entry.setLength(length);
+            entry.setLastModified(lastModified);
+            return entry;
+        }
+
+
+        @Override
+        public String toString() {
+            return path + " " + id.abbreviate(7).name();
+        }
+    }
+
+}
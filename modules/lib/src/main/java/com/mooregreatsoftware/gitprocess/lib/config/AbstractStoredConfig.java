@@ -20,45 +20,73 @@ import org.eclipse.jgit.lib.StoredConfig;
 
 import javax.annotation.Nullable;
 
-import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.v;
-
+/**
+ * Base for the views onto the git configuration. All the views for a repository share a {@link ConfigStore}, so
+ * they see each other's changes and can be written together with {@link #batch()}.
+ */
 public abstract class AbstractStoredConfig {
-    protected final StoredConfig storedConfig;
+    protected final ConfigStore configStore;
 
 
-    public AbstractStoredConfig(StoredConfig storedConfig) {
-        this.storedConfig = storedConfig;
+    public AbstractStoredConfig(ConfigStore configStore) {
+        this.configStore = configStore;
+    }
+
+
+    /**
+     * The parsed configuration, refreshed if the file has changed
+     */
+    protected StoredConfig storedConfig() {
+        return configStore.config();
+    }
+
+
+    /**
+     * Collect changes until the returned batch is closed, then write them all at once.
+     *
+     * @see ConfigStore#batch()
+     */
+    public ConfigBatch batch() {
+        return configStore.batch();
     }
 
 
     @SuppressWarnings("RedundantCast")
     protected String getString(String section, @Nullable String subsection, String key) {
-        return storedConfig.getString(section, (@NonNull String)subsection, key);
+        return storedConfig().getString(section, (@NonNull String)subsection, key);
     }
 
 
     @SuppressWarnings("RedundantCast")
     protected void setString(String section, @Nullable String subsection, String key, String value) {
-        storedConfig.setString(section, (@NonNull String)subsection, key, value);
-        save();
+        storedConfig().setString(section, (@NonNull String)subsection, key, value);
+        configStore.modified();
     }
 
 
     @SuppressWarnings("RedundantCast")
     protected boolean getBoolean(String section, @Nullable String subsection, String key, boolean defaultValue) {
-        return storedConfig.getBoolean(section, (@NonNull String)subsection, key, defaultValue);
+        return storedConfig().getBoolean(section, (@NonNull String)subsection, key, defaultValue);
     }
 
 
     @SuppressWarnings("RedundantCast")
     protected void setBoolean(String section, @Nullable String subsection, String key, boolean value) {
-        storedConfig.setBoolean(section, (@NonNull String)subsection, key, value);
-        save();
+        storedConfig().setBoolean(section, (@NonNull String)subsection, key, value);
+        configStore.modified();
+    }
+
+
+    @SuppressWarnings("RedundantCast")
+    protected long getLong(String section, @Nullable String subsection, String key, long defaultValue) {
+        return storedConfig().getLong(section, (@NonNull String)subsection, key, defaultValue);
     }
 
 
-    protected void save() {
-        v(storedConfig::save);
+    @SuppressWarnings("RedundantCast")
+    protected void setLong(String section, @Nullable String subsection, String key, long value) {
+        storedConfig().setLong(section, (@NonNull String)subsection, key, value);
+        configStore.modified();
     }
 
 }
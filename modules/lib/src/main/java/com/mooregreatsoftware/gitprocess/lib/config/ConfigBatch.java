@@ -0,0 +1,43 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib.config;
+
+/**
+ * A set of configuration changes that are written together when this is closed.
+ *
+ * @see ConfigStore#batch()
+ */
+public final class ConfigBatch implements AutoCloseable {
+    private final ConfigStore configStore;
+    private boolean closed;
+
+
+    ConfigBatch(ConfigStore configStore) {
+        this.configStore = configStore;
+    }
+
+
+    /**
+     * Writes the changes if this is the outermost batch.
+     */
+    @Override
+    public void close() {
+        if (closed) return;
+        closed = true;
+        configStore.endBatch();
+    }
+
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib.config;
+
+import com.mooregreatsoftware.gitprocess.lib.FileStamp;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.eclipse.jgit.storage.file.FileBasedConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static com.mooregreatsoftware.gitprocess.lib.ExecUtils.v;
+
+/**
+ * The git configuration shared by the {@link AbstractStoredConfig} views (branch, remote, general, etc.).
+ * <p>
+ * Reading goes through the already-parsed configuration, which is only parsed again when the file's modification
+ * time or size changes.
+ * <p>
+ * Writing normally saves immediately, but inside of a {@link #batch()} the changes are collected and saved in
+ * one (lock-file protected) write when the outermost batch is closed.
+ */
+public class ConfigStore {
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigStore.class);
+
+    private final StoredConfig storedConfig;
+    private final @Nullable File file;
+
+    private @Nullable FileStamp stamp;
+    private int batchDepth;
+    private boolean dirty;
+
+
+    public ConfigStore(StoredConfig storedConfig) {
+        this.storedConfig = storedConfig;
+        this.file = (storedConfig instanceof FileBasedConfig) ? ((FileBasedConfig)storedConfig).getFile() : null;
+        load();
+    }
+
+
+    /**
+     * The parsed configuration, re-read first if the file has been changed by something else.
+     */
+    public synchronized StoredConfig config() {
+        if (batchDepth == 0 && stamp != null && stamp.isModified()) {
+            LOG.debug("{} has changed; reloading", file);
+            load();
+        }
+        return storedConfig;
+    }
+
+
+    /**
+     * Starts collecting changes so they are written all at once.
+     * <p>
+     * Batches may be nested; the changes are written when the outermost is closed.
+     * <pre>
+     * try (ConfigBatch batch = configStore.batch()) {
+     *     ...
+     * }
+     * </pre>
+     */
+    public synchronized ConfigBatch batch() {
+        batchDepth++;
+        return new ConfigBatch(this);
+    }
+
+
+    /**
+     * Called after the configuration has been changed in memory.
+     */
+    synchronized void modified() {
+        if (batchDepth > 0) {
+            dirty = true;
+        }
+        else {
+            save();
+        }
+    }
+
+
+    synchronized void endBatch() {
+        if (batchDepth == 0) throw new IllegalStateException("Not in a batch");
+        batchDepth--;
+        if (batchDepth == 0 && dirty) {
+            save();
+        }
+    }
+
+
+    private void load() {
+        stampFile();
+        v(storedConfig::load);
+    }
+
+
+    private void save() {
+        LOG.debug("Writing {}", file);
+        v(storedConfig::save);
+        dirty = false;
+        // what is in memory is what was just written, so there is no need to read it back unless something else
+        // has written to it since
+        if (file != null) stamp = FileStamp.written(file.toPath(), storedConfig.toText().getBytes(StandardCharsets.UTF_8));
+    }
+
+
+    private void stampFile() {
+        if (file != null) stamp = new FileStamp(file.toPath());
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib.config;
+
+import com.jcraft.jsch.OpenSSHConfig;
+import com.mooregreatsoftware.gitprocess.lib.FileStamp;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Process-wide cache of parsed OpenSSH configuration files, so "~/.ssh/config" is only read and parsed again
+ * when it changes.
+ */
+public final class SshConfigCache {
+    private static final Logger LOG = LoggerFactory.getLogger(SshConfigCache.class);
+
+    private static final ConcurrentMap<Path, Entry> ENTRIES = new ConcurrentHashMap<>();
+
+
+    private SshConfigCache() {
+    }
+
+
+    /**
+     * The user's SSH configuration ("~/.ssh/config")
+     *
+     * @return null if there is no such file or it can not be parsed
+     */
+    public static @Nullable OpenSSHConfig userConfig() {
+        return config(Paths.get(System.getProperty("user.home"), ".ssh", "config"));
+    }
+
+
+    /**
+     * The parsed SSH configuration in the given file. The same instance is returned until the file is modified.
+     *
+     * @return null if there is no such file or it can not be parsed
+     */
+    public static @Nullable OpenSSHConfig config(Path file) {
+        final Entry entry = ENTRIES.compute(file.toAbsolutePath(), (path, current) ->
+            (current != null && !current.stamp.isModified()) ? current : load(path));
+        return entry.config;
+    }
+
+
+    private static Entry load(Path file) {
+        // stamp before reading so a change made while reading is seen as a modification
+        final FileStamp stamp = new FileStamp(file);
+        if (!Files.isRegularFile(file)) return new Entry(stamp, null);
+
+        LOG.debug("Parsing SSH configuration in {}", file);
+        try {
+            final String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+            return new Entry(stamp, OpenSSHConfig.parse(text));
+        }
+        catch (IOException e) {
+            LOG.warn("Could not parse SSH Config file {}: {}", file, e.toString());
+            return new Entry(stamp, null);
+        }
+    }
+
+
+    private static final class Entry {
+        private final FileStamp stamp;
+        private final @Nullable OpenSSHConfig config;
+
+
+        private Entry(FileStamp stamp, @Nullable OpenSSHConfig config) {
+            this.stamp = stamp;
+            this.config = config;
+        }
+    }
+
+}
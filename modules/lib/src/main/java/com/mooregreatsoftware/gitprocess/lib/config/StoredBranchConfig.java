@@ -19,36 +19,58 @@ import com.mooregreatsoftware.gitprocess.config.BranchConfig;
 import com.mooregreatsoftware.gitprocess.config.RemoteConfig;
 import com.mooregreatsoftware.gitprocess.lib.Branch;
 import com.mooregreatsoftware.gitprocess.lib.Branches;
-import com.mooregreatsoftware.gitprocess.lib.ExecUtils;
-import com.mooregreatsoftware.gitprocess.lib.StreamUtils;
+import com.mooregreatsoftware.gitprocess.lib.RefSnapshot;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Ref;
 import org.eclipse.jgit.lib.Repository;
-import org.eclipse.jgit.lib.StoredConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_BRANCH_SECTION;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_MERGE;
 import static org.eclipse.jgit.lib.ConfigConstants.CONFIG_KEY_REMOTE;
+import static org.eclipse.jgit.lib.Constants.HEAD;
 import static org.eclipse.jgit.lib.Constants.MASTER;
+import static org.eclipse.jgit.lib.Constants.R_HEADS;
+import static org.eclipse.jgit.lib.Constants.R_REFS;
+import static org.eclipse.jgit.lib.Constants.R_REMOTES;
 
 @SuppressWarnings({"ConstantConditions", "RedundantTypeArguments"})
 public class StoredBranchConfig extends AbstractStoredConfig implements BranchConfig {
     private static final Logger LOG = LoggerFactory.getLogger(StoredBranchConfig.class);
 
+    /**
+     * The most branch names to list when warning that the integration branch could not be found
+     */
+    private static final int MAX_BRANCHES_TO_LIST = 20;
+
+    /**
+     * Where {@link com.mooregreatsoftware.gitprocess.lib.GitLib#fetchPullRequest(int, boolean)} puts a pull request,
+     * relative to "refs/remotes/&lt;remote&gt;/" (and to "refs/" on the server)
+     */
+    private static final Pattern PULL_REQUEST_REF = Pattern.compile("pull/\\d+/(head|merge)");
+
     private final RemoteConfig remoteConfig;
     private final Branches branches;
+    private final RefSnapshot refSnapshot;
+
+    private volatile @Nullable IntegrationBranchResolution resolution;
 
 
-    public StoredBranchConfig(StoredConfig storedConfig, RemoteConfig remoteConfig, Branches branches) {
-        super(storedConfig);
+    public StoredBranchConfig(ConfigStore configStore, RemoteConfig remoteConfig, Branches branches, RefSnapshot refSnapshot) {
+        super(configStore);
         this.remoteConfig = remoteConfig;
         this.branches = branches;
+        this.refSnapshot = refSnapshot;
     }
 
 
@@ -56,8 +78,11 @@ public class StoredBranchConfig extends AbstractStoredConfig implements BranchCo
      * Returns the integration branch to use.
      * <p>
      * If one is explicitly defined in "gitProcess.integrationBranch" then always use that.
-     * If there are remotes defined, then gets the "master" branch from the default remote.
+     * If there are remotes defined, then uses the branch the default remote's "HEAD" points to, falling back
+     * to the "master" branch from the default remote.
      * Otherwise checks to see if "master" exists locally.
+     * <p>
+     * The answer is remembered until the configuration or the references change.
      *
      * @return null if it can't compute a reasonable value
      * @see RemoteConfig#remoteName()
@@ -65,10 +90,30 @@ public class StoredBranchConfig extends AbstractStoredConfig implements BranchCo
     @Override
     @Nullable
     public Branch integrationBranch() {
-        final Branch configIntegrationBranch = integrationBranchFromGitConfig();
-        if (configIntegrationBranch != null) return configIntegrationBranch;
+        final String configured = getString(GIT_PROCESS_SECTION_NAME, null, INTEGRATION_BRANCH_KEY);
+        final boolean hasRemotes = remoteConfig.hasRemotes();
+        final String remoteName = hasRemotes ? remoteConfig.remoteName() : null;
+        final Map<String, Ref> refs = refSnapshot.refs();
+
+        final IntegrationBranchResolution current = this.resolution;
+        if (current != null && current.isFor(configured, hasRemotes, remoteName, refs)) return current.branch;
 
-        return remoteConfig.hasRemotes() ? integrationBranchFromRemoteBranches() : integrationBranchFromLocalBranches();
+        final Branch branch = resolveIntegrationBranch(configured, hasRemotes, remoteName);
+        this.resolution = new IntegrationBranchResolution(configured, hasRemotes, remoteName, refs, branch);
+        return branch;
+    }
+
+
+    @Nullable
+    private Branch resolveIntegrationBranch(@Nullable String configured, boolean hasRemotes, @Nullable String remoteName) {
+        if (configured != null) {
+            LOG.debug("integrationBranch(): {}.{} has a value of \"{}\" so using that",
+                GIT_PROCESS_SECTION_NAME, INTEGRATION_BRANCH_KEY, configured);
+            final Branch configIntegrationBranch = branches.branch(configured);
+            if (configIntegrationBranch != null) return configIntegrationBranch;
+        }
+
+        return hasRemotes ? integrationBranchFromRemoteBranches(remoteName) : integrationBranchFromLocalBranches();
     }
 
 
@@ -85,46 +130,45 @@ public class StoredBranchConfig extends AbstractStoredConfig implements BranchCo
 
 
     @Nullable
-    private Branch integrationBranchFromRemoteBranches() {
-        // TODO: Figure out how to get the remote HEAD.  FETCH_HEAD?
-        // Appears to be indirectly in FetchResult.getAdvertisedRefs()
-        return ExecUtils.<@Nullable Branch>e(() -> {
-            // if remote has "master", assume that's the integration branch.
-            // otherwise give up and return empty()
-            final String remoteName = remoteConfig.remoteName();
-            if (remoteName == null) return null;
-            final String lookFor = remoteName + "/" + MASTER;
-            final Branch branch = searchForBranch(branches.remoteBranches(), lookFor);
-
-            logIntegrationBranch(lookFor, branch, branches.remoteBranches());
-            return branch;
-        });
+    private Branch integrationBranchFromRemoteBranches(@Nullable String remoteName) {
+        if (remoteName == null) return null;
+        final String remotePrefix = R_REMOTES + remoteName + "/";
+
+        // use what the remote says its default branch is
+        final Ref remoteHead = refSnapshot.exactRef(remotePrefix + HEAD);
+        if (remoteHead != null && remoteHead.isSymbolic()) {
+            final Branch branch = branches.branch(remoteHead.getTarget().getName());
+            if (branch != null) {
+                LOG.debug("integrationBranch(): {} points to \"{}\"", remoteName + "/" + HEAD, branch.shortName());
+                return branch;
+            }
+        }
+
+        // if remote has "master", assume that's the integration branch.
+        // otherwise give up and return null
+        final Branch branch = exactBranch(remotePrefix + MASTER);
+        logIntegrationBranch(remoteName + "/" + MASTER, branch, () -> branches.remoteBranches(remoteName));
+        return branch;
     }
 
 
     @Nullable
     private Branch integrationBranchFromLocalBranches() {
-        return ExecUtils.<@Nullable Branch>e(() -> {
-            // if have "master", assume that's the integration branch.
-            // otherwise give up and return empty()
-            final String lookFor = MASTER;
-            final Branch branch = searchForBranch(branches.localBranches(), lookFor);
-
-            logIntegrationBranch(lookFor, branch, branches.localBranches());
-            return branch;
-        });
+        // if have "master", assume that's the integration branch.
+        // otherwise give up and return null
+        final Branch branch = exactBranch(R_HEADS + MASTER);
+        logIntegrationBranch(MASTER, branch, () -> branches.branches(R_HEADS));
+        return branch;
     }
 
 
     @Nullable
-    private Branch searchForBranch(Iterator<Branch> branches, String branchName) {
-        return StreamUtils.stream(branches).
-            filter(branch -> branch.shortName().equals(branchName)).
-            findFirst().orElse(null);
+    private Branch exactBranch(String refName) {
+        return refSnapshot.exactRef(refName) != null ? branches.branch(refName) : null;
     }
 
 
-    private static void logIntegrationBranch(String branchName, @Nullable Branch branch, Iterator<Branch> branches) {
+    private static void logIntegrationBranch(String branchName, @Nullable Branch branch, Supplier<Stream<Branch>> branches) {
         if (branch != null) {
             LOG.debug("integrationBranch(): have a \"{}\" branch", branch.shortName());
         }
@@ -132,7 +176,8 @@ public class StoredBranchConfig extends AbstractStoredConfig implements BranchCo
             LOG.warn("Do not have a \"{}\" branch: [{}]\n" +
                     "Fix with `git config {}.{} [branch_name]`",
                 branchName,
-                StreamUtils.stream(branches).
+                branches.get().
+                    limit(MAX_BRANCHES_TO_LIST).
                     map(Branch::shortName).
                     collect(Collectors.joining(", ")),
                 GIT_PROCESS_SECTION_NAME, INTEGRATION_BRANCH_KEY
@@ -141,40 +186,34 @@ public class StoredBranchConfig extends AbstractStoredConfig implements BranchCo
     }
 
 
-    @Nullable
-    private Branch integrationBranchFromGitConfig() {
-        final String branchName = getString(GIT_PROCESS_SECTION_NAME, null, INTEGRATION_BRANCH_KEY);
-        if (branchName != null) {
-            LOG.debug("integrationBranch(): {}.{} has a value of \"{}\" so using that",
-                GIT_PROCESS_SECTION_NAME, INTEGRATION_BRANCH_KEY, branchName);
-            return branches.branch(branchName);
-        }
-        return null;
-    }
-
-
     @Override
     public BranchConfig setUpstream(Branch branch, Branch upstream) {
         final String branchShortName = branch.shortName();
 
-        Optional<String> remoteName = upstream.remoteName();
-        if (remoteName.isPresent()) {
-            String upstreamBranchName = upstream.shortName();
-            setString(CONFIG_BRANCH_SECTION,
-                branchShortName, CONFIG_KEY_REMOTE,
-                remoteName.get());
-            final String upstreamNameWithoutRemote = upstreamBranchName.substring(remoteName.get().length() + 1);
-            setString(CONFIG_BRANCH_SECTION,
-                branchShortName, CONFIG_KEY_MERGE,
-                Constants.R_HEADS + upstreamNameWithoutRemote);
-            LOG.info("Setting upstream for \"{}\" to remote \"{}\" on \"{}\"", branch.shortName(), upstreamNameWithoutRemote, remoteName.get());
-        }
-        else {
-            setString(CONFIG_BRANCH_SECTION,
-                branchShortName, CONFIG_KEY_REMOTE, ".");
-            setString(CONFIG_BRANCH_SECTION,
-                branchShortName, CONFIG_KEY_MERGE, upstream.shortName());
-            LOG.info("Setting upstream for \"{}\" to local \"{}\"", branch.shortName(), upstream.shortName());
+        // both keys are written in one go
+        try (ConfigBatch ignored = batch()) {
+            Optional<String> remoteName = upstream.remoteName();
+            if (remoteName.isPresent()) {
+                String upstreamBranchName = upstream.shortName();
+                setString(CONFIG_BRANCH_SECTION,
+                    branchShortName, CONFIG_KEY_REMOTE,
+                    remoteName.get());
+                final String upstreamNameWithoutRemote = upstreamBranchName.substring(remoteName.get().length() + 1);
+                // a fetched pull request is not a branch on the server, so "git pull" needs its real ref
+                final String mergeRef = PULL_REQUEST_REF.matcher(upstreamNameWithoutRemote).matches() ?
+                    R_REFS + upstreamNameWithoutRemote : Constants.R_HEADS + upstreamNameWithoutRemote;
+                setString(CONFIG_BRANCH_SECTION,
+                    branchShortName, CONFIG_KEY_MERGE,
+                    mergeRef);
+                LOG.info("Setting upstream for \"{}\" to remote \"{}\" on \"{}\"", branch.shortName(), upstreamNameWithoutRemote, remoteName.get());
+            }
+            else {
+                setString(CONFIG_BRANCH_SECTION,
+                    branchShortName, CONFIG_KEY_REMOTE, ".");
+                setString(CONFIG_BRANCH_SECTION,
+                    branchShortName, CONFIG_KEY_MERGE, upstream.shortName());
+                LOG.info("Setting upstream for \"{}\" to local \"{}\"", branch.shortName(), upstream.shortName());
+            }
         }
         return this;
     }
@@ -199,7 +238,8 @@ public class StoredBranchConfig extends AbstractStoredConfig implements BranchCo
             throw new IllegalStateException("There is no configuration value for \"" + CONFIG_BRANCH_SECTION + '.' + branch.shortName() + '.' + CONFIG_KEY_MERGE + "\", which is an invalid Git state");
         }
 
-        final String fullRemotePath = remotePath + Repository.shortenRefName(upstreamBranchName);
+        final String fullRemotePath = remotePath + (upstreamBranchName.startsWith(R_REFS + "pull/") ?
+            upstreamBranchName.substring(R_REFS.length()) : Repository.shortenRefName(upstreamBranchName));
 
         final Branch upstream = branches.branch(fullRemotePath);
 
@@ -210,4 +250,36 @@ public class StoredBranchConfig extends AbstractStoredConfig implements BranchCo
         return upstream;
     }
 
+
+
+    /**
+     * The integration branch that was computed, along with everything it was computed from
+     */
+    private static final class IntegrationBranchResolution {
+        private final @Nullable String configured;
+        private final boolean hasRemotes;
+        private final @Nullable String remoteName;
+        private final Map<String, Ref> refs;
+        private final @Nullable Branch branch;
+
+
+        private IntegrationBranchResolution(@Nullable String configured, boolean hasRemotes, @Nullable String remoteName,
+                                            Map<String, Ref> refs, @Nullable Branch branch) {
+            this.configured = configured;
+            this.hasRemotes = hasRemotes;
+            this.remoteName = remoteName;
+            this.refs = refs;
+            this.branch = branch;
+        }
+
+
+        private boolean isFor(@Nullable String configured, boolean hasRemotes, @Nullable String remoteName, Map<String, Ref> refs) {
+            // the snapshot hands back the same Map until the references change
+            return this.refs == refs &&
+                this.hasRemotes == hasRemotes &&
+                Objects.equals(this.configured, configured) &&
+                Objects.equals(this.remoteName, remoteName);
+        }
+    }
+
 }
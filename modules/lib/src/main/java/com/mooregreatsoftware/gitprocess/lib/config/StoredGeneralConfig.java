@@ -16,7 +16,6 @@
 package com.mooregreatsoftware.gitprocess.lib.config;
 
 import com.mooregreatsoftware.gitprocess.config.GeneralConfig;
-import org.eclipse.jgit.lib.StoredConfig;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -26,8 +25,8 @@ public class StoredGeneralConfig extends AbstractStoredConfig implements General
     private static final Logger LOG = LoggerFactory.getLogger(StoredGeneralConfig.class);
 
 
-    public StoredGeneralConfig(StoredConfig storedConfig) {
-        super(storedConfig);
+    public StoredGeneralConfig(ConfigStore configStore) {
+        super(configStore);
     }
 
 
@@ -45,6 +44,118 @@ public class StoredGeneralConfig extends AbstractStoredConfig implements General
     }
 
 
+    @Override
+    public boolean inCoreRebase() {
+        return getBoolean(GIT_PROCESS_SECTION_NAME, null, IN_CORE_REBASE_KEY, true);
+    }
+
+
+    @Override
+    public GeneralConfig inCoreRebase(boolean inCoreRebase) {
+        LOG.debug("Setting in-core rebase to {}", inCoreRebase);
+        setBoolean(GIT_PROCESS_SECTION_NAME, null, IN_CORE_REBASE_KEY, inCoreRebase);
+        return this;
+    }
+
+
+    @Override
+    public boolean inCoreMerge() {
+        return getBoolean(GIT_PROCESS_SECTION_NAME, null, IN_CORE_MERGE_KEY, true);
+    }
+
+
+    @Override
+    public GeneralConfig inCoreMerge(boolean inCoreMerge) {
+        LOG.debug("Setting in-core merge to {}", inCoreMerge);
+        setBoolean(GIT_PROCESS_SECTION_NAME, null, IN_CORE_MERGE_KEY, inCoreMerge);
+        return this;
+    }
+
+
+    @Override
+    public boolean countUntrackedFiles() {
+        return getBoolean(GIT_PROCESS_SECTION_NAME, null, COUNT_UNTRACKED_FILES_KEY, false);
+    }
+
+
+    @Override
+    public GeneralConfig countUntrackedFiles(boolean countUntrackedFiles) {
+        LOG.debug("Setting count untracked files to {}", countUntrackedFiles);
+        setBoolean(GIT_PROCESS_SECTION_NAME, null, COUNT_UNTRACKED_FILES_KEY, countUntrackedFiles);
+        return this;
+    }
+
+
+    @Override
+    public boolean parallelScan() {
+        return getBoolean(GIT_PROCESS_SECTION_NAME, null, PARALLEL_SCAN_KEY, false);
+    }
+
+
+    @Override
+    public GeneralConfig parallelScan(boolean parallelScan) {
+        LOG.debug("Setting parallel scan to {}", parallelScan);
+        setBoolean(GIT_PROCESS_SECTION_NAME, null, PARALLEL_SCAN_KEY, parallelScan);
+        return this;
+    }
+
+
+    @Override
+    public long httpCacheTtl() {
+        return getLong(GIT_PROCESS_SECTION_NAME, null, HTTP_CACHE_TTL_KEY, 0);
+    }
+
+
+    @Override
+    public GeneralConfig httpCacheTtl(long seconds) {
+        LOG.debug("Setting the HTTP cache TTL to {} seconds", seconds);
+        setLong(GIT_PROCESS_SECTION_NAME, null, HTTP_CACHE_TTL_KEY, seconds);
+        return this;
+    }
+
+
+    @Override
+    public long httpCacheMaxSize() {
+        return getLong(GIT_PROCESS_SECTION_NAME, null, HTTP_CACHE_MAX_SIZE_KEY, 10L * 1024 * 1024);
+    }
+
+
+    @Override
+    public GeneralConfig httpCacheMaxSize(long bytes) {
+        LOG.debug("Setting the HTTP cache max size to {} bytes", bytes);
+        setLong(GIT_PROCESS_SECTION_NAME, null, HTTP_CACHE_MAX_SIZE_KEY, bytes);
+        return this;
+    }
+
+
+    @Override
+    public long httpPoolSize() {
+        return getLong(GIT_PROCESS_SECTION_NAME, null, HTTP_POOL_SIZE_KEY, DEFAULT_HTTP_POOL_SIZE);
+    }
+
+
+    @Override
+    public GeneralConfig httpPoolSize(long connections) {
+        LOG.debug("Setting the HTTP pool size to {}", connections);
+        setLong(GIT_PROCESS_SECTION_NAME, null, HTTP_POOL_SIZE_KEY, connections);
+        return this;
+    }
+
+
+    @Override
+    public long httpPoolIdleTimeout() {
+        return getLong(GIT_PROCESS_SECTION_NAME, null, HTTP_POOL_IDLE_TIMEOUT_KEY, DEFAULT_HTTP_POOL_IDLE_TIMEOUT);
+    }
+
+
+    @Override
+    public GeneralConfig httpPoolIdleTimeout(long seconds) {
+        LOG.debug("Setting the HTTP pool idle timeout to {} seconds", seconds);
+        setLong(GIT_PROCESS_SECTION_NAME, null, HTTP_POOL_IDLE_TIMEOUT_KEY, seconds);
+        return this;
+    }
+
+
     @Override
     public Optional<String> oauthToken() {
         // TODO: Enhance to look in the git-credential-helper
@@ -20,7 +20,6 @@ import com.jcraft.jsch.OpenSSHConfig;
 import com.mooregreatsoftware.gitprocess.config.RemoteConfig;
 import com.mooregreatsoftware.gitprocess.lib.StreamUtils;
 import org.eclipse.jgit.api.errors.GitAPIException;
-import org.eclipse.jgit.lib.StoredConfig;
 import org.eclipse.jgit.transport.URIish;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -28,13 +27,13 @@ import org.slf4j.LoggerFactory;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
+import java.io.UncheckedIOException;
 import java.net.URI;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.stream.Collectors;
@@ -50,12 +49,14 @@ public class StoredRemoteConfig extends AbstractStoredConfig implements RemoteCo
 
     private final RemoteAdder remoteAdder;
 
+    private final Map<String, NormalizedUrl> normalizedUrls = new ConcurrentHashMap<>();
+
     @SuppressWarnings("MalformedRegex")
     private static final Pattern SSH_URN_PATTERN = Pattern.compile("^(?!http)(?:(?<user>\\S+?)@)?(?<host>\\S+?):(?<path>.*)$");
 
 
-    public StoredRemoteConfig(StoredConfig storedConfig, RemoteAdder remoteAdder) {
-        super(storedConfig);
+    public StoredRemoteConfig(ConfigStore configStore, RemoteAdder remoteAdder) {
+        super(configStore);
         this.remoteAdder = remoteAdder;
     }
 
@@ -65,7 +66,7 @@ public class StoredRemoteConfig extends AbstractStoredConfig implements RemoteCo
      */
     @Override
     public boolean hasRemotes() {
-        return storedConfig.getSections().contains(REMOTE_SECTION_NAME);
+        return storedConfig().getSections().contains(REMOTE_SECTION_NAME);
     }
 
 
@@ -146,9 +147,9 @@ public class StoredRemoteConfig extends AbstractStoredConfig implements RemoteCo
     @Override
     @SuppressWarnings("RedundantCast")
     public Iterable<String> remoteNames() {
-        return (Iterable<String>)storedConfig.getSections().stream().
+        return (Iterable<String>)storedConfig().getSections().stream().
             filter(REMOTE_SECTION_NAME::equals).
-            flatMap(section -> storedConfig.getSubsections(section).stream()).
+            flatMap(section -> storedConfig().getSubsections(section).stream()).
             collect(Collectors.toList());
     }
 
@@ -209,60 +210,62 @@ public class StoredRemoteConfig extends AbstractStoredConfig implements RemoteCo
     @Nullable
     @Override
     public URI remoteUrl(String remoteName) {
-        String urlStr = getString(REMOTE_SECTION_NAME, remoteName, "url");
+        final String urlStr = getString(REMOTE_SECTION_NAME, remoteName, "url");
         if (urlStr == null) {
             LOG.warn("Could not find a repository URL for {}", remoteName);
             return null;
         }
 
-        urlStr = normalizeUrl(urlStr);
+        final OpenSSHConfig sshConfig = SshConfigCache.userConfig();
+        final NormalizedUrl cached = normalizedUrls.get(remoteName);
+        if (cached != null && cached.isFor(urlStr, sshConfig)) return cached.uri;
 
-        final URI uri = URI.create(urlStr);
+        final URI uri = URI.create(normalizeUrl(urlStr, sshConfig));
         LOG.debug("remote URI: {}", uri);
+        normalizedUrls.put(remoteName, new NormalizedUrl(urlStr, sshConfig, uri));
         return uri;
     }
 
 
     protected static String normalizeUrl(String urlStr) {
-        File sshDir = new File(System.getenv("user.home"), ".ssh");
-        if (sshDir.exists() && sshDir.isDirectory()) {
-            File sshConfigFile = new File(sshDir, "config");
-            if (sshConfigFile.exists()) {
-                try {
-                    return normalizeUrl(urlStr, new FileReader(sshConfigFile));
-                }
-                catch (FileNotFoundException e) {
-                    return normalizeUrl(urlStr, null);
-                }
+        return normalizeUrl(urlStr, SshConfigCache.userConfig());
+    }
+
+
+    protected static String normalizeUrl(String urlStr, @Nullable Reader sshConfigReader) {
+        if (sshConfigReader == null) return normalizeUrl(urlStr, (OpenSSHConfig)null);
+
+        try (BufferedReader bufferedReader = new BufferedReader(sshConfigReader)) {
+            final String text = bufferedReader.lines().collect(Collectors.joining(System.lineSeparator()));
+            try {
+                return normalizeUrl(urlStr, OpenSSHConfig.parse(text));
+            }
+            catch (IOException e) {
+                LOG.warn("Could not parse SSH Config file:\n{}", text);
+                return normalizeUrl(urlStr, (OpenSSHConfig)null);
             }
         }
-        return normalizeUrl(urlStr, null);
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
 
 
-    protected static String normalizeUrl(String urlStr, @Nullable Reader sshConfigReader) {
+    protected static String normalizeUrl(String urlStr, @Nullable OpenSSHConfig openSSHConfig) {
         final Matcher matcher = SSH_URN_PATTERN.matcher(urlStr);
         if (matcher.matches()) {
             String user = matcher.group("user");
             String host = matcher.group("host");
             final String path = matcher.group("path");
 
-            if (sshConfigReader != null) {
-                final BufferedReader bufferedReader = new BufferedReader(sshConfigReader);
-                final String text = bufferedReader.lines().collect(Collectors.joining(System.lineSeparator()));
-                try {
-                    final OpenSSHConfig openSSHConfig = OpenSSHConfig.parse(text);
-                    final ConfigRepository.Config sshConfig = openSSHConfig.getConfig(host);
-                    if (sshConfig.getHostname() != null) {
-                        host = sshConfig.getHostname();
-                        if (user == null && sshConfig.getUser() != null) {
-                            user = sshConfig.getUser();
-                        }
+            if (openSSHConfig != null) {
+                final ConfigRepository.Config sshConfig = openSSHConfig.getConfig(host);
+                if (sshConfig.getHostname() != null) {
+                    host = sshConfig.getHostname();
+                    if (user == null && sshConfig.getUser() != null) {
+                        user = sshConfig.getUser();
                     }
                 }
-                catch (IOException e) {
-                    LOG.warn("Could not parse SSH Config file:\n{}", text);
-                }
             }
 
             urlStr = "ssh://" + (user != null ? user + '@' : "") + host + '/' + path;
@@ -270,4 +273,27 @@ public class StoredRemoteConfig extends AbstractStoredConfig implements RemoteCo
         return urlStr;
     }
 
+
+    /**
+     * A remote's URL after normalization, along with what it was computed from
+     */
+    private static final class NormalizedUrl {
+        private final String urlStr;
+        private final @Nullable OpenSSHConfig sshConfig;
+        private final URI uri;
+
+
+        private NormalizedUrl(String urlStr, @Nullable OpenSSHConfig sshConfig, URI uri) {
+            this.urlStr = urlStr;
+            this.sshConfig = sshConfig;
+            this.uri = uri;
+        }
+
+
+        private boolean isFor(String urlStr, @Nullable OpenSSHConfig sshConfig) {
+            // SshConfigCache hands back the same instance until the file changes
+            return this.sshConfig == sshConfig && this.urlStr.equals(urlStr);
+        }
+    }
+
 }
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.process;
+
+import com.mooregreatsoftware.gitprocess.github.PullReqCreator;
+import com.mooregreatsoftware.gitprocess.github.PullRequest;
+import com.mooregreatsoftware.gitprocess.lib.AsyncGitLib;
+import com.mooregreatsoftware.gitprocess.lib.Branch;
+import com.mooregreatsoftware.gitprocess.lib.Branches;
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import com.mooregreatsoftware.gitprocess.lib.SimpleFetchResult;
+import javaslang.control.Either;
+import javaslang.control.Try;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static javaslang.control.Either.left;
+
+/**
+ * The same as {@link Sync}, but the fetch, merge/rebase and push happen on the {@link AsyncGitLib}'s executor.
+ * <p>
+ * {@link GitLib} is not thread-safe, so the steps that use it run one after the other. The only thing that is
+ * overlapped is looking up the GitHub repository for a pull request, which does not use {@link GitLib}.
+ */
+@SuppressWarnings("ConstantConditions")
+public class AsyncSync {
+    private static final Logger LOG = LoggerFactory.getLogger(AsyncSync.class);
+
+    private final AsyncGitLib asyncGitLib;
+
+
+    public AsyncSync(AsyncGitLib asyncGitLib) {
+        this.asyncGitLib = asyncGitLib;
+    }
+
+
+    /**
+     * Syncs local changes with the server.
+     * <p>
+     * The check for uncommitted changes is done on the calling thread, before the fetch is started.
+     *
+     * @return Left(error message) or Right(resulting branch)
+     * @see Sync#sync(GitLib, boolean, boolean)
+     */
+    public CompletableFuture<Either<String, Branch>> sync(boolean doMerge, boolean localOnly) {
+        final GitLib gitLib = asyncGitLib.gitLib();
+        final Branches branches = gitLib.branches();
+
+        final Branch currentBranch = branches.currentBranch();
+        if (currentBranch == null) return completedFuture(left("Not currently on a branch"));
+
+        final Branch integrationBranch = branches.integrationBranch();
+        if (integrationBranch == null) return completedFuture(left("There is no integration branch"));
+
+        if (branches.onParking()) return completedFuture(left("You can not do a sync while on _parking_"));
+
+        final Try<Boolean> tUncommitted = Try.of(gitLib::hasUncommittedChanges);
+        if (tUncommitted.isFailure()) return completedFuture(left(tUncommitted.getCause().toString()));
+        if (tUncommitted.get()) return completedFuture(left("You have uncommitted changes"));
+
+        final CompletableFuture<Either<String, @Nullable SimpleFetchResult>> fetch = gitLib.remoteConfig().hasRemotes() ?
+            asyncGitLib.fetch(Sync.branchesToFetch(gitLib, integrationBranch, currentBranch), false) :
+            completedFuture(Either.<String, @Nullable SimpleFetchResult>right(null));
+
+        return fetch.thenCompose(eFetch -> eFetch.isLeft() ?
+            completedFuture(Either.<String, Branch>left(eFetch.getLeft())) :
+            asyncGitLib.supply(() -> Sync.syncFetched(gitLib, doMerge, localOnly)));
+    }
+
+
+    /**
+     * Syncs local changes with the server, then creates a pull request for them.
+     * <p>
+     * The pull request creator is built on the calling thread before the sync starts, since that reads the
+     * branches and configuration (and may save a new OAuth token) and {@link GitLib} is not thread-safe. Only the
+     * GitHub repository lookup (see {@link PullReqCreator#lookUpRepo()}) runs while the sync does, and the pull
+     * request is only created once the sync has pushed.
+     *
+     * @param pullReqCreator builds the {@link PullReqCreator} (e.g., {@code builder::build})
+     * @return Left(error message) or Right(the new pull request)
+     */
+    public CompletableFuture<Either<String, PullRequest>> syncThenCreatePR(boolean doMerge,
+                                                                            Supplier<PullReqCreator> pullReqCreator) {
+        final Try<PullReqCreator> tCreator = Try.of(pullReqCreator::get);
+        if (tCreator.isFailure()) return completedFuture(left(tCreator.getCause().toString()));
+        final PullReqCreator creator = tCreator.get();
+
+        final CompletableFuture<Either<String, Void>> lookUp = asyncGitLib.supply(creator::lookUpRepo);
+
+        return sync(doMerge, false).
+            thenCombine(lookUp, (eBranch, eLookUp) -> eBranch.flatMap(b -> eLookUp)).
+            thenCompose(eReady -> eReady.isLeft() ?
+                completedFuture(Either.<String, PullRequest>left(eReady.getLeft())) :
+                asyncGitLib.supply(creator::createPR)).
+            whenComplete((ePr, t) -> {
+                if (ePr != null && ePr.isRight())
+                    LOG.info("Created \"{}\" at {}", ePr.get().title(), ePr.get().htmlUrl());
+            });
+    }
+
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.process;
+
+import com.mooregreatsoftware.gitprocess.lib.AncestryIndex;
+import com.mooregreatsoftware.gitprocess.lib.Branch;
+import com.mooregreatsoftware.gitprocess.lib.Branches;
+import com.mooregreatsoftware.gitprocess.lib.ExecUtils;
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import com.mooregreatsoftware.gitprocess.lib.InCoreCombiner;
+import com.mooregreatsoftware.gitprocess.lib.InCoreCombiner.Combined;
+import com.mooregreatsoftware.gitprocess.lib.SimpleFetchResult;
+import javaslang.control.Either;
+import javaslang.control.Try;
+import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static com.mooregreatsoftware.gitprocess.config.BranchConfig.PARKING_BRANCH_NAME;
+import static java.lang.System.lineSeparator;
+import static javaslang.control.Either.left;
+import static javaslang.control.Either.right;
+import static org.eclipse.jgit.lib.Constants.R_HEADS;
+
+/**
+ * Syncs many local branches with the integration branch at once, without checking any of them out.
+ * <p>
+ * This does the same thing as running {@link Sync#sync(GitLib, boolean, boolean)} on each branch, but
+ * <ol>
+ * <li>fetches once, for all the branches</li>
+ * <li>does the merges/rebases in memory (see {@link InCoreCombiner}) on a pool of threads</li>
+ * <li>moves the local branches, only touching the working directory if the current branch changed</li>
+ * <li>pushes all of the branches in a single push</li>
+ * </ol>
+ * A branch that can not be synced (e.g., because of a conflict) is left alone and reported in the
+ * {@link Result}; it does not stop the other branches from being synced.
+ */
+@SuppressWarnings({"ConstantConditions", "RedundantCast"})
+public class BatchSync {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchSync.class);
+
+
+    /**
+     * Syncs the branches with the integration branch using as many threads as there are processors.
+     *
+     * @see #sync(GitLib, Collection, boolean, boolean, int)
+     */
+    public static Either<String, Result> sync(GitLib gitLib,
+                                              Collection<String> branchNames,
+                                              boolean doMerge,
+                                              boolean localOnly) {
+        return sync(gitLib, branchNames, doMerge, localOnly, Runtime.getRuntime().availableProcessors());
+    }
+
+
+    /**
+     * Syncs the branches with the integration branch.
+     *
+     * @param branchNames the local branches to sync; if empty, every local branch other than the integration
+     *                    branch and "_parking_"
+     * @param doMerge     merge instead of rebase
+     * @param localOnly   do not fetch or push
+     * @param threads     the most merges/rebases to do at the same time
+     * @return Left(error message that stopped everything) or Right(what happened to each branch)
+     */
+    public static Either<String, Result> sync(GitLib gitLib,
+                                              Collection<String> branchNames,
+                                              boolean doMerge,
+                                              boolean localOnly,
+                                              int threads) {
+        if (gitLib == null) throw new IllegalArgumentException("gitLib == null");
+        if (threads < 1) throw new IllegalArgumentException("threads < 1");
+
+        final long start = System.nanoTime();
+        final Branches branches = gitLib.branches();
+
+        final Branch integrationBranch = branches.integrationBranch();
+        if (integrationBranch == null) return left("There is no integration branch");
+
+        final Either<String, List<Branch>> eToSync = branchesToSync(branches, integrationBranch, branchNames);
+        if (eToSync.isLeft()) return left(eToSync.getLeft());
+        final List<Branch> toSync = eToSync.get();
+
+        final Branch currentBranch = branches.currentBranch();
+        final boolean syncingCurrent = currentBranch != null && toSync.contains(currentBranch);
+        if (syncingCurrent && gitLib.hasUncommittedChanges()) {
+            return left("You have uncommitted changes");
+        }
+
+        final boolean talkToServer = !localOnly && gitLib.remoteConfig().hasRemotes();
+        if (talkToServer) {
+            final List<String> toFetch = new ArrayList<>();
+            if (integrationBranch.isRemote()) toFetch.add(integrationBranch.simpleName());
+            // only the branches the server has, so one branch that was never pushed does not stop the narrowed fetch
+            toSync.stream().
+                map(Branch::serverBranchName).
+                filter(gitLib::isKnownOnServer).
+                forEach(toFetch::add);
+            final Either<String, @Nullable SimpleFetchResult> fetch = gitLib.fetch(toFetch, false);
+            if (fetch.isLeft()) return left(fetch.getLeft());
+        }
+
+        final ObjectId integrationOid = integrationBranch.objectId();
+        final List<Planned> planned = plan(gitLib, toSync, integrationBranch, integrationOid, doMerge, talkToServer, threads);
+
+        final List<Planned> moved = moveBranches(planned, currentBranch, doMerge, integrationBranch);
+        if (talkToServer) push(gitLib, moved);
+
+        final Result result = new Result(planned.stream().map(Planned::result).collect(Collectors.toList()), doMerge);
+        LOG.info("Synced {} branches in {}ms", toSync.size(), (System.nanoTime() - start) / 1_000_000);
+        return right(result);
+    }
+
+
+    static Either<String, List<Branch>> branchesToSync(Branches branches, Branch integrationBranch, Collection<String> branchNames) {
+        final String integrationName = integrationBranch.simpleName();
+
+        if (branchNames.isEmpty()) {
+            return right(branches.branches(R_HEADS).
+                filter(b -> !b.shortName().equals(integrationName) && !b.shortName().equals(PARKING_BRANCH_NAME)).
+                collect(Collectors.toList()));
+        }
+
+        final List<Branch> toSync = new ArrayList<>(branchNames.size());
+        for (String branchName : branchNames) {
+            final Branch branch = branches.branch(R_HEADS + branchName);
+            if (branch == null) return left("\"" + branchName + "\" is not a local branch");
+            if (branchName.equals(integrationName)) return left("\"" + branchName + "\" is the integration branch");
+            if (!toSync.contains(branch)) toSync.add(branch);
+        }
+        return right(toSync);
+    }
+
+
+    /**
+     * Work out the new OID for each branch, in parallel. Nothing is changed except for writing new objects.
+     */
+    private static List<Planned> plan(GitLib gitLib, List<Branch> toSync, Branch integrationBranch, ObjectId integrationOid,
+                                      boolean doMerge, boolean talkToServer, int threads) {
+        final InCoreCombiner combiner = InCoreCombiner.of(gitLib);
+        final AncestryIndex ancestryIndex = gitLib.ancestryIndex();
+
+        // read everything that goes through the (not thread-safe) branch and config objects up front
+        final List<Planned> planned = toSync.stream().
+            map(branch -> {
+                final String serverBranchName = branch.serverBranchName();
+                final @Nullable Branch remoteBranch = talkToServer ? remoteBranch(gitLib, serverBranchName) : null;
+                return new Planned(branch, branch.objectId(), serverBranchName,
+                    remoteBranch != null ? remoteBranch.objectId() : null,
+                    remoteBranch != null ? remoteBranch.shortName() : null,
+                    talkToServer ? branch.lastSyncedAgainst() : right(null));
+            }).
+            collect(Collectors.toList());
+
+        if (planned.isEmpty()) return planned;
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, planned.size()));
+        try {
+            final List<CompletableFuture<Void>> futures = planned.stream().
+                map(p -> CompletableFuture.runAsync(() ->
+                    Try.run(() -> p.plan(combiner, ancestryIndex, integrationBranch, integrationOid, doMerge)).
+                        onFailure(e -> p.error = ExecUtils.toString(e)), executor)).
+                collect(Collectors.toList());
+            futures.forEach(CompletableFuture::join);
+        }
+        finally {
+            executor.shutdown();
+        }
+        return planned;
+    }
+
+
+    private static @Nullable Branch remoteBranch(GitLib gitLib, String serverBranchName) {
+        final String remoteBranchName = gitLib.remoteConfig().remoteBranchName(serverBranchName);
+        return remoteBranchName != null ? gitLib.branches().branch(remoteBranchName) : null;
+    }
+
+
+    /**
+     * Point the local branches at their new OIDs.
+     *
+     * @return the branches that are ready to push
+     */
+    private static List<Planned> moveBranches(List<Planned> planned, @Nullable Branch currentBranch, boolean doMerge, Branch integrationBranch) {
+        final String reflogMessage = "sync: " + (doMerge ? "merge" : "rebase") + " with " + integrationBranch.shortName();
+        final List<Planned> moved = new ArrayList<>(planned.size());
+        for (Planned p : planned) {
+            if (p.error != null) continue;
+
+            final ObjectId newOid = (@NonNull ObjectId)p.newOid;
+            if (!newOid.equals(p.oldOid)) {
+                // the working directory may have been changed while planning, so do not just reset it
+                final Optional<String> error = p.branch.equals(currentBranch) ?
+                    p.branch.checkoutMovedTo(p.oldOid, newOid, reflogMessage) :
+                    p.branch.moveTo(p.oldOid, newOid, reflogMessage);
+                if (error.isPresent()) {
+                    p.error = error.get();
+                    continue;
+                }
+            }
+            moved.add(p);
+        }
+        return moved;
+    }
+
+
+    /**
+     * Push all of the branches that changed in one go.
+     */
+    private static void push(GitLib gitLib, List<Planned> moved) {
+        final List<Planned> toPush = moved.stream().
+            filter(p -> !((@NonNull ObjectId)p.newOid).equals(p.remoteOid)).
+            collect(Collectors.toList());
+        // nothing to push, but record it like a push would have so the next sync knows where things were
+        moved.stream().filter(p -> !toPush.contains(p)).forEach(p -> {
+            p.pushSummary = "up to date";
+            final String recordError = p.branch.recordLastSyncedAgainst();
+            if (recordError != null) p.error = recordError;
+        });
+
+        if (toPush.isEmpty()) return;
+
+        final String remoteName = (@NonNull String)gitLib.remoteConfig().remoteName();
+        final List<RefSpec> refSpecs = toPush.stream().
+            map(p -> new RefSpec(p.branch.name() + ":" + R_HEADS + p.serverBranchName).setForceUpdate(p.forcePush)).
+            collect(Collectors.toList());
+
+        LOG.info("Pushing {} branches to \"{}\"", refSpecs.size(), remoteName);
+        final Try<PushResult> pushResult = Try.of(() -> gitLib.transportSessions().push(remoteName, refSpecs));
+        if (pushResult.isFailure()) {
+            final String message = ExecUtils.toString(pushResult.getCause());
+            toPush.forEach(p -> p.error = "Push failed: " + message);
+            return;
+        }
+
+        for (Planned p : toPush) {
+            final RemoteRefUpdate update = pushResult.get().getRemoteUpdate(R_HEADS + p.serverBranchName);
+            final RemoteRefUpdate.Status status = update != null ? update.getStatus() : RemoteRefUpdate.Status.NOT_ATTEMPTED;
+            if (status == RemoteRefUpdate.Status.OK || status == RemoteRefUpdate.Status.UP_TO_DATE) {
+                p.pushSummary = status == RemoteRefUpdate.Status.UP_TO_DATE ? "up to date" : p.forcePush ? "forced" : "pushed";
+                final String recordError = p.branch.recordLastSyncedAgainst();
+                if (recordError != null) p.error = recordError;
+            }
+            else {
+                p.error = "Push rejected: " + status + (update != null && update.getMessage() != null ? " (" + update.getMessage() + ")" : "");
+            }
+        }
+    }
+
+
+    /**
+     * The work for a single branch, filled in as it goes through the stages
+     */
+    private static final class Planned {
+        private final Branch branch;
+        private final ObjectId oldOid;
+        private final String serverBranchName;
+        private final @Nullable ObjectId remoteOid;
+        private final @Nullable String remoteBranchName;
+        private final Either<String, @Nullable ObjectId> lastSynced;
+
+        private volatile Combined.@Nullable Status combineStatus;
+        private volatile @Nullable ObjectId newOid;
+        private volatile boolean forcePush;
+        private volatile @Nullable String error;
+        private volatile String pushSummary = "-";
+
+
+        private Planned(Branch branch, ObjectId oldOid, String serverBranchName, @Nullable ObjectId remoteOid,
+                        @Nullable String remoteBranchName, Either<String, @Nullable ObjectId> lastSynced) {
+            this.branch = branch;
+            this.oldOid = oldOid;
+            this.serverBranchName = serverBranchName;
+            this.remoteOid = remoteOid;
+            this.remoteBranchName = remoteBranchName;
+            this.lastSynced = lastSynced;
+        }
+
+
+        /**
+         * The same decisions that {@link Sync} makes for the current branch
+         */
+        private void plan(InCoreCombiner combiner, AncestryIndex ancestryIndex, Branch integrationBranch,
+                          ObjectId integrationOid, boolean doMerge) {
+            final Either<String, Combined> eCombined = combine(combiner, doMerge, oldOid, integrationOid, integrationBranch.shortName());
+            if (eCombined.isLeft()) {
+                error = eCombined.getLeft();
+                return;
+            }
+            Combined combined = eCombined.get();
+
+            if (remoteOid != null && !ancestryIndex.isAncestor(remoteOid, combined.newHead())) {
+                if (lastSynced.isLeft()) {
+                    error = lastSynced.getLeft();
+                    return;
+                }
+                if (!remoteOid.equals(lastSynced.get())) {
+                    LOG.debug("The remote branch for \"{}\" has changed so reconciling with it", branch.shortName());
+                    final Either<String, Combined> eRemote = combine(combiner, doMerge, combined.newHead(), remoteOid, String.valueOf(remoteBranchName));
+                    final Either<String, Combined> eReconciled = eRemote.flatMap(r ->
+                        combine(combiner, doMerge, r.newHead(), integrationOid, integrationBranch.shortName()));
+                    if (eReconciled.isLeft()) {
+                        error = eReconciled.getLeft();
+                        return;
+                    }
+                    combined = new Combined(eReconciled.get().newHead(), Combined.Status.COMBINED, 0);
+                }
+                forcePush = true;
+            }
+
+            combineStatus = combined.newHead().equals(oldOid) ? Combined.Status.UP_TO_DATE : combined.status();
+            newOid = combined.newHead();
+        }
+
+
+        private Either<String, Combined> combine(InCoreCombiner combiner, boolean doMerge, ObjectId tip, ObjectId onto, String ontoName) {
+            return doMerge ?
+                combiner.merge(tip, onto, "Sync merge from " + ontoName + " into " + branch.shortName()) :
+                combiner.rebase(tip, onto);
+        }
+
+
+        private BranchResult result() {
+            return new BranchResult(branch.shortName(), oldOid, newOid, combineStatus, error, pushSummary);
+        }
+    }
+
+
+    /**
+     * What happened to one branch
+     */
+    public static class BranchResult {
+        private final String branchName;
+        private final ObjectId oldOid;
+        private final @Nullable ObjectId newOid;
+        private final Combined.@Nullable Status status;
+        private final @Nullable String error;
+        private final String pushSummary;
+
+
+        public BranchResult(String branchName, ObjectId oldOid, @Nullable ObjectId newOid,
+                            Combined.@Nullable Status status, @Nullable String error, String pushSummary) {
+            this.branchName = branchName;
+            this.oldOid = oldOid;
+            this.newOid = newOid;
+            this.status = status;
+            this.error = error;
+            this.pushSummary = pushSummary;
+        }
+
+
+        public String branchName() {
+            return branchName;
+        }
+
+
+        public ObjectId oldOid() {
+            return oldOid;
+        }
+
+
+        /**
+         * The result of the merge/rebase
+         *
+         * @return null if the merge/rebase could not be done
+         */
+        public @Nullable ObjectId newOid() {
+            return newOid;
+        }
+
+
+        /**
+         * @return null if the merge/rebase could not be done
+         */
+        public Combined.@Nullable Status status() {
+            return status;
+        }
+
+
+        /**
+         * @return null if the branch was synced
+         */
+        public @Nullable String error() {
+            return error;
+        }
+
+
+        public boolean success() {
+            return error == null;
+        }
+
+
+        /**
+         * What happened when pushing (e.g., "pushed", "forced", "up to date"), or "-" if it was not pushed
+         */
+        public String pushSummary() {
+            return pushSummary;
+        }
+
+
+        @Override
+        public String toString() {
+            return "BranchResult{" + branchName + " " + (success() ? status : error) + "}";
+        }
+    }
+
+
+    /**
+     * What happened to all the branches, in the order they were given
+     */
+    public static class Result {
+        private final List<BranchResult> branchResults;
+        private final boolean merged;
+
+
+        public Result(List<BranchResult> branchResults, boolean merged) {
+            this.branchResults = Collections.unmodifiableList(branchResults);
+            this.merged = merged;
+        }
+
+
+        public List<BranchResult> branchResults() {
+            return branchResults;
+        }
+
+
+        /**
+         * Were all of the branches synced?
+         */
+        public boolean success() {
+            return branchResults.stream().allMatch(BranchResult::success);
+        }
+
+
+        /**
+         * A table of the results, one line per branch
+         */
+        @Override
+        public String toString() {
+            final int nameWidth = branchResults.stream().mapToInt(r -> r.branchName().length()).
+                reduce("BRANCH".length(), Math::max);
+            final String format = "%-" + nameWidth + "s  %-12s  %-7s  %-7s  %s";
+
+            final StringBuilder sb = new StringBuilder();
+            sb.append(String.format(format, "BRANCH", "RESULT", "OLD", "NEW", "PUSH").trim());
+            for (BranchResult r : branchResults) {
+                final ObjectId newOid = r.newOid();
+                sb.append(lineSeparator()).append(String.format(format,
+                    r.branchName(),
+                    describe(r),
+                    r.oldOid().abbreviate(7).name(),
+                    newOid != null ? newOid.abbreviate(7).name() : "-",
+                    r.success() ? r.pushSummary() : r.error()).trim());
+            }
+            return sb.toString();
+        }
+
+
+        private String describe(BranchResult r) {
+            final Combined.Status status = r.status();
+            if (!r.success() || status == null) return "FAILED";
+            switch (status) {
+                case UP_TO_DATE:
+                    return "up to date";
+                case FAST_FORWARD:
+                    return "fast-forward";
+                default:
+                    return merged ? "merged" : "rebased";
+            }
+        }
+    }
+
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.process;
+
+import com.mooregreatsoftware.gitprocess.lib.Branch;
+import com.mooregreatsoftware.gitprocess.lib.Branches;
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import javaslang.control.Either;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import java.util.Optional;
+
+import static javaslang.control.Either.left;
+
+/**
+ * Checks out a pull request.
+ *
+ * @see #checkoutPullRequest(GitLib, int, boolean)
+ */
+public class CheckoutPullRequest {
+    private static final Logger LOG = LoggerFactory.getLogger(CheckoutPullRequest.class);
+
+
+    /**
+     * The name of the local branch for a pull request
+     */
+    public static String branchName(int number) {
+        return "pr/" + number;
+    }
+
+
+    /**
+     * Fetches just the pull request (see {@link GitLib#fetchPullRequest(int, boolean)}) and checks it out as
+     * "pr/&lt;number&gt;", tracking the pull request on the server.
+     * <p>
+     * If that branch already exists it is fast-forwarded to the pull request; if it has commits that the pull
+     * request does not, it is left alone and an error is returned.
+     *
+     * @param gitLib       the git library to use
+     * @param number       the pull request's number
+     * @param includeMerge also fetch the server's merge of the pull request into its base branch
+     * @return Left(error message), Right(the checked out branch)
+     */
+    public static Either<String, Branch> checkoutPullRequest(@Nonnull GitLib gitLib, int number, boolean includeMerge) {
+        final Either<String, Branch> eRemoteHead = gitLib.fetchPullRequest(number, includeMerge);
+        if (eRemoteHead.isLeft()) return left(eRemoteHead.getLeft());
+        final Branch remoteHead = eRemoteHead.get();
+
+        final Branches branches = gitLib.branches();
+        final String branchName = branchName(number);
+        final @Nullable Branch existing = branches.branch(branchName);
+
+        final Branch branch;
+        if (existing == null) {
+            LOG.info("Creating \"{}\" for pull request #{}", branchName, number);
+            branch = branches.createBranch(branchName, remoteHead);
+        }
+        else {
+            final Optional<String> moveError = fastForward(branches, existing, remoteHead);
+            if (moveError.isPresent()) return left(moveError.get());
+            branch = existing;
+        }
+
+        branch.upstream(remoteHead);
+        return branch.checkout();
+    }
+
+
+    private static Optional<String> fastForward(Branches branches, Branch existing, Branch remoteHead) {
+        final ObjectId oldOid = existing.objectId();
+        final ObjectId newOid = remoteHead.objectId();
+        if (existing.contains(newOid)) {
+            LOG.debug("\"{}\" already has everything in \"{}\"", existing.shortName(), remoteHead.shortName());
+            return Optional.empty();
+        }
+        if (!remoteHead.contains(oldOid))
+            return Optional.of("\"" + existing.shortName() + "\" has commits that are not in \"" + remoteHead.shortName() + "\"");
+
+        LOG.info("Fast-forwarding \"{}\" to \"{}\"", existing.shortName(), remoteHead.shortName());
+        final String reflogMessage = "pull request: fast-forward to " + remoteHead.shortName();
+        return existing.equals(branches.currentBranch()) ?
+            existing.checkoutMovedTo(oldOid, newOid, reflogMessage) :
+            existing.moveTo(oldOid, newOid, reflogMessage);
+    }
+
+}
@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nonnull;
+import java.util.Collections;
 
 import static javaslang.control.Either.left;
 
@@ -57,7 +58,11 @@ public class NewFeatureBranch {
 
         final Branch baseBranch = baseBranch(gitLib, branches, integrationBranch);
 
-        if (!localOnly) gitLib.fetch();
+        if (!localOnly) {
+            // only the integration branch matters for creating the new branch
+            if (integrationBranch.isRemote()) gitLib.fetch(Collections.singletonList(integrationBranch.simpleName()), false);
+            else gitLib.fetch();
+        }
 
         LOG.info("Creating \"{}\" off of \"{}\"", branchName, baseBranch.shortName());
 
@@ -23,12 +23,16 @@ import com.mooregreatsoftware.gitprocess.lib.Pusher;
 import com.mooregreatsoftware.gitprocess.lib.Rebaser;
 import com.mooregreatsoftware.gitprocess.lib.SimpleFetchResult;
 import javaslang.Function2;
+import javaslang.Function3;
 import javaslang.control.Either;
 import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.jgit.lib.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 import static com.mooregreatsoftware.gitprocess.process.Sync.Combiners.MERGER;
 import static com.mooregreatsoftware.gitprocess.process.Sync.Combiners.REBASER;
 import static javaslang.control.Either.left;
@@ -45,17 +49,27 @@ public class Sync {
      * Simplify Java generics complexity
      */
     interface Combiner<T> extends Function2<GitLib, Branch, Either<String, T>> {
+        /**
+         * Combine with "first" and then with "second".
+         */
+        default Either<String, T> applyInTurn(GitLib gitLib, Branch first, Branch second) {
+            return apply(gitLib, first).flatMap(r -> apply(gitLib, second));
+        }
     }
 
     enum Combiners implements Function2<GitLib, Branch, Either<String, ?>> {
-        REBASER(Rebaser::rebase),
-        MERGER(Merger::merge);
+        REBASER(Rebaser::rebase, (g, first, second) -> Rebaser.rebase(g, first).flatMap(r -> Rebaser.rebase(g, second))),
+        // the merges are chained so the intermediate merge is never checked out
+        MERGER(Merger::merge, Merger::merge);
 
         private final Function2<GitLib, Branch, Either<String, ?>> function;
+        private final Function3<GitLib, Branch, Branch, Either<String, ?>> inTurnFunction;
 
 
-        Combiners(Function2<GitLib, Branch, Either<String, ?>> function) {
+        Combiners(Function2<GitLib, Branch, Either<String, ?>> function,
+                  Function3<GitLib, Branch, Branch, Either<String, ?>> inTurnFunction) {
             this.function = function;
+            this.inTurnFunction = inTurnFunction;
         }
 
 
@@ -68,7 +82,18 @@ public class Sync {
         @SuppressWarnings("unchecked")
         public static <T> Combiner<T> of(Combiners combiner) {
             // work-around for Java generics silliness
-            return (g, b) -> (Either<String, T>)combiner.apply(g, b);
+            return new Combiner<T>() {
+                @Override
+                public Either<String, T> apply(GitLib g, Branch b) {
+                    return (Either<String, T>)combiner.apply(g, b);
+                }
+
+
+                @Override
+                public Either<String, T> applyInTurn(GitLib g, Branch first, Branch second) {
+                    return (Either<String, T>)combiner.inTurnFunction.apply(g, first, second);
+                }
+            };
         }
 
     }
@@ -102,7 +127,19 @@ public class Sync {
             return left("You have uncommitted changes");
         }
 
-        return doSync(gitLib, doMerge, localOnly);
+        return doSync(gitLib, doMerge, localOnly, true);
+    }
+
+
+    /**
+     * The part of {@link #sync(GitLib, boolean, boolean)} after its checks and the fetch, for when those have
+     * already been done by the caller.
+     *
+     * @return Left(error message) or Right(resulting branch)
+     * @see #branchesToFetch(GitLib, Branch, Branch)
+     */
+    static Either<String, Branch> syncFetched(GitLib gitLib, boolean doMerge, boolean localOnly) {
+        return doSync(gitLib, doMerge, localOnly, false);
     }
 
 
@@ -111,10 +148,10 @@ public class Sync {
      *
      * @return Left(error message) or Right(resulting branch)
      */
-    private static Either<String, Branch> doSync(GitLib gitLib, boolean doMerge, boolean localOnly) {
+    private static Either<String, Branch> doSync(GitLib gitLib, boolean doMerge, boolean localOnly, boolean doFetch) {
         return doMerge ?
-            mergeSync(gitLib, localOnly) :
-            rebaseSync(gitLib, localOnly);
+            mergeSync(gitLib, localOnly, doFetch) :
+            rebaseSync(gitLib, localOnly, doFetch);
     }
 
 
@@ -123,19 +160,20 @@ public class Sync {
      *
      * @return Left(error message), Right(resulting branch)
      */
-    private static Either<String, Branch> mergeSync(GitLib gitLib, boolean localOnly) {
-        return combineSync(gitLib, "merge", localOnly, Combiners.of(MERGER));
+    private static Either<String, Branch> mergeSync(GitLib gitLib, boolean localOnly, boolean doFetch) {
+        return combineSync(gitLib, "merge", localOnly, doFetch, Combiners.of(MERGER));
     }
 
 
-    private static Either<String, Branch> rebaseSync(GitLib gitLib, boolean localOnly) {
-        return combineSync(gitLib, "rebase", localOnly, Combiners.of(REBASER));
+    private static Either<String, Branch> rebaseSync(GitLib gitLib, boolean localOnly, boolean doFetch) {
+        return combineSync(gitLib, "rebase", localOnly, doFetch, Combiners.of(REBASER));
     }
 
 
     private static <T> Either<String, Branch> combineSync(GitLib gitLib,
                                                           String combineType,
                                                           boolean localOnly,
+                                                          boolean doFetch,
                                                           Combiner<T> combineWith) {
         LOG.info("Doing {}-based sync", combineType);
 
@@ -148,11 +186,17 @@ public class Sync {
         if (currentBranch == null) return left("No branch is checked out");
 
         final boolean hasRemotes = gitLib.remoteConfig().hasRemotes();
-        if (hasRemotes) {
-            final Either<String, @Nullable SimpleFetchResult> fetch = gitLib.fetch();
+        if (hasRemotes && doFetch) {
+            final Either<String, @Nullable SimpleFetchResult> fetch =
+                gitLib.fetch(branchesToFetch(gitLib, integrationBranch, currentBranch), false);
             if (fetch.isLeft()) return left(fetch.getLeft());
         }
 
+        if (currentBranch.unchangedSinceLastSync()) {
+            LOG.info("Nothing has changed since \"{}\" was last synced", currentBranch.shortName());
+            return right(currentBranch);
+        }
+
         final String integrationCombineResult = combineWith(gitLib, integrationBranch, combineType, combineWith, currentBranch);
         if (integrationCombineResult != null) return left(integrationCombineResult);
 
@@ -175,6 +219,21 @@ public class Sync {
     }
 
 
+    /**
+     * The only branches on the server that a sync cares about: the integration branch and the current branch's
+     * counterpart. The counterpart is left out if it is not known to be on the server (e.g., a new feature branch
+     * that has not been pushed yet), so the fetch does not have to ask the server about it.
+     *
+     * @see GitLib#isKnownOnServer(String)
+     */
+    static List<String> branchesToFetch(GitLib gitLib, Branch integrationBranch, Branch currentBranch) {
+        final List<String> branchNames = new ArrayList<>(2);
+        if (integrationBranch.isRemote()) branchNames.add(integrationBranch.simpleName());
+        if (gitLib.isKnownOnServer(currentBranch.simpleName())) branchNames.add(currentBranch.simpleName());
+        return branchNames;
+    }
+
+
     @Nullable
     private static <T> String combineWith(GitLib gitLib,
                                           Branch integrationBranch,
@@ -265,12 +324,10 @@ public class Sync {
         if (remoteBranchName == null) return left("Could not determine a remote branch name for " + currentBranch);
 
         final Branch remoteBranch = gitLib.branches().branch(remoteBranchName);
-        final Either<String, T> eRemote = combiner.apply(gitLib, remoteBranch);
-        if (eRemote.isLeft()) return left(eRemote.getLeft());
 
-        // reapply to integration so that it can fast-forward with it
-        final Either<String, T> eIntegration = combiner.apply(gitLib, gitLib.branches().integrationBranch());
-        if (eIntegration.isLeft()) return left(eIntegration.getLeft());
+        // reapply to integration after the remote so that it can fast-forward with it
+        final Either<String, T> eReconciled = combiner.applyInTurn(gitLib, remoteBranch, gitLib.branches().integrationBranch());
+        if (eReconciled.isLeft()) return left(eReconciled.getLeft());
 
         // if it had to "reconcile" with remote, that means that this may not be a simple fast-forward on the remote
         // branch, so use force-push
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.process;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+
+import java.util.List;
+
+import static java.lang.System.lineSeparator;
+
+/**
+ * What a sync of one branch would do, as worked out by {@link SyncPlanner}.
+ */
+public class SyncPlan {
+
+    /**
+     * How the branch would be combined with the integration branch
+     */
+    public enum Action {
+        /**
+         * The branch already has everything in the integration branch
+         */
+        UP_TO_DATE,
+        /**
+         * The branch would be moved to the integration branch
+         */
+        FAST_FORWARD,
+        /**
+         * The integration branch would be merged in
+         */
+        MERGE,
+        /**
+         * The branch's commits would be replayed on top of the integration branch
+         */
+        REBASE
+    }
+
+    /**
+     * How the result would be pushed to the server
+     */
+    public enum PushMode {
+        /**
+         * Nothing would be pushed (e.g., "local only", there are no remotes, or the sync would stop before pushing)
+         */
+        NONE,
+        FAST_FORWARD,
+        /**
+         * The remote branch is not in the history of the result, so it would be force-pushed
+         */
+        FORCE
+    }
+
+    private final String branchName;
+    private final ObjectId oldOid;
+    private final @Nullable ObjectId newOid;
+    private final Action action;
+    private final int commitsToReplay;
+    private final boolean reconcileWithRemote;
+    private final PushMode pushMode;
+    private final @Nullable String problem;
+
+
+    public SyncPlan(String branchName, ObjectId oldOid, @Nullable ObjectId newOid, Action action, int commitsToReplay,
+                    boolean reconcileWithRemote, PushMode pushMode, @Nullable String problem) {
+        this.branchName = branchName;
+        this.oldOid = oldOid;
+        this.newOid = newOid;
+        this.action = action;
+        this.commitsToReplay = commitsToReplay;
+        this.reconcileWithRemote = reconcileWithRemote;
+        this.pushMode = pushMode;
+        this.problem = problem;
+    }
+
+
+    public String branchName() {
+        return branchName;
+    }
+
+
+    public ObjectId oldOid() {
+        return oldOid;
+    }
+
+
+    /**
+     * What the branch would point to after the sync. The commit exists in the object database, but nothing
+     * refers to it.
+     *
+     * @return null if the sync would stop (see {@link #problem()})
+     */
+    public @Nullable ObjectId newOid() {
+        return newOid;
+    }
+
+
+    public Action action() {
+        return action;
+    }
+
+
+    /**
+     * The non-merge commits on the branch that are not in the integration branch; what a rebase would replay.
+     */
+    public int commitsToReplay() {
+        return commitsToReplay;
+    }
+
+
+    /**
+     * Has the remote branch changed in a way that it would need to be merged/rebased in as well?
+     */
+    public boolean reconcileWithRemote() {
+        return reconcileWithRemote;
+    }
+
+
+    public PushMode pushMode() {
+        return pushMode;
+    }
+
+
+    /**
+     * Why the sync would stop; usually a conflict
+     *
+     * @return null if the sync would go through
+     */
+    public @Nullable String problem() {
+        return problem;
+    }
+
+
+    public boolean wouldConflict() {
+        return problem != null;
+    }
+
+
+    @Override
+    public String toString() {
+        return "SyncPlan{" + branchName + " " + action + (problem != null ? " - " + problem : " - push " + pushMode) + "}";
+    }
+
+
+    /**
+     * A table of the plans, one line per branch
+     */
+    public static String toTable(List<SyncPlan> plans) {
+        final int nameWidth = plans.stream().mapToInt(p -> p.branchName().length()).
+            reduce("BRANCH".length(), Math::max);
+        final String format = "%-" + nameWidth + "s  %-12s  %-7s  %-10s  %s";
+
+        final StringBuilder sb = new StringBuilder();
+        sb.append(String.format(format, "BRANCH", "ACTION", "COMMITS", "PUSH", "NOTES").trim());
+        for (SyncPlan p : plans) {
+            final String problem = p.problem();
+            final String notes = problem != null ? problem :
+                p.reconcileWithRemote() ? "remote changed" : "";
+            sb.append(lineSeparator()).append(String.format(format,
+                p.branchName(),
+                p.action().toString().toLowerCase().replace('_', '-'),
+                p.commitsToReplay(),
+                p.pushMode().toString().toLowerCase().replace('_', '-'),
+                notes).trim());
+        }
+        return sb.toString();
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.process;
+
+import com.mooregreatsoftware.gitprocess.lib.AncestryIndex;
+import com.mooregreatsoftware.gitprocess.lib.Branch;
+import com.mooregreatsoftware.gitprocess.lib.Branches;
+import com.mooregreatsoftware.gitprocess.lib.ExecUtils;
+import com.mooregreatsoftware.gitprocess.lib.GitLib;
+import com.mooregreatsoftware.gitprocess.lib.InCoreCombiner;
+import com.mooregreatsoftware.gitprocess.lib.InCoreCombiner.Combined;
+import com.mooregreatsoftware.gitprocess.process.SyncPlan.Action;
+import com.mooregreatsoftware.gitprocess.process.SyncPlan.PushMode;
+import javaslang.control.Either;
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.lib.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+
+import static javaslang.control.Either.left;
+import static javaslang.control.Either.right;
+
+/**
+ * Works out what {@link Sync} (or {@link BatchSync}) would do, without doing it.
+ * <p>
+ * The merges/rebases are tried in memory with {@link InCoreCombiner}, so the only thing written is new objects
+ * that nothing refers to: no refs are moved, and the index and working directory are not touched. That also means
+ * there is no fetch, so the plan is against the remote branches as of the last fetch.
+ */
+@SuppressWarnings("ConstantConditions")
+public class SyncPlanner {
+    private static final Logger LOG = LoggerFactory.getLogger(SyncPlanner.class);
+
+
+    /**
+     * Plan a sync of the current branch.
+     *
+     * @param doMerge   merge instead of rebase
+     * @param localOnly do not plan on pushing
+     * @return Left(error message of why a sync could not even start) or Right(the plan)
+     * @see Sync#sync(GitLib, boolean, boolean)
+     */
+    public static Either<String, SyncPlan> plan(GitLib gitLib, boolean doMerge, boolean localOnly) {
+        if (gitLib == null) throw new IllegalArgumentException("gitLib == null");
+
+        final Branches branches = gitLib.branches();
+
+        final Branch currentBranch = branches.currentBranch();
+        if (currentBranch == null) return left("Not currently on a branch");
+
+        final Branch integrationBranch = branches.integrationBranch();
+        if (integrationBranch == null) return left("There is no integration branch");
+
+        if (branches.onParking()) return left("You can not do a sync while on _parking_");
+
+        if (gitLib.hasUncommittedChanges()) return left("You have uncommitted changes");
+
+        final boolean talkToServer = !localOnly && gitLib.remoteConfig().hasRemotes();
+        return right(plan(gitLib, Collections.singletonList(currentBranch), integrationBranch, doMerge, talkToServer, 1).get(0));
+    }
+
+
+    /**
+     * Plan a sync of many branches, using as many threads as asked for.
+     *
+     * @param branchNames the local branches to plan for; if empty, every local branch other than the integration
+     *                    branch and "_parking_"
+     * @param doMerge     merge instead of rebase
+     * @param localOnly   do not plan on pushing
+     * @param threads     the most merges/rebases to try at the same time
+     * @return Left(error message that stopped everything) or Right(the plan for each branch, in order)
+     * @see BatchSync#sync(GitLib, Collection, boolean, boolean, int)
+     */
+    public static Either<String, List<SyncPlan>> plan(GitLib gitLib,
+                                                      Collection<String> branchNames,
+                                                      boolean doMerge,
+                                                      boolean localOnly,
+                                                      int threads) {
+        if (gitLib == null) throw new IllegalArgumentException("gitLib == null");
+        if (threads < 1) throw new IllegalArgumentException("threads < 1");
+
+        final Branches branches = gitLib.branches();
+
+        final Branch integrationBranch = branches.integrationBranch();
+        if (integrationBranch == null) return left("There is no integration branch");
+
+        final boolean talkToServer = !localOnly && gitLib.remoteConfig().hasRemotes();
+        return BatchSync.branchesToSync(branches, integrationBranch, branchNames).
+            map(toPlan -> plan(gitLib, toPlan, integrationBranch, doMerge, talkToServer, threads));
+    }
+
+
+    private static List<SyncPlan> plan(GitLib gitLib, List<Branch> toPlan, Branch integrationBranch,
+                                       boolean doMerge, boolean talkToServer, int threads) {
+        final long start = System.nanoTime();
+        final InCoreCombiner combiner = InCoreCombiner.of(gitLib);
+        final AncestryIndex ancestryIndex = gitLib.ancestryIndex();
+        final ObjectId integrationOid = integrationBranch.objectId();
+        final String integrationName = integrationBranch.shortName();
+
+        // read everything that goes through the (not thread-safe) branch and config objects up front
+        final List<Inputs> inputs = toPlan.stream().
+            map(branch -> new Inputs(branch.shortName(), branch.objectId(),
+                talkToServer ? branch.remoteOID() : null,
+                talkToServer ? branch.remoteBranchName() : null,
+                talkToServer ? branch.lastSyncedAgainst() : right(null))).
+            collect(Collectors.toList());
+
+        if (inputs.isEmpty()) return Collections.emptyList();
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.min(threads, inputs.size()));
+        try {
+            final List<CompletableFuture<SyncPlan>> futures = inputs.stream().
+                map(i -> CompletableFuture.supplyAsync(() ->
+                    i.plan(combiner, ancestryIndex, integrationOid, integrationName, doMerge, talkToServer), executor)).
+                collect(Collectors.toList());
+            final List<SyncPlan> plans = futures.stream().map(CompletableFuture::join).collect(Collectors.toList());
+            LOG.debug("Planned {} branches in {}ms", plans.size(), (System.nanoTime() - start) / 1_000_000);
+            return plans;
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+
+    /**
+     * What is needed to plan one branch, read before going to another thread
+     */
+    private static final class Inputs {
+        private final String branchName;
+        private final ObjectId oldOid;
+        private final @Nullable ObjectId remoteOid;
+        private final @Nullable String remoteBranchName;
+        private final Either<String, @Nullable ObjectId> lastSynced;
+
+
+        private Inputs(String branchName, ObjectId oldOid, @Nullable ObjectId remoteOid, @Nullable String remoteBranchName,
+                       Either<String, @Nullable ObjectId> lastSynced) {
+            this.branchName = branchName;
+            this.oldOid = oldOid;
+            this.remoteOid = remoteOid;
+            this.remoteBranchName = remoteBranchName;
+            this.lastSynced = lastSynced;
+        }
+
+
+        private SyncPlan plan(InCoreCombiner combiner, AncestryIndex ancestryIndex, ObjectId integrationOid,
+                              String integrationName, boolean doMerge, boolean talkToServer) {
+            final Action combineAction = doMerge ? Action.MERGE : Action.REBASE;
+            try {
+                // the ancestry checks are cheap, so only try the merge/rebase when the lines of history have diverged
+                final Action action;
+                final ObjectId combinedOid;
+                int commitsToReplay = 0;
+                if (ancestryIndex.isAncestor(integrationOid, oldOid)) {
+                    action = Action.UP_TO_DATE;
+                    combinedOid = oldOid;
+                }
+                else if (ancestryIndex.isAncestor(oldOid, integrationOid)) {
+                    action = Action.FAST_FORWARD;
+                    combinedOid = integrationOid;
+                }
+                else {
+                    action = combineAction;
+                    final Either<String, Integer> eCount = combiner.countCommitsToReplay(oldOid, integrationOid);
+                    if (eCount.isLeft()) return stopped(combineAction, 0, false, eCount.getLeft());
+                    commitsToReplay = eCount.get();
+
+                    final Either<String, Combined> eCombined = combine(combiner, doMerge, oldOid, integrationOid, integrationName);
+                    if (eCombined.isLeft()) return stopped(action, commitsToReplay, false, eCombined.getLeft());
+                    combinedOid = eCombined.get().newHead();
+                }
+
+                if (!talkToServer) {
+                    return new SyncPlan(branchName, oldOid, combinedOid, action, commitsToReplay, false, PushMode.NONE, null);
+                }
+
+                if (remoteOid == null || ancestryIndex.isAncestor(remoteOid, combinedOid)) {
+                    return new SyncPlan(branchName, oldOid, combinedOid, action, commitsToReplay, false, PushMode.FAST_FORWARD, null);
+                }
+
+                if (lastSynced.isLeft()) return stopped(action, commitsToReplay, false, lastSynced.getLeft());
+
+                if (remoteOid.equals(lastSynced.get())) {
+                    // the remote has not changed since the last sync, so the local copy wins
+                    return new SyncPlan(branchName, oldOid, combinedOid, action, commitsToReplay, false, PushMode.FORCE, null);
+                }
+
+                LOG.debug("The remote branch for \"{}\" has changed so reconciling with it", branchName);
+                final Action reconcileAction = action == Action.UP_TO_DATE || action == Action.FAST_FORWARD ? combineAction : action;
+                final Either<String, Combined> eReconciled =
+                    combine(combiner, doMerge, combinedOid, remoteOid, String.valueOf(remoteBranchName)).
+                        flatMap(r -> combine(combiner, doMerge, r.newHead(), integrationOid, integrationName));
+                if (eReconciled.isLeft()) return stopped(reconcileAction, commitsToReplay, true, eReconciled.getLeft());
+
+                return new SyncPlan(branchName, oldOid, eReconciled.get().newHead(), reconcileAction, commitsToReplay, true, PushMode.FORCE, null);
+            }
+            catch (RuntimeException e) {
+                return stopped(combineAction, 0, false, ExecUtils.toString(e));
+            }
+        }
+
+
+        private SyncPlan stopped(Action action, int commitsToReplay, boolean reconcileWithRemote, String problem) {
+            return new SyncPlan(branchName, oldOid, null, action, commitsToReplay, reconcileWithRemote, PushMode.NONE, problem);
+        }
+
+
+        private Either<String, Combined> combine(InCoreCombiner combiner, boolean doMerge, ObjectId tip, ObjectId onto, String ontoName) {
+            return doMerge ?
+                combiner.merge(tip, onto, "Sync merge from " + ontoName + " into " + branchName) :
+                combiner.rebase(tip, onto);
+        }
+    }
+
+}
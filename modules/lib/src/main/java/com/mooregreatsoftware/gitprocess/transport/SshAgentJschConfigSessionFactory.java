@@ -25,34 +25,51 @@ import com.jcraft.jsch.agentproxy.RemoteIdentityRepository;
 import com.jcraft.jsch.agentproxy.USocketFactory;
 import com.jcraft.jsch.agentproxy.connector.SSHAgentConnector;
 import com.jcraft.jsch.agentproxy.usocket.JNAUSocketFactory;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 import org.checkerframework.checker.nullness.qual.NonNull;
+import org.checkerframework.checker.nullness.qual.Nullable;
 import org.eclipse.jgit.transport.JschConfigSessionFactory;
 import org.eclipse.jgit.transport.OpenSshConfig;
 import org.eclipse.jgit.util.FS;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Optional;
+import java.util.Vector;
+import java.util.concurrent.TimeUnit;
+
 /**
  * An extension of {@link JschConfigSessionFactory} that will use ssh-agent if it is available.
+ * <p>
+ * Use the shared {@link #instance()}: JGit creates the {@link JSch} (known hosts, identity files, ssh-agent
+ * identities) once per factory, and the connection to ssh-agent is only probed for once per process.
  */
 public class SshAgentJschConfigSessionFactory extends JschConfigSessionFactory {
     private static final Logger LOG = LoggerFactory.getLogger(SshAgentJschConfigSessionFactory.class);
 
+    /**
+     * How long the list of identities from ssh-agent is trusted before asking for it again
+     */
+    private static final long IDENTITIES_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    private static final SshAgentJschConfigSessionFactory INSTANCE = new SshAgentJschConfigSessionFactory();
+
+    @MonotonicNonNull
+    private static volatile Optional<IdentityRepository> agentIdentityRepository;
+
     static {
-        JSch.setLogger(new com.jcraft.jsch.Logger() {
-            @Override
-            public boolean isEnabled(int level) {
-                return true;
-            }
+        JSch.setLogger(new Slf4jJschLogger());
+    }
 
 
-            @Override
-            public void log(int level, String message) {
-                LOG.debug(message);
-            }
-        });
+    /**
+     * The factory shared by all transports
+     */
+    public static SshAgentJschConfigSessionFactory instance() {
+        return INSTANCE;
     }
 
+
     @Override
     protected void configure(OpenSshConfig.Host host, Session session) {
         // empty
@@ -60,22 +77,160 @@ public class SshAgentJschConfigSessionFactory extends JschConfigSessionFactory {
 
 
     @Override
-    @SuppressWarnings("RedundantCast")
     protected JSch createDefaultJSch(FS fs) throws JSchException {
         final JSch jsch = super.createDefaultJSch(fs);
 
+        final Optional<IdentityRepository> identityRepository = agentIdentityRepository();
+        if (identityRepository.isPresent()) jsch.setIdentityRepository(identityRepository.get());
+
+        return jsch;
+    }
+
+
+    /**
+     * The {@link JSch} that will be used to connect to the host. The same instance is handed back for every host
+     * that uses the default identities.
+     */
+    JSch jsch(String hostName, FS fs) throws JSchException {
+        return getJSch(OpenSshConfig.get(fs).lookup(hostName), fs);
+    }
+
+
+    /**
+     * The identities in ssh-agent, if it is running. Only looked for once per process.
+     */
+    static Optional<IdentityRepository> agentIdentityRepository() {
+        Optional<IdentityRepository> repository = agentIdentityRepository;
+        if (repository == null) {
+            synchronized (SshAgentJschConfigSessionFactory.class) {
+                repository = agentIdentityRepository;
+                if (repository == null) {
+                    repository = connectToAgent();
+                    agentIdentityRepository = repository;
+                }
+            }
+        }
+        return repository;
+    }
+
+
+    @SuppressWarnings("RedundantCast")
+    private static Optional<IdentityRepository> connectToAgent() {
         try {
             if (SSHAgentConnector.isConnectorAvailable()) {
                 USocketFactory usf = new JNAUSocketFactory();
                 Connector conn = new SSHAgentConnector(usf);
-                IdentityRepository identRepo = new RemoteIdentityRepository(conn);
-                jsch.setIdentityRepository(identRepo);
+                return Optional.of(new CachingIdentityRepository(new RemoteIdentityRepository(conn), IDENTITIES_TTL_MILLIS));
             }
+            LOG.debug("ssh-agent is not available");
         }
         catch (AgentProxyException e) {
             LOG.error("Could not establish a connection to ssh-agent: {}", (@NonNull String)e.getMessage());
         }
+        return Optional.empty();
+    }
 
-        return jsch;
+
+    /**
+     * Remembers the list of identities for a while instead of asking ssh-agent for it on every connection.
+     * Signing still goes to ssh-agent.
+     */
+    static final class CachingIdentityRepository implements IdentityRepository {
+        private final IdentityRepository delegate;
+        private final long ttlMillis;
+
+        private @Nullable Vector cachedIdentities;
+        private long cachedAt;
+
+
+        CachingIdentityRepository(IdentityRepository delegate, long ttlMillis) {
+            this.delegate = delegate;
+            this.ttlMillis = ttlMillis;
+        }
+
+
+        @Override
+        public String getName() {
+            return delegate.getName();
+        }
+
+
+        @Override
+        public int getStatus() {
+            return delegate.getStatus();
+        }
+
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public synchronized Vector getIdentities() {
+            final long now = System.currentTimeMillis();
+            if (cachedIdentities == null || now - cachedAt > ttlMillis) {
+                cachedIdentities = delegate.getIdentities();
+                cachedAt = now;
+            }
+            // JSch may change the Vector it is given
+            return new Vector(cachedIdentities);
+        }
+
+
+        @Override
+        public synchronized boolean add(byte[] identity) {
+            cachedIdentities = null;
+            return delegate.add(identity);
+        }
+
+
+        @Override
+        public synchronized boolean remove(byte[] blob) {
+            cachedIdentities = null;
+            return delegate.remove(blob);
+        }
+
+
+        @Override
+        public synchronized void removeAll() {
+            cachedIdentities = null;
+            delegate.removeAll();
+        }
     }
+
+
+    /**
+     * Sends JSch's logging to SLF4J, only formatting the message if the level is turned on.
+     */
+    static final class Slf4jJschLogger implements com.jcraft.jsch.Logger {
+        private static final Logger JSCH_LOG = LoggerFactory.getLogger("com.jcraft.jsch");
+
+
+        @Override
+        public boolean isEnabled(int level) {
+            switch (level) {
+                case DEBUG:
+                case INFO:
+                    return JSCH_LOG.isDebugEnabled();
+                case WARN:
+                    return JSCH_LOG.isWarnEnabled();
+                default:
+                    return JSCH_LOG.isErrorEnabled();
+            }
+        }
+
+
+        @Override
+        public void log(int level, String message) {
+            switch (level) {
+                case DEBUG:
+                case INFO:
+                    JSCH_LOG.debug(message);
+                    break;
+                case WARN:
+                    JSCH_LOG.warn(message);
+                    break;
+                default:
+                    JSCH_LOG.error(message);
+            }
+        }
+    }
+
 }
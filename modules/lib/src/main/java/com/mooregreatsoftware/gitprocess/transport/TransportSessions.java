@@ -0,0 +1,242 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.transport;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+import org.eclipse.jgit.api.TransportConfigCallback;
+import org.eclipse.jgit.errors.TransportException;
+import org.eclipse.jgit.internal.JGitText;
+import org.eclipse.jgit.lib.NullProgressMonitor;
+import org.eclipse.jgit.lib.Ref;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.transport.CredentialsProvider;
+import org.eclipse.jgit.transport.FetchConnection;
+import org.eclipse.jgit.transport.FetchResult;
+import org.eclipse.jgit.transport.PushResult;
+import org.eclipse.jgit.transport.RefSpec;
+import org.eclipse.jgit.transport.RemoteConfig;
+import org.eclipse.jgit.transport.RemoteRefUpdate;
+import org.eclipse.jgit.transport.TagOpt;
+import org.eclipse.jgit.transport.Transport;
+import org.eclipse.jgit.transport.Transport.Operation;
+import org.eclipse.jgit.transport.URIish;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the {@link Transport} to each remote open so that a fetch, a push and any later fetch in the same run all
+ * go over the same connection.
+ * <p>
+ * For SSH the {@link Transport} holds on to the authenticated session and opens a new channel for each command,
+ * so only the first command pays for the handshake (and the ssh-agent round-trip). For HTTP the JVM's keep-alive
+ * pool is used.
+ * <p>
+ * If a remembered connection has gone away, it is opened again once before giving up.
+ * <p>
+ * After a fetch or push works the "accepted" callback is told the URL, so credentials that were used for it can be
+ * stored. If the server did not accept the credentials, they are {@link CredentialsProvider#reset(URIish) reset}.
+ */
+public class TransportSessions implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(TransportSessions.class);
+
+    private final Repository repository;
+    private final CredentialsProvider credentialsProvider;
+    private final TransportConfigCallback transportConfigCallback;
+    private final Consumer<URIish> accepted;
+
+    private final Map<String, Transport> transports = new HashMap<>();
+
+    private final AtomicLong handshakes = new AtomicLong();
+    private final AtomicLong reuses = new AtomicLong();
+
+
+    public TransportSessions(Repository repository, CredentialsProvider credentialsProvider,
+                             TransportConfigCallback transportConfigCallback) {
+        this(repository, credentialsProvider, transportConfigCallback, uri -> {
+        });
+    }
+
+
+    /**
+     * @param accepted called with the URL after a fetch or push to it worked
+     */
+    public TransportSessions(Repository repository, CredentialsProvider credentialsProvider,
+                             TransportConfigCallback transportConfigCallback, Consumer<URIish> accepted) {
+        this.repository = repository;
+        this.credentialsProvider = credentialsProvider;
+        this.transportConfigCallback = transportConfigCallback;
+        this.accepted = accepted;
+    }
+
+
+    /**
+     * Fetch from the remote.
+     *
+     * @param remoteName        the name of the remote (e.g., "origin")
+     * @param removeDeletedRefs remove the remote-tracking branches that no longer exist on the server
+     * @param refSpecs          what to fetch; if empty uses the remote's configured "fetch" refspecs
+     * @param tagOpt            how to handle tags; if null uses the remote's configured "tagOpt"
+     */
+    public synchronized FetchResult fetch(String remoteName, boolean removeDeletedRefs,
+                                          Collection<RefSpec> refSpecs, @Nullable TagOpt tagOpt) throws Exception {
+        return withTransport(remoteName, Operation.FETCH, (transport, remoteConfig) -> {
+            // the transport is shared, so set everything every time
+            transport.setRemoveDeletedRefs(removeDeletedRefs);
+            transport.setTagOpt(tagOpt != null ? tagOpt : remoteConfig.getTagOpt());
+            return transport.fetch(NullProgressMonitor.INSTANCE, refSpecs);
+        });
+    }
+
+
+    /**
+     * Push to the remote.
+     *
+     * @param remoteName the name of the remote (e.g., "origin")
+     * @param refSpecs   what to push where; force-pushing is controlled by {@link RefSpec#isForceUpdate()}
+     */
+    public synchronized PushResult push(String remoteName, Collection<RefSpec> refSpecs) throws Exception {
+        return withTransport(remoteName, Operation.PUSH, (transport, remoteConfig) -> {
+            final Collection<RemoteRefUpdate> updates = transport.findRemoteRefUpdatesFor(refSpecs);
+            return transport.push(NullProgressMonitor.INSTANCE, updates);
+        });
+    }
+
+
+    /**
+     * The refs the remote has (i.e., "git ls-remote"), keyed by their full name
+     *
+     * @param remoteName the name of the remote (e.g., "origin")
+     */
+    public synchronized Map<String, Ref> advertisedRefs(String remoteName) throws Exception {
+        return withTransport(remoteName, Operation.FETCH, (transport, remoteConfig) -> {
+            try (FetchConnection connection = transport.openFetch()) {
+                return connection.getRefsMap();
+            }
+        });
+    }
+
+
+    private <T> T withTransport(String remoteName, Operation operation, TransportAction<T> action) throws Exception {
+        final RemoteConfig remoteConfig = new RemoteConfig(repository.getConfig(), remoteName);
+        final URIish uri = uri(remoteConfig, operation);
+        if (uri == null) throw new IllegalArgumentException("No URL for remote \"" + remoteName + "\"");
+
+        try {
+            final T result = withTransport(remoteName, uri, remoteConfig, operation, action);
+            accepted.accept(uri);
+            return result;
+        }
+        catch (TransportException e) {
+            final @Nullable String message = e.getMessage();
+            if (message != null && message.endsWith(JGitText.get().notAuthorized)) {
+                LOG.debug("{} did not accept the credentials", uri);
+                credentialsProvider.reset(uri);
+            }
+            throw e;
+        }
+    }
+
+
+    private <T> T withTransport(String remoteName, URIish uri, RemoteConfig remoteConfig, Operation operation,
+                                TransportAction<T> action) throws Exception {
+        final String key = remoteName + " " + uri;
+
+        final Transport existing = transports.get(key);
+        if (existing != null) {
+            reuses.incrementAndGet();
+            LOG.debug("Reusing the connection to {}", uri);
+            try {
+                return action.apply(existing, remoteConfig);
+            }
+            catch (TransportException e) {
+                // a problem with the request itself (e.g., asking for a branch the server does not have) has no
+                // underlying cause, and trying again on a new connection would not help
+                if (e.getCause() == null) throw e;
+                LOG.debug("The connection to {} failed ({}) so reconnecting", uri, e.getMessage());
+                transports.remove(key);
+                existing.close();
+            }
+        }
+
+        final Transport transport = open(remoteConfig, operation, uri);
+        transports.put(key, transport);
+        return action.apply(transport, remoteConfig);
+    }
+
+
+    private Transport open(RemoteConfig remoteConfig, Operation operation, URIish uri) throws Exception {
+        handshakes.incrementAndGet();
+        LOG.debug("Opening a connection to {}", uri);
+        final Transport transport = Transport.open(repository, remoteConfig, operation);
+        transport.setCredentialsProvider(credentialsProvider);
+        transportConfigCallback.configure(transport);
+        return transport;
+    }
+
+
+    /**
+     * The URL that JGit will use for the operation
+     */
+    private static @Nullable URIish uri(RemoteConfig remoteConfig, Operation operation) {
+        final List<URIish> pushURIs = remoteConfig.getPushURIs();
+        if (operation == Operation.PUSH && !pushURIs.isEmpty()) return pushURIs.get(0);
+        final List<URIish> uris = remoteConfig.getURIs();
+        return uris.isEmpty() ? null : uris.get(0);
+    }
+
+
+    /**
+     * The number of connections that had to be opened (i.e., SSH/TLS handshakes)
+     */
+    public long handshakes() {
+        return handshakes.get();
+    }
+
+
+    /**
+     * The number of fetches and pushes that used an already-open connection
+     */
+    public long reuses() {
+        return reuses.get();
+    }
+
+
+    @Override
+    public synchronized void close() {
+        transports.values().forEach(Transport::close);
+        transports.clear();
+    }
+
+
+    @Override
+    public String toString() {
+        return "TransportSessions{handshakes=" + handshakes + ", reuses=" + reuses + "}";
+    }
+
+
+    @FunctionalInterface
+    private interface TransportAction<T> {
+        T apply(Transport transport, RemoteConfig remoteConfig) throws Exception;
+    }
+
+}
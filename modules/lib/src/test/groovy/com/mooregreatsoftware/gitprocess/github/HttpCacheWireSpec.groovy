@@ -0,0 +1,193 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.github
+
+import com.jcabi.http.Request
+import com.jcabi.http.request.JdkRequest
+import com.mooregreatsoftware.gitprocess.lib.GitSpecification
+import spock.lang.AutoCleanup
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+import static java.net.HttpURLConnection.HTTP_CREATED
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND
+import static java.net.HttpURLConnection.HTTP_NOT_MODIFIED
+
+class HttpCacheWireSpec extends GitSpecification {
+
+    @AutoCleanup
+    JettySupport jetty = new JettySupport()
+
+    Map<String, String> bodies = [:]
+    List<String> conditionalGets = []
+    int gets = 0
+
+
+    def setup() {
+        bodies["/repos/jdigger/testproj"] = '{"name":"testproj"}'
+        bodies["/repos/jdigger/testproj/pulls"] = '[]'
+
+        jetty.addGetHandler({ HttpServletRequest request, HttpServletResponse response ->
+            gets++
+            def body = bodies[request.pathInfo]
+            if (body == null) {
+                response.status = HTTP_NOT_FOUND
+                return
+            }
+            def etag = '"' + Integer.toHexString(body.hashCode()) + '"'
+            if (request.getHeader("If-None-Match") != null) conditionalGets << request.pathInfo
+            response.setHeader("ETag", etag)
+            if (request.getHeader("If-None-Match") == etag) {
+                response.status = HTTP_NOT_MODIFIED
+                return
+            }
+            response.writer.print(body)
+        } as JettySupport.SimpleHandler)
+
+        jetty.addPostHandler({ HttpServletRequest request, HttpServletResponse response ->
+            bodies["/repos/jdigger/testproj/pulls"] = '[{"number":1}]'
+            response.status = HTTP_CREATED
+        } as JettySupport.SimpleHandler)
+
+        jetty.start()
+    }
+
+
+    def "revalidates with the ETag and serves a 304 from the cache"() {
+        def cache = HttpCache.of(origin)
+
+        when:
+        def first = request("/repos/jdigger/testproj", cache).fetch()
+        def second = request("/repos/jdigger/testproj", cache).fetch()
+
+        then:
+        first.status() == 200
+        second.status() == 200
+        second.body() == '{"name":"testproj"}'
+        gets == 2
+        conditionalGets == ["/repos/jdigger/testproj"]
+    }
+
+
+    def "does not ask the server while the response is younger than the TTL"() {
+        origin.generalConfig().httpCacheTtl(3600)
+        def cache = HttpCache.of(origin)
+
+        when:
+        request("/repos/jdigger/testproj", cache).fetch()
+        def second = request("/repos/jdigger/testproj", cache).fetch()
+
+        then:
+        second.body() == '{"name":"testproj"}'
+        gets == 1
+    }
+
+
+    def "a change to a resource removes the cached responses for it"() {
+        origin.generalConfig().httpCacheTtl(3600)
+        def cache = HttpCache.of(origin)
+
+        when:
+        request("/repos/jdigger/testproj/pulls", cache).fetch()
+        request("/repos/jdigger/testproj/pulls", cache).method(Request.POST).body().set('{"title":"a"}').back().fetch()
+        def pulls = request("/repos/jdigger/testproj/pulls", cache).fetch()
+
+        then:
+        pulls.body() == '[{"number":1}]'
+        gets == 2
+    }
+
+
+    def "different credentials do not share responses"() {
+        origin.generalConfig().httpCacheTtl(3600)
+        def cache = HttpCache.of(origin)
+
+        when:
+        request("/repos/jdigger/testproj", cache).header("Authorization", "token a").fetch()
+        request("/repos/jdigger/testproj", cache).header("Authorization", "token b").fetch()
+
+        then:
+        gets == 2
+    }
+
+
+    def "removes the least recently used responses when over the size limit"() {
+        def directory = new File(origin.gitDirectory(), "gitprocess/http-cache").toPath()
+        def responses = { directory.toFile().listFiles().findAll { it.name.endsWith(".response") } }
+        request("/repos/jdigger/testproj", new HttpCache(directory, 0, Long.MAX_VALUE)).fetch()
+        def repoResponse = responses()[0]
+        repoResponse.lastModified = System.currentTimeMillis() - 60_000
+        def cache = new HttpCache(directory, 0, repoResponse.length())
+
+        when:
+        request("/repos/jdigger/testproj/pulls", cache).fetch()
+
+        then:
+        responses()*.name == [HttpCache.key("http://localhost:${jetty.serverPort}/repos/jdigger/testproj/pulls", null, null) + ".response"]
+    }
+
+
+    def "invalidating goes by the file names"() {
+        def directory = new File(origin.gitDirectory(), "gitprocess/http-cache").toPath()
+        def cache = new HttpCache(directory, 3600_000, Long.MAX_VALUE)
+        def longUri = "http://localhost/repos/jdigger/testproj/contents/" + ("a" * 300)
+        ["http://localhost/repos/jdigger/testproj/pulls",
+         "http://localhost/repos/jdigger/testproj/pulls/1",
+         "http://localhost/repos/jdigger/other",
+         longUri].each { cache.put(HttpCache.key(it, null, null), entry(it)) }
+
+        // the contents are not looked at, so a response that can not be read is left alone
+        def other = directory.resolve(HttpCache.key("http://localhost/repos/jdigger/other", null, null) + ".response")
+        other.toFile().text = "not a response"
+
+        when:
+        cache.invalidate("http://localhost/repos/jdigger/testproj/pulls")
+
+        then:
+        cache.get(HttpCache.key("http://localhost/repos/jdigger/testproj/pulls", null, null)) == null
+        cache.get(HttpCache.key("http://localhost/repos/jdigger/testproj/pulls/1", null, null)) == null
+        cache.get(HttpCache.key(longUri, null, null)) != null
+        other.toFile().exists()
+
+        when: "a URI that was cut short in its file name"
+        cache.invalidate(longUri)
+
+        then:
+        cache.get(HttpCache.key(longUri, null, null)) == null
+        other.toFile().exists()
+    }
+
+
+    def "turned off by a max size of 0"() {
+        when:
+        origin.generalConfig().httpCacheMaxSize(0)
+
+        then:
+        HttpCache.of(origin) == null
+    }
+
+
+    static HttpCache.Entry entry(String uri) {
+        new HttpCache.Entry(uri, System.currentTimeMillis(), 200, "OK", [], "{}".bytes)
+    }
+
+
+    Request request(String path, HttpCache cache) {
+        return new JdkRequest("http://localhost:${jetty.serverPort}${path}").through(HttpCacheWire, cache)
+    }
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.github
+
+import com.jcabi.http.Request
+import com.jcabi.http.request.JdkRequest
+import spock.lang.AutoCleanup
+import spock.lang.Specification
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+
+import static java.net.HttpURLConnection.HTTP_CREATED
+
+class PooledWireSpec extends Specification {
+
+    @AutoCleanup
+    JettySupport jetty = new JettySupport()
+
+    @AutoCleanup
+    HttpConnectionPool pool = new HttpConnectionPool(2, 60_000)
+
+
+    def setup() {
+        jetty.getHandler.addPathResponse("/repos/jdigger/testproj", '{"name":"testproj"}')
+        jetty.addPostHandler({ HttpServletRequest request, HttpServletResponse response ->
+            response.status = HTTP_CREATED
+            response.setHeader("X-Echo", request.getHeader("X-Echo"))
+            response.writer.print(request.inputStream.text)
+        } as JettySupport.SimpleHandler)
+        jetty.start()
+    }
+
+
+    def "reuses the connection for later requests"() {
+        when:
+        def responses = (1..3).collect { request("/repos/jdigger/testproj").fetch() }
+
+        then:
+        responses*.status() == [200, 200, 200]
+        responses*.body()*.trim() == ['{"name":"testproj"}'] * 3
+        pool.metrics().requests == 3
+        pool.metrics().connections == 1
+        pool.metrics().reusedConnections() == 2
+    }
+
+
+    def "sends the body and headers"() {
+        when:
+        def response = request("/repos/jdigger/testproj/pulls").
+            method(Request.POST).
+            header("X-Echo", "hello").
+            body().set('{"title":"a"}').back().
+            fetch()
+
+        then:
+        response.status() == HTTP_CREATED
+        response.headers()["X-Echo"] == ["hello"]
+        response.body() == '{"title":"a"}'
+    }
+
+
+    Request request(String path) {
+        return new JdkRequest("http://localhost:${jetty.serverPort}${path}").through(PooledWire, pool)
+    }
+
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.github
+
+import com.mooregreatsoftware.gitprocess.github.PullReqBatch.Spec
+import com.mooregreatsoftware.gitprocess.lib.GitSpecification
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.eclipse.jgit.transport.URIish
+import spock.lang.AutoCleanup
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import java.util.concurrent.atomic.AtomicInteger
+
+import static java.net.HttpURLConnection.HTTP_CREATED
+import static java.net.HttpURLConnection.HTTP_FORBIDDEN
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND
+
+class PullReqBatchSpec extends GitSpecification {
+
+    @AutoCleanup
+    JettySupport jetty = new JettySupport()
+
+    AtomicInteger inFlight = new AtomicInteger()
+    AtomicInteger maxInFlight = new AtomicInteger()
+    AtomicInteger number = new AtomicInteger()
+    Set<String> rateLimitOnce = Collections.synchronizedSet(new HashSet<String>())
+    List<String> attempts = Collections.synchronizedList([])
+
+
+    def setup() {
+        jetty.addPostHandler({ HttpServletRequest request, HttpServletResponse response ->
+            if (request.pathInfo != "/repos/jdigger/testproj/pulls") {
+                response.status = HTTP_NOT_FOUND
+                return
+            }
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), { a, b -> Math.max(a, b) })
+            try {
+                def json = new JsonSlurper().parse(request.getInputStream())
+                attempts << json.head
+                sleep(50)
+                if (rateLimitOnce.remove(json.head)) {
+                    response.status = HTTP_FORBIDDEN
+                    response.setHeader("Retry-After", "1")
+                    response.writer.println JsonOutput.toJson([message: "You have exceeded a secondary rate limit."])
+                    return
+                }
+                if (json.head == "bad") {
+                    response.status = 422
+                    response.writer.println JsonOutput.toJson([message: "Validation Failed"])
+                    return
+                }
+                def id = number.incrementAndGet()
+                response.status = HTTP_CREATED
+                response.writer.println JsonOutput.toJson(
+                    [
+                        number  : id,
+                        html_url: "http://localhost:${jetty.serverPort}/jdigger/testproj/pull/${id}",
+                        title   : json.title,
+                        head    : [ref: json.head],
+                        base    : [ref: json.base],
+                    ]
+                )
+            }
+            finally {
+                inFlight.decrementAndGet()
+            }
+        } as JettySupport.SimpleHandler)
+
+        jetty.start()
+
+        createCommit("a")
+        createFakeRemoteBranch("testRemote/master")
+        origin.generalConfig().oauthToken("93abcd234234")
+        origin.remoteConfig().remoteAdd("testRemote", new URIish("http://localhost:${jetty.serverPort}/jdigger/testproj"))
+    }
+
+
+    def "creates them all, with no more than maxInFlight at a time"() {
+        def specs = (1..8).collect { new Spec("fb${it}", "master", "Feature ${it}", null) }
+
+        when:
+        def results = PullReqBatch.of(origin, null, null, 3).createPRs(specs)
+
+        then:
+        results.every { it.isRight() }
+        results*.get()*.headBranchName() == specs*.headBranch
+        maxInFlight.get() <= 3
+    }
+
+
+    def "a failure does not stop the others"() {
+        def specs = [new Spec("fb1", "master", "a", null), new Spec("bad", "master", "b", null), new Spec("fb2", "master", "c", "body")]
+
+        when:
+        def results = PullReqBatch.of(origin, null, null, 2).createPRs(specs)
+
+        then:
+        results*.isRight() == [true, false, true]
+        results[1].left.startsWith("bad: 422")
+    }
+
+
+    def "waits and tries again when rate limited"() {
+        rateLimitOnce << "fb2"
+        def specs = (1..3).collect { new Spec("fb${it}", "master", "Feature ${it}", null) }
+
+        when:
+        def start = System.currentTimeMillis()
+        def results = PullReqBatch.of(origin, null, null, 1).createPRs(specs)
+
+        then:
+        results.every { it.isRight() }
+        attempts == ["fb1", "fb2", "fb2", "fb3"]
+        System.currentTimeMillis() - start >= 1000
+    }
+
+}
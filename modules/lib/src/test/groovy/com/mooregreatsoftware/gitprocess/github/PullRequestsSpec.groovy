@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.github
+
+import com.mooregreatsoftware.gitprocess.lib.GitSpecification
+import groovy.json.JsonOutput
+import org.eclipse.jgit.transport.URIish
+import spock.lang.AutoCleanup
+
+import javax.servlet.http.HttpServletRequest
+import javax.servlet.http.HttpServletResponse
+import java.util.stream.Collectors
+
+import static com.mooregreatsoftware.gitprocess.github.PullRequests.State.ALL
+import static com.mooregreatsoftware.gitprocess.github.PullRequests.State.OPEN
+import static java.net.HttpURLConnection.HTTP_NOT_FOUND
+
+class PullRequestsSpec extends GitSpecification {
+
+    @AutoCleanup
+    JettySupport jetty = new JettySupport()
+
+    List<Map> prs = (1..250).collect { int n ->
+        [
+            number    : n,
+            html_url  : "http://localhost/jdigger/testproj/pull/${n}",
+            title     : "PR ${n}",
+            state     : n % 10 == 0 ? "closed" : "open",
+            updated_at: String.format("2016-03-01T%02d:%02d:00Z", n.intdiv(60), n % 60),
+            head      : [ref: "fb${n}", sha: "sha${n}", label: "jdigger:fb${n}"],
+            base      : [ref: "master"],
+        ]
+    }
+
+    List<String> queries = []
+
+    PullRequests pullRequests
+
+
+    def setup() {
+        jetty.addGetHandler({ HttpServletRequest request, HttpServletResponse response ->
+            if (request.pathInfo != "/repos/jdigger/testproj/pulls") {
+                response.status = HTTP_NOT_FOUND
+                return
+            }
+            queries << request.queryString
+
+            def state = request.getParameter("state") ?: "open"
+            def head = request.getParameter("head")
+            def matching = prs.findAll { state == "all" || it.state == state }.
+                findAll { head == null || it.head.label == head }
+            matching = request.getParameter("sort") == "updated" ?
+                matching.sort { a, b -> b.updated_at <=> a.updated_at } :
+                matching.sort { a, b -> b.number <=> a.number }
+
+            def perPage = request.getParameter("per_page") as int
+            def page = (request.getParameter("page") ?: "1") as int
+            def from = (page - 1) * perPage
+            def to = Math.min(from + perPage, matching.size())
+            if (to < matching.size()) {
+                def nextQuery = request.queryString.replaceAll(/&?page=\d+/, "") + "&page=${page + 1}"
+                response.setHeader("Link", "<http://localhost:${jetty.serverPort}${request.pathInfo}?${nextQuery}>; rel=\"next\"")
+            }
+            response.writer.print(JsonOutput.toJson(from < to ? matching.subList(from, to) : []))
+        } as JettySupport.SimpleHandler)
+
+        jetty.start()
+
+        createCommit("a")
+        createFakeRemoteBranch("testRemote/master")
+        origin.generalConfig().oauthToken("93abcd234234")
+        origin.remoteConfig().remoteAdd("testRemote", new URIish("http://localhost:${jetty.serverPort}/jdigger/testproj"))
+
+        pullRequests = GitHubRepo.builder().gitLib(origin).build().pullRequests()
+    }
+
+
+    def "follows the Link header through every page"() {
+        when:
+        def all = pullRequests.stream(ALL, null, null).collect(Collectors.toList())
+
+        then:
+        all.size() == 250
+        all*.id() == (250..1).toList()
+        queries.size() == 3
+    }
+
+
+    def "only reads the pages that are used"() {
+        when:
+        def first = pullRequests.stream(OPEN, null, null).limit(5).collect(Collectors.toList())
+
+        then:
+        first*.id() == [249, 248, 247, 246, 245]
+        queries.size() == 1
+    }
+
+
+    def "filters by head branch"() {
+        when:
+        def found = pullRequests.stream(OPEN, "master", "fb7").collect(Collectors.toList())
+
+        then:
+        found*.headSha() == ["sha7"]
+        queries[0].contains("head=jdigger%3Afb7") || queries[0].contains("head=jdigger:fb7")
+        queries[0].contains("base=master")
+    }
+
+
+    def "the index only reads what changed since the last refresh"() {
+        def index = PullRequestIndex.load(origin, pullRequests)
+
+        when:
+        def firstRead = index.refresh().get()
+
+        then:
+        firstRead == 250
+        index.openFor("fb7").get().number == 7
+        !index.openFor("fb10").isPresent()
+
+        when:
+        prs[6].state = "closed"
+        prs[6].updated_at = "2016-03-02T00:00:00Z"
+        queries.clear()
+        def reloaded = PullRequestIndex.load(origin, pullRequests)
+        def secondRead = reloaded.refresh().get()
+
+        then:
+        queries.size() == 1
+        secondRead < 250
+        reloaded.size() == 250
+        !reloaded.openFor("fb7").isPresent()
+        reloaded.get(7).get().headSha == "sha7"
+    }
+
+
+    def "the index does not mistake a branch in a fork for one here"() {
+        prs[6].head.label = "someone-else:fb7"
+        prs << [
+            number    : 251,
+            html_url  : "http://localhost/jdigger/testproj/pull/251",
+            title     : "PR 251",
+            state     : "open",
+            updated_at: "2016-03-02T00:00:00Z",
+            head      : [ref: "fb8", sha: "fork-sha", label: "someone-else:fb8"],
+            base      : [ref: "master"],
+        ]
+        def index = PullRequestIndex.load(origin, pullRequests)
+
+        when:
+        index.refresh().get()
+
+        then:
+        !index.openFor("fb7").isPresent()
+        index.openFor("someone-else:fb7").get().number == 7
+        index.openFor("fb8").get().number == 8
+        index.openFor("jdigger:fb8").get().number == 8
+    }
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib
+
+import org.eclipse.jgit.lib.ObjectId
+import spock.lang.Subject
+
+@Subject(AncestryIndex)
+@SuppressWarnings("GroovyPointlessBoolean")
+class AncestryIndexSpec extends GitSpecification {
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+    }
+
+
+    def "ancestry of diverged branches"() {
+        def initial = branch("master").objectId()
+        createAndCheckoutBranch "newBranch", "master"
+        createCommit "a"
+        def a = branch("newBranch").objectId()
+        checkout "master"
+        createCommit "b"
+        def b = branch("master").objectId()
+
+        expect:
+        index.isAncestor(initial, a) == true
+        index.isAncestor(initial, b) == true
+        index.isAncestor(a, a) == true
+        index.isAncestor(a, b) == false
+        index.isAncestor(b, a) == false
+        index.isAncestor(a, initial) == false
+    }
+
+
+    def "answers are the same after packing with bitmaps"() {
+        def initial = branch("master").objectId()
+        createAndCheckoutBranch "newBranch", "master"
+        createCommit "a"
+        def a = branch("newBranch").objectId()
+
+        when:
+        origin.jgit().gc().call()
+
+        then:
+        new AncestryIndex(origin.jgit().repository).isAncestor(initial, a) == true
+        new AncestryIndex(origin.jgit().repository).isAncestor(a, initial) == false
+    }
+
+
+    def "unknown commits are not ancestors"() {
+        def unknown = ObjectId.fromString("0123456789012345678901234567890123456789")
+
+        expect:
+        index.isAncestor(unknown, branch("master").objectId()) == false
+    }
+
+
+    AncestryIndex getIndex() {
+        currentLib.ancestryIndex()
+    }
+
+}
@@ -16,6 +16,7 @@
 package com.mooregreatsoftware.gitprocess.lib
 
 import groovy.transform.CompileStatic
+import org.eclipse.jgit.lib.ObjectId
 import spock.lang.Subject
 
 @Subject(Branch)
@@ -87,12 +88,85 @@ class BranchSpec extends GitSpecification {
         sha != null
     }
 
+
+    def "the last sync is recorded under refs/"() {
+        useLocal
+
+        when:
+        branch("master").recordLastSyncedAgainst()
+
+        then:
+        local.jgit().repository.refDatabase.getRefs("refs/gitProcess/").keySet().sort() == ["synced/master", "syncedIntegration/master"]
+        new File(local.jgit().repository.directory, "gitProcess").exists() == false
+        branch("master").lastSyncedAgainst().get() == branch("master").objectId()
+    }
+
+
+    def "checkoutMovedTo moves the branch, the working directory and writes the reflogs"() {
+        def before = branch("master").objectId()
+        def after = commitOnOtherBranch("a")
+
+        when:
+        def error = branch("master").checkoutMovedTo(before, after, "test: move")
+
+        then:
+        error.isPresent() == false
+        branch("master").objectId() == after
+        new File(currentLib.workingDirectory(), "a").exists()
+        currentLib.hasUncommittedChanges() == false
+        currentLib.jgit().reflog().setRef("HEAD").call()[0].comment == "test: move"
+        currentLib.jgit().reflog().setRef("refs/heads/master").call()[0].comment == "test: move"
+    }
+
+
+    def "checkoutMovedTo changes nothing if the branch is not where it was expected"() {
+        def before = branch("master").objectId()
+        def after = commitOnOtherBranch("a")
+
+        when:
+        def error = branch("master").checkoutMovedTo(after, before, "test: move")
+
+        then:
+        error.get().contains("is no longer at")
+        branch("master").objectId() == before
+        new File(currentLib.workingDirectory(), "a").exists() == false
+    }
+
+
+    def "checkoutMovedTo puts the working directory back if the branch can not be moved"() {
+        def before = branch("master").objectId()
+        def after = commitOnOtherBranch("a")
+        def lockFile = new File(currentLib.jgit().repository.directory, "refs/heads/master.lock")
+        lockFile.createNewFile()
+
+        when:
+        def error = branch("master").checkoutMovedTo(before, after, "test: move")
+
+        then:
+        error.isPresent()
+        branch("master").objectId() == before
+        new File(currentLib.workingDirectory(), "a").exists() == false
+        currentLib.hasUncommittedChanges() == false
+
+        cleanup:
+        lockFile.delete()
+    }
+
     // **********************************************************************
     //
     // HELPERS
     //
     // **********************************************************************
 
+    ObjectId commitOnOtherBranch(String filename) {
+        createAndCheckoutBranch "other", "master"
+        createCommit filename
+        def oid = branch("other").objectId()
+        checkout "master"
+        return oid
+    }
+
+
     void containsAllOf(String superBranch, String subBranch) {
         assert currentLib.branches().branch(superBranch).containsAllOf(subBranch) == true
     }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib
+
+import spock.lang.Subject
+
+import java.util.stream.Collectors
+
+@Subject(DefaultBranches)
+class DefaultBranchesSpec extends GitSpecification {
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+        createBranch("fb", "master")
+        local.fetch()
+        useLocal
+        createBranch("local_only", "master")
+    }
+
+
+    def "lists local and remote branches"() {
+        expect:
+        names(currentLib.branches().localBranches()) == ["master", "local_only"] as Set
+        names(currentLib.branches().remoteBranches()).containsAll(["origin/master", "origin/fb"])
+        names(currentLib.branches().allBranches()).containsAll(["master", "local_only", "origin/master", "origin/fb"])
+    }
+
+
+    def "listing is scoped by prefix"() {
+        when:
+        def branches = currentLib.branches().branches("refs/heads/l").collect(Collectors.toList())
+
+        then:
+        branches*.shortName() == ["local_only"]
+        currentLib.branches().remoteBranches("origin").allMatch { it.isRemote() }
+        currentLib.branches().remoteBranches("not_a_remote").count() == 0
+    }
+
+
+    static Set<String> names(Iterator<Branch> branches) {
+        branches.collect { it.shortName() } as Set
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib
+
+import spock.lang.Subject
+import spock.lang.Unroll
+
+@Subject(DirtyCheck)
+class DirtyCheckSpec extends GitSpecification {
+
+    def setup() {
+        ["dir1", "dir2", "dir3"].each { new File(origin.workingDirectory(), it).mkdirs() }
+        createFiles(origin, ".gitignore", "a", "dir1/b", "dir2/c").commit("initial")
+    }
+
+
+    @Unroll
+    def "a clean working directory has no changes (#threads threads)"() {
+        expect:
+        !DirtyCheck.of(origin).hasUncommittedChanges(false, threads)
+        !origin.hasUncommittedChanges()
+
+        where:
+        threads << [1, 4]
+    }
+
+
+    @Unroll
+    def "finds a modified file (#threads threads)"() {
+        changeFile(origin, "dir2/c", "changed")
+
+        expect:
+        DirtyCheck.of(origin).firstChange(false, threads) == "dir2/c"
+        origin.hasUncommittedChanges()
+
+        where:
+        threads << [1, 4]
+    }
+
+
+    def "finds an added file"() {
+        createFiles(origin, "dir1/d")
+
+        expect:
+        DirtyCheck.of(origin).firstChange(false, 1) == "dir1/d"
+    }
+
+
+    def "finds a missing file"() {
+        new File(origin.workingDirectory(), "dir1/b").delete()
+
+        expect:
+        DirtyCheck.of(origin).firstChange(false, 4) == "dir1/b"
+    }
+
+
+    def "untracked files only count when asked for"() {
+        createFilesNoAdd(origin, "dir3/untracked")
+
+        expect:
+        !DirtyCheck.of(origin).hasUncommittedChanges(false, 1)
+        DirtyCheck.of(origin).firstChange(true, 1) == "dir3/untracked"
+        !origin.hasUncommittedChanges()
+
+        when:
+        origin.generalConfig().countUntrackedFiles(true)
+
+        then:
+        origin.hasUncommittedChanges()
+    }
+
+
+    def "ignored files never count"() {
+        new File(origin.workingDirectory(), ".gitignore").text = "*.log\n"
+        origin.addFilepattern(".gitignore")
+        origin.commit("ignore logs")
+        new File(origin.workingDirectory(), "debug.log").text = "noise"
+
+        expect:
+        !DirtyCheck.of(origin).hasUncommittedChanges(true, 1)
+    }
+
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib
+
+import org.eclipse.jgit.transport.CredentialItem
+import org.eclipse.jgit.transport.URIish
+import spock.lang.Subject
+
+@Subject(GitCredentialProvider)
+class GitCredentialProviderSpec extends GitSpecification {
+
+    File helperLog
+
+    GitCredentialProvider provider
+
+    URIish uri = new URIish("https://git.example.com/jdigger/testproj.git")
+
+
+    def setup() {
+        helperLog = new File(origin.gitDirectory(), "helper.log")
+        // a helper that records what it was asked to do, and always has the same answer
+        def config = origin.jgit().repository.config
+        config.setString("credential", null, "helper",
+            "!f() { cat > /dev/null; echo \"\$1\" >> '${helperLog.absolutePath}'; " +
+                "if [ \"\$1\" = get ]; then echo username=bob; echo password=secret; fi; }; f")
+        config.save()
+        provider = new GitCredentialProvider(origin.workingDirectory())
+    }
+
+
+    def "tells the helper when the server accepted the credentials"() {
+        def username = new CredentialItem.Username()
+        def password = new CredentialItem.Password()
+
+        when:
+        provider.get(uri, username, password)
+        provider.approve(uri)
+        provider.approve(uri)
+
+        then:
+        username.value == "bob"
+        new String(password.value) == "secret"
+        actions() == ["get", "store"]
+    }
+
+
+    def "tells the helper to forget credentials the server did not accept"() {
+        provider.get(uri, new CredentialItem.Username(), new CredentialItem.Password())
+
+        when:
+        provider.reset(uri)
+        provider.reset(uri)
+
+        then:
+        actions() == ["get", "erase"]
+
+        when: "asked again"
+        provider.get(uri, new CredentialItem.Username(), new CredentialItem.Password())
+
+        then: "the helper is asked again"
+        actions() == ["get", "erase", "get"]
+    }
+
+
+    List<String> actions() {
+        helperLog.exists() ? helperLog.readLines() : []
+    }
+
+}
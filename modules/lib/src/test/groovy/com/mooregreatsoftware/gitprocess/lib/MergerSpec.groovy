@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib
+
+import org.eclipse.jgit.api.MergeResult.MergeStatus
+import org.eclipse.jgit.lib.RepositoryState
+import spock.lang.Subject
+
+@Subject(Merger)
+class MergerSpec extends GitSpecification {
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+        createAndCheckoutBranch "other", "master"
+        createCommit "b"
+        createAndCheckoutBranch "fb", "master"
+        createCommit "a"
+        checkout "master"
+        createCommit "c"
+        checkout "fb"
+    }
+
+
+    def "merges in memory then checks out the result"() {
+        def fbBefore = branch("fb").objectId()
+
+        when:
+        def result = Merger.merge(origin, branch("master"))
+
+        then:
+        result.isRight()
+        result.get().statusMsg() == MergeStatus.MERGED.toString()
+        result.get().newHead() == branch("fb").objectId()
+        branch("fb").contains(fbBefore)
+        branch("fb").containsAllOf("master")
+        ["a", "c"].every { new File(origin.workingDirectory(), it).exists() }
+        !origin.hasUncommittedChanges()
+    }
+
+
+    def "merges one after the other without checking out the one in between"() {
+        when:
+        def result = Merger.merge(origin, branch("other"), branch("master"))
+
+        then:
+        result.isRight()
+        branch("fb").containsAllOf("other")
+        branch("fb").containsAllOf("master")
+        ["a", "b", "c"].every { new File(origin.workingDirectory(), it).exists() }
+        !origin.hasUncommittedChanges()
+        origin.jgit().repository.repositoryState == RepositoryState.SAFE
+    }
+
+
+    def "falls back to a normal merge so a conflict can be resolved"() {
+        checkout "master"
+        changeFileAndCommit "a"
+        checkout "fb"
+        def before = branch("fb").objectId()
+
+        expect:
+        Merger.inCoreMerge(origin, branch("fb"), [branch("master")]).left.startsWith("Conflicts applying")
+        branch("fb").objectId() == before
+
+        when:
+        def result = Merger.merge(origin, branch("master"))
+
+        then:
+        result.isLeft()
+        origin.jgit().repository.repositoryState == RepositoryState.MERGING
+    }
+
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib
+
+import spock.lang.Subject
+
+@Subject(Pusher)
+@SuppressWarnings("GroovyPointlessBoolean")
+class PusherSpec extends GitSpecification {
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+        useLocal
+    }
+
+
+    def "push a new branch"() {
+        def fb = createAndCheckoutBranch("fb", "master")
+        createCommit "a"
+
+        when:
+        def result = Pusher.create(local, fb, "fb").push()
+
+        then:
+        result.isRight()
+        result.get().success() == true
+        result.get().toString().contains("*\trefs/heads/fb:refs/heads/fb\t[new branch]")
+        branch("origin/fb").objectId() == fb.objectId()
+        origin.branches().branch("fb").objectId() == fb.objectId()
+    }
+
+
+    def "rejected when not a fast-forward unless forced"() {
+        def fb = createAndCheckoutBranch("fb", "master")
+        createCommit "a"
+        Pusher.create(local, fb, "fb").push()
+        resetHard("master")
+        createCommit "b"
+
+        when:
+        def result = Pusher.create(local, fb, "fb").push()
+
+        then:
+        result.isLeft()
+        result.left.contains("[rejected] (non-fast-forward)")
+
+        when:
+        result = Pusher.create(local, fb, "fb", true, null, null).push()
+
+        then:
+        result.isRight()
+        result.get().toString().contains("(forced update)")
+        origin.branches().branch("fb").objectId() == fb.objectId()
+    }
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib
+
+import org.eclipse.jgit.lib.RepositoryState
+import spock.lang.Subject
+
+@Subject(Rebaser)
+class RebaserSpec extends GitSpecification {
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+        createAndCheckoutBranch "fb", "master"
+        createCommit "a"
+        createCommit "b"
+        checkout "master"
+        createCommit "c"
+        checkout "fb"
+    }
+
+
+    def "rebases in memory then checks out the result"() {
+        def master = branch("master")
+
+        when:
+        def result = Rebaser.rebase(origin, master)
+
+        then:
+        result.isRight()
+        branch("fb").contains(master.objectId())
+        parent(parent(branch("fb").objectId().name(), origin), origin) == master.sha()
+        ["a", "b", "c"].every { new File(origin.workingDirectory(), it).exists() }
+        !origin.hasUncommittedChanges()
+        origin.jgit().repository.repositoryState == RepositoryState.SAFE
+    }
+
+
+    def "falls back to a normal rebase so a conflict can be resolved"() {
+        checkout "master"
+        changeFileAndCommit "a"
+        checkout "fb"
+        def before = branch("fb").objectId()
+
+        expect:
+        Rebaser.inCoreRebase(origin, branch("fb"), branch("master")).left.startsWith("Conflicts applying")
+        branch("fb").objectId() == before
+
+        when:
+        def result = Rebaser.rebase(origin, branch("master"))
+
+        then:
+        result.isLeft()
+        origin.jgit().repository.repositoryState == RepositoryState.REBASING_MERGE
+    }
+
+
+    def "can be turned off"() {
+        origin.generalConfig().inCoreRebase(false)
+
+        when:
+        def result = Rebaser.rebase(origin, branch("master"))
+
+        then:
+        result.isRight()
+        branch("fb").contains(branch("master").objectId())
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib
+
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder
+import spock.lang.Subject
+
+@Subject(RefSnapshot)
+class RefSnapshotSpec extends GitSpecification {
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+    }
+
+
+    def "repeated lookups are answered from the snapshot"() {
+        def snapshot = currentLib.refSnapshot()
+        // HEAD was only just written; move it out of the racy window in case timestamps are whole seconds
+        new File(currentLib.gitDirectory(), "HEAD").setLastModified(System.currentTimeMillis() - 10000)
+        snapshot.refs()
+        def misses = snapshot.misses()
+        def hits = snapshot.hits()
+
+        when:
+        def master = snapshot.findRef("master")
+        def head = snapshot.exactRef("HEAD")
+
+        then:
+        master.name == "refs/heads/master"
+        head.target.name == "refs/heads/master"
+        snapshot.misses() == misses
+        snapshot.hits() == hits + 2
+    }
+
+
+    def "changes made through JGit are seen"() {
+        def snapshot = currentLib.refSnapshot()
+        def before = snapshot.objectId("refs/heads/master")
+
+        when:
+        createAndCheckoutBranch "newBranch", "master"
+        createCommit "a"
+
+        then:
+        snapshot.findRef("newBranch") != null
+        snapshot.objectId("refs/heads/newBranch") != before
+        snapshot.objectId("refs/heads/master") == before
+    }
+
+
+    def "changes made through another JGit repository for the same directory are seen"() {
+        def snapshot = currentLib.refSnapshot()
+        def master = snapshot.objectId("refs/heads/master")
+        def other = new FileRepositoryBuilder().setGitDir(currentLib.gitDirectory()).build()
+
+        when:
+        def update = other.updateRef("refs/heads/fromElsewhere")
+        update.newObjectId = master
+        update.update()
+
+        then:
+        snapshot.objectId("refs/heads/fromElsewhere") == master
+
+        cleanup:
+        other?.close()
+    }
+
+
+    def "lists only the refs with the prefix"() {
+        ["fb/b", "fb/a", "fb2", "other"].each { createBranch(it, "master") }
+        def snapshot = currentLib.refSnapshot()
+
+        expect:
+        snapshot.refs("refs/heads/fb/").collect { it.name } == ["refs/heads/fb/a", "refs/heads/fb/b"]
+        snapshot.refs("refs/heads/fb").collect { it.name } == ["refs/heads/fb/a", "refs/heads/fb/b", "refs/heads/fb2"]
+        snapshot.refs("refs/tags/").count() == 0
+    }
+
+
+    def "invalidate forces a reload"() {
+        def snapshot = currentLib.refSnapshot()
+        snapshot.refs()
+        def misses = snapshot.misses()
+
+        when:
+        snapshot.invalidate()
+        snapshot.refs()
+
+        then:
+        snapshot.misses() == misses + 1
+    }
+
+}
@@ -93,6 +93,26 @@ class StoredBranchConfigSpec extends GitSpecification {
     }
 
 
+    def "remote integration branch follows the remote HEAD"() {
+        useOrigin
+        createCommit "fooble"
+        createAndCheckoutBranch "another_branch", "master"
+        createCommit "fooble2"
+
+        local "another_branch"
+        useLocal
+
+        expect:
+        integrationBranchIs "origin/master"
+
+        when: 'the remote says its default branch is "another_branch"'
+        local.repository().updateRef("refs/remotes/origin/HEAD").link("refs/remotes/origin/another_branch")
+
+        then:
+        integrationBranchIs "origin/another_branch"
+    }
+
+
     def "set upstream"() {
         expect:
         remoteConfig.hasRemotes() == false
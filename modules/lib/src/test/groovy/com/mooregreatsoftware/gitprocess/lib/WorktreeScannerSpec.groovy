@@ -0,0 +1,124 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib
+
+import org.eclipse.jgit.lib.Constants
+import org.eclipse.jgit.lib.FileMode
+import org.eclipse.jgit.lib.ObjectInserter
+import spock.lang.Subject
+
+@Subject(WorktreeScanner)
+class WorktreeScannerSpec extends GitSpecification {
+
+    WorktreeScanner scanner
+
+
+    def setup() {
+        new File(origin.workingDirectory(), "dir1").mkdirs()
+        createFiles(origin, ".gitignore", "a", "dir1/b").commit("initial")
+        scanner = new WorktreeScanner(origin.repository(), 4)
+    }
+
+
+    def cleanup() {
+        scanner?.close()
+    }
+
+
+    def "ids match what JGit would write"() {
+        changeFile(origin, "a", "some content")
+        def big = new byte[(int)WorktreeScanner.MMAP_THRESHOLD + 10]
+        new Random(1).nextBytes(big)
+        new File(origin.workingDirectory(), "dir1/big").bytes = big
+
+        when:
+        def scanned = scanner.scan(origin.repository().readDirCache(), ".", true)
+
+        then:
+        scanned.keySet() == [".gitignore", "a", "dir1/b", "dir1/big"] as Set
+        scanned["a"].id() == new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, "some content".bytes)
+        scanned["dir1/big"].id() == new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, big)
+        scanned["a"].mode() == FileMode.REGULAR_FILE
+    }
+
+
+    def "untracked and ignored files"() {
+        new File(origin.workingDirectory(), ".gitignore").text = "*.log\nbuild/\n"
+        new File(origin.workingDirectory(), "build").mkdirs()
+        createFilesNoAdd(origin, "debug.log", "build/out", "dir1/new")
+
+        when:
+        def tracked = scanner.scan(origin.repository().readDirCache(), ".", false)
+        def all = scanner.scan(origin.repository().readDirCache(), ".", true)
+
+        then:
+        tracked.keySet() == [".gitignore", "a", "dir1/b"] as Set
+        all.keySet() == [".gitignore", "a", "dir1/b", "dir1/new"] as Set
+    }
+
+
+    def "add puts new and changed files in the index"() {
+        createFilesNoAdd(origin, "dir1/new")
+        changeFile(origin, "a", "changed")
+
+        when:
+        scanner.add(".")
+
+        then:
+        origin.jgit().status().call().added == ["dir1/new"] as Set
+        origin.jgit().status().call().changed == ["a"] as Set
+        origin.jgit().status().call().modified.isEmpty()
+        origin.jgit().status().call().untracked.isEmpty()
+    }
+
+
+    def "add can be limited to a directory"() {
+        createFilesNoAdd(origin, "dir1/new", "other")
+
+        when:
+        scanner.add("dir1")
+
+        then:
+        origin.jgit().status().call().added == ["dir1/new"] as Set
+        origin.jgit().status().call().untracked == ["other"] as Set
+    }
+
+
+    def "hashes are remembered between runs"() {
+        def file = new File(origin.workingDirectory(), "untracked")
+        file.text = "aaaa"
+        // well outside of the "racy" window, so the hash can be trusted later
+        def lastModified = System.currentTimeMillis() - 10_000
+        file.setLastModified(lastModified)
+        def aaaaId = new ObjectInserter.Formatter().idFor(Constants.OBJ_BLOB, "aaaa".bytes)
+
+        assert scanner.scan(origin.repository().readDirCache(), ".", true)["untracked"].id() == aaaaId
+        scanner.close()
+
+        // same size and time, so only the stat cache can tell what it was
+        file.text = "bbbb"
+        file.setLastModified(lastModified)
+
+        when:
+        scanner = new WorktreeScanner(origin.repository(), 4)
+        def scanned = scanner.scan(origin.repository().readDirCache(), ".", true)
+
+        then:
+        new File(origin.repository().directory, "gitprocess/stat-cache").exists()
+        scanned["untracked"].id() == aaaaId
+    }
+
+}
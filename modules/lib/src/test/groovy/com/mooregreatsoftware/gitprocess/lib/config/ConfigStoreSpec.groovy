@@ -0,0 +1,118 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib.config
+
+import com.mooregreatsoftware.gitprocess.lib.FileStamp
+import com.mooregreatsoftware.gitprocess.lib.GitSpecification
+import org.eclipse.jgit.storage.file.FileBasedConfig
+import org.eclipse.jgit.util.FS
+import spock.lang.Subject
+
+@Subject(ConfigStore)
+class ConfigStoreSpec extends GitSpecification {
+
+    ConfigStore getConfigStore() {
+        origin.configStore()
+    }
+
+
+    def "changes in a batch are written when it is closed"() {
+        def generalConfig = origin.generalConfig()
+
+        when:
+        def batch = configStore.batch()
+        generalConfig.username("someone")
+        generalConfig.oauthToken("a-token")
+
+        then: 'nothing written yet'
+        onDisk().getString("gitProcess", null, "username") == null
+        generalConfig.username().get() == "someone"
+
+        when:
+        batch.close()
+
+        then:
+        onDisk().getString("gitProcess", null, "username") == "someone"
+        onDisk().getString("gitProcess", null, "oauthToken") == "a-token"
+    }
+
+
+    def "nested batches are written by the outermost"() {
+        def generalConfig = origin.generalConfig()
+
+        when:
+        def outer = configStore.batch()
+        def inner = configStore.batch()
+        generalConfig.username("someone")
+        inner.close()
+
+        then:
+        onDisk().getString("gitProcess", null, "username") == null
+
+        when:
+        outer.close()
+
+        then:
+        onDisk().getString("gitProcess", null, "username") == "someone"
+    }
+
+
+    def "changes made by something else are seen"() {
+        def generalConfig = origin.generalConfig()
+
+        when:
+        def other = onDisk()
+        other.setString("gitProcess", null, "username", "someone-else")
+        other.save()
+
+        then:
+        generalConfig.username().get() == "someone-else"
+    }
+
+
+    def "a change right after a write is seen even if the size and timestamp are the same"() {
+        def generalConfig = origin.generalConfig()
+        generalConfig.username("aaaa")
+        def file = new File(origin.repository().directory, "config")
+        def lastModified = file.lastModified()
+
+        when: "the file is changed without changing its size or timestamp"
+        file.text = file.text.replace("aaaa", "bbbb")
+        file.setLastModified(lastModified)
+
+        then: "the contents no longer match what was written"
+        generalConfig.username().get() == "bbbb"
+    }
+
+
+    def "what was just written is trusted while it is unchanged"() {
+        def generalConfig = origin.generalConfig()
+        generalConfig.username("aaaa")
+        def file = new File(origin.repository().directory, "config")
+
+        expect:
+        !FileStamp.written(file.toPath(), file.bytes).isModified()
+        generalConfig.username().get() == "aaaa"
+    }
+
+
+    FileBasedConfig onDisk() {
+        def config = new FileBasedConfig(new File(origin.repository().directory, "config"), FS.DETECTED)
+        config.load()
+        config
+    }
+
+}
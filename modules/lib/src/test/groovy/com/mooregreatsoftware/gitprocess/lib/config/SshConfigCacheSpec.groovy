@@ -0,0 +1,54 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.lib.config
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.nio.file.Files
+import java.nio.file.attribute.FileTime
+
+@Subject(SshConfigCache)
+class SshConfigCacheSpec extends Specification {
+
+    def "parsed once until the file changes"() {
+        def file = Files.createTempFile("ssh", "config")
+        file.toFile().deleteOnExit()
+        file.text = "Host github\n  HostName github.com\n"
+        // push the modification time far enough into the past to be trusted
+        Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis() - 60_000))
+
+        when:
+        def first = SshConfigCache.config(file)
+
+        then:
+        first.getConfig("github").hostname == "github.com"
+        SshConfigCache.config(file).is(first)
+
+        when:
+        file.text = "Host github\n  HostName github.example.com\n"
+
+        then:
+        SshConfigCache.config(file).getConfig("github").hostname == "github.example.com"
+    }
+
+
+    def "missing file"() {
+        expect:
+        SshConfigCache.config(new File("/does/not/exist/config").toPath()) == null
+    }
+
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.process
+
+import com.mooregreatsoftware.gitprocess.github.PullReqCreator
+import com.mooregreatsoftware.gitprocess.github.PullRequest
+import com.mooregreatsoftware.gitprocess.lib.AsyncGitLib
+import com.mooregreatsoftware.gitprocess.lib.GitSpecification
+import javaslang.control.Either
+import spock.lang.Subject
+
+import javax.json.Json
+import javax.json.JsonStructure
+import java.util.concurrent.TimeUnit
+
+@Subject(AsyncSync)
+class AsyncSyncSpec extends GitSpecification {
+
+    AsyncGitLib asyncGitLib
+
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+        useLocal
+        createAndCheckoutBranch "fb", "origin/master"
+        createCommit "a"
+        asyncGitLib = AsyncGitLib.of(local)
+    }
+
+
+    def cleanup() {
+        asyncGitLib?.close()
+    }
+
+
+    def "syncs and pushes"() {
+        useOrigin
+        createCommit "b"
+        useLocal
+
+        when:
+        def result = new AsyncSync(asyncGitLib).sync(false, false).get(30, TimeUnit.SECONDS)
+
+        then:
+        result.isRight()
+        result.get().shortName() == "fb"
+        local.branches().branch("fb").containsAllOf("origin/master")
+        origin.branches().branch("fb").objectId() == local.branches().branch("fb").objectId()
+    }
+
+
+    def "uncommitted changes stop the sync before anything is fetched"() {
+        def originMasterBefore = local.branches().branch("origin/master").objectId()
+        useOrigin
+        createCommit "d"
+        useLocal
+        createFiles "c" // add but don't commit
+        def before = local.branches().branch("fb").objectId()
+
+        when:
+        def result = new AsyncSync(asyncGitLib).sync(true, false).get(30, TimeUnit.SECONDS)
+
+        then:
+        result.getLeft() == "You have uncommitted changes"
+        local.branches().branch("fb").objectId() == before
+        local.branches().branch("origin/master").objectId() == originMasterBefore
+        origin.branches().branch("fb") == null
+    }
+
+
+    def "only the repository lookup runs alongside the sync"() {
+        def callingThread = Thread.currentThread()
+        Thread builtOn = null
+        Thread lookedUpOn = null
+        def fb = local.branches().branch("fb")
+        def creator = new PullReqCreator(null, fb, fb) {
+            @Override
+            Either<String, Void> lookUpRepo() {
+                lookedUpOn = Thread.currentThread()
+                return Either.right(null)
+            }
+
+
+            @Override
+            Either<String, PullRequest> createPR() {
+                return Either.right(new PullRequest(Json.createObjectBuilder().
+                    add("title", "a title").add("html_url", "http://example.com/pull/1").build()))
+            }
+
+
+            @Override
+            protected JsonStructure createPrJson() {
+                return Json.createObjectBuilder().build()
+            }
+        }
+
+        when:
+        def result = new AsyncSync(asyncGitLib).syncThenCreatePR(false, {
+            builtOn = Thread.currentThread()
+            return creator
+        }).get(30, TimeUnit.SECONDS)
+
+        then:
+        result.get().title() == "a title"
+        builtOn == callingThread
+        lookedUpOn != null && lookedUpOn != callingThread
+        origin.branches().branch("fb").objectId() == local.branches().branch("fb").objectId()
+    }
+
+
+    def "a pull request creator that can not be built stops before the sync"() {
+        def before = local.branches().branch("fb").objectId()
+
+        when:
+        def result = new AsyncSync(asyncGitLib).syncThenCreatePR(false, {
+            throw new IllegalStateException("Could not determine an integration branch")
+        }).get(30, TimeUnit.SECONDS)
+
+        then:
+        result.getLeft().contains("Could not determine an integration branch")
+        origin.branches().branch("fb") == null
+        local.branches().branch("fb").objectId() == before
+    }
+
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.process
+
+import com.mooregreatsoftware.gitprocess.lib.GitSpecification
+import com.mooregreatsoftware.gitprocess.lib.InCoreCombiner.Combined
+import spock.lang.Subject
+
+@Subject(BatchSync)
+@SuppressWarnings("GroovyPointlessBoolean")
+class BatchSyncSpec extends GitSpecification {
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+        useLocal
+        createAndCheckoutBranch "fb1", "origin/master"
+        createCommit "a"
+        createAndCheckoutBranch "fb2", "origin/master"
+        createCommit "b"
+    }
+
+
+    def "rebases every branch onto integration and pushes them all"() {
+        useOrigin
+        createCommit "c"
+        def originMaster = branch("master").objectId()
+        useLocal
+
+        when:
+        def result = BatchSync.sync(local, [], false, false).get()
+
+        then:
+        result.success()
+        result.branchResults()*.branchName() == ["fb1", "fb2"]
+        result.branchResults()*.status() == [Combined.Status.COMBINED, Combined.Status.COMBINED]
+        result.branchResults()*.pushSummary() == ["pushed", "pushed"]
+
+        local.branches().branch("fb1").contains(originMaster)
+        local.branches().branch("fb2").contains(originMaster)
+        origin.branches().branch("fb1").objectId() == local.branches().branch("fb1").objectId()
+        origin.branches().branch("fb2").objectId() == local.branches().branch("fb2").objectId()
+
+        // fb2 is checked out, so the working directory follows it
+        local.branches().currentBranch().shortName() == "fb2"
+        new File(local.workingDirectory(), "c").exists()
+        !local.hasUncommittedChanges()
+    }
+
+
+    def "the checked out branch is moved like a checkout, not a reset"() {
+        useOrigin
+        createCommit "c"
+        useLocal
+
+        when:
+        def result = BatchSync.sync(local, ["fb2"], false, false).get()
+
+        then:
+        result.success()
+        local.jgit().reflog().setRef("HEAD").call()[0].comment == "sync: rebase with origin/master"
+        new File(local.workingDirectory(), "c").exists()
+    }
+
+
+    def "branches that are already up to date still record the last sync"() {
+        BatchSync.sync(local, ["fb1"], false, false).get()
+        def syncedRef = "refs/gitProcess/synced/fb1"
+        def refUpdate = local.jgit().repository.updateRef(syncedRef)
+        refUpdate.setForceUpdate(true)
+        refUpdate.delete()
+
+        when:
+        def result = BatchSync.sync(local, ["fb1"], false, false).get()
+
+        then:
+        result.branchResults()[0].pushSummary() == "up to date"
+        local.jgit().repository.refDatabase.exactRef(syncedRef).objectId == branch("fb1").objectId()
+        branch("fb1").unchangedSinceLastSync()
+    }
+
+
+    def "a conflict only stops that branch"() {
+        useOrigin
+        changeFileAndCommit "a"
+        useLocal
+        def fb1Before = branch("fb1").objectId()
+
+        when:
+        def result = BatchSync.sync(local, ["fb1", "fb2"], false, false).get()
+
+        then:
+        !result.success()
+
+        def fb1 = result.branchResults()[0]
+        !fb1.success()
+        fb1.error().startsWith("Conflicts applying")
+        branch("fb1").objectId() == fb1Before
+        origin.branches().branch("fb1") == null
+
+        def fb2 = result.branchResults()[1]
+        fb2.success()
+        origin.branches().branch("fb2").objectId() == branch("fb2").objectId()
+    }
+
+
+    def "merging without the server"() {
+        useOrigin
+        createCommit "c"
+        useLocal
+        local.fetch()
+        def fb1Before = branch("fb1").objectId()
+
+        when:
+        def result = BatchSync.sync(local, ["fb1"], true, true, 1).get()
+
+        then:
+        result.success()
+        result.branchResults()[0].status() == Combined.Status.COMBINED
+        result.branchResults()[0].pushSummary() == "-"
+        branch("fb1").contains(fb1Before)
+        branch("fb1").containsAllOf("origin/master")
+        origin.branches().branch("fb1") == null
+    }
+
+
+    def "pushes to the configured upstream"() {
+        useOrigin
+        createAndCheckoutBranch "feature-one", "master"
+        checkout "master"
+        createCommit "c"
+        useLocal
+        local.fetch()
+        branch("fb1").upstream(branch("origin/feature-one"))
+
+        when:
+        def result = BatchSync.sync(local, ["fb1"], false, false).get()
+
+        then:
+        result.success()
+        result.branchResults()[0].pushSummary() == "pushed"
+        origin.branches().branch("feature-one").objectId() == branch("fb1").objectId()
+        origin.branches().branch("fb1") == null
+    }
+
+
+    def "a branch that was never pushed does not stop the others from being fetched"() {
+        BatchSync.sync(local, ["fb1"], false, false).get()
+
+        useOrigin
+        checkout "fb1"
+        createCommit "c"
+        checkout "master"
+        def originFb1 = branch("fb1").objectId()
+        useLocal
+
+        when:
+        def result = BatchSync.sync(local, ["fb1", "fb2"], false, false).get()
+
+        then:
+        result.success()
+        branch("fb1").contains(originFb1)
+        origin.branches().branch("fb2").objectId() == branch("fb2").objectId()
+    }
+
+
+    def "unknown branches are rejected up front"() {
+        expect:
+        BatchSync.sync(local, ["fb1", "nope"], false, true).left == "\"nope\" is not a local branch"
+    }
+
+}
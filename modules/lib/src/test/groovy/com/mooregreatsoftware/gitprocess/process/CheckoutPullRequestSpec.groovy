@@ -0,0 +1,147 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.process
+
+import com.mooregreatsoftware.gitprocess.lib.GitSpecification
+import org.eclipse.jgit.lib.ObjectId
+import spock.lang.Subject
+
+import static org.eclipse.jgit.lib.Constants.MASTER
+
+@Subject(CheckoutPullRequest)
+@SuppressWarnings("GroovyPointlessBoolean")
+class CheckoutPullRequestSpec extends GitSpecification {
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+    }
+
+
+    def "fetches only the pull request and checks it out"() {
+        def prHead = pullRequestOnOrigin(7, "fb")
+        (1..50).each { setRef("refs/pull/${100 + it}/head", prHead) }
+
+        useLocal
+
+        when:
+        def branch = CheckoutPullRequest.checkoutPullRequest(local, 7, false).get()
+
+        then:
+        branch.shortName() == "pr/7"
+        local.branches().currentBranch().shortName() == "pr/7"
+        branch.objectId() == prHead
+
+        and: "none of the other pull requests were fetched"
+        pullRefs() == ["refs/remotes/origin/pull/7/head"]
+
+        and: "it tracks the pull request on the server"
+        local.jgit().repository.config.getString("branch", "pr/7", "merge") == "refs/pull/7/head"
+        branch.upstream().name() == "refs/remotes/origin/pull/7/head"
+    }
+
+
+    def "can also fetch the merge"() {
+        def prHead = pullRequestOnOrigin(7, "fb")
+        setRef("refs/pull/7/merge", prHead)
+
+        useLocal
+
+        when:
+        CheckoutPullRequest.checkoutPullRequest(local, 7, true).get()
+
+        then:
+        pullRefs() == ["refs/remotes/origin/pull/7/head", "refs/remotes/origin/pull/7/merge"]
+    }
+
+
+    def "fast-forwards a branch that was checked out before"() {
+        pullRequestOnOrigin(7, "fb")
+        useLocal
+        CheckoutPullRequest.checkoutPullRequest(local, 7, false).get()
+
+        useOrigin
+        checkout("fb")
+        createCommit("c")
+        def newHead = branch("fb").objectId()
+        setRef("refs/pull/7/head", newHead)
+
+        useLocal
+        checkout(MASTER)
+
+        when:
+        def branch = CheckoutPullRequest.checkoutPullRequest(local, 7, false).get()
+
+        then:
+        branch.objectId() == newHead
+        local.branches().currentBranch().shortName() == "pr/7"
+    }
+
+
+    def "leaves a branch with its own commits alone"() {
+        pullRequestOnOrigin(7, "fb")
+        useLocal
+        CheckoutPullRequest.checkoutPullRequest(local, 7, false).get()
+        createCommit("mine")
+        def mine = branch("pr/7").objectId()
+
+        useOrigin
+        checkout("fb")
+        createCommit("theirs")
+        setRef("refs/pull/7/head", branch("fb").objectId())
+
+        useLocal
+
+        when:
+        def result = CheckoutPullRequest.checkoutPullRequest(local, 7, false)
+
+        then:
+        result.isLeft()
+        branch("pr/7").objectId() == mine
+    }
+
+
+    def "a pull request that does not exist"() {
+        useLocal
+
+        expect:
+        CheckoutPullRequest.checkoutPullRequest(local, 42, false).isLeft()
+    }
+
+
+    ObjectId pullRequestOnOrigin(int number, String branchName) {
+        useOrigin
+        createAndCheckoutBranch(branchName, MASTER)
+        createCommit("a")
+        createCommit("b")
+        def head = branch(branchName).objectId()
+        setRef("refs/pull/${number}/head", head)
+        checkout(MASTER)
+        return head
+    }
+
+
+    void setRef(String refName, ObjectId objectId) {
+        def updateRef = origin.jgit().repository.updateRef(refName)
+        updateRef.newObjectId = objectId
+        updateRef.forceUpdate()
+    }
+
+
+    List<String> pullRefs() {
+        local.jgit().repository.refDatabase.getRefs("refs/remotes/origin/pull/").values()*.name.sort()
+    }
+
+}
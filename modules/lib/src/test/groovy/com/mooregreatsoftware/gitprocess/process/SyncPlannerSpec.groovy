@@ -0,0 +1,103 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.process
+
+import com.mooregreatsoftware.gitprocess.lib.GitSpecification
+import com.mooregreatsoftware.gitprocess.process.SyncPlan.Action
+import com.mooregreatsoftware.gitprocess.process.SyncPlan.PushMode
+import spock.lang.Subject
+
+@Subject(SyncPlanner)
+class SyncPlannerSpec extends GitSpecification {
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+        useLocal
+        createBranch "fb3", "origin/master"
+        createAndCheckoutBranch "fb1", "origin/master"
+        createCommit "a"
+        createAndCheckoutBranch "fb2", "origin/master"
+        createCommit "b"
+    }
+
+
+    def "plans every branch without changing anything"() {
+        useOrigin
+        createCommit "c"
+        useLocal
+        def before = ["fb1", "fb2", "fb3"].collect { branch(it).objectId() }
+
+        when:
+        def plans = SyncPlanner.plan(local, [], false, false, 2).get()
+
+        then:
+        plans*.branchName() == ["fb1", "fb2", "fb3"]
+        plans*.action() == [Action.REBASE, Action.REBASE, Action.FAST_FORWARD]
+        plans*.commitsToReplay() == [1, 1, 0]
+        plans*.pushMode() == [PushMode.FAST_FORWARD, PushMode.FAST_FORWARD, PushMode.FAST_FORWARD]
+        plans.every { !it.wouldConflict() }
+
+        ["fb1", "fb2", "fb3"].collect { branch(it).objectId() } == before
+        local.branches().currentBranch().shortName() == "fb2"
+        !new File(local.workingDirectory(), "c").exists()
+        origin.branches().branch("fb1") == null
+    }
+
+
+    def "predicts a conflict"() {
+        useOrigin
+        changeFileAndCommit "a"
+        useLocal
+
+        when:
+        def plans = SyncPlanner.plan(local, ["fb1", "fb2"], false, false, 1).get()
+
+        then:
+        plans[0].wouldConflict()
+        plans[0].problem().startsWith("Conflicts applying")
+        plans[0].newOid() == null
+        plans[0].pushMode() == PushMode.NONE
+
+        !plans[1].wouldConflict()
+        plans[1].action() == Action.REBASE
+    }
+
+
+    def "plans the current branch"() {
+        useOrigin
+        createCommit "c"
+        useLocal
+        def fb2Before = branch("fb2").objectId()
+
+        when:
+        def plan = SyncPlanner.plan(local, true, true).get()
+
+        then:
+        plan.branchName() == "fb2"
+        plan.action() == Action.MERGE
+        plan.pushMode() == PushMode.NONE
+        plan.newOid() != fb2Before
+        branch("fb2").objectId() == fb2Before
+        !local.hasUncommittedChanges()
+    }
+
+
+    def "nothing to do"() {
+        expect:
+        SyncPlanner.plan(local, ["fb3"], true, true, 1).get()[0].action() == Action.UP_TO_DATE
+    }
+
+}
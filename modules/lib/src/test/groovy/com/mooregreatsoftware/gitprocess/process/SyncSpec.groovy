@@ -166,6 +166,23 @@ abstract class SyncSpec extends GitSpecification {
         }
 
 
+        def "only fetches the current branch once it is on the server"() {
+            useLocal
+            def fb = createAndCheckoutBranch "never_pushed", MASTER
+            createCommit "a"
+
+            expect:
+            Sync.branchesToFetch(local, local.branches().integrationBranch(), fb) == ["master"]
+
+            when:
+            def sync = run(createOptions(currentLib))
+
+            then:
+            sync.isRight()
+            Sync.branchesToFetch(local, local.branches().integrationBranch(), fb) == ["master", "never_pushed"]
+        }
+
+
         def "should work when pushing with fast-forward"() {
             useOrigin
             createAndCheckoutBranch "fb", "master"
@@ -183,6 +200,42 @@ abstract class SyncSpec extends GitSpecification {
         }
 
 
+        def "should do nothing when nothing has changed since the last sync"() {
+            useOrigin
+            createAndCheckoutBranch "fb", "master"
+            createCommit "b"
+
+            useLocal
+            createCommit "c"
+            syncIsRun()
+            def syncedSha = localSha("fb")
+
+            expect:
+            local.branches().branch("fb").unchangedSinceLastSync()
+
+            when: "pushing would fail, so the sync only works if it does not push"
+            def config = local.jgit().repository.config
+            config.setString("remote", "origin", "pushurl", "file:///does/not/exist")
+            config.save()
+            def reflogSize = local.jgit().reflog().setRef("refs/heads/fb").call().size()
+            syncIsRun(false)
+
+            then: "nothing was combined or pushed"
+            localSha("fb") == syncedSha
+            local.jgit().reflog().setRef("refs/heads/fb").call().size() == reflogSize
+            localAndRemoteAreSame()
+
+            when:
+            useOrigin
+            checkout "master"
+            createCommit "d"
+            useLocal
+
+            then:
+            !local.branches().branch("fb").unchangedSinceLastSync()
+        }
+
+
         def "should work with a different remote server name"() {
             useOrigin
             createAndCheckoutBranch "fb", "master"
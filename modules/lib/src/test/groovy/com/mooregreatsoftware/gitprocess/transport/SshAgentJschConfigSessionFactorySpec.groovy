@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.transport
+
+import com.jcraft.jsch.IdentityRepository
+import org.eclipse.jgit.util.FS
+import org.slf4j.LoggerFactory
+import spock.lang.Specification
+import spock.lang.Subject
+
+import static com.jcraft.jsch.Logger.DEBUG
+import static com.jcraft.jsch.Logger.ERROR
+
+@Subject(SshAgentJschConfigSessionFactory)
+class SshAgentJschConfigSessionFactorySpec extends Specification {
+
+    def "the shared factory creates JSch once"() {
+        def factory = SshAgentJschConfigSessionFactory.instance()
+
+        expect:
+        factory.is(SshAgentJschConfigSessionFactory.instance())
+        factory.jsch("github.com", FS.DETECTED).is(factory.jsch("github.com", FS.DETECTED))
+    }
+
+
+    def "agent identities are remembered"() {
+        def delegate = Mock(IdentityRepository)
+        def repository = new SshAgentJschConfigSessionFactory.CachingIdentityRepository(delegate, 60_000)
+
+        when:
+        repository.getIdentities()
+        repository.getIdentities()
+
+        then:
+        1 * delegate.getIdentities() >> new Vector()
+
+        when: 'adding an identity forgets the list'
+        repository.add(new byte[0])
+        repository.getIdentities()
+
+        then:
+        1 * delegate.getIdentities() >> new Vector()
+    }
+
+
+    def "JSch logging follows the SLF4J level"() {
+        def logger = new SshAgentJschConfigSessionFactory.Slf4jJschLogger()
+        def slf4j = LoggerFactory.getLogger("com.jcraft.jsch")
+
+        expect:
+        logger.isEnabled(DEBUG) == slf4j.isDebugEnabled()
+        logger.isEnabled(ERROR) == slf4j.isErrorEnabled()
+    }
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.mooregreatsoftware.gitprocess.transport
+
+import com.mooregreatsoftware.gitprocess.lib.GitSpecification
+import com.mooregreatsoftware.gitprocess.lib.Pusher
+import spock.lang.Subject
+
+@Subject(TransportSessions)
+class TransportSessionsSpec extends GitSpecification {
+
+    def setup() {
+        createFiles(origin, ".gitignore").commit("initial")
+        useLocal
+    }
+
+
+    def "fetch and push share one connection"() {
+        def sessions = local.transportSessions()
+        def fb = createAndCheckoutBranch("fb", "master")
+        createCommit "a"
+        def reuses = sessions.reuses()
+
+        when:
+        local.fetch()
+        Pusher.create(local, fb, "fb").push()
+        local.fetch()
+
+        then:
+        sessions.handshakes() == 1
+        sessions.reuses() == reuses + 3
+        origin.branches().branch("fb").objectId() == fb.objectId()
+    }
+
+
+    def "closing forgets the connections"() {
+        def sessions = local.transportSessions()
+        local.fetch()
+        def handshakes = sessions.handshakes()
+
+        when:
+        sessions.close()
+        local.fetch()
+
+        then:
+        sessions.handshakes() == handshakes + 1
+    }
+
+
+    def "a narrowed fetch only brings down the named branches"() {
+        origin.branches().createBranch("a", "master")
+        origin.branches().createBranch("b", "master")
+
+        when:
+        def result = local.fetch(["a"], false)
+
+        then:
+        result.isRight()
+        local.branches().branch("origin/a") != null
+        local.branches().branch("origin/b") == null
+    }
+
+
+    def "a narrowed fetch does not ask for a branch that was never pushed"() {
+        origin.branches().createBranch("b", "master")
+
+        when:
+        def result = local.fetch(["missing"], false)
+
+        then: "nothing was fetched"
+        result.isRight()
+        result.get() == null
+        local.branches().branch("origin/b") == null
+    }
+
+
+    def "a narrowed fetch of a branch the server has deleted fetches everything"() {
+        origin.branches().createBranch("gone", "master")
+        local.fetch()
+        origin.branches().removeBranch(origin.branches().branch("gone"))
+        origin.branches().createBranch("b", "master")
+
+        when:
+        def result = local.fetch(["gone"], false)
+
+        then:
+        result.isRight()
+        local.branches().branch("origin/gone") == null
+        local.branches().branch("origin/b") != null
+    }
+
+
+    def "a narrowed fetch that can not reach the server does not try again with everything"() {
+        def config = local.jgit().repository.config
+        config.setString("remote", "origin", "url", new File(origin.workingDirectory(), "does-not-exist").toURI().toString())
+        config.save()
+        local.transportSessions().close()
+
+        when:
+        def result = local.fetch(["master"], false)
+
+        then:
+        result.isLeft()
+    }
+
+}